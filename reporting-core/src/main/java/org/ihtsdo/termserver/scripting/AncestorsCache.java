@@ -5,6 +5,7 @@ import java.util.*;
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.domain.*;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
@@ -19,26 +20,27 @@ public class AncestorsCache implements ScriptConstants {
 	private static AncestorsCache singleton = null;
 	private static AncestorsCache singletonStated = null;
 	
-	Map<Concept, Set<Concept>> ancestorsCache = new HashMap<>();
+	private final ConceptSetCache ancestorsCache;
 	CharacteristicType charType = CharacteristicType.INFERRED_RELATIONSHIP;
 	
-	public static AncestorsCache getAncestorsCache() {
+	public static synchronized AncestorsCache getAncestorsCache() {
 		if (singleton == null) {
-			singleton = new AncestorsCache();
+			singleton = new AncestorsCache("ancestors");
 		}
 		return singleton;
 	}
 	
-	public static AncestorsCache getStatedAncestorsCache() {
+	public static synchronized AncestorsCache getStatedAncestorsCache() {
 		if (singletonStated == null) {
-			singletonStated = new AncestorsCache();
+			singletonStated = new AncestorsCache("stated ancestors");
 			singletonStated.charType = CharacteristicType.STATED_RELATIONSHIP;
 		}
 		return singletonStated;
 	}
 	
-	private AncestorsCache() {
+	private AncestorsCache(String name) {
 		//Force use of singleton;
+		ancestorsCache = new ConceptSetCache(name);
 	}
 	
 	public Set<Concept> getAncestors (Concept c) throws TermServerScriptException {
@@ -53,15 +55,16 @@ public class AncestorsCache implements ScriptConstants {
 		}
 	}
 	
+	/**
+	 * @param mutable if true, a copy the caller is free to change, otherwise the cached set itself, which is immutable
+	 */
 	public Set<Concept> getAncestors (Concept c, boolean mutable) throws TermServerScriptException {
-		Set<Concept> ancestors = ancestorsCache.get(c);
-		if (ancestors == null) {
+		Set<Concept> ancestors = ancestorsCache.get(c, () -> {
 			//Ensure we're working with the local copy rather than TS JSON
 			Concept localConcept = GraphLoader.getGraphLoader().getConcept(c.getConceptId());
-			ancestors = localConcept.getAncestors(NOT_SET, charType, false);
-			ancestorsCache.put(localConcept, ancestors);
-		}
-		return mutable ? ancestors : Collections.unmodifiableSet(ancestors);
+			return ImmutableSet.copyOf(localConcept.getAncestors(NOT_SET, charType, false));
+		});
+		return mutable ? new HashSet<>(ancestors) : ancestors;
 	}
 	
 	public Set<Concept> getAncestorsOrSelf (Concept c) throws TermServerScriptException {
@@ -85,6 +88,17 @@ public class AncestorsCache implements ScriptConstants {
 	}
 
 	public void reset() {
-		ancestorsCache = new HashMap<>();
+		ancestorsCache.reset();
+	}
+
+	/**
+	 * @param maximumWeight the most concepts to hold, summed across all cached sets.  Clears the cache.
+	 */
+	public void setMaximumWeight(long maximumWeight) {
+		ancestorsCache.setMaximumWeight(maximumWeight);
+	}
+
+	public CacheStats getStats() {
+		return ancestorsCache.getStats();
 	}
 }
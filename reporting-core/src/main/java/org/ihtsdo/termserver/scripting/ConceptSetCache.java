@@ -0,0 +1,87 @@
+package org.ihtsdo.termserver.scripting;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.ihtsdo.termserver.scripting.domain.Concept;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrent, bounded store behind AncestorsCache and DescendantsCache.  The bound is on the
+ * total number of concepts held across all cached sets, so one huge set (eg descendants of a
+ * top level hierarchy) counts for as much as many small ones.  Least recently used sets are
+ * evicted first once that bound is reached.  Each set is calculated once, even when several
+ * threads ask for it at the same time, with the others waiting for that result.
+ */
+class ConceptSetCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConceptSetCache.class);
+
+	//Enough to hold the complete closure of the International Edition in either direction
+	static final long DEFAULT_MAXIMUM_WEIGHT = 20_000_000L;
+
+	private final String name;
+	private long maximumWeight = DEFAULT_MAXIMUM_WEIGHT;
+	private volatile Cache<Concept, Set<Concept>> cache;
+
+	ConceptSetCache(String name) {
+		this.name = name;
+		this.cache = buildCache();
+	}
+
+	private Cache<Concept, Set<Concept>> buildCache() {
+		return CacheBuilder.newBuilder()
+				.maximumWeight(maximumWeight)
+				.<Concept, Set<Concept>>weigher((c, concepts) -> concepts.size() + 1)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * @param loader must return a Set which is not modified afterwards
+	 */
+	Set<Concept> get(Concept c, Callable<Set<Concept>> loader) throws TermServerScriptException {
+		try {
+			return cache.get(c, loader);
+		} catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof TermServerScriptException tsse) {
+				throw tsse;
+			} else if (cause instanceof RuntimeException re) {
+				throw re;
+			} else if (cause instanceof Error err) {
+				throw err;
+			}
+			throw new TermServerScriptException("Failed to calculate " + name + " of " + c, cause);
+		}
+	}
+
+	synchronized void setMaximumWeight(long maximumWeight) {
+		LOGGER.info("Setting maximum size of {} cache to {} concepts", name, maximumWeight);
+		this.maximumWeight = maximumWeight;
+		cache = buildCache();
+	}
+
+	CacheStats getStats() {
+		return cache.stats();
+	}
+
+	synchronized void reset() {
+		CacheStats stats = cache.stats();
+		if (stats.requestCount() > 0) {
+			LOGGER.info("{} cache: {} hits, {} misses, {} evictions, {} sets held", name, stats.hitCount(),
+					stats.missCount(), stats.evictionCount(), cache.size());
+		}
+		cache = buildCache();
+	}
+}
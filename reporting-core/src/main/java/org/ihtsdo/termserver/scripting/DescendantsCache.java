@@ -6,6 +6,7 @@ import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.domain.Concept;
 import org.ihtsdo.termserver.scripting.domain.ScriptConstants;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
@@ -20,30 +21,42 @@ public class DescendantsCache implements ScriptConstants {
 	private static DescendantsCache singleton = null;
 	private static DescendantsCache singletonStated = null;
 	
-	Map<Concept, Set<Concept>> descendantCache = new HashMap<>();
+	private final ConceptSetCache descendantCache;
 	CharacteristicType charType = CharacteristicType.INFERRED_RELATIONSHIP;
 	
-	public static DescendantsCache getDescendantsCache() {
+	public static synchronized DescendantsCache getDescendantsCache() {
 		if (singleton == null) {
-			singleton = new DescendantsCache();
+			singleton = new DescendantsCache("descendants");
 		}
 		return singleton;
 	}
 	
-	public static DescendantsCache getStatedDescendantsCache() {
+	public static synchronized DescendantsCache getStatedDescendantsCache() {
 		if (singletonStated == null) {
-			singletonStated = new DescendantsCache();
+			singletonStated = new DescendantsCache("stated descendants");
 		}
 		singletonStated.charType = CharacteristicType.STATED_RELATIONSHIP;
 		return singletonStated;
 	}
 	
-	private DescendantsCache() {
+	private DescendantsCache(String name) {
 		//Force use of singleton;
+		descendantCache = new ConceptSetCache(name);
 	}
 	
 	public void reset() {
-		descendantCache = new HashMap<>();
+		descendantCache.reset();
+	}
+
+	/**
+	 * @param maximumWeight the most concepts to hold, summed across all cached sets.  Clears the cache.
+	 */
+	public void setMaximumWeight(long maximumWeight) {
+		descendantCache.setMaximumWeight(maximumWeight);
+	}
+
+	public CacheStats getStats() {
+		return descendantCache.getStats();
 	}
 	
 	public Set<Concept> getDescendants(Concept c) throws TermServerScriptException {
@@ -64,13 +77,10 @@ public class DescendantsCache implements ScriptConstants {
 		if (!localConcept.isActive()) {
 			throw new TermServerScriptException(c + " is inactive. Unlikely you want to find its decendants");
 		}
-		Set<Concept> descendants = descendantCache.get(localConcept);
-		if (descendants == null) {
-			descendants = localConcept.getDescendants(NOT_SET);
-			//Don't allow anyone to change this!
-			descendantCache.put(localConcept, descendants);
-		}
-		return mutable ? new HashSet<>(descendants) : Collections.unmodifiableSet(descendants);
+		//Don't allow anyone to change this!
+		Set<Concept> descendants = descendantCache.get(localConcept,
+				() -> ImmutableSet.copyOf(localConcept.getDescendants(NOT_SET)));
+		return mutable ? new HashSet<>(descendants) : descendants;
 	}
 
 	public Set<Concept> getDescendantsOrSelf(Concept c) throws TermServerScriptException {
@@ -1,9 +1,13 @@
 package org.ihtsdo.termserver.scripting;
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.client.TermServerClient;
+import org.ihtsdo.termserver.scripting.domain.Branch;
 import org.ihtsdo.termserver.scripting.domain.Concept;
 import org.ihtsdo.termserver.scripting.domain.ConceptCollection;
 import org.ihtsdo.termserver.scripting.domain.ScriptConstants;
@@ -19,6 +23,21 @@ public class EclCache implements ScriptConstants {
 	private static final Map <String, EclCache> branchCaches = new HashMap<>();
 	private static final  int PAGING_LIMIT = 1000;
 
+	//How long we'll trust a branch head timestamp before asking the TS again
+	private static final long HEAD_TIMESTAMP_RECHECK_MS = 60 * 1000L;
+
+	//Shared by all caches, since each expansion only ever has one page in flight
+	private static final ExecutorService pageFetcher = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "ecl-page-fetch");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private static boolean usePersistentCache = true;
+	private static boolean useLocalEvaluator = false;
+	private static boolean usePipelinedFetch = true;
+	private static File persistentCacheDir = new File("cache/ecl");
+
 	//Now if we have a simple ECL then we could use in-memory lookup which is cheap, but we also might have a lot
 	//of these, so cache that anyway even so, but only up to a limit so we're not caching eg all of clinical findings
 	private static final int DO_CACHE_AFTER_IN_MEMORY_LOOKUP_LIMIT = Integer.MAX_VALUE;
@@ -29,6 +48,9 @@ public class EclCache implements ScriptConstants {
 	private CharacteristicType charType;
 	private final String branch;
 	private Set<Integer> cacheActionAlreadyLogged = new HashSet<>();
+	private EclDiskCache diskCache;
+	private Long branchHeadTimestamp;
+	private long branchHeadCheckedAt = 0;
 
 	private final Map <String, Collection<Concept>> expansionCache = new HashMap<>();
 
@@ -44,6 +66,7 @@ public class EclCache implements ScriptConstants {
 		branchCache.gl = gl;
 		branchCache.quiet = quiet;
 		branchCache.charType = charType;
+		branchCache.diskCache = new EclDiskCache(persistentCacheDir, branch, charType);
 		return branchCache;
 	}
 	
@@ -56,6 +79,37 @@ public class EclCache implements ScriptConstants {
 		LOGGER.info("Resetting ECL Cache - all branches wipe");
 		branchCaches.clear();
 	}
+
+	/**
+	 * Expansions recovered from the TS are also kept on disk, keyed by the branch head timestamp,
+	 * so that they survive reset() and can be picked up by later jobs until the branch moves.
+	 */
+	public static void setUsePersistentCache(boolean usePersistentCache) {
+		EclCache.usePersistentCache = usePersistentCache;
+	}
+
+	/**
+	 * Where the local store is populated, ECL made up only of hierarchy, member of and wildcard
+	 * constraints combined with AND, OR and MINUS is always evaluated against it directly, as simple
+	 * ECL is, falling back to the TS for anything the LocalEclEvaluator doesn't support.  Turning
+	 * this on does the same for refined ECL.  Off by default.
+	 */
+	public static void setUseLocalEvaluator(boolean useLocalEvaluator) {
+		EclCache.useLocalEvaluator = useLocalEvaluator;
+	}
+
+	/**
+	 * When paging through an expansion from the TS, request the next page while the current one
+	 * is being processed rather than strictly one after the other.
+	 */
+	public static void setUsePipelinedFetch(boolean usePipelinedFetch) {
+		EclCache.usePipelinedFetch = usePipelinedFetch;
+	}
+
+	public static void setPersistentCacheDir(File persistentCacheDir) {
+		EclCache.persistentCacheDir = persistentCacheDir;
+		branchCaches.clear();
+	}
 	
 	public Collection<Concept> findConcepts(String ecl) throws TermServerScriptException {
 		return findConcepts(ecl, true);
@@ -134,7 +188,10 @@ public class EclCache implements ScriptConstants {
 			Collection<Concept> combinedSet = new HashSet<>();
 			for (String eclFragment : machineEcl.split(" OR ")) {
 				LOGGER.debug("Combining request for: {}", eclFragment);
-				combinedSet.addAll(findConcepts(eclFragment, useLocalStoreIfSimple, telemetry));
+				//Each fragment is checked on its own merits, so give each its own telemetry
+				CacheTelemetry fragmentTelemetry = new CacheTelemetry();
+				combinedSet.addAll(findConcepts(eclFragment, useLocalStoreIfSimple, fragmentTelemetry));
+				telemetry.recordPages(fragmentTelemetry);
 			}
 			telemetry.dataNewlyStoredInCache = true;
 			expansionCache.put(ecl, combinedSet);
@@ -158,9 +215,18 @@ public class EclCache implements ScriptConstants {
 				expansionCache.put(ecl, conceptsRecoveredLocally);
 			}
 			return conceptsRecoveredLocally;
+		}
+
+		Collection<Concept> conceptsEvaluatedLocally = useLocalStoreIfSimple && localStorePopulated && (useLocalEvaluator || !isRefined(ecl)) ?
+				evaluateLocally(ecl) : null;
+		if (conceptsEvaluatedLocally != null) {
+			telemetry.dataRecoveredUsingInMemoryLookup = true;
+			telemetry.dataNewlyStoredInCache = true;
+			expansionCache.put(ecl, conceptsEvaluatedLocally);
+			return conceptsEvaluatedLocally;
 		} else {
 			telemetry.dataRecoveredUsingInMemoryLookup = false;
-			Collection<Concept> conceptsRecoveredFromTS =  recoverConceptsFromTS(ecl, charType);
+			Collection<Concept> conceptsRecoveredFromTS =  recoverConceptsFromDiskOrTS(ecl, telemetry);
 			//Always worth storing data recovered from TS in cache
 			telemetry.dataNewlyStoredInCache = true;
 			expansionCache.put(ecl, conceptsRecoveredFromTS);
@@ -168,6 +234,18 @@ public class EclCache implements ScriptConstants {
 		}
 	}
 
+	/**
+	 * @return the concepts matching this ECL in the local store, or null if it uses features we can only get from the TS
+	 */
+	private Collection<Concept> evaluateLocally(String ecl) throws TermServerScriptException {
+		try {
+			return new LocalEclEvaluator(gl, charType).evaluate(ecl);
+		} catch (LocalEclEvaluator.UnsupportedEclException e) {
+			LOGGER.debug("Unable to evaluate ECL locally, using TS instead: {}", e.getMessage());
+			return null;
+		}
+	}
+
 	private Collection<Concept> recoverConceptsLocally(String ecl) throws TermServerScriptException {
 		DescendantsCache descendantsCache = charType.equals(CharacteristicType.INFERRED_RELATIONSHIP) ? gl.getDescendantsCache() : gl.getStatedDescendantsCache();
 		//We might want to modify these sets, so request mutable copies
@@ -216,6 +294,14 @@ public class EclCache implements ScriptConstants {
 		return cached;
 	}
 
+	/**
+	 * Refinements are only evaluated locally when asked for.  Without one, the ECL relies on no more
+	 * than the hierarchy and refset membership we already trust the local store for with simple ECL.
+	 */
+	private static boolean isRefined(String ecl) {
+		return SnomedUtils.makeMachineReadable(ecl).contains(":");
+	}
+
 	public static boolean isSimple(String ecl) {
 		//Any braces, commas, more than two pipes, hats, colons mark this ecl as not being simple
 		boolean isSimple = true;
@@ -237,45 +323,133 @@ public class EclCache implements ScriptConstants {
 		return isSimple;
 	}
 
-	private Set<Concept> recoverConceptsFromTS(String ecl, CharacteristicType charType) throws TermServerScriptException {
+	private Set<Concept> recoverConceptsFromDiskOrTS(String ecl, CacheTelemetry telemetry) throws TermServerScriptException {
+		Long headTimestamp = usePersistentCache ? getBranchHeadTimestamp() : null;
+		if (headTimestamp != null) {
+			List<Concept> storedConcepts = diskCache.load(headTimestamp, ecl);
+			if (storedConcepts != null) {
+				telemetry.dataRecoveredUsingDiskCache = true;
+				Set<Concept> allConcepts = new HashSet<>();
+				for (Concept c : storedConcepts) {
+					allConcepts.add(createOrRecoverConcept(c));
+				}
+				return allConcepts;
+			}
+		}
+
+		Set<Concept> allConcepts = recoverConceptsFromTS(ecl, charType, telemetry);
+		//An empty result invalidates the in-memory cache too, so don't keep that on disk
+		if (headTimestamp != null && !allConcepts.isEmpty()) {
+			diskCache.store(headTimestamp, ecl, allConcepts);
+		}
+		return allConcepts;
+	}
+
+	/**
+	 * @return the current head of this branch, or null if it can't be determined, in which case
+	 * the disk cache is not used since we'd have no way of knowing if it was current.
+	 */
+	private Long getBranchHeadTimestamp() {
+		long now = System.currentTimeMillis();
+		if (branchHeadTimestamp == null || now - branchHeadCheckedAt > HEAD_TIMESTAMP_RECHECK_MS) {
+			try {
+				Branch branchInfo = tsClient.getBranch(branch);
+				branchHeadTimestamp = branchInfo == null ? null : branchInfo.getHeadTimestamp();
+			} catch (Exception e) {
+				LOGGER.warn("Unable to determine head timestamp of {}, not using persistent ECL cache: {}", branch, e.getMessage());
+				branchHeadTimestamp = null;
+			}
+			branchHeadCheckedAt = now;
+		}
+		return branchHeadTimestamp;
+	}
+
+	/**
+	 * Pages through the expansion using searchAfter.  Each page tells us where the next one
+	 * starts, so as soon as a page arrives we request the following one and, while that is in
+	 * flight, recover our local copies of the concepts just received.
+	 */
+	private Set<Concept> recoverConceptsFromTS(String ecl, CharacteristicType charType, CacheTelemetry telemetry) throws TermServerScriptException {
 		Set<Concept> allConcepts = new HashSet<>();
-		boolean allRecovered = false;
-		String searchAfter = null;
 		int totalRecovered = 0;
-		while (!allRecovered) {
-			try {
-					ConceptCollection collection = tsClient.getConcepts(ecl, branch, charType, searchAfter, PAGING_LIMIT);
-					totalRecovered += collection.getItems().size();
-					if (searchAfter == null) {
-						//First time round, report how many we're receiving.
-						LOGGER.debug("Recovering {} concepts from TS matching '{}'", collection.getTotal(), ecl);
-					}
-					//Populate our local collection with either our locally loaded concepts if available, or
-				    //newly created Concept objects if not.
-					collectRecoveredConcepts(collection, allConcepts);
-					
-					//If we've counted more concepts than we currently have, then some duplicates have been lost in the 
-					//add to the set
-					if (totalRecovered > allConcepts.size()) {
-						LOGGER.warn ("Duplicates detected");
-					}
-					
-					//Did we get all the concepts that there are?
-					if (totalRecovered < collection.getTotal()) {
-						searchAfter = collection.getSearchAfter();
-						if (StringUtils.isEmpty(searchAfter)) {
-							throw new TermServerScriptException("SearchAfter field required but not populated.");
-						}
-					} else {
-						allRecovered = true;
+		long startTime = System.currentTimeMillis();
+		ExecutorService executor = usePipelinedFetch ? pageFetcher : null;
+		Future<EclPage> nextPage = fetchPage(executor, ecl, charType, null);
+		try {
+			while (nextPage != null) {
+				long waitStart = System.currentTimeMillis();
+				EclPage page = awaitPage(nextPage);
+				nextPage = null;
+				telemetry.recordPage(page, System.currentTimeMillis() - waitStart);
+				ConceptCollection collection = page.collection();
+				totalRecovered += collection.getItems().size();
+				if (telemetry.pagesRecovered == 1) {
+					//First time round, report how many we're receiving.
+					LOGGER.debug("Recovering {} concepts from TS matching '{}'", collection.getTotal(), ecl);
+				}
+
+				//Did we get all the concepts that there are?
+				if (totalRecovered < collection.getTotal()) {
+					String searchAfter = collection.getSearchAfter();
+					if (StringUtils.isEmpty(searchAfter)) {
+						throw new TermServerScriptException("SearchAfter field required but not populated.");
 					}
-			} catch (Exception e) {
-				throw new TermServerScriptException("Failed to recover concepts using ECL '" + ecl + "' due to " + e.getMessage(),e);
+					nextPage = fetchPage(executor, ecl, charType, searchAfter);
+				}
+
+				//Populate our local collection with either our locally loaded concepts if available, or
+				//newly created Concept objects if not.
+				collectRecoveredConcepts(collection, allConcepts);
+
+				//If we've counted more concepts than we currently have, then some duplicates have been lost in the
+				//add to the set
+				if (totalRecovered > allConcepts.size()) {
+					LOGGER.warn ("Duplicates detected");
+				}
+			}
+		} catch (Exception e) {
+			throw new TermServerScriptException("Failed to recover concepts using ECL '" + ecl + "' due to " + e.getMessage(),e);
+		} finally {
+			//Don't leave a page we no longer want in flight
+			if (nextPage != null) {
+				nextPage.cancel(true);
 			}
 		}
+		LOGGER.debug("Recovered {} concepts in {} pages ({}Kb) in {}ms, of which {}ms waiting on the TS",
+				allConcepts.size(), telemetry.pagesRecovered, telemetry.bytesRecovered / 1024,
+				System.currentTimeMillis() - startTime, telemetry.pageWaitMs);
 		return allConcepts;
 	}
 
+	/**
+	 * Without an executor the page is fetched immediately, on this thread
+	 */
+	private Future<EclPage> fetchPage(ExecutorService executor, String ecl, CharacteristicType charType, String searchAfter) {
+		FutureTask<EclPage> fetch = new FutureTask<>(() -> {
+			long requestStart = System.currentTimeMillis();
+			LongAdder bytes = new LongAdder();
+			ConceptCollection collection = tsClient.getConcepts(ecl, branch, charType, searchAfter, PAGING_LIMIT, bytes::add);
+			return new EclPage(collection, bytes.sum(), System.currentTimeMillis() - requestStart);
+		});
+		if (executor == null) {
+			fetch.run();
+		} else {
+			executor.execute(fetch);
+		}
+		return fetch;
+	}
+
+	private EclPage awaitPage(Future<EclPage> page) throws Exception {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw e;
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception cause ? cause : e;
+		}
+	}
+
 	private void collectRecoveredConcepts(ConceptCollection collection, Set<Concept> allConcepts) {
 			//Recover our locally held copy of these concepts (if we have them) so that we have the full hierarchy populated
 			allConcepts.addAll(collection.getItems().stream()
@@ -300,7 +474,39 @@ public class EclCache implements ScriptConstants {
 	public static class CacheTelemetry {
 		boolean dataRecoveredUsingCache = false;
 		boolean dataRecoveredUsingInMemoryLookup = false;
+		boolean dataRecoveredUsingDiskCache = false;
 		boolean requestInvalidOrEmpty = false;
 		boolean dataNewlyStoredInCache = false;
+		int pagesRecovered = 0;
+		long bytesRecovered = 0;
+		//Time spent on requests to the TS, and the longest single request
+		long pageLatencyMs = 0;
+		long maxPageLatencyMs = 0;
+		//Of which, time we were left waiting rather than overlapping with processing of the previous page
+		long pageWaitMs = 0;
+
+		void recordPage(EclPage page, long waitMs) {
+			pagesRecovered++;
+			bytesRecovered += page.bytes();
+			pageLatencyMs += page.latencyMs();
+			maxPageLatencyMs = Math.max(maxPageLatencyMs, page.latencyMs());
+			pageWaitMs += waitMs;
+		}
+
+		void recordPages(CacheTelemetry other) {
+			pagesRecovered += other.pagesRecovered;
+			bytesRecovered += other.bytesRecovered;
+			pageLatencyMs += other.pageLatencyMs;
+			maxPageLatencyMs = Math.max(maxPageLatencyMs, other.maxPageLatencyMs);
+			pageWaitMs += other.pageWaitMs;
+		}
+
+		@Override
+		public String toString() {
+			return pagesRecovered + " pages, " + bytesRecovered + " bytes, " + pageLatencyMs
+					+ "ms total latency, " + maxPageLatencyMs + "ms max, " + pageWaitMs + "ms waiting";
+		}
 	}
+
+	private record EclPage(ConceptCollection collection, long bytes, long latencyMs) {}
 }
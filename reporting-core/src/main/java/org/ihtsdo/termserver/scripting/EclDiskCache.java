@@ -0,0 +1,176 @@
+package org.ihtsdo.termserver.scripting;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import org.ihtsdo.termserver.scripting.domain.Concept;
+import org.ihtsdo.termserver.scripting.domain.ScriptConstants;
+import org.ihtsdo.termserver.scripting.util.DiskCachePruner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps ECL expansions recovered from the terminology server on local disk, so that the next
+ * job to run the same ECL against the same branch doesn't have to page through them again.
+ *
+ * Each file is named for its branch, characteristic type and ECL plus the branch head timestamp
+ * at the time of recovery.  Once the branch moves, the timestamp no longer matches and the
+ * expansion is recovered afresh, replacing the old file.  A file holds a header of the format
+ * version and key it was stored against, then one concept per line with every field the TS
+ * returns for it (id, active, effectiveTime, module, definition status, FSN and preferred term),
+ * so that a concept not held locally comes back from disk just as it would from the TS.
+ * Files not written for MAX_AGE_MS are removed, as are the oldest once there's more than MAX_BYTES.
+ *
+ * Best effort only - any problem reading or writing is logged and treated as a cache miss.
+ */
+class EclDiskCache implements ScriptConstants {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EclDiskCache.class);
+
+	private static final String FILE_EXTENSION = ".txt";
+
+	//Increment whenever the layout changes, so that older files are ignored rather than misread
+	private static final int FORMAT_VERSION = 2;
+	private static final int FIELD_COUNT = 7;
+
+	private static final long MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+	private static final long MAX_BYTES = 1024 * 1024 * 1024L;
+
+	private final File cacheDir;
+	private final String branch;
+	private final CharacteristicType charType;
+
+	EclDiskCache(File cacheDir, String branch, CharacteristicType charType) {
+		this.cacheDir = cacheDir;
+		this.branch = branch;
+		this.charType = charType;
+	}
+
+	/**
+	 * @return the concepts stored for this ECL at this branch head, or null if there are none
+	 */
+	List<Concept> load(long headTimestamp, String ecl) {
+		File file = getFile(headTimestamp, ecl);
+		if (!file.exists()) {
+			return null;
+		}
+
+		try (BufferedReader br = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			if (!getHeader(headTimestamp).equals(br.readLine()) || !asSingleLine(ecl).equals(br.readLine())) {
+				LOGGER.warn("ECL cache file {} does not match the request for '{}', ignoring", file, ecl);
+				return null;
+			}
+			List<Concept> concepts = new ArrayList<>();
+			String line;
+			while ((line = br.readLine()) != null) {
+				concepts.add(toConcept(line));
+			}
+			LOGGER.debug("Recovered {} concepts matching '{}' from {}", concepts.size(), ecl, file);
+			return concepts;
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Unable to read ECL cache file {}: {}", file, e.getMessage());
+			return null;
+		}
+	}
+
+	void store(long headTimestamp, String ecl, Collection<Concept> concepts) {
+		File file = getFile(headTimestamp, ecl);
+		try {
+			Files.createDirectories(cacheDir.toPath());
+			//Write to a temporary file first so that another job never sees a partial expansion
+			File tempFile = File.createTempFile(file.getName(), ".tmp", cacheDir);
+			try (BufferedWriter bw = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+				bw.write(getHeader(headTimestamp));
+				bw.newLine();
+				bw.write(asSingleLine(ecl));
+				bw.newLine();
+				for (Concept c : concepts) {
+					bw.write(toLine(c));
+					bw.newLine();
+				}
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			removeExpiredFiles(file);
+			new DiskCachePruner(cacheDir, MAX_AGE_MS, MAX_BYTES).pruneIfDue();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to write ECL cache file {}: {}", file, e.getMessage());
+		}
+	}
+
+	private static String toLine(Concept c) {
+		String active = c.getActive() == null ? "" : (c.getActive() ? "1" : "0");
+		return String.join(TAB, c.getConceptId(), active, nullToEmpty(c.getEffectiveTime()), nullToEmpty(c.getModuleId()),
+				c.getDefinitionStatus() == null ? "" : c.getDefinitionStatus().name(),
+				nullToEmpty(c.getFsn()), nullToEmpty(c.getPreferredSynonym()));
+	}
+
+	private static Concept toConcept(String line) throws IOException {
+		String[] fields = line.split(TAB, -1);
+		if (fields.length != FIELD_COUNT) {
+			throw new IOException("expected " + FIELD_COUNT + " fields but found " + fields.length);
+		}
+		Concept c = new Concept(fields[0]);
+		if (!fields[1].isEmpty()) {
+			c.setActive(fields[1].equals("1"));
+		}
+		c.setEffectiveTime(emptyToNull(fields[2]));
+		c.setModuleId(emptyToNull(fields[3]));
+		//After the active flag, since making a concept inactive also resets its definition status
+		c.setDefinitionStatus(fields[4].isEmpty() ? null : DefinitionStatus.valueOf(fields[4]));
+		c.setFsn(emptyToNull(fields[5]));
+		c.setPreferredSynonym(emptyToNull(fields[6]));
+		return c;
+	}
+
+	private static String nullToEmpty(String str) {
+		return str == null ? "" : str;
+	}
+
+	private static String emptyToNull(String str) {
+		return str.isEmpty() ? null : str;
+	}
+
+	/**
+	 * Expansions of the same ECL at earlier branch heads will never be used again
+	 */
+	private void removeExpiredFiles(File current) {
+		String prefix = current.getName().substring(0, current.getName().indexOf('_') + 1);
+		File[] expired = cacheDir.listFiles((dir, name) -> name.startsWith(prefix)
+				&& name.endsWith(FILE_EXTENSION) && !name.equals(current.getName()));
+		if (expired != null) {
+			for (File file : expired) {
+				try {
+					Files.deleteIfExists(file.toPath());
+				} catch (IOException e) {
+					LOGGER.warn("Unable to remove expired ECL cache file {}: {}", file, e.getMessage());
+				}
+			}
+		}
+	}
+
+	private static String asSingleLine(String ecl) {
+		return ecl.replaceAll("\\s+", " ");
+	}
+
+	private String getHeader(long headTimestamp) {
+		return FORMAT_VERSION + TAB + branch + TAB + charType + TAB + headTimestamp;
+	}
+
+	private File getFile(long headTimestamp, String ecl) {
+		return new File(cacheDir, hash(branch + TAB + charType + TAB + ecl) + "_" + headTimestamp + FILE_EXTENSION);
+	}
+
+	private static String hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest, 0, 16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+}
@@ -4,6 +4,9 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
@@ -15,6 +18,10 @@ import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.domain.*;
 import org.ihtsdo.termserver.scripting.domain.ConcreteValue;
 import org.ihtsdo.termserver.scripting.domain.mrcm.*;
+import org.ihtsdo.termserver.scripting.util.Rf2LineTokenizer;
+import org.ihtsdo.termserver.scripting.util.Rf2RowSource;
+import org.ihtsdo.termserver.scripting.util.Rf2TextRowSource;
+import org.ihtsdo.termserver.scripting.util.SctIdMap;
 import org.ihtsdo.termserver.scripting.util.SnomedUtils;
 import org.snomed.module.storage.ModuleDependencyReferenceSet;
 import org.snomed.otf.owltoolkit.conversion.AxiomRelationshipConversionService;
@@ -30,9 +37,9 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	private static final Logger LOGGER = LoggerFactory.getLogger(GraphLoader.class);
 
 	private static GraphLoader singleton = null;
-	private Map<String, Concept> concepts = new HashMap<>();
+	private SctIdMap<Concept> concepts = new SctIdMap<>();
 	private ModuleDependencyReferenceSet mdrs = null;
-	private Map<String, Description> descriptions = new HashMap<>();
+	private SctIdMap<Description> descriptions = new SctIdMap<>();
 	private Map<String, Component> allComponents = null;
 	private Map<Component, Concept> componentOwnerMap = null;
 	private Map<String, Concept> fsnMap = null;
@@ -41,7 +48,9 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	private Map<Concept, Map<String, String>> alternateIdentifierMap = new HashMap<>();
 	private Set<String> excludedModules;
 	public static final int MAX_DEPTH = 1000;
+	private static final int MIN_PARALLEL_LEVEL_SIZE = 2000;
 	private Set<String> orphanetConceptIds;
+	private Map<String, Set<Concept>> conceptsByRefset = null;
 	private AxiomRelationshipConversionService axiomService;
 	
 	private DescendantsCache descendantsCache = DescendantsCache.getDescendantsCache();
@@ -130,13 +139,14 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 
 	public void memoryWipe() {
 		LOGGER.info("Resetting Graph Loader - memory wipe");
-		concepts = new HashMap<>();
+		concepts = new SctIdMap<>();
 		mdrs = null;
-		descriptions = new HashMap<>();
+		descriptions = new SctIdMap<>();
 		allComponents = null;
 		componentOwnerMap = null;
 		fsnMap = null;
 		orphanetConceptIds = null;
+		conceptsByRefset = null;
 		descendantsCache.reset();
 		statedDescendantsCache.reset();
 		ancestorsCache.reset();
@@ -165,6 +175,27 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 		mrcmModuleScopeManager.reset();
 	}
 
+	/**
+	 * Drops everything calculated from the content loaded so far, so that it's worked out again on
+	 * next use once further content has been loaded over the top.  The previous transitive closure
+	 * is kept, being based on the previous release rather than the current content.
+	 */
+	public void invalidateDerivedData() {
+		LOGGER.info("Resetting Graph Loader - derived data");
+		allComponents = null;
+		componentOwnerMap = null;
+		fsnMap = null;
+		usptMap = null;
+		gbptMap = null;
+		orphanetConceptIds = null;
+		conceptsByRefset = null;
+		descendantsCache.reset();
+		statedDescendantsCache.reset();
+		ancestorsCache.reset();
+		statedAncestorsCache.reset();
+		transitiveClosure = null;
+	}
+
 	private void outputMemoryUsage() {
 		Runtime runtime = Runtime.getRuntime();
 		NumberFormat format = NumberFormat.getInstance();
@@ -172,16 +203,49 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 		LOGGER.info("free memory now: {}", freeMemoryStr);
 	}
 
+	public static long getUsedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Logs the heap now in use against what was in use before loading, along with how many concepts,
+	 * descriptions and relationships are held, so that the footprint of a snapshot can be compared
+	 * between loads.  No garbage collection is forced, so the heap figures include anything not yet
+	 * collected.  Refset members aren't counted, as asking a component for them would create its
+	 * list where it has none.
+	 */
+	public void outputHeapSummary(String loaded, long usedHeapBefore) {
+		long relationships = 0;
+		for (Concept c : concepts.values()) {
+			relationships += c.getRelationships().size();
+		}
+
+		NumberFormat format = NumberFormat.getInstance();
+		long usedHeap = getUsedHeap();
+		LOGGER.info("Heap after loading {}: {}Mb used, {}Mb change since before loading, {}Mb max", loaded,
+				format.format(usedHeap / (1024 * 1024)),
+				format.format((usedHeap - usedHeapBefore) / (1024 * 1024)),
+				format.format(Runtime.getRuntime().maxMemory() / (1024 * 1024)));
+		LOGGER.info("Holding {} concepts in {} slots, {} descriptions in {} slots and {} relationships",
+				format.format(concepts.size()), format.format(concepts.getCapacity()),
+				format.format(descriptions.size()), format.format(descriptions.getCapacity()),
+				format.format(relationships));
+	}
+
 	public void loadRelationships(CharacteristicType characteristicType, InputStream relStream, boolean addRelationshipsToConcepts, Boolean isReleased)
 			throws IOException, TermServerScriptException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(relStream, StandardCharsets.UTF_8));
-		String line;
-		boolean isHeaderLine = true;
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(false, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, REL_IDX_RELATIONSHIPGROUP, REL_IDX_TYPEID, REL_IDX_CHARACTERISTICTYPEID, REL_IDX_MODIFIERID);
+		loadRelationships(characteristicType, new Rf2TextRowSource(relStream, tokenizer), addRelationshipsToConcepts, isReleased);
+	}
+
+	public void loadRelationships(CharacteristicType characteristicType, Rf2RowSource rows, boolean addRelationshipsToConcepts, Boolean isReleased)
+			throws IOException, TermServerScriptException {
 		long relationshipsLoaded = 0;
-		while ((line = br.readLine()) != null) {
+		String[] lineItems;
+		boolean isHeaderLine = rows.hasHeaderRow();
+		while ((lineItems = rows.nextRow()) != null) {
 			if (!isHeaderLine) {
-				String[] lineItems = line.split(FIELD_DELIMITER);
-				
 				if (checkForExcludedModules && isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
@@ -256,14 +320,18 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 
 	public void loadAxioms(InputStream axiomStream, Boolean isReleased)
 			throws IOException, TermServerScriptException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(axiomStream, StandardCharsets.UTF_8));
-		String line;
-		boolean isHeaderLine = true;
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(false, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, REF_IDX_REFSETID);
+		loadAxioms(new Rf2TextRowSource(axiomStream, tokenizer), isReleased);
+	}
+
+	public void loadAxioms(Rf2RowSource rows, Boolean isReleased)
+			throws IOException, TermServerScriptException {
 		int axiomsLoaded = 0;
 		int ignoredAxioms = 0;
-		while ((line = br.readLine()) != null) {
+		String[] lineItems;
+		boolean isHeaderLine = rows.hasHeaderRow();
+		while ((lineItems = rows.nextRow()) != null) {
 			if (!isHeaderLine) {
-				String[] lineItems = line.split(FIELD_DELIMITER);
 				if (checkForExcludedModules && isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
@@ -331,7 +399,7 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 							//Is this a GCI?
 							Long rhs = axiom.getRightHandSideNamedConcept();
 							if (!conceptId.equals(rhs)) {
-								throw new IllegalArgumentException("GCI Axiom rhs != RefCompId: " + line);
+								throw new IllegalArgumentException("GCI Axiom rhs != RefCompId: " + String.join(TAB, lineItems));
 							}
 							//This will replace any existing axiom with the same UUID
 							c.addGciAxiom(AxiomUtils.toAxiom(c, axiomEntry, axiom));
@@ -387,7 +455,7 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 						}
 					}
 				} catch (ConversionException e) {
-					throw new TermServerScriptException("Failed to load axiom: " + line, e);
+					throw new TermServerScriptException("Failed to load axiom: " + String.join(TAB, lineItems), e);
 				}
 			} else {
 				isHeaderLine = false;
@@ -621,7 +689,9 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	}
 	
 	public Concept getConcept(Long sctId) throws TermServerScriptException {
-		return getConcept(sctId.toString(), true, true);
+		//Anything already held has been validated on the way in, so no need to go via the String
+		Concept c = concepts.get(sctId.longValue());
+		return c != null ? c : getConcept(sctId.toString(), true, true);
 	}
 	
 	public boolean conceptKnown(String sctId) {
@@ -686,7 +756,8 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	}
 	
 	public Description getDescription(Long sctId) throws TermServerScriptException {
-		return getDescription(sctId.toString(), true, true);
+		Description d = descriptions.get(sctId.longValue());
+		return d != null ? d : getDescription(sctId.toString(), true, true);
 	}
 	
 	public Description getDescription(String sctId, boolean createIfRequired, boolean validateExists) throws TermServerScriptException {
@@ -704,13 +775,15 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	
 	public void loadConceptFile(InputStream is, Boolean isReleased) throws IOException, TermServerScriptException {
 		//Not putting this in a try resource block otherwise it will close the stream on completion and we've got more to read!
-		BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-		String line;
-		boolean isHeaderLine = true;
-		while ((line = br.readLine()) != null) {
-			if (!isHeaderLine) {
-				String[] lineItems = line.split(FIELD_DELIMITER);
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(false, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, CON_IDX_DEFINITIONSTATUSID);
+		loadConceptFile(new Rf2TextRowSource(is, tokenizer), isReleased);
+	}
 
+	public void loadConceptFile(Rf2RowSource rows, Boolean isReleased) throws IOException, TermServerScriptException {
+		String[] lineItems;
+		boolean isHeaderLine = rows.hasHeaderRow();
+		while ((lineItems = rows.nextRow()) != null) {
+			if (!isHeaderLine) {
 				if (checkForExcludedModules && isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
@@ -768,14 +841,16 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	}
 	
 	public void loadAlternateIdentifierFile(InputStream is, Boolean isReleased) throws IOException, TermServerScriptException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-		boolean isHeaderLine = true;
-		String line;
-		while ((line = br.readLine()) != null) {
-			if (!isHeaderLine) {
-				//Allow trailing empty fields
-				String[] lineItems = line.split(FIELD_DELIMITER, -1);
+		//Allow trailing empty fields
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(true, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, REF_IDX_REFSETID);
+		loadAlternateIdentifierFile(new Rf2TextRowSource(is, tokenizer), isReleased);
+	}
 
+	public void loadAlternateIdentifierFile(Rf2RowSource rows, Boolean isReleased) throws IOException, TermServerScriptException {
+		String[] lineItems;
+		boolean isHeaderLine = rows.hasHeaderRow();
+		while ((lineItems = rows.nextRow()) != null) {
+			if (!isHeaderLine) {
 				//Can we also populate an alternate identifier onto the concept?
 				Concept c = getConcept(lineItems[REF_IDX_REFCOMPID]);
 				AlternateIdentifier altId = new AlternateIdentifier();
@@ -800,14 +875,16 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 
 	public int loadDescriptionFile(InputStream descStream, boolean fsnOnly, Boolean isReleased) throws IOException, TermServerScriptException {
 		//Not putting this in a try resource block otherwise it will close the stream on completion and we've got more to read!
-		BufferedReader br = new BufferedReader(new InputStreamReader(descStream, StandardCharsets.UTF_8));
-		String line;
-		boolean isHeader = true;
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(false, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, DES_IDX_LANGUAGECODE, DES_IDX_TYPEID, DES_IDX_CASESIGNIFICANCEID);
+		return loadDescriptionFile(new Rf2TextRowSource(descStream, tokenizer), fsnOnly, isReleased);
+	}
+
+	public int loadDescriptionFile(Rf2RowSource rows, boolean fsnOnly, Boolean isReleased) throws IOException, TermServerScriptException {
 		int count = 0;
-		while ((line = br.readLine()) != null) {
+		String[] lineItems;
+		boolean isHeader = rows.hasHeaderRow();
+		while ((lineItems = rows.nextRow()) != null) {
 			if (!isHeader) {
-				String[] lineItems = line.split(FIELD_DELIMITER);
-
 				if (checkForExcludedModules && isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
@@ -874,14 +951,16 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	}
 
 	public void loadLanguageFile(InputStream is, Boolean isReleased) throws IOException, TermServerScriptException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-		boolean isHeaderLine = true;
-		String line;
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(false, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, LANG_IDX_REFSETID, LANG_IDX_ACCEPTABILITY_ID);
+		loadLanguageFile(new Rf2TextRowSource(is, tokenizer), isReleased);
+	}
+
+	public void loadLanguageFile(Rf2RowSource rows, Boolean isReleased) throws IOException, TermServerScriptException {
 		int attemptPublishedRemovals = 0;
-		while ((line = br.readLine()) != null) {
+		String[] lineItems;
+		boolean isHeaderLine = rows.hasHeaderRow();
+		while ((lineItems = rows.nextRow()) != null) {
 			if (!isHeaderLine) {
-				String[] lineItems = line.split(FIELD_DELIMITER);
-
 				if (checkForExcludedModules && isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
@@ -1036,31 +1115,103 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	}
 
 	/**
-	 * Recurse hierarchy and set the shortest path depth for all concepts
+	 * Works down the inferred hierarchy from the starting point a level at a time, setting both the
+	 * shortest (depth) and longest (maxDepth) path to each concept below it.  The first sweep reaches
+	 * each concept at its shortest depth and counts how many of its parents lie below the starting
+	 * point.  The second only places a concept once all of those parents have been placed, which
+	 * gives the longest path.  Each concept is expanded once per sweep, and larger levels are
+	 * expanded in parallel.
 	 */
-	public void populateHierarchyDepth(Concept startingPoint, int currentDepth) throws TermServerScriptException {
-		startingPoint.setDepth(currentDepth);
-		for (Concept child : startingPoint.getChildren(CharacteristicType.INFERRED_RELATIONSHIP)) {
-			if (currentDepth >= MAX_DEPTH) {
-				throw new TermServerScriptException("Maximum depth exceeded from " + startingPoint + " and inferred child " + child);
-			}
-			try {
-				populateHierarchyDepth(child, currentDepth + 1);
-			} catch (TermServerScriptException e) {
-				LOGGER.debug("Exception path: {} -> {}",startingPoint, child);
-				throw (e);
+	public void populateHierarchyDepth(Concept startingPoint, int startingDepth) throws TermServerScriptException {
+		long startTime = System.currentTimeMillis();
+		Map<Concept, AtomicInteger> parentsRemaining = new ConcurrentHashMap<>();
+		Set<Concept> parentsOfStartingPoint = ConcurrentHashMap.newKeySet();
+		parentsRemaining.put(startingPoint, new AtomicInteger());
+		startingPoint.setDepth(startingDepth);
+
+		List<Concept> level = List.of(startingPoint);
+		for (int depth = startingDepth; !level.isEmpty(); depth++) {
+			checkDepth(startingPoint, level, depth);
+			final int childDepth = depth + 1;
+			level = expandLevel(level, (parent, nextLevel) -> {
+				for (Concept child : parent.getChildren(CharacteristicType.INFERRED_RELATIONSHIP)) {
+					if (child.equals(startingPoint)) {
+						parentsOfStartingPoint.add(parent);
+						continue;
+					}
+					//Only the first parent to reach a child moves it on to the next level
+					AtomicInteger existing = parentsRemaining.putIfAbsent(child, new AtomicInteger(1));
+					if (existing == null) {
+						child.setDepth(childDepth);
+						nextLevel.add(child);
+					} else {
+						existing.incrementAndGet();
+					}
+				}
+			});
+		}
+
+		if (!parentsOfStartingPoint.isEmpty()) {
+			throw new TermServerScriptException("Cycle detected in inferred hierarchy: " + startingPoint + " is a descendant of itself via " + parentsOfStartingPoint.iterator().next());
+		}
+
+		int placed = 0;
+		int levels = 0;
+		level = List.of(startingPoint);
+		for (int depth = startingDepth; !level.isEmpty(); depth++) {
+			checkDepth(startingPoint, level, depth);
+			placed += level.size();
+			levels++;
+			final int thisDepth = depth;
+			level = expandLevel(level, (parent, nextLevel) -> {
+				parent.setMaxDepth(thisDepth);
+				for (Concept child : parent.getChildren(CharacteristicType.INFERRED_RELATIONSHIP)) {
+					if (parentsRemaining.get(child).decrementAndGet() == 0) {
+						nextLevel.add(child);
+					}
+				}
+			});
+		}
+
+		//Anything still waiting on a parent must be part of a cycle
+		if (placed < parentsRemaining.size()) {
+			Concept waiting = parentsRemaining.entrySet().stream()
+					.filter(e -> e.getValue().get() > 0)
+					.map(Map.Entry::getKey)
+					.findFirst()
+					.orElseThrow();
+			throw new TermServerScriptException("Cycle detected in inferred hierarchy below " + startingPoint + " involving " + waiting);
+		}
+		LOGGER.info("Depth populated for {} concepts over {} levels in {}ms", placed, levels, System.currentTimeMillis() - startTime);
+	}
+
+	private void checkDepth(Concept startingPoint, List<Concept> level, int depth) throws TermServerScriptException {
+		if (depth > MAX_DEPTH) {
+			throw new TermServerScriptException("Maximum depth exceeded from " + startingPoint + " at " + level.get(0));
+		}
+	}
+
+	private static List<Concept> expandLevel(List<Concept> level, BiConsumer<Concept, List<Concept>> expansion) {
+		if (level.size() < MIN_PARALLEL_LEVEL_SIZE) {
+			List<Concept> nextLevel = new ArrayList<>();
+			for (Concept c : level) {
+				expansion.accept(c, nextLevel);
 			}
+			return nextLevel;
 		}
+		return level.parallelStream().collect(ArrayList::new, (nextLevel, c) -> expansion.accept(c, nextLevel), ArrayList::addAll);
 	}
 
 	public void loadInactivationIndicatorFile(InputStream is, Boolean isReleased) throws IOException, TermServerScriptException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-		boolean isHeaderLine = true;
-		String line;
-		while ((line = br.readLine()) != null) {
-			if (!isHeaderLine) {
-				String[] lineItems = line.split(FIELD_DELIMITER);
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(false, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, REF_IDX_REFSETID, INACT_IDX_REASON_ID);
+		loadInactivationIndicatorFile(new Rf2TextRowSource(is, tokenizer), isReleased);
+	}
 
+	public void loadInactivationIndicatorFile(Rf2RowSource rows, Boolean isReleased) throws IOException, TermServerScriptException {
+		String[] lineItems;
+		boolean isHeaderLine = rows.hasHeaderRow();
+		while ((lineItems = rows.nextRow()) != null) {
+			if (!isHeaderLine) {
 				if (checkForExcludedModules && isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
@@ -1133,13 +1284,16 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	}
 
 	public void loadComponentAnnotationFile(InputStream is, Boolean isReleased) throws IOException, TermServerScriptException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-		boolean isHeaderLine = true;
-		String line;
-		while ((line = br.readLine()) != null) {
-			if (!isHeaderLine) {
-				String[] lineItems = line.split(FIELD_DELIMITER, -1);
+		//Row is handed to a class outside this project, so don't reuse the array
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(true, false, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, REF_IDX_REFSETID);
+		loadComponentAnnotationFile(new Rf2TextRowSource(is, tokenizer), isReleased);
+	}
 
+	public void loadComponentAnnotationFile(Rf2RowSource rows, Boolean isReleased) throws IOException, TermServerScriptException {
+		String[] lineItems;
+		boolean isHeaderLine = rows.hasHeaderRow();
+		while ((lineItems = rows.nextRow()) != null) {
+			if (!isHeaderLine) {
 				if (checkForExcludedModules && isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
@@ -1196,13 +1350,15 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	}
 
 	public void loadHistoricalAssociationFile(InputStream is, Boolean isReleased) throws IOException, TermServerScriptException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-		boolean isHeaderLine = true;
-		String line;
-		while ((line = br.readLine()) != null) {
-			if (!isHeaderLine) {
-				String[] lineItems = line.split(FIELD_DELIMITER, -1);
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(true, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, REF_IDX_REFSETID);
+		loadHistoricalAssociationFile(new Rf2TextRowSource(is, tokenizer), isReleased);
+	}
 
+	public void loadHistoricalAssociationFile(Rf2RowSource rows, Boolean isReleased) throws IOException, TermServerScriptException {
+		String[] lineItems;
+		boolean isHeaderLine = rows.hasHeaderRow();
+		while ((lineItems = rows.nextRow()) != null) {
+			if (!isHeaderLine) {
 				if (checkForExcludedModules && isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
@@ -1325,11 +1481,13 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 			mdrs = new ModuleDependencyReferenceSet();
 		}
 		BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+		//Row is handed to a class outside this project, so don't reuse the array
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(true, false, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, REF_IDX_REFSETID);
 		boolean isHeaderLine = true;
 		String line;
 		while ((line = br.readLine()) != null) {
 			if (!isHeaderLine) {
-				loadModuleDependencyRow(line.split(FIELD_DELIMITER, -1), isReleased);
+				loadModuleDependencyRow(tokenizer.tokenize(line), isReleased);
 			} else {
 				isHeaderLine = false;
 			}
@@ -1429,7 +1587,7 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 
 	public void populateComponentMapForConcept(Concept c) {
 		if (allComponents == null) {
-			allComponents = new HashMap<>();
+			allComponents = new SctIdMap<>();
 			componentOwnerMap = new HashMap<>();
 		}
 		allComponents.put(c.getId(), c);
@@ -1603,6 +1761,36 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 		return Collections.unmodifiableCollection(orphanetConceptIds);
 	}
 
+	/**
+	 * @return the concepts referenced by the active members of each reference set held against
+	 * concepts - associations, inactivation indicators and any other reference sets loaded - keyed
+	 * on the refset id.  Worked out on first use and then kept until the content changes.
+	 */
+	public synchronized Map<String, Set<Concept>> getConceptsByRefset() {
+		if (conceptsByRefset == null) {
+			Map<String, Set<Concept>> index = new HashMap<>();
+			for (Concept c : concepts.values()) {
+				for (AssociationEntry a : c.getAssociationEntries()) {
+					if (a.isActiveSafely()) {
+						index.computeIfAbsent(a.getRefsetId(), k -> new HashSet<>()).add(c);
+					}
+				}
+				for (InactivationIndicatorEntry i : c.getInactivationIndicatorEntries()) {
+					if (i.isActiveSafely()) {
+						index.computeIfAbsent(i.getRefsetId(), k -> new HashSet<>()).add(c);
+					}
+				}
+				for (RefsetMember rm : c.getOtherRefsetMembers()) {
+					if (rm.isActive()) {
+						index.computeIfAbsent(rm.getRefsetId(), k -> new HashSet<>()).add(c);
+					}
+				}
+			}
+			conceptsByRefset = Collections.unmodifiableMap(index);
+		}
+		return conceptsByRefset;
+	}
+
 	public boolean isOrphanetConcept (Concept c) {
 		return getOrphanetConceptIds().contains(c.getId());
 	}
@@ -1636,15 +1824,8 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 	
 	public TransitiveClosure generateTransitiveClosure() {
 		LOGGER.info("Calculating transitive closure...");
-		TransitiveClosure tc = new TransitiveClosure();
 		//For all active concepts, populate their ancestors into the TC
-		getAllConcepts().parallelStream().forEach(c->{
-			try {
-				tc.addConcept(c);
-			} catch (TermServerScriptException e) {
-				LOGGER.error("Exception encountered",e);
-			} 
-		});
+		TransitiveClosure tc = TransitiveClosure.build(getAllConcepts());
 		LOGGER.info("Completed transitive closure: {} relationships mapped", tc.size());
 		return tc;
 	}
@@ -1724,20 +1905,21 @@ public class GraphLoader implements ScriptConstants, ComponentStore {
 		String[] additionalFieldNames = Arrays.copyOfRange(fieldNames, REF_IDX_FIRST_ADDITIONAL, fieldNames.length);
 
 		LOGGER.info("Loading reference set file {}", fileName);
+		//RefsetMember may hold on to the row, so don't reuse the array
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(true, false, IDX_EFFECTIVETIME, IDX_ACTIVE, IDX_MODULEID, REF_IDX_REFSETID);
 		int lineNum = 0;
 		String line = "No line read yet";
 		try {
 			for (line = br.readLine(); line != null; line = br.readLine()) {
 				lineNum++;
-				loadReferenceSetLine(line, additionalFieldNames, isReleased);
+				loadReferenceSetLine(tokenizer.tokenize(line), additionalFieldNames, isReleased);
 			}
 		} catch (Exception e) {
 			throw new TermServerScriptException("Failed to load reference set file " + fileName + " at line " + lineNum + ": " + line, e);
 		}
 	}
 
-	private void loadReferenceSetLine(String line, String[] additionalFieldNames, Boolean isReleased) throws TermServerScriptException {
-		String[] lineItems = line.split(TAB, -1);
+	private void loadReferenceSetLine(String[] lineItems, String[] additionalFieldNames, Boolean isReleased) throws TermServerScriptException {
 		RefsetMember member = new RefsetMember();
 		RefsetMember.populatefromRf2(member, lineItems, additionalFieldNames);
 		if (isReleased != null) {
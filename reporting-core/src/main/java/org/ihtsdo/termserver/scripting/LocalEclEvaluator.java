@@ -0,0 +1,587 @@
+package org.ihtsdo.termserver.scripting;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.ihtsdo.termserver.scripting.domain.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates ECL against the concepts held in GraphLoader, so that reports working on a loaded
+ * snapshot don't need a round trip to the terminology server for each expansion.
+ *
+ * Covers constraint operators (&lt;, &lt;&lt;, &lt;!, &lt;&lt;!, &gt;, &gt;&gt;, &gt;!, &gt;&gt;!), member of, wildcard,
+ * AND / OR / MINUS (and comma as AND), refinements with attribute groups, cardinality, != and
+ * concrete value comparisons.  As with the TS, only active concepts are returned.
+ *
+ * Anything else - reverse attributes, dotted attributes, filters, top / bottom, a reference set
+ * whose members have not been loaded, or a concept that isn't held or isn't a valid concept id -
+ * throws UnsupportedEclException, in which case the caller should go to the TS as before.
+ * Hierarchies are walked via GraphLoader's descendant and ancestor caches, so that a single
+ * evaluation doesn't require the transitive closure of the whole content to be built.
+ */
+public class LocalEclEvaluator implements ScriptConstants {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LocalEclEvaluator.class);
+
+	private static final int MANY = Integer.MAX_VALUE;
+
+	private final GraphLoader gl;
+	private final CharacteristicType charType;
+
+	//Per evaluation, so that sub-expressions used in a refinement are only expanded once
+	private Map<Expr, Set<Concept>> expanded;
+
+	public LocalEclEvaluator(GraphLoader gl, CharacteristicType charType) {
+		this.gl = gl;
+		this.charType = charType;
+	}
+
+	public static class UnsupportedEclException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedEclException(String message) {
+			super(message);
+		}
+	}
+
+	public Set<Concept> evaluate(String ecl) throws UnsupportedEclException, TermServerScriptException {
+		long startTime = System.currentTimeMillis();
+		expanded = new IdentityHashMap<>();
+		try {
+			Expr expr = new Parser(ecl).parse();
+			Set<Concept> result = evaluate(expr);
+			LOGGER.debug("Evaluated '{}' locally to {} concepts in {}ms", ecl, result.size(), System.currentTimeMillis() - startTime);
+			return result;
+		} catch (IllegalArgumentException e) {
+			//eg a concept we hold only as a reference, which the TS may know more about
+			throw new UnsupportedEclException("Unable to evaluate locally: " + e.getMessage());
+		} finally {
+			expanded = null;
+		}
+	}
+
+	/*
+	 * Parsed form of the ECL
+	 */
+	private sealed interface Expr permits Focus, Compound, Refined {}
+
+	//Exactly one of concept, nested, or neither for wildcard
+	private record Focus(String operator, boolean memberOf, Concept concept, Expr nested) implements Expr {}
+
+	private record Compound(String operator, List<Expr> operands) implements Expr {}
+
+	private record Refined(Expr focus, Refinement refinement) implements Expr {}
+
+	private sealed interface Refinement permits RefinementSet, Attribute, Group {}
+
+	private record RefinementSet(String operator, List<Refinement> members) implements Refinement {}
+
+	//Either value (null for wildcard) or concreteValue is used, depending on the comparison
+	private record Attribute(int min, int max, Expr name, String comparison, Expr value, String concreteValue) implements Refinement {}
+
+	private record Group(int min, int max, Refinement inner) implements Refinement {}
+
+	/*
+	 * Evaluation
+	 */
+	private Set<Concept> evaluate(Expr expr) throws UnsupportedEclException, TermServerScriptException {
+		Set<Concept> result = expanded.get(expr);
+		if (result != null) {
+			return result;
+		}
+		if (expr instanceof Focus focus) {
+			result = evaluateFocus(focus);
+		} else if (expr instanceof Compound compound) {
+			result = evaluateCompound(compound);
+		} else {
+			Refined refined = (Refined) expr;
+			result = new HashSet<>();
+			for (Concept c : evaluate(refined.focus())) {
+				if (matches(refined.refinement(), getActiveRelationships(c), false)) {
+					result.add(c);
+				}
+			}
+		}
+		expanded.put(expr, result);
+		return result;
+	}
+
+	private Set<Concept> evaluateFocus(Focus focus) throws UnsupportedEclException, TermServerScriptException {
+		Collection<Concept> targets;
+		if (focus.concept() != null) {
+			targets = Collections.singleton(focus.concept());
+		} else if (focus.nested() != null) {
+			targets = evaluate(focus.nested());
+		} else {
+			if (focus.memberOf() || (!focus.operator().isEmpty() && !focus.operator().equals("<<"))) {
+				throw new UnsupportedEclException("Wildcard only supported alone or with <<");
+			}
+			return activeOnly(gl.getAllConcepts());
+		}
+
+		if (focus.memberOf()) {
+			Set<Concept> members = new HashSet<>();
+			for (Concept refset : targets) {
+				members.addAll(getRefsetMembers(refset));
+			}
+			targets = members;
+		}
+
+		Set<Concept> result = new HashSet<>();
+		for (Concept c : targets) {
+			switch (focus.operator()) {
+				case "" -> result.add(c);
+				case "<" -> result.addAll(getDescendants(c));
+				case "<<" -> {
+					result.add(c);
+					result.addAll(getDescendants(c));
+				}
+				case "<!" -> result.addAll(c.getChildren(charType));
+				case "<<!" -> {
+					result.add(c);
+					result.addAll(c.getChildren(charType));
+				}
+				case ">" -> result.addAll(getAncestors(c));
+				case ">>" -> {
+					result.add(c);
+					result.addAll(getAncestors(c));
+				}
+				case ">!" -> result.addAll(c.getParents(charType));
+				case ">>!" -> {
+					result.add(c);
+					result.addAll(c.getParents(charType));
+				}
+				default -> throw new UnsupportedEclException("Constraint operator " + focus.operator());
+			}
+		}
+		return activeOnly(result);
+	}
+
+	private Set<Concept> evaluateCompound(Compound compound) throws UnsupportedEclException, TermServerScriptException {
+		Set<Concept> result = new HashSet<>(evaluate(compound.operands().get(0)));
+		for (Expr operand : compound.operands().subList(1, compound.operands().size())) {
+			Set<Concept> next = evaluate(operand);
+			switch (compound.operator()) {
+				case "AND" -> result.retainAll(next);
+				case "OR" -> result.addAll(next);
+				default -> result.removeAll(next);
+			}
+		}
+		return result;
+	}
+
+	private Collection<Concept> getDescendants(Concept c) throws TermServerScriptException {
+		if (!c.isActiveSafely()) {
+			return Collections.emptySet();
+		}
+		if (charType.equals(CharacteristicType.STATED_RELATIONSHIP)) {
+			return gl.getStatedDescendantsCache().getDescendants(c);
+		}
+		return gl.getDescendantsCache().getDescendants(c);
+	}
+
+	private Collection<Concept> getAncestors(Concept c) throws TermServerScriptException {
+		if (charType.equals(CharacteristicType.STATED_RELATIONSHIP)) {
+			return gl.getStatedAncestorsCache().getAncestors(c);
+		}
+		return gl.getAncestorsCache().getAncestors(c);
+	}
+
+	private Set<Concept> activeOnly(Collection<Concept> concepts) {
+		Set<Concept> active = new HashSet<>();
+		for (Concept c : concepts) {
+			if (c.isActiveSafely()) {
+				active.add(c);
+			}
+		}
+		return active;
+	}
+
+	/**
+	 * We only hold the members of reference sets that GraphLoader was asked to load, so we can't
+	 * tell an empty refset from one we know nothing about.  Treat both as not supported.
+	 */
+	private Set<Concept> getRefsetMembers(Concept refset) throws UnsupportedEclException {
+		Set<Concept> members = gl.getConceptsByRefset().get(refset.getConceptId());
+		if (members == null) {
+			throw new UnsupportedEclException("Members of " + refset + " not held locally");
+		}
+		return members;
+	}
+
+	private List<Relationship> getActiveRelationships(Concept c) {
+		return new ArrayList<>(c.getRelationships(charType, ActiveState.ACTIVE));
+	}
+
+	private boolean matches(Refinement refinement, List<Relationship> scope, boolean inGroup) throws UnsupportedEclException, TermServerScriptException {
+		if (refinement instanceof RefinementSet set) {
+			boolean isConjunction = set.operator().equals("AND");
+			for (Refinement member : set.members()) {
+				if (matches(member, scope, inGroup) != isConjunction) {
+					return !isConjunction;
+				}
+			}
+			return isConjunction;
+		} else if (refinement instanceof Attribute attribute) {
+			int count = 0;
+			for (Relationship r : scope) {
+				if (matches(attribute, r)) {
+					count++;
+				}
+			}
+			return count >= attribute.min() && count <= attribute.max();
+		}
+
+		Group group = (Group) refinement;
+		if (inGroup) {
+			throw new UnsupportedEclException("Attribute group nested within an attribute group");
+		}
+		int count = 0;
+		for (List<Relationship> groupScope : toGroups(scope)) {
+			if (matches(group.inner(), groupScope, true)) {
+				count++;
+			}
+		}
+		return count >= group.min() && count <= group.max();
+	}
+
+	/**
+	 * Each ungrouped attribute counts as a group of its own
+	 */
+	private Collection<List<Relationship>> toGroups(List<Relationship> relationships) {
+		List<List<Relationship>> groups = new ArrayList<>();
+		Map<Integer, List<Relationship>> numberedGroups = new TreeMap<>();
+		for (Relationship r : relationships) {
+			if (r.getGroupId() == UNGROUPED) {
+				groups.add(Collections.singletonList(r));
+			} else {
+				numberedGroups.computeIfAbsent(r.getGroupId(), k -> new ArrayList<>()).add(r);
+			}
+		}
+		groups.addAll(numberedGroups.values());
+		return groups;
+	}
+
+	private boolean matches(Attribute attribute, Relationship r) throws UnsupportedEclException, TermServerScriptException {
+		if (attribute.name() != null && !evaluate(attribute.name()).contains(r.getType())) {
+			return false;
+		}
+
+		if (attribute.concreteValue() != null) {
+			return r.isConcrete() && compareConcrete(r.getConcreteValue(), attribute.comparison(), attribute.concreteValue());
+		}
+
+		if (r.isConcrete()) {
+			//Only a wildcard value matches a concrete attribute
+			return attribute.value() == null && attribute.comparison().equals("=");
+		}
+		boolean inValueSet = attribute.value() == null || evaluate(attribute.value()).contains(r.getTarget());
+		return attribute.comparison().equals("=") == inValueSet;
+	}
+
+	private boolean compareConcrete(ConcreteValue actual, String comparison, String expected) {
+		if (expected.startsWith("\"")) {
+			boolean equal = actual.getDataType() == ConcreteValue.ConcreteValueType.STRING
+					&& actual.getValue().equals(expected.substring(1, expected.length() - 1));
+			return comparison.equals("=") == equal;
+		}
+
+		if (actual.getDataType() == ConcreteValue.ConcreteValueType.STRING) {
+			return false;
+		}
+		int cmp = new BigDecimal(actual.getValue()).compareTo(new BigDecimal(expected.substring(1)));
+		return switch (comparison) {
+			case "=" -> cmp == 0;
+			case "!=" -> cmp != 0;
+			case "<" -> cmp < 0;
+			case "<=" -> cmp <= 0;
+			case ">" -> cmp > 0;
+			default -> cmp >= 0;
+		};
+	}
+
+	/**
+	 * Recursive descent over the ECL text, for the subset of the grammar described above
+	 */
+	private class Parser {
+		private final String ecl;
+		private int pos = 0;
+
+		private Parser(String ecl) {
+			//Comments carry no meaning
+			this.ecl = ecl.replaceAll("(?s)/\\*.*?\\*/", " ");
+		}
+
+		private Expr parse() throws UnsupportedEclException, TermServerScriptException {
+			Expr expr = parseExpression();
+			skipWhitespace();
+			if (pos < ecl.length()) {
+				throw unsupported("Unexpected content");
+			}
+			return expr;
+		}
+
+		private Expr parseExpression() throws UnsupportedEclException, TermServerScriptException {
+			Expr first = parseSubExpression();
+			skipWhitespace();
+			if (peek(":")) {
+				pos++;
+				return new Refined(first, parseRefinement());
+			}
+
+			String operator = null;
+			List<Expr> operands = new ArrayList<>(List.of(first));
+			String next;
+			while ((next = readExpressionOperator()) != null) {
+				if (operator != null && !operator.equals(next)) {
+					throw unsupported("Mixed " + operator + " and " + next + " without brackets");
+				}
+				if (operator != null && operator.equals("MINUS")) {
+					throw unsupported("Repeated MINUS without brackets");
+				}
+				operator = next;
+				operands.add(parseSubExpression());
+			}
+			return operator == null ? first : new Compound(operator, operands);
+		}
+
+		private Expr parseSubExpression() throws UnsupportedEclException, TermServerScriptException {
+			skipWhitespace();
+			String operator = "";
+			for (String candidate : new String[] {"<<!", "<<", "<!", "<", ">>!", ">>", ">!", ">"}) {
+				if (peek(candidate)) {
+					operator = candidate;
+					pos += candidate.length();
+					break;
+				}
+			}
+			skipWhitespace();
+			boolean memberOf = false;
+			if (peek("^")) {
+				memberOf = true;
+				pos++;
+				skipWhitespace();
+			}
+
+			if (peek("*")) {
+				pos++;
+				return new Focus(operator, memberOf, null, null);
+			} else if (peek("(")) {
+				pos++;
+				Expr nested = parseExpression();
+				expect(")");
+				return new Focus(operator, memberOf, null, nested);
+			}
+			return new Focus(operator, memberOf, parseConceptReference(), null);
+		}
+
+		private Concept parseConceptReference() throws UnsupportedEclException, TermServerScriptException {
+			skipWhitespace();
+			int start = pos;
+			while (pos < ecl.length() && Character.isDigit(ecl.charAt(pos))) {
+				pos++;
+			}
+			if (start == pos) {
+				throw unsupported("Expected concept reference");
+			}
+			String sctId = ecl.substring(start, pos);
+			skipWhitespace();
+			if (peek("|")) {
+				int endOfTerm = ecl.indexOf('|', pos + 1);
+				if (endOfTerm == -1) {
+					throw unsupported("Unterminated term");
+				}
+				pos = endOfTerm + 1;
+			}
+			Concept c;
+			try {
+				c = gl.getConcept(sctId, false, false);
+			} catch (IllegalArgumentException | TermServerScriptException e) {
+				throw unsupported(sctId + " is not a valid concept id (" + e.getMessage() + ")");
+			}
+			if (c == null) {
+				throw unsupported(sctId + " not held locally");
+			}
+			return c;
+		}
+
+		private Refinement parseRefinement() throws UnsupportedEclException, TermServerScriptException {
+			Refinement first = parseSubRefinement();
+			String operator = null;
+			List<Refinement> members = new ArrayList<>(List.of(first));
+			String next;
+			while ((next = readRefinementOperator()) != null) {
+				if (operator != null && !operator.equals(next)) {
+					throw unsupported("Mixed " + operator + " and " + next + " without brackets");
+				}
+				operator = next;
+				members.add(parseSubRefinement());
+			}
+			return operator == null ? first : new RefinementSet(operator, members);
+		}
+
+		private Refinement parseSubRefinement() throws UnsupportedEclException, TermServerScriptException {
+			skipWhitespace();
+			if (peek("(")) {
+				//Either a bracketed refinement, or an attribute whose name is a bracketed expression
+				int start = pos;
+				try {
+					pos++;
+					Refinement nested = parseRefinement();
+					expect(")");
+					return nested;
+				} catch (UnsupportedEclException e) {
+					pos = start;
+					return parseAttribute(1, MANY);
+				}
+			}
+
+			int min = 1;
+			int max = MANY;
+			if (peek("[")) {
+				pos++;
+				min = readInt();
+				expect("..");
+				skipWhitespace();
+				if (peek("*")) {
+					pos++;
+				} else {
+					max = readInt();
+				}
+				expect("]");
+				skipWhitespace();
+			}
+
+			if (peek("{{")) {
+				throw unsupported("Filters");
+			} else if (peek("{")) {
+				pos++;
+				Refinement inner = parseRefinement();
+				expect("}");
+				return new Group(min, max, inner);
+			}
+			return parseAttribute(min, max);
+		}
+
+		private Attribute parseAttribute(int min, int max) throws UnsupportedEclException, TermServerScriptException {
+			skipWhitespace();
+			if (peek("R")) {
+				throw unsupported("Reverse attributes");
+			}
+			Focus name = (Focus) parseSubExpression();
+			skipWhitespace();
+
+			String comparison = null;
+			for (String candidate : new String[] {"!=", "=", "<=", ">=", "<", ">"}) {
+				if (peek(candidate)) {
+					comparison = candidate;
+					pos += candidate.length();
+					break;
+				}
+			}
+			if (comparison == null) {
+				throw unsupported("Expected comparison operator");
+			}
+			skipWhitespace();
+
+			if (peek("#")) {
+				int start = pos++;
+				while (pos < ecl.length() && (Character.isDigit(ecl.charAt(pos)) || ecl.charAt(pos) == '.' || ecl.charAt(pos) == '-')) {
+					pos++;
+				}
+				return new Attribute(min, max, isWildcard(name) ? null : name, comparison, null, ecl.substring(start, pos));
+			} else if (peek("\"")) {
+				int endOfString = ecl.indexOf('"', pos + 1);
+				if (endOfString == -1 || !(comparison.equals("=") || comparison.equals("!="))) {
+					throw unsupported("String comparison");
+				}
+				String value = ecl.substring(pos, endOfString + 1);
+				pos = endOfString + 1;
+				return new Attribute(min, max, isWildcard(name) ? null : name, comparison, null, value);
+			} else if (!(comparison.equals("=") || comparison.equals("!="))) {
+				throw unsupported("Comparison " + comparison + " on concept value");
+			}
+
+			Focus value = (Focus) parseSubExpression();
+			return new Attribute(min, max, isWildcard(name) ? null : name, comparison, isWildcard(value) ? null : value, null);
+		}
+
+		private boolean isWildcard(Focus focus) {
+			return focus.concept() == null && focus.nested() == null && !focus.memberOf()
+					&& (focus.operator().isEmpty() || focus.operator().equals("<<"));
+		}
+
+		private String readExpressionOperator() {
+			skipWhitespace();
+			if (peek(",")) {
+				pos++;
+				return "AND";
+			}
+			for (String keyword : new String[] {"AND", "OR", "MINUS"}) {
+				if (peekKeyword(keyword)) {
+					pos += keyword.length();
+					return keyword;
+				}
+			}
+			return null;
+		}
+
+		private String readRefinementOperator() {
+			skipWhitespace();
+			if (peek(",")) {
+				pos++;
+				return "AND";
+			}
+			for (String keyword : new String[] {"AND", "OR"}) {
+				if (peekKeyword(keyword)) {
+					pos += keyword.length();
+					return keyword;
+				}
+			}
+			return null;
+		}
+
+		private boolean peekKeyword(String keyword) {
+			int end = pos + keyword.length();
+			return ecl.regionMatches(true, pos, keyword, 0, keyword.length())
+					&& (end == ecl.length() || !Character.isLetterOrDigit(ecl.charAt(end)));
+		}
+
+		private int readInt() throws UnsupportedEclException {
+			skipWhitespace();
+			int start = pos;
+			while (pos < ecl.length() && Character.isDigit(ecl.charAt(pos))) {
+				pos++;
+			}
+			if (start == pos) {
+				throw unsupported("Expected number");
+			}
+			return Integer.parseInt(ecl.substring(start, pos));
+		}
+
+		private boolean peek(String expected) {
+			return ecl.startsWith(expected, pos);
+		}
+
+		private void expect(String expected) throws UnsupportedEclException {
+			skipWhitespace();
+			if (!peek(expected)) {
+				throw unsupported("Expected '" + expected + "'");
+			}
+			pos += expected.length();
+		}
+
+		private void skipWhitespace() {
+			while (pos < ecl.length() && Character.isWhitespace(ecl.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private UnsupportedEclException unsupported(String reason) {
+			return new UnsupportedEclException(reason + " at position " + pos + " of: " + ecl);
+		}
+	}
+}
@@ -1,70 +1,338 @@
 package org.ihtsdo.termserver.scripting;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.domain.Concept;
 import org.ihtsdo.termserver.scripting.domain.ScriptConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-
+/**
+ * Inferred ancestors and descendants of every concept, held against dense indices rather than
+ * boxed Longs.  Each concept's SCTID is given an index in ascending SCTID order; ancestors are
+ * sorted int arrays of those indices, and descendants are sorted int arrays or, where a concept
+ * has descendants covering a good fraction of the whole, a bitmap.
+ *
+ * Immutable once built, so safe to share between threads.  The Sets handed out are read only
+ * views which iterate in SCTID order, and are empty rather than null for a concept not held.
+ */
 public class TransitiveClosure implements ScriptConstants {
 
-	Map<Long, Set<Long>> ancestorMap = Collections.synchronizedMap(new HashMap<Long, Set<Long>>());
-	Map<Long, Set<Long>> descendantMap = Collections.synchronizedMap(new HashMap<Long, Set<Long>>());
-	
-	public void addConcept(Concept c) throws TermServerScriptException {
-		Long descendant = Long.parseLong(c.getConceptId());
-		//Calculate and add all my ancestors
-		Set<Long> ancestors = c.getAncestors(NOT_SET).stream()
-				.map(a -> Long.parseLong(a.getConceptId()))
-				.collect(Collectors.toSet());
-		ancestorMap.put(descendant, ancestors);
-		
-		//But also, each of these ancestors can add me as a descendant
-		for (Long ancestor : ancestors) {
-			//Have we seen this ancestor before?
-			Set<Long> descendants = descendantMap.get(ancestor);
-			if (descendants == null) {
-				descendants = Collections.synchronizedSet(new HashSet<Long>());
-				descendantMap.put(ancestor, descendants);
+	private static final Logger LOGGER = LoggerFactory.getLogger(TransitiveClosure.class);
+
+	//A bitmap costs one bit per concept, a sorted array 32 bits per member, so switch over at 1 in 32
+	private static final int BITMAP_THRESHOLD = 32;
+
+	private final long[] conceptIds;
+	private final int[][] ancestors;
+	private final IdSet[] descendants;
+	private int relationshipCount;
+
+	private TransitiveClosure(long[] conceptIds, int[][] ancestors) {
+		this.conceptIds = conceptIds;
+		this.ancestors = ancestors;
+		this.descendants = new IdSet[conceptIds.length];
+	}
+
+	/**
+	 * Walks the ancestors of each concept in parallel, then inverts them into descendant sets.
+	 * A concept whose ancestors can't be determined is logged and left out, as before.
+	 */
+	public static TransitiveClosure build(Collection<Concept> concepts) {
+		List<Concept> conceptList = new ArrayList<>(concepts);
+		int conceptCount = conceptList.size();
+		long[] ids = new long[conceptCount];
+		long[][] ancestorIds = new long[conceptCount][];
+		Set<Long> idsOnlySeenAsAncestors = ConcurrentHashMap.newKeySet();
+
+		IntStream.range(0, conceptCount).parallel().forEach(i -> {
+			Concept c = conceptList.get(i);
+			ids[i] = Long.parseLong(c.getConceptId());
+			try {
+				ancestorIds[i] = c.getAncestors(NOT_SET).stream()
+						.mapToLong(a -> Long.parseLong(a.getConceptId()))
+						.toArray();
+			} catch (TermServerScriptException e) {
+				LOGGER.error("Exception encountered",e);
+			}
+		});
+
+		long[] sortedIds = ids.clone();
+		Arrays.parallelSort(sortedIds);
+		IntStream.range(0, conceptCount).parallel()
+				.filter(i -> ancestorIds[i] != null)
+				.forEach(i -> {
+					for (long ancestorId : ancestorIds[i]) {
+						if (Arrays.binarySearch(sortedIds, ancestorId) < 0) {
+							idsOnlySeenAsAncestors.add(ancestorId);
+						}
+					}
+				});
+		long[] conceptIds = sortedIds;
+		if (!idsOnlySeenAsAncestors.isEmpty()) {
+			conceptIds = Arrays.copyOf(sortedIds, conceptCount + idsOnlySeenAsAncestors.size());
+			int next = conceptCount;
+			for (Long id : idsOnlySeenAsAncestors) {
+				conceptIds[next++] = id;
+			}
+			Arrays.parallelSort(conceptIds);
+		}
+
+		//Ancestors, by the dense index of the descendant
+		int[][] ancestors = new int[conceptIds.length][];
+		long[] indexedIds = conceptIds;
+		IntStream.range(0, conceptCount).parallel()
+				.filter(i -> ancestorIds[i] != null)
+				.forEach(i -> {
+					int[] ancestorIdx = new int[ancestorIds[i].length];
+					for (int j = 0; j < ancestorIdx.length; j++) {
+						ancestorIdx[j] = Arrays.binarySearch(indexedIds, ancestorIds[i][j]);
+					}
+					Arrays.sort(ancestorIdx);
+					ancestors[Arrays.binarySearch(indexedIds, ids[i])] = ancestorIdx;
+					ancestorIds[i] = null;
+				});
+
+		TransitiveClosure tc = new TransitiveClosure(conceptIds, ancestors);
+		tc.populateDescendants();
+		return tc;
+	}
+
+	/**
+	 * Inverts the ancestor arrays.  Walking descendants in index order means each descendant array
+	 * is filled already sorted, so no sorting is needed here.
+	 */
+	private void populateDescendants() {
+		int[] descendantCounts = new int[conceptIds.length];
+		relationshipCount = 0;
+		for (int[] ancestorIdx : ancestors) {
+			if (ancestorIdx != null) {
+				for (int a : ancestorIdx) {
+					descendantCounts[a]++;
+				}
+				relationshipCount += ancestorIdx.length;
+			}
+		}
+
+		int[][] descendantIdx = new int[conceptIds.length][];
+		int[] filled = new int[conceptIds.length];
+		for (int i = 0; i < conceptIds.length; i++) {
+			if (descendantCounts[i] > 0) {
+				descendantIdx[i] = new int[descendantCounts[i]];
+			}
+		}
+		for (int d = 0; d < ancestors.length; d++) {
+			if (ancestors[d] != null) {
+				for (int a : ancestors[d]) {
+					descendantIdx[a][filled[a]++] = d;
+				}
 			}
-			descendants.add(descendant);
 		}
+
+		IntStream.range(0, conceptIds.length).parallel()
+				.filter(i -> descendantIdx[i] != null)
+				.forEach(i -> {
+					descendants[i] = compact(descendantIdx[i]);
+					descendantIdx[i] = null;
+				});
 	}
-	
+
+	private IdSet compact(int[] sortedIdx) {
+		if ((long) sortedIdx.length * BITMAP_THRESHOLD > conceptIds.length) {
+			long[] bits = new long[(conceptIds.length + 63) >>> 6];
+			for (int idx : sortedIdx) {
+				bits[idx >>> 6] |= 1L << idx;
+			}
+			return new IdSet(null, bits, sortedIdx.length);
+		}
+		return new IdSet(sortedIdx, null, sortedIdx.length);
+	}
+
+	private int indexOf(long id) {
+		int idx = Arrays.binarySearch(conceptIds, id);
+		return idx < 0 ? -1 : idx;
+	}
+
 	public int size() {
-		return descendantMap.values().stream()
-				.mapToInt(s -> s.size())
-				.sum();
+		return relationshipCount;
 	}
-	
+
 	public Set<Long> getAncestors (Concept c) {
-		long id = Long.parseLong(c.getConceptId());
-		if (!ancestorMap.containsKey(id)) {
-			return new HashSet<>();
+		int idx = indexOf(Long.parseLong(c.getConceptId()));
+		if (idx == -1 || ancestors[idx] == null) {
+			return Collections.emptySet();
 		}
-		return ancestorMap.get(id);
+		return new IdSet(ancestors[idx], null, ancestors[idx].length);
 	}
-	
+
 	public Set<Long> getDescendants (Concept c) {
 		return getDescendants(c, null);
 	}
-	
+
 	public Set<Long> getDescendants (Concept c, Predicate<Long> filter) {
-		long id = Long.parseLong(c.getConceptId());
-		if (!descendantMap.containsKey(id)) {
-			return new HashSet<>();
+		int idx = indexOf(Long.parseLong(c.getConceptId()));
+		if (idx == -1 || descendants[idx] == null) {
+			return Collections.emptySet();
 		}
-		
+
 		if (filter == null) {
-			return descendantMap.get(id);
+			return descendants[idx];
 		}
-		return descendantMap.get(id).stream().filter(filter).collect(Collectors.toSet());
+		return descendants[idx].stream().filter(filter).collect(Collectors.toSet());
 	}
-	
+
+	/**
+	 * @return true if the concept has any descendants in this closure
+	 */
 	public boolean contains(Long id) {
-		return descendantMap.containsKey(id);
+		int idx = indexOf(id);
+		return idx != -1 && descendants[idx] != null;
+	}
+
+	public boolean isDescendantOf(Concept c, Concept ancestor) {
+		int idx = indexOf(Long.parseLong(c.getConceptId()));
+		int ancestorIdx = indexOf(Long.parseLong(ancestor.getConceptId()));
+		return idx != -1 && ancestorIdx != -1 && ancestors[idx] != null
+				&& Arrays.binarySearch(ancestors[idx], ancestorIdx) >= 0;
+	}
+
+	/**
+	 * Intersects two sets, working directly on the indices where both came from this closure,
+	 * eg the concepts that are descendants of both A and B.
+	 */
+	public Set<Long> intersection(Set<Long> a, Set<Long> b) {
+		if (a instanceof IdSet x && b instanceof IdSet y && x.owner() == this && y.owner() == this) {
+			return x.intersect(y);
+		}
+		Set<Long> smaller = a.size() <= b.size() ? a : b;
+		Set<Long> larger = smaller == a ? b : a;
+		return smaller.stream().filter(larger::contains).collect(Collectors.toSet());
+	}
+
+	private final class IdSet extends AbstractSet<Long> {
+		private final int[] sortedIdx;  //Either this
+		private final long[] bits;      //or this
+		private final int size;
+
+		private IdSet(int[] sortedIdx, long[] bits, int size) {
+			this.sortedIdx = sortedIdx;
+			this.bits = bits;
+			this.size = size;
+		}
+
+		private TransitiveClosure owner() {
+			return TransitiveClosure.this;
+		}
+
+		private boolean containsIdx(int idx) {
+			if (bits != null) {
+				return (bits[idx >>> 6] & (1L << idx)) != 0;
+			}
+			return Arrays.binarySearch(sortedIdx, idx) >= 0;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Long id)) {
+				return false;
+			}
+			int idx = indexOf(id);
+			return idx != -1 && containsIdx(idx);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<Long> iterator() {
+			return new Iterator<>() {
+				private int position = 0;
+				private int nextIdx = bits == null ? -1 : nextSetBit(0);
+
+				@Override
+				public boolean hasNext() {
+					return bits == null ? position < sortedIdx.length : nextIdx != -1;
+				}
+
+				@Override
+				public Long next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					if (bits == null) {
+						return conceptIds[sortedIdx[position++]];
+					}
+					int idx = nextIdx;
+					nextIdx = nextSetBit(idx + 1);
+					return conceptIds[idx];
+				}
+			};
+		}
+
+		private int nextSetBit(int from) {
+			int word = from >>> 6;
+			if (word >= bits.length) {
+				return -1;
+			}
+			long remaining = bits[word] & (-1L << from);
+			while (true) {
+				if (remaining != 0) {
+					return (word << 6) + Long.numberOfTrailingZeros(remaining);
+				}
+				if (++word == bits.length) {
+					return -1;
+				}
+				remaining = bits[word];
+			}
+		}
+
+		private IdSet intersect(IdSet other) {
+			if (bits != null && other.bits != null) {
+				long[] common = new long[bits.length];
+				int count = 0;
+				for (int i = 0; i < bits.length; i++) {
+					common[i] = bits[i] & other.bits[i];
+					count += Long.bitCount(common[i]);
+				}
+				return new IdSet(null, common, count);
+			}
+
+			if (bits != null) {
+				return other.intersect(this);
+			}
+
+			int[] common = new int[Math.min(size, other.size)];
+			int count = 0;
+			if (other.bits != null) {
+				for (int idx : sortedIdx) {
+					if (other.containsIdx(idx)) {
+						common[count++] = idx;
+					}
+				}
+			} else {
+				//Both sorted, so a single merge pass
+				int i = 0;
+				int j = 0;
+				while (i < sortedIdx.length && j < other.sortedIdx.length) {
+					if (sortedIdx[i] < other.sortedIdx[j]) {
+						i++;
+					} else if (sortedIdx[i] > other.sortedIdx[j]) {
+						j++;
+					} else {
+						common[count++] = sortedIdx[i];
+						i++;
+						j++;
+					}
+				}
+			}
+			return new IdSet(Arrays.copyOf(common, count), null, count);
+		}
 	}
 }
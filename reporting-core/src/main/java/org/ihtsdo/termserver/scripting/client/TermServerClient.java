@@ -3,8 +3,10 @@ package org.ihtsdo.termserver.scripting.client;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.*;
+import java.util.function.LongConsumer;
 
 import org.apache.hc.core5.util.Timeout;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
@@ -37,6 +39,7 @@ import org.springframework.util.StreamUtils;
 import org.springframework.web.client.*;
 
 import com.google.common.base.Preconditions;
+import com.google.common.io.CountingInputStream;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
@@ -310,17 +313,44 @@ public class TermServerClient {
 		return getConceptsMatchingCriteria(eclType, criteria, branchPath, searchAfter, limit);
 	}
 	
+	/**
+	 * As getConcepts, but also reports the size of the response body as received, before parsing
+	 */
+	public ConceptCollection getConcepts(String ecl, String branchPath, CharacteristicType charType, String searchAfter, int limit, LongConsumer bytesReceived) {
+		String eclType = charType.equals(CharacteristicType.INFERRED_RELATIONSHIP)?"ecl":"statedEcl";
+		String criteria = SnomedUtils.makeMachineReadable(ecl);
+		String url = getConceptsMatchingCriteriaUrl(eclType, criteria, branchPath, searchAfter, limit);
+		HttpMessageConverterExtractor<ConceptCollection> converter =
+				new HttpMessageConverterExtractor<>(ConceptCollection.class, restTemplate.getMessageConverters());
+		return restTemplate.execute(url, HttpMethod.GET,
+				restTemplate.acceptHeaderRequestCallback(ConceptCollection.class),
+				response -> {
+					CountingClientHttpResponse countingResponse = new CountingClientHttpResponse(response);
+					ConceptCollection collection = converter.extractData(countingResponse);
+					bytesReceived.accept(countingResponse.getCount());
+					return collection;
+				},
+				criteria);
+	}
+	
 	public ConceptCollection getConceptsMatchingCriteria(String eclType, String criteria, String branchPath, String searchAfter, int limit) {
+		String url = getConceptsMatchingCriteriaUrl(eclType, criteria, branchPath, searchAfter, limit);
+		return restTemplate.getForObject(url, ConceptCollection.class, criteria);
+	}
+
+	/**
+	 * Also logs the request about to be made, whichever way the response is then read
+	 */
+	private String getConceptsMatchingCriteriaUrl(String eclType, String criteria, String branchPath, String searchAfter, int limit) {
 		//RestTemplate will attempt to expand out any curly braces, and we can't URLEncode
 		//because RestTemplate does that for us.  So use curly braces to substitute in our criteria
 		String url = getConceptsPath(branchPath) + "?active=true&limit=" + limit;
 		if (!StringUtils.isEmpty(searchAfter)) {
 			url += SEARCH_AFTER + searchAfter;
 		}
-
 		url += "&" + eclType + "={criteria}";
 		LOGGER.info("Calling: {} with criteria = '{}'", url, criteria);
-		return restTemplate.getForObject(url, ConceptCollection.class, criteria);
+		return url;
 	}
 	
 	public int getConceptsCount(String ecl, String branchPath) {
@@ -991,4 +1021,48 @@ public class TermServerClient {
 		LOGGER.debug("Recovered {} objects from {}", collection.size(), url);
 		return collection;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Passes the response through unchanged, counting the bytes of body read from it
+	 */
+	private static class CountingClientHttpResponse implements ClientHttpResponse {
+		private final ClientHttpResponse response;
+		private CountingInputStream body;
+
+		private CountingClientHttpResponse(ClientHttpResponse response) {
+			this.response = response;
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+			if (body == null) {
+				body = new CountingInputStream(response.getBody());
+			}
+			return body;
+		}
+
+		long getCount() {
+			return body == null ? 0 : body.getCount();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return response.getHeaders();
+		}
+
+		@Override
+		public HttpStatusCode getStatusCode() throws IOException {
+			return response.getStatusCode();
+		}
+
+		@Override
+		public String getStatusText() throws IOException {
+			return response.getStatusText();
+		}
+
+		@Override
+		public void close() {
+			response.close();
+		}
+	}
+}
@@ -2,8 +2,8 @@ package org.ihtsdo.termserver.scripting.reports;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.ihtsdo.otf.RF2Constants;
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.otf.utils.SnomedUtilsBase;
 import org.ihtsdo.termserver.scripting.ReportClass;
@@ -47,6 +47,9 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 
 	private Strictness strictness = Strictness.LAX;
 
+	//Whether each ancestor's FSN starts with a taxonomic word eg Family Fabaceae, worked out once across all threads
+	private final Map<Concept, Boolean> taxonomicConcepts = new ConcurrentHashMap<>();
+
 	public static void main(String[] args) throws TermServerScriptException {
 		Map<String, Object> params = new HashMap<>();
 		params.put(UNPROMOTED_CHANGES_ONLY, "N");
@@ -113,11 +116,12 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 	@Override
 	public void runJob() throws TermServerScriptException {
 		initialiseSummaryInformation(ISSUE_COUNT);
+		prepareForParallelChecks(gl.getAllConcepts());
 		//Work through all active descriptions of all hierarchies
-		for (Concept targetHierarchy : ROOT_CONCEPT.getChildren(CharacteristicType.INFERRED_RELATIONSHIP)) {
+		for (Concept targetHierarchy : SnomedUtils.sort(ROOT_CONCEPT.getChildren(CharacteristicType.INFERRED_RELATIONSHIP))) {
 			//We won't process any hierarchies that are a source of truth
 			if (!csUtils.isSourceOfTruthHierarchy(targetHierarchy)) {
-				List<Concept> hierarchyDescendants = new ArrayList<>(targetHierarchy.getDescendants(NOT_SET));
+				List<Concept> hierarchyDescendants = SnomedUtils.sort(targetHierarchy.getDescendants(NOT_SET));
 				LOGGER.info("Checking case significance in target hierarchy: {}", targetHierarchy);
 				checkCaseSignificanceOfHierarchy(targetHierarchy, hierarchyDescendants);
 				LOGGER.info("Completed hierarchy: {}", targetHierarchy);
@@ -126,20 +130,33 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 	}
 
 	private void checkCaseSignificanceOfHierarchy(Concept targetHierarchy, List<Concept> hierarchyDescendants) throws TermServerScriptException {
-		for (Concept c : hierarchyDescendants) {
-			if (inScopeForCsChecking(c)) {
-				for (Description d : c.getDescriptions(ActiveState.ACTIVE)) {
-					if (!d.getType().equals(DescriptionType.TEXT_DEFINITION)) {
-						checkCaseSignificance(targetHierarchy, c, d);
-					} else if (!d.getCaseSignificance().equals(CaseSignificance.ENTIRE_TERM_CASE_SENSITIVE)) {
-						report(c, d, d.getEffectiveTime(), "Y", "CS", "Text Definitions must be CS");
-						countIssue(c);
-					}
+		//Concepts are checked in parallel, with the rows reported replayed in concept order afterwards
+		ConceptRuleEngine rules = new ConceptRuleEngine();
+		rules.addConceptRule("Case significance in " + targetHierarchy, c -> checkCaseSignificanceOfConcept(targetHierarchy, c));
+		rules.run(hierarchyDescendants);
+	}
+
+	private void checkCaseSignificanceOfConcept(Concept targetHierarchy, Concept c) throws TermServerScriptException {
+		if (inScopeForCsChecking(c)) {
+			for (Description d : c.getDescriptions(ActiveState.ACTIVE)) {
+				if (!d.getType().equals(DescriptionType.TEXT_DEFINITION)) {
+					checkCaseSignificance(targetHierarchy, c, d);
+				} else if (!d.getCaseSignificance().equals(CaseSignificance.ENTIRE_TERM_CASE_SENSITIVE)) {
+					reportIssue(c, d, "Y", "CS", "Text Definitions must be CS");
 				}
 			}
 		}
 	}
 
+	private void reportIssue(Concept c, Description d, String preferred, String caseSig, String issue) throws TermServerScriptException {
+		//Checks being run in parallel have their output replayed later, in order
+		if (ConceptRuleEngine.deferred(() -> reportIssue(c, d, preferred, caseSig, issue))) {
+			return;
+		}
+		report(c, d, d.getEffectiveTime(), preferred, caseSig, issue);
+		countIssue(c);
+	}
+
 	/*
 	*@return - true if we've reported an issue on this concept
 	 */
@@ -193,16 +210,14 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 						&& ( csUtils.startsWithAcronym(d.getTerm()) || csUtils.termIsSingleWord(d.getTerm()))) {
 					return false;
 				}
-				report(c, d, d.getEffectiveTime(),  preferred, caseSig, "Terms starting with numbers cannot be CS");
-				countIssue(c);
+				reportIssue(c, d, preferred, caseSig, "Terms starting with numbers cannot be CS");
 				return true;
 			}
 			//Does this term contain a capital letter after the first letter?
 			if (caseSig.equals(ci) && d.getTerm().length() > 1) {
 				String chopped = d.getTerm().substring(1);
 				if (!chopped.equals(chopped.toLowerCase())) {
-					report(c, d, d.getEffectiveTime(),  preferred, caseSig, "Terms featuring a capital letter after the first letter cannot be ci");
-					countIssue(c);
+					reportIssue(c, d, preferred, caseSig, "Terms featuring a capital letter after the first letter cannot be ci");
 					return true;
 				}
 			}
@@ -215,8 +230,7 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 		if (!caseSig.equals(CS) && csUtils.startsWithAcronym(d.getTerm())
 			&& !csUtils.startsWithNumberOrSymbol(d.getTerm())
 			&& !csUtils.startsWithCaseInsensitivePrefix(d.getTerm())) {
-			report(c, d, d.getEffectiveTime(),  preferred, caseSig, "Terms starting with acronyms must be CS");
-			countIssue(c);
+			reportIssue(c, d, preferred, caseSig, "Terms starting with acronyms must be CS");
 			return true;
 		}
 		return false;
@@ -228,8 +242,7 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 				&& firstLetter.equals(firstLetter.toLowerCase())
 				&& !caseSig.equals(CS)) {
 			//Lower case first letters must be entire term case-sensitive
-			report(c, d, d.getEffectiveTime(),  preferred, caseSig, "Terms starting with lower case letter must be CS");
-			countIssue(c);
+			reportIssue(c, d, preferred, caseSig, "Terms starting with lower case letter must be CS");
 			return true;
 		}
 		return false;
@@ -242,8 +255,7 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 		if (DrugUtils.containsKnownCaseSensitiveDrugUnit(d)
 			&& (caseSig.equals(ci)
 					|| (caseSig.equals(CS) && !csUtils.startsWithKnownCaseSensitiveTerm(c, d.getTerm())))) {
-				report(c, d, d.getEffectiveTime(),  preferred, caseSig, "Terms containing drug units should be cI");
-				countIssue(c);
+				reportIssue(c, d, preferred, caseSig, "Terms containing drug units should be cI");
 				return true;
 		}
 		return false;
@@ -254,8 +266,7 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 		//Text Definitions must be CS
 		if (d.getType().equals(DescriptionType.TEXT_DEFINITION)) {
 			if (!caseSig.equals(CS)) {
-				report(c, d, d.getEffectiveTime(),  preferred, caseSig, "Text Definitions must be CS");
-				countIssue(c);
+				reportIssue(c, d, preferred, caseSig, "Text Definitions must be CS");
 			}
 			return true;
 		}
@@ -291,16 +302,14 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 	private boolean checkCaseSignificanceOfCaseInsensitiveTerm(Concept c, Description d, String chopped, String preferred, String caseSig) throws TermServerScriptException {
 		//For case-insensitive terms, we're on the lookout for capital letters after the first letter
 		if (!chopped.equals(chopped.toLowerCase())) {
-			report(c, d, d.getEffectiveTime(),  preferred, caseSig, "Case insensitive term has a capital after first letter");
-			countIssue(c);
+			reportIssue(c, d, preferred, caseSig, "Case insensitive term has a capital after first letter");
 			return true;
 		}
 
 		//Or if one of our sources of truth?
 		String firstWord = d.getTerm().split(" ")[0];
 		if (csUtils.startsWithKnownCsWordInContext(c, firstWord, null)) {
-			report(c, d, d.getEffectiveTime(),  preferred, caseSig, "Case insensitive term should be CS as per " +  csUtils.explainCsWordInContext(c, firstWord));
-			countIssue(c);
+			reportIssue(c, d, preferred, caseSig, "Case insensitive term should be CS as per " +  csUtils.explainCsWordInContext(c, firstWord));
 			return true;
 		}
 		return false;
@@ -321,8 +330,7 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 				if (!csUtils.containsKnownLowerCaseWord(term)
 						&& !isDrugWithCaseSensitiveUnit(c, d)
 						&& !(USE_ORGANISM_TAXONOMY_WORD_TRIGGERS_CS_RULE && organismExistsWithTaxonomicTerm(c, term))) {
-					report(c, d, d.getEffectiveTime(), preferred, caseSig, "Case sensitive term does not have capital after first letter");
-					countIssue(c);
+					reportIssue(c, d, preferred, caseSig, "Case sensitive term does not have capital after first letter");
 					return true;
 				}
 			}
@@ -339,7 +347,7 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 		if (c.getFSNDescription().getTerm().contains("organism")) {
 			//Does the first word of this term exist as the 2nd term in some taxonomic way with a capital?
 			String firstWord = term.split(" ")[0];
-			Collection<Concept> ancestors = c.getAncestors(RF2Constants.NOT_SET, CharacteristicType.INFERRED_RELATIONSHIP, true);
+			Collection<Concept> ancestors = gl.getAncestorsCache().getAncestorsOrSelf(c);
 			if (wordContainedInTaxonomicContext(firstWord, ancestors)) {
 				return true;
 			}
@@ -349,16 +357,19 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 
 	private boolean wordContainedInTaxonomicContext(String word, Collection<Concept> ancestors) {
 		for (Concept ancestor : ancestors) {
-			String fsnTerm = ancestor.getFSNDescription().getTerm();
-			String firstWordInFSN = fsnTerm.split(" ")[0];
-			if (csUtils.isTaxonomicWord(firstWordInFSN)
-				&& fsnTerm.contains(word)) {
+			if (taxonomicConcepts.computeIfAbsent(ancestor, this::isTaxonomicConcept)
+				&& ancestor.getFSNDescription().getTerm().contains(word)) {
 				return true;
 			}
 		}
 		return false;
 	}
 
+	private boolean isTaxonomicConcept(Concept c) {
+		String firstWordInFSN = c.getFSNDescription().getTerm().split(" ")[0];
+		return csUtils.isTaxonomicWord(firstWordInFSN);
+	}
+
 	private boolean checkKnownSpecialCases(Concept c, Description d) {
 		//diagnostic allergen extract as a CS usually uses a specific organism, but is then modelled using the substance,
 		//so we cannot check for a source of truth using the correct context.  Calling this function in 'LAX' strictness,
@@ -385,7 +396,7 @@ public class CaseSensitivity extends TermServerReport implements ReportClass {
 	}
 
 	private boolean isInHierarchyKnownToBeLikelyCS (Concept c) throws TermServerScriptException {
-		Set<Concept> ancestors = c.getAncestors(RF2Constants.NOT_SET);
+		Set<Concept> ancestors = gl.getAncestorsCache().getAncestors(c);
 		for (Concept hierarchyKnownToBeLikelyCS : hierarchiesKnownLikelyToBeCS) {
 			if (ancestors.contains(hierarchyKnownToBeLikelyCS)) {
 				return true;
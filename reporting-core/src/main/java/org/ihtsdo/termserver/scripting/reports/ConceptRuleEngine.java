@@ -0,0 +1,225 @@
+package org.ihtsdo.termserver.scripting.reports;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.ihtsdo.termserver.scripting.domain.Concept;
+import org.ihtsdo.termserver.scripting.domain.ScriptConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies a series of checks to a sorted list of concepts, visiting each concept once.  The
+ * concepts are split into contiguous partitions which are checked in parallel on a ForkJoinPool,
+ * every rule being applied to each concept in turn.
+ *
+ * Anything a rule reports via TermServerReport.reportAndIncrementSummary, incrementSummaryInformation
+ * or initialiseSummary is held back and then replayed on the calling thread, rule by rule and in
+ * concept order within each rule.  The report therefore comes out exactly as if each rule had been
+ * run over the sorted concepts one after the other.  Checks that can't be expressed one concept at
+ * a time are registered as global rules, and are run on the calling thread at their place in that
+ * sequence.
+ *
+ * Rules must only read the concepts they're given.  Anything they need set up should be done when
+ * the rule is registered, and any caches they use must be safe for concurrent access.
+ */
+public class ConceptRuleEngine implements ScriptConstants {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConceptRuleEngine.class);
+
+	private static final int MIN_PARTITION_SIZE = 1000;
+	private static final int PARTITIONS_PER_THREAD = 8;
+
+	//Set while a rule is being applied on behalf of an engine, so reporting can be held back
+	private static final ThreadLocal<List<DeferredOutput>> CURRENT_OUTPUT = new ThreadLocal<>();
+
+	public interface ConceptRule {
+		void check(Concept c) throws TermServerScriptException;
+	}
+
+	public interface GlobalRule {
+		void run() throws TermServerScriptException;
+	}
+
+	public interface DeferredOutput {
+		void replay() throws TermServerScriptException;
+	}
+
+	private record Rule(String name, boolean activeOnly, ConceptRule conceptRule, GlobalRule globalRule, LongAdder nanos, LongAdder outputs) {
+		Rule(String name, boolean activeOnly, ConceptRule conceptRule, GlobalRule globalRule) {
+			this(name, activeOnly, conceptRule, globalRule, new LongAdder(), new LongAdder());
+		}
+
+		boolean isGlobal() {
+			return globalRule != null;
+		}
+	}
+
+	private final List<Rule> rules = new ArrayList<>();
+	private final List<Rule> conceptRules = new ArrayList<>();
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * If called from within a rule being applied by an engine, keeps the output to be replayed
+	 * in order later.
+	 * @return true if the output has been deferred, false if the caller should go ahead now
+	 */
+	public static boolean deferred(DeferredOutput output) {
+		List<DeferredOutput> buffer = CURRENT_OUTPUT.get();
+		if (buffer == null) {
+			return false;
+		}
+		buffer.add(output);
+		return true;
+	}
+
+	/**
+	 * Some concept state is populated lazily on first use.  Make sure that has happened before
+	 * rules are checked in parallel, so that no two threads attempt it at once.
+	 */
+	public static void prepareForParallelChecks(Collection<Concept> concepts) {
+		for (Concept c : concepts) {
+			c.getParents(CharacteristicType.INFERRED_RELATIONSHIP);
+			c.getParents(CharacteristicType.STATED_RELATIONSHIP);
+		}
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public ConceptRuleEngine addConceptRule(String name, ConceptRule rule) {
+		return addRule(new Rule(name, false, rule, null));
+	}
+
+	public ConceptRuleEngine addActiveConceptRule(String name, ConceptRule rule) {
+		return addRule(new Rule(name, true, rule, null));
+	}
+
+	public ConceptRuleEngine addGlobalRule(String name, GlobalRule rule) {
+		return addRule(new Rule(name, false, null, rule));
+	}
+
+	private ConceptRuleEngine addRule(Rule rule) {
+		rules.add(rule);
+		if (!rule.isGlobal()) {
+			conceptRules.add(rule);
+		}
+		return this;
+	}
+
+	public void run(List<Concept> conceptsSorted) throws TermServerScriptException {
+		long startTime = System.currentTimeMillis();
+		int partitionSize = Math.max(MIN_PARTITION_SIZE, conceptsSorted.size() / (parallelism * PARTITIONS_PER_THREAD) + 1);
+		int partitionCount = (conceptsSorted.size() + partitionSize - 1) / partitionSize;
+		LOGGER.info("Checking {} concepts against {} rules ({} global) in {} partitions over {} threads",
+				conceptsSorted.size(), rules.size(), rules.size() - conceptRules.size(), partitionCount, parallelism);
+
+		//Output held per partition, per concept rule
+		List<List<List<DeferredOutput>>> outputs = checkPartitions(conceptsSorted, partitionSize, partitionCount);
+		LOGGER.info("Concept rules checked in {}ms, replaying output", System.currentTimeMillis() - startTime);
+
+		int conceptRuleIdx = 0;
+		for (Rule rule : rules) {
+			if (rule.isGlobal()) {
+				long ruleStart = System.nanoTime();
+				rule.globalRule().run();
+				rule.nanos().add(System.nanoTime() - ruleStart);
+			} else {
+				for (List<List<DeferredOutput>> partitionOutput : outputs) {
+					for (DeferredOutput output : partitionOutput.get(conceptRuleIdx)) {
+						output.replay();
+					}
+				}
+				conceptRuleIdx++;
+			}
+		}
+		LOGGER.info("All rules complete in {}ms", System.currentTimeMillis() - startTime);
+		logTimings();
+	}
+
+	private List<List<List<DeferredOutput>>> checkPartitions(List<Concept> conceptsSorted, int partitionSize, int partitionCount) throws TermServerScriptException {
+		List<Callable<List<List<DeferredOutput>>>> tasks = new ArrayList<>();
+		for (int p = 0; p < partitionCount; p++) {
+			List<Concept> partition = conceptsSorted.subList(p * partitionSize, Math.min(conceptsSorted.size(), (p + 1) * partitionSize));
+			tasks.add(() -> checkPartition(partition));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<List<List<DeferredOutput>>> outputs = new ArrayList<>();
+			for (Future<List<List<DeferredOutput>>> future : pool.invokeAll(tasks)) {
+				outputs.add(future.get());
+			}
+			return outputs;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while checking concepts", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TermServerScriptException tsse) {
+				throw tsse;
+			}
+			throw new TermServerScriptException("Failed to check concepts due to " + e.getCause(), e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private List<List<DeferredOutput>> checkPartition(List<Concept> partition) throws TermServerScriptException {
+		List<List<DeferredOutput>> partitionOutput = new ArrayList<>();
+		long[] ruleNanos = new long[conceptRules.size()];
+		for (int r = 0; r < conceptRules.size(); r++) {
+			partitionOutput.add(new ArrayList<>());
+		}
+
+		try {
+			for (Concept c : partition) {
+				boolean active = c.isActiveSafely();
+				for (int r = 0; r < conceptRules.size(); r++) {
+					Rule rule = conceptRules.get(r);
+					if (rule.activeOnly() && !active) {
+						continue;
+					}
+					CURRENT_OUTPUT.set(partitionOutput.get(r));
+					long ruleStart = System.nanoTime();
+					try {
+						rule.conceptRule().check(c);
+					} catch (RuntimeException e) {
+						throw new TermServerScriptException("Rule '" + rule.name() + "' failed on " + c, e);
+					}
+					ruleNanos[r] += System.nanoTime() - ruleStart;
+				}
+			}
+		} finally {
+			CURRENT_OUTPUT.remove();
+		}
+
+		for (int r = 0; r < conceptRules.size(); r++) {
+			conceptRules.get(r).nanos().add(ruleNanos[r]);
+			conceptRules.get(r).outputs().add(partitionOutput.get(r).size());
+		}
+		return partitionOutput;
+	}
+
+	private void logTimings() {
+		LOGGER.info("Rule timings (summed across threads for concept rules):");
+		rules.stream()
+				.sorted(Comparator.comparingLong((Rule r) -> r.nanos().sum()).reversed())
+				.forEach(r -> LOGGER.info("  {}ms{} {}{}", r.nanos().sum() / 1_000_000,
+						r.isGlobal() ? " (global)" : "", r.name(),
+						r.isGlobal() ? "" : " - " + r.outputs().sum() + " outputs held"));
+	}
+
+	/**
+	 * @return time spent in each rule so far in ms, in the order the rules were registered
+	 */
+	public Map<String, Long> getTimings() {
+		Map<String, Long> timings = new LinkedHashMap<>();
+		for (Rule rule : rules) {
+			timings.merge(rule.name(), rule.nanos().sum() / 1_000_000, Long::sum);
+		}
+		return timings;
+	}
+}
@@ -41,6 +41,17 @@ public abstract class TermServerReport extends TermServerScript {
 		}
 	}
 
+	/**
+	 * As ConceptRuleEngine.prepareForParallelChecks, and also populates the unpromoted changes
+	 * that rules may ask about, if that's what we're reporting on
+	 */
+	protected void prepareForParallelChecks(Collection<Concept> concepts) {
+		ConceptRuleEngine.prepareForParallelChecks(concepts);
+		if (unpromotedChangesOnly) {
+			unpromotedChangesHelper.hasUnpromotedChange(ROOT_CONCEPT);
+		}
+	}
+
 	public void postInit(String[] tabNames, String[] columnHeadings) throws TermServerScriptException {
 		super.postInit(tabNames, columnHeadings, false);
 	}
@@ -118,6 +129,9 @@ public abstract class TermServerReport extends TermServerScript {
 
 	@Override
 	public void incrementSummaryInformation(String key) {
+		if (ConceptRuleEngine.deferred(() -> incrementSummaryInformation(key))) {
+			return;
+		}
 		if (!quiet) {
 			//This is a bit silly to have two maps
 			super.incrementSummaryInformation(key);
@@ -195,6 +209,9 @@ public abstract class TermServerReport extends TermServerScript {
 	}
 
 	protected void initialiseSummary(String issue) {
+		if (ConceptRuleEngine.deferred(() -> initialiseSummary(issue))) {
+			return;
+		}
 		issueSummaryMap.merge(issue, 0, Integer::sum);
 	}
 
@@ -207,6 +224,11 @@ public abstract class TermServerReport extends TermServerScript {
 	}
 
 	protected void reportAndIncrementSummary(Concept c, boolean isLegacy, Object... details) throws TermServerScriptException {
+		//Rules being checked in parallel have their output replayed later, in order
+		if (ConceptRuleEngine.deferred(() -> reportAndIncrementSummary(c, isLegacy, details))) {
+			return;
+		}
+
 		//Are we filtering this report to only concepts with unpromoted changes?
 		if (unpromotedChangesOnly && !unpromotedChangesHelper.hasUnpromotedChange(c)) {
 			return;
@@ -0,0 +1,810 @@
+package org.ihtsdo.termserver.scripting.reports.release;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import org.ihtsdo.otf.RF2Constants;
+import org.ihtsdo.termserver.scripting.domain.HistoricData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Columnar copy of a historic data file written by HistoricStatsGenerator, which is memory-mapped
+ * and queried in place rather than being read into the heap.
+ *
+ * Rows are held in concept id order.  The concept ids are a plain array of longs searched by
+ * binary search, the Y/N columns are packed into a byte per row, and hierarchies and modules are
+ * indexes into a small dictionary.  Each comma separated list of ids becomes an array of offsets
+ * per row over an array of values, held as one long per SCTID or two per UUID.  A list column
+ * holding anything else is kept as UTF-8 text.
+ *
+ * The store is built from the text file the first time it's needed and kept alongside it.  The
+ * text file remains the definitive copy, so if it's newer than the store the store is rebuilt.
+ * Lists recovered from the store are read only, and an empty column gives an empty list.
+ *
+ * Each section is mapped as a single buffer, so no one column can exceed 2GB.  A store which
+ * can't be built or mapped for that or any other reason is reported as an IOException, so that
+ * the caller can fall back to the text file.
+ */
+public class HistoricDataStore implements RF2Constants {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HistoricDataStore.class);
+
+	private static final String DATA_FILE_EXTENSION = ".tsv";
+	private static final String STORE_FILE_EXTENSION = ".hds";
+	private static final int MAGIC = 0x48445331;
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	//Columns of the text file
+	private static final int COL_ID = 0;
+	private static final int COL_FSN = 1;
+	private static final int COL_PT = 2;
+	private static final int COL_ACTIVE = 3;
+	private static final int COL_DEF_STATUS = 4;
+	private static final int COL_HIERARCHY = 5;
+	private static final int COL_IP = 6;
+	private static final int COL_SD_ANCESTOR = 7;
+	private static final int COL_SD_DESCENDANT = 8;
+	private static final int COL_MODULE = 21;
+	private static final int COL_HAS_ATTRIBUTES = 22;
+
+	private static final int FLAG_ACTIVE = 1;
+	private static final int FLAG_SD = 2;
+	private static final int FLAG_IP = 4;
+	private static final int FLAG_SD_ANCESTOR = 8;
+	private static final int FLAG_SD_DESCENDANT = 16;
+	private static final int FLAG_HAS_ATTRIBUTES = 32;
+
+	private static final int SEC_IDS = 0;
+	private static final int SEC_FLAGS = 1;
+	private static final int SEC_HIERARCHY = 2;
+	private static final int SEC_MODULE = 3;
+	private static final int SEC_DICTIONARY = 4;
+	private static final int SEC_FSN_OFFSETS = 5;
+	private static final int SEC_FSN = 6;
+	private static final int SEC_PT_OFFSETS = 7;
+	private static final int SEC_PT = 8;
+	private static final int FIXED_SECTIONS = 9;
+	//Each list column has sections for its row offsets, its values and (for text) the value bytes
+	private static final int SECTIONS_PER_LIST = 3;
+
+	public enum IdColumn {
+		REL_IDS(9), REL_IDS_INACT(10),
+		DESC_IDS(11), DESC_IDS_INACT(12),
+		AXIOM_IDS(13), AXIOM_IDS_INACT(14),
+		LANG_REFSET_IDS(15), LANG_REFSET_IDS_INACT(16),
+		INACTIVATION_IDS(17), INACTIVATION_IDS_INACT(18),
+		HIST_ASSOC_IDS(19), HIST_ASSOC_IDS_INACT(20),
+		DESC_HIST_ASSOC_IDS(23), DESC_HIST_ASSOC_IDS_INACT(24),
+		DESC_INACTIVATION_IDS(25), DESC_INACTIVATION_IDS_INACT(26),
+		HIST_ASSOC_TARGETS(27),
+		ANNOTATION_IDS(28), ANNOTATION_IDS_INACT(29);
+
+		private final int dataFileColumn;
+
+		IdColumn(int dataFileColumn) {
+			this.dataFileColumn = dataFileColumn;
+		}
+
+		private int getSection(int offset) {
+			return FIXED_SECTIONS + (ordinal() * SECTIONS_PER_LIST) + offset;
+		}
+	}
+
+	private enum Encoding { SCTID, UUID, TEXT }
+
+	private static final int SECTION_COUNT = FIXED_SECTIONS + (IdColumn.values().length * SECTIONS_PER_LIST);
+	private static final int HEADER_LENGTH = (4 * Integer.BYTES) + (SECTION_COUNT * 2 * Long.BYTES) + IdColumn.values().length;
+
+	private final File storeFile;
+	private final int rowCount;
+	private final ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT];
+	private final Encoding[] encodings = new Encoding[IdColumn.values().length];
+	private final String[] dictionary;
+
+	/**
+	 * Opens the store kept alongside a historic data file, building it first if it doesn't exist
+	 * or is older than the data file.
+	 */
+	public static HistoricDataStore open(File dataFile) throws IOException {
+		File storeFile = getStoreFile(dataFile);
+		if (!isCurrent(storeFile, dataFile)) {
+			convert(dataFile, storeFile);
+		}
+		return new HistoricDataStore(storeFile);
+	}
+
+	/**
+	 * Builds a store from the data file in the temporary directory, for when one can't be kept
+	 * alongside the data file.  It's removed when the JVM exits.
+	 */
+	public static HistoricDataStore openTemporary(File dataFile) throws IOException {
+		File storeFile = File.createTempFile(getStoreFile(dataFile).getName(), ".tmp");
+		storeFile.deleteOnExit();
+		convert(dataFile, storeFile);
+		return new HistoricDataStore(storeFile);
+	}
+
+	public static File getStoreFile(File dataFile) {
+		String name = dataFile.getName();
+		if (name.endsWith(DATA_FILE_EXTENSION)) {
+			name = name.substring(0, name.length() - DATA_FILE_EXTENSION.length());
+		}
+		return new File(dataFile.getParentFile(), name + STORE_FILE_EXTENSION);
+	}
+
+	private static boolean isCurrent(File storeFile, File dataFile) {
+		if (!storeFile.exists() || storeFile.lastModified() < dataFile.lastModified()) {
+			return false;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+			return in.readInt() == MAGIC && in.readInt() == VERSION;
+		} catch (IOException e) {
+			LOGGER.warn("Unable to read historic data store {}, rebuilding: {}", storeFile, e.getMessage());
+			return false;
+		}
+	}
+
+	private HistoricDataStore(File storeFile) throws IOException {
+		this.storeFile = storeFile;
+		try (FileChannel channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(storeFile + " is not a historic data store of version " + VERSION);
+			}
+			rowCount = header.getInt();
+			if (header.getInt() != SECTION_COUNT) {
+				throw new IOException(storeFile + " does not have the expected " + SECTION_COUNT + " sections");
+			}
+			for (int s = 0; s < SECTION_COUNT; s++) {
+				long offset = header.getLong();
+				long length = header.getLong();
+				if (length > Integer.MAX_VALUE) {
+					throw new IOException(storeFile + " section " + s + " is " + length + " bytes, too large to be mapped");
+				}
+				sections[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+			}
+			for (int c = 0; c < encodings.length; c++) {
+				encodings[c] = Encoding.values()[header.get()];
+			}
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new IOException(storeFile + " is not a usable historic data store: " + e.getMessage(), e);
+		}
+		dictionary = readDictionary(sections[SEC_DICTIONARY]);
+		LOGGER.info("Mapped {} concepts from {}", rowCount, storeFile);
+	}
+
+	private static String[] readDictionary(ByteBuffer section) {
+		String[] entries = new String[section.getInt(0)];
+		int pos = Integer.BYTES;
+		for (int i = 0; i < entries.length; i++) {
+			int length = section.getInt(pos);
+			byte[] bytes = new byte[length];
+			section.get(pos + Integer.BYTES, bytes);
+			entries[i] = new String(bytes, StandardCharsets.UTF_8);
+			pos += Integer.BYTES + length;
+		}
+		return entries;
+	}
+
+	public File getStoreFile() {
+		return storeFile;
+	}
+
+	public int size() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the row holding this concept, or -1 if it's not in the release
+	 */
+	public int indexOf(long conceptId) {
+		ByteBuffer ids = sections[SEC_IDS];
+		int low = 0;
+		int high = rowCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midId = ids.getLong(mid * Long.BYTES);
+			if (midId < conceptId) {
+				low = mid + 1;
+			} else if (midId > conceptId) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	public long getConceptId(int row) {
+		return sections[SEC_IDS].getLong(row * Long.BYTES);
+	}
+
+	public boolean isActive(int row) {
+		return hasFlag(row, FLAG_ACTIVE);
+	}
+
+	public boolean isSD(int row) {
+		return hasFlag(row, FLAG_SD);
+	}
+
+	public boolean isIP(int row) {
+		return hasFlag(row, FLAG_IP);
+	}
+
+	public boolean hasSdAncestor(int row) {
+		return hasFlag(row, FLAG_SD_ANCESTOR);
+	}
+
+	public boolean hasSdDescendant(int row) {
+		return hasFlag(row, FLAG_SD_DESCENDANT);
+	}
+
+	public boolean hasAttributes(int row) {
+		return hasFlag(row, FLAG_HAS_ATTRIBUTES);
+	}
+
+	private boolean hasFlag(int row, int flag) {
+		return (sections[SEC_FLAGS].get(row) & flag) != 0;
+	}
+
+	public String getHierarchy(int row) {
+		return dictionary[sections[SEC_HIERARCHY].getInt(row * Integer.BYTES)];
+	}
+
+	public String getModuleId(int row) {
+		return dictionary[sections[SEC_MODULE].getInt(row * Integer.BYTES)];
+	}
+
+	public String getFsn(int row) {
+		return getText(sections[SEC_FSN_OFFSETS], sections[SEC_FSN], row);
+	}
+
+	public String getUsPT(int row) {
+		return getText(sections[SEC_PT_OFFSETS], sections[SEC_PT], row);
+	}
+
+	private static String getText(ByteBuffer offsets, ByteBuffer text, int idx) {
+		int start = offsets.getInt(idx * Integer.BYTES);
+		byte[] bytes = new byte[offsets.getInt((idx + 1) * Integer.BYTES) - start];
+		text.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return a read only view of the ids held for this row, decoded only as they're accessed
+	 */
+	public List<String> getIds(IdColumn column, int row) {
+		ByteBuffer offsets = sections[column.getSection(0)];
+		int from = offsets.getInt(row * Integer.BYTES);
+		int to = offsets.getInt((row + 1) * Integer.BYTES);
+		return from == to ? Collections.emptyList() : new IdList(column, from, to);
+	}
+
+	public HistoricData getHistoricData(int row, boolean minimalSet) {
+		HistoricData datum = new HistoricData();
+		long conceptId = getConceptId(row);
+		datum.setConceptId(conceptId);
+		datum.setHashCode(Long.hashCode(conceptId));
+		datum.setFsn(getFsn(row));
+		datum.setUsPT(getUsPT(row));
+		datum.setActive(isActive(row));
+		datum.setHierarchy(getHierarchy(row));
+		if (minimalSet) {
+			List<String> histAssocTargets = getIds(IdColumn.HIST_ASSOC_TARGETS, row);
+			datum.setHistAssocTargets(histAssocTargets.isEmpty() ? null : histAssocTargets);
+			return datum;
+		}
+		datum.setSD(isSD(row));
+		datum.setIP(isIP(row));
+		datum.setHasSdAncestor(hasSdAncestor(row));
+		datum.setHasSdDescendant(hasSdDescendant(row));
+		datum.setModuleId(getModuleId(row));
+		datum.setHasAttributes(hasAttributes(row));
+		datum.setRelIds(getIds(IdColumn.REL_IDS, row));
+		datum.setRelIdsInact(getIds(IdColumn.REL_IDS_INACT, row));
+		datum.setDescIds(getIds(IdColumn.DESC_IDS, row));
+		datum.setDescIdsInact(getIds(IdColumn.DESC_IDS_INACT, row));
+		datum.setAxiomIds(getIds(IdColumn.AXIOM_IDS, row));
+		datum.setAxiomIdsInact(getIds(IdColumn.AXIOM_IDS_INACT, row));
+		datum.setLangRefsetIds(getIds(IdColumn.LANG_REFSET_IDS, row));
+		datum.setLangRefsetIdsInact(getIds(IdColumn.LANG_REFSET_IDS_INACT, row));
+		datum.setInactivationIds(getIds(IdColumn.INACTIVATION_IDS, row));
+		datum.setInactivationIdsInact(getIds(IdColumn.INACTIVATION_IDS_INACT, row));
+		datum.setHistAssocIds(getIds(IdColumn.HIST_ASSOC_IDS, row));
+		datum.setHistAssocIdsInact(getIds(IdColumn.HIST_ASSOC_IDS_INACT, row));
+		datum.setDescHistAssocIds(getIds(IdColumn.DESC_HIST_ASSOC_IDS, row));
+		datum.setDescHistAssocIdsInact(getIds(IdColumn.DESC_HIST_ASSOC_IDS_INACT, row));
+		datum.setDescInactivationIds(getIds(IdColumn.DESC_INACTIVATION_IDS, row));
+		datum.setDescInactivationIdsInact(getIds(IdColumn.DESC_INACTIVATION_IDS_INACT, row));
+		datum.setHistAssocTargets(getIds(IdColumn.HIST_ASSOC_TARGETS, row));
+		datum.setAnnotationIds(getIds(IdColumn.ANNOTATION_IDS, row));
+		datum.setAnnotationIdsInact(getIds(IdColumn.ANNOTATION_IDS_INACT, row));
+		return datum;
+	}
+
+	/**
+	 * @return a read only map of concept id to HistoricData, where each datum is only created
+	 * when asked for.  Concepts without a hierarchy are given the default hierarchy.
+	 */
+	public Map<String, HistoricData> asMap(boolean minimalSet, String defaultHierarchy) {
+		return new HistoricDataMap(minimalSet, defaultHierarchy);
+	}
+
+	private class HistoricDataMap extends AbstractMap<String, HistoricData> {
+		private final boolean minimalSet;
+		private final String defaultHierarchy;
+
+		HistoricDataMap(boolean minimalSet, String defaultHierarchy) {
+			this.minimalSet = minimalSet;
+			this.defaultHierarchy = defaultHierarchy;
+		}
+
+		@Override
+		public HistoricData get(Object key) {
+			int row = indexOf(key);
+			return row < 0 ? null : getDatum(row);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return indexOf(key) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return rowCount;
+		}
+
+		@Override
+		public Set<Entry<String, HistoricData>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public Iterator<Entry<String, HistoricData>> iterator() {
+					return new Iterator<>() {
+						private int row = 0;
+
+						@Override
+						public boolean hasNext() {
+							return row < rowCount;
+						}
+
+						@Override
+						public Entry<String, HistoricData> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							HistoricData datum = getDatum(row++);
+							return new SimpleImmutableEntry<>(Long.toString(datum.getConceptId()), datum);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return rowCount;
+				}
+			};
+		}
+
+		private int indexOf(Object key) {
+			long conceptId = key instanceof String str ? toSctId(str) : -1;
+			return conceptId < 0 ? -1 : HistoricDataStore.this.indexOf(conceptId);
+		}
+
+		private HistoricData getDatum(int row) {
+			HistoricData datum = getHistoricData(row, minimalSet);
+			if (datum.getHierarchy().isEmpty()) {
+				datum.setHierarchy(defaultHierarchy);
+			}
+			return datum;
+		}
+	}
+
+	private class IdList extends AbstractList<String> implements RandomAccess {
+		private final IdColumn column;
+		private final int from;
+		private final int to;
+
+		IdList(IdColumn column, int from, int to) {
+			this.column = column;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public String get(int index) {
+			Objects.checkIndex(index, size());
+			ByteBuffer values = sections[column.getSection(1)];
+			int idx = from + index;
+			return switch (encodings[column.ordinal()]) {
+				case SCTID -> Long.toString(values.getLong(idx * Long.BYTES));
+				case UUID -> new UUID(values.getLong(idx * 2 * Long.BYTES), values.getLong((idx * 2 + 1) * Long.BYTES)).toString();
+				case TEXT -> getText(values, sections[column.getSection(2)], idx);
+			};
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+		/**
+		 * Compares the encoded values directly, so that contains() doesn't decode each id in turn
+		 */
+		@Override
+		public int indexOf(Object o) {
+			if (!(o instanceof String str)) {
+				return -1;
+			}
+			ByteBuffer values = sections[column.getSection(1)];
+			switch (encodings[column.ordinal()]) {
+				case SCTID -> {
+					long sctId = toSctId(str);
+					for (int idx = from; sctId >= 0 && idx < to; idx++) {
+						if (values.getLong(idx * Long.BYTES) == sctId) {
+							return idx - from;
+						}
+					}
+					return -1;
+				}
+				case UUID -> {
+					UUID uuid = toUuid(str);
+					for (int idx = from; uuid != null && idx < to; idx++) {
+						if (values.getLong(idx * 2 * Long.BYTES) == uuid.getMostSignificantBits()
+								&& values.getLong((idx * 2 + 1) * Long.BYTES) == uuid.getLeastSignificantBits()) {
+							return idx - from;
+						}
+					}
+					return -1;
+				}
+				default -> {
+					return super.indexOf(o);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the value as an SCTID, or -1 if it isn't one that would be written back the same way
+	 */
+	private static long toSctId(String value) {
+		int length = value.length();
+		if (length == 0 || length > 18 || (value.charAt(0) == '0' && length > 1)) {
+			return -1;
+		}
+		long sctId = 0;
+		for (int i = 0; i < length; i++) {
+			char ch = value.charAt(i);
+			if (ch < '0' || ch > '9') {
+				return -1;
+			}
+			sctId = (sctId * 10) + (ch - '0');
+		}
+		return sctId;
+	}
+
+	/**
+	 * @return the value as a UUID, or null if it isn't one that would be written back the same way
+	 */
+	private static UUID toUuid(String value) {
+		if (value.length() != 36) {
+			return null;
+		}
+		try {
+			UUID uuid = UUID.fromString(value);
+			return uuid.toString().equals(value) ? uuid : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a historic data file into memory in columns, and writes those out in concept id order.
+	 * Written to a temporary file first so that another job never maps a partial store.
+	 */
+	static void convert(File dataFile, File storeFile) throws IOException {
+		long startTime = System.currentTimeMillis();
+		StoreBuilder builder = new StoreBuilder();
+		try (BufferedReader br = new BufferedReader(new FileReader(dataFile))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (!line.isEmpty()) {
+					builder.addRow(line.split(TAB, -1));
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Unable to convert " + dataFile + " at row " + (builder.rowCount + 1), e);
+		}
+
+		File dir = storeFile.getAbsoluteFile().getParentFile();
+		File tempFile = File.createTempFile(storeFile.getName(), ".tmp", dir);
+		try {
+			builder.write(tempFile);
+			Files.move(tempFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (ArithmeticException e) {
+			//Offsets within a section are ints, so a column can't hold more than 2GB
+			throw new IOException("Unable to convert " + dataFile + ", too large for a historic data store", e);
+		} finally {
+			Files.deleteIfExists(tempFile.toPath());
+		}
+		LOGGER.info("Converted {} concepts from {} to {} in {}ms", builder.rowCount, dataFile, storeFile, System.currentTimeMillis() - startTime);
+	}
+
+	private interface SectionWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private static class StoreBuilder {
+		private int rowCount = 0;
+		private long[] ids = new long[1024];
+		private byte[] flags = new byte[1024];
+		private int[] hierarchies = new int[1024];
+		private int[] modules = new int[1024];
+		private final List<byte[]> fsns = new ArrayList<>();
+		private final List<byte[]> pts = new ArrayList<>();
+		private final Map<String, Integer> dictionaryIndex = new HashMap<>();
+		private final List<String> dictionary = new ArrayList<>();
+		private final ListColumnBuilder[] listColumns = new ListColumnBuilder[IdColumn.values().length];
+
+		StoreBuilder() {
+			for (int c = 0; c < listColumns.length; c++) {
+				listColumns[c] = new ListColumnBuilder();
+			}
+		}
+
+		void addRow(String[] items) {
+			if (rowCount == ids.length) {
+				int newLength = ids.length * 2;
+				ids = Arrays.copyOf(ids, newLength);
+				flags = Arrays.copyOf(flags, newLength);
+				hierarchies = Arrays.copyOf(hierarchies, newLength);
+				modules = Arrays.copyOf(modules, newLength);
+			}
+			ids[rowCount] = Long.parseLong(items[COL_ID]);
+			fsns.add(item(items, COL_FSN).getBytes(StandardCharsets.UTF_8));
+			pts.add(item(items, COL_PT).getBytes(StandardCharsets.UTF_8));
+			int rowFlags = 0;
+			rowFlags |= item(items, COL_ACTIVE).equals("Y") ? FLAG_ACTIVE : 0;
+			rowFlags |= item(items, COL_DEF_STATUS).equals("SD") ? FLAG_SD : 0;
+			rowFlags |= item(items, COL_IP).equals("Y") ? FLAG_IP : 0;
+			rowFlags |= item(items, COL_SD_ANCESTOR).equals("Y") ? FLAG_SD_ANCESTOR : 0;
+			rowFlags |= item(items, COL_SD_DESCENDANT).equals("Y") ? FLAG_SD_DESCENDANT : 0;
+			rowFlags |= item(items, COL_HAS_ATTRIBUTES).equals("Y") ? FLAG_HAS_ATTRIBUTES : 0;
+			flags[rowCount] = (byte) rowFlags;
+			hierarchies[rowCount] = lookup(item(items, COL_HIERARCHY));
+			modules[rowCount] = lookup(item(items, COL_MODULE));
+			for (IdColumn column : IdColumn.values()) {
+				listColumns[column.ordinal()].addRow(item(items, column.dataFileColumn));
+			}
+			rowCount++;
+		}
+
+		//Files from older releases may not have the more recently added columns
+		private String item(String[] items, int idx) {
+			return idx < items.length ? items[idx] : "";
+		}
+
+		private int lookup(String value) {
+			return dictionaryIndex.computeIfAbsent(value, v -> {
+				dictionary.add(v);
+				return dictionary.size() - 1;
+			});
+		}
+
+		void write(File file) throws IOException {
+			int[] order = sortedOrder();
+			List<SectionWriter> writers = new ArrayList<>();
+			writers.add(out -> { for (int r : order) { out.writeLong(ids[r]); } });
+			writers.add(out -> { for (int r : order) { out.writeByte(flags[r]); } });
+			writers.add(out -> { for (int r : order) { out.writeInt(hierarchies[r]); } });
+			writers.add(out -> { for (int r : order) { out.writeInt(modules[r]); } });
+			writers.add(this::writeDictionary);
+			writers.add(out -> writeOffsets(out, order, fsns));
+			writers.add(out -> writeBytes(out, order, fsns));
+			writers.add(out -> writeOffsets(out, order, pts));
+			writers.add(out -> writeBytes(out, order, pts));
+			for (ListColumnBuilder listColumn : listColumns) {
+				writers.add(out -> listColumn.writeOffsets(out, order));
+				writers.add(out -> listColumn.writeValues(out, order));
+				writers.add(out -> listColumn.writeText(out, order));
+			}
+
+			long[] offsets = new long[SECTION_COUNT];
+			long[] lengths = new long[SECTION_COUNT];
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+				channel.position(HEADER_LENGTH);
+				for (int s = 0; s < SECTION_COUNT; s++) {
+					offsets[s] = channel.position();
+					writers.get(s).write(out);
+					out.flush();
+					lengths[s] = channel.position() - offsets[s];
+				}
+				channel.position(0);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(rowCount);
+				out.writeInt(SECTION_COUNT);
+				for (int s = 0; s < SECTION_COUNT; s++) {
+					out.writeLong(offsets[s]);
+					out.writeLong(lengths[s]);
+				}
+				for (ListColumnBuilder listColumn : listColumns) {
+					out.writeByte(listColumn.encoding.ordinal());
+				}
+			}
+		}
+
+		//Rows usually arrive in concept order already, in which case they're kept that way
+		private int[] sortedOrder() {
+			boolean sorted = true;
+			for (int r = 1; r < rowCount && sorted; r++) {
+				sorted = ids[r - 1] <= ids[r];
+			}
+			if (sorted) {
+				int[] order = new int[rowCount];
+				Arrays.setAll(order, r -> r);
+				return order;
+			}
+			return IntStream.range(0, rowCount)
+					.boxed()
+					.sorted(Comparator.comparingLong(r -> ids[r]))
+					.mapToInt(Integer::intValue)
+					.toArray();
+		}
+
+		private void writeDictionary(DataOutputStream out) throws IOException {
+			out.writeInt(dictionary.size());
+			for (String entry : dictionary) {
+				byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+
+		private static void writeOffsets(DataOutputStream out, int[] order, List<byte[]> texts) throws IOException {
+			int offset = 0;
+			out.writeInt(offset);
+			for (int r : order) {
+				offset = Math.addExact(offset, texts.get(r).length);
+				out.writeInt(offset);
+			}
+		}
+
+		private static void writeBytes(DataOutputStream out, int[] order, List<byte[]> texts) throws IOException {
+			for (int r : order) {
+				out.write(texts.get(r));
+			}
+		}
+	}
+
+	/**
+	 * Holds the values of one list column as SCTIDs for as long as every value is one, then as
+	 * UUIDs likewise, falling back to text otherwise.
+	 */
+	private static class ListColumnBuilder {
+		private Encoding encoding = Encoding.SCTID;
+		private int[] rowStarts = new int[1025];
+		private int rowCount = 0;
+		private long[] longs = new long[1024];
+		private int longCount = 0;
+		private int valueCount = 0;
+		private List<byte[]> texts;
+
+		void addRow(String item) {
+			if (!item.isEmpty()) {
+				for (String value : item.split(",")) {
+					if (!value.isEmpty()) {
+						addValue(value);
+					}
+				}
+			}
+			if (rowCount + 2 > rowStarts.length) {
+				rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+			}
+			rowStarts[++rowCount] = valueCount;
+		}
+
+		private void addValue(String value) {
+			if (valueCount == 0 && encoding == Encoding.SCTID && toSctId(value) < 0) {
+				//The first value decides whether to try for SCTIDs or UUIDs
+				encoding = Encoding.UUID;
+			}
+			switch (encoding) {
+				case SCTID -> {
+					long sctId = toSctId(value);
+					if (sctId >= 0) {
+						addLong(sctId);
+						valueCount++;
+						return;
+					}
+				}
+				case UUID -> {
+					UUID uuid = toUuid(value);
+					if (uuid != null) {
+						addLong(uuid.getMostSignificantBits());
+						addLong(uuid.getLeastSignificantBits());
+						valueCount++;
+						return;
+					}
+				}
+				case TEXT -> {
+					texts.add(value.getBytes(StandardCharsets.UTF_8));
+					valueCount++;
+					return;
+				}
+			}
+			switchToText();
+			addValue(value);
+		}
+
+		private void addLong(long value) {
+			if (longCount == longs.length) {
+				longs = Arrays.copyOf(longs, longs.length * 2);
+			}
+			longs[longCount++] = value;
+		}
+
+		private void switchToText() {
+			texts = new ArrayList<>(valueCount);
+			for (int idx = 0; idx < valueCount; idx++) {
+				String value = encoding == Encoding.SCTID ? Long.toString(longs[idx]) : new UUID(longs[idx * 2], longs[idx * 2 + 1]).toString();
+				texts.add(value.getBytes(StandardCharsets.UTF_8));
+			}
+			longs = null;
+			encoding = Encoding.TEXT;
+		}
+
+		void writeOffsets(DataOutputStream out, int[] order) throws IOException {
+			int offset = 0;
+			out.writeInt(offset);
+			for (int r : order) {
+				offset += rowStarts[r + 1] - rowStarts[r];
+				out.writeInt(offset);
+			}
+		}
+
+		//For text, the values are offsets into the bytes written by writeText
+		void writeValues(DataOutputStream out, int[] order) throws IOException {
+			int textOffset = 0;
+			if (encoding == Encoding.TEXT) {
+				out.writeInt(textOffset);
+			}
+			for (int r : order) {
+				for (int idx = rowStarts[r]; idx < rowStarts[r + 1]; idx++) {
+					switch (encoding) {
+						case SCTID -> out.writeLong(longs[idx]);
+						case UUID -> {
+							out.writeLong(longs[idx * 2]);
+							out.writeLong(longs[idx * 2 + 1]);
+						}
+						case TEXT -> {
+							textOffset = Math.addExact(textOffset, texts.get(idx).length);
+							out.writeInt(textOffset);
+						}
+					}
+				}
+			}
+		}
+
+		void writeText(DataOutputStream out, int[] order) throws IOException {
+			if (encoding == Encoding.TEXT) {
+				for (int r : order) {
+					for (int idx = rowStarts[r]; idx < rowStarts[r + 1]; idx++) {
+						out.write(texts.get(idx));
+					}
+				}
+			}
+		}
+	}
+}
@@ -2,6 +2,8 @@ package org.ihtsdo.termserver.scripting.reports.release;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.otf.utils.StringUtils;
@@ -36,12 +38,13 @@ public class HistoricStatsAnalyzer extends TermServerReport implements ReportCla
 	private static final Logger LOGGER = LoggerFactory.getLogger(HistoricStatsAnalyzer.class);
 
 	private static final String ITEM_LOG = "Item {}";
+	private static final String UNKNOWN_HIERARCHY = "54690008 |Unknown (origin) (qualifier value)|";
 
 	private static String packageTemplate = "SnomedCT_InternationalRF2_PRODUCTION_#DATE#T120000Z.zip";
 	String[] releasesToAnalyse = new String[] { "20180731", "20230331" };
 	
-	Map<String, Map<Long, Datum>> prevData;
-	Map<String, Map<Long, Datum>> thisData;
+	ReleaseData prevData;
+	ReleaseData thisData;
 	
 	public static void main(String[] args) throws TermServerScriptException {
 		Map<String, String> params = new HashMap<>();
@@ -85,7 +88,7 @@ public class HistoricStatsAnalyzer extends TermServerReport implements ReportCla
 		for (int i = 0; i < releasesToAnalyse.length ; i++) {
 			loadData(releasesToAnalyse[i]);
 			if (prevData != null) {
-				for (String hierarchyStr : thisData.keySet()) {
+				for (String hierarchyStr : thisData.getHierarchies()) {
 					if (!StringUtils.isNumeric(hierarchyStr)) {
 						LOGGER.debug("here");
 					}
@@ -100,7 +103,6 @@ public class HistoricStatsAnalyzer extends TermServerReport implements ReportCla
 
 	private void loadData(String release) throws TermServerScriptException {
 		File dataFile = null;
-		thisData = new HashMap<>();
 		try {
 			dataFile = new File("historic-data/" + release + ".tsv");
 			if (!dataFile.exists() || !dataFile.canRead()) {
@@ -112,115 +114,76 @@ public class HistoricStatsAnalyzer extends TermServerReport implements ReportCla
 				}
 			}
 			LOGGER.info("Loading {}", dataFile);
-			BufferedReader br = new BufferedReader(new FileReader(dataFile));
-			int lineNumber = 0;
-			String line = "";
+			HistoricDataStore store;
 			try {
-				while ((line = br.readLine()) != null) {
-					lineNumber++;
-					Datum datum = fromLine(line);
-					//Does this datum know its hierarchy?  If not, we might find it in the previous release
-					if (datum.hierarchy.isEmpty() && prevData != null) {
-						Datum prevDatum = getConcept(datum.conceptId, prevData);
-						datum.hierarchy = prevDatum.hierarchy;
-					} 
-					
-					if (datum.hierarchy.isEmpty()){
-						datum.hierarchy = "54690008 |Unknown (origin) (qualifier value)|";
-					}
-					
-					//Have we seen this hierarchy before?
-					Map<Long, Datum> thisHierarchy = thisData.get(datum.hierarchy);
-					if (thisHierarchy == null) {
-						thisHierarchy = new HashMap<>();
-						thisData.put(datum.hierarchy, thisHierarchy);
-					}
-					thisHierarchy.put(datum.conceptId, datum);
-				}
-			} catch (Exception e) {
-				String err = e.getClass().getSimpleName();
-				throw new TermServerScriptException(err + " at line " + lineNumber + ": " + line);
-			} finally {
-				br.close();
+				store = HistoricDataStore.open(dataFile);
+			} catch (IOException e) {
+				LOGGER.warn("Unable to use historic data store for {}, building a temporary one instead: {}", dataFile, e.getMessage());
+				store = HistoricDataStore.openTemporary(dataFile);
 			}
+			thisData = new ReleaseData(store, prevData);
 		} catch (Exception e) {
 			throw new TermServerScriptException("Unable to load " + dataFile, e);
 		}
 	}
-	
+
 	private void runAnalysis(int tabIdx, final String hierarchyStr) throws TermServerScriptException {
-		Map<Long, Datum> thisHierarchy = thisData.get(hierarchyStr);
-		Map<Long, Datum> prevHierarchy = prevData.get(hierarchyStr);
+		HistoricDataStore prev = prevData.store;
+		HistoricDataStore curr = thisData.store;
+		int[] thisHierarchy = thisData.getRows(hierarchyStr);
+		int[] prevHierarchy = prevData.getRows(hierarchyStr);
+		//Where each concept of the previous release is now, whichever hierarchy that's in
+		int[] nowRows = findCurrentRows(prevHierarchy, hierarchyStr);
 		Object[] results = new Object[23];
 		int column = 0;
 		
 		//Sanity check here that we've no SD IPs
-		long sanityCheck = thisHierarchy.values().stream()
-				.filter(d -> d.isIP && d.isSD)
-				.count();
-		if (sanityCheck > 0) {
+		if (count(thisHierarchy, r -> curr.isIP(r) && curr.isSD(r)) > 0) {
 			throw new IllegalArgumentException("Data has an SD IP!");
 		}
 		
 		//Also can't have any inactive SD
-		sanityCheck = thisHierarchy.values().stream()
-				.filter(d -> !d.isActive && d.isSD)
-				.count();
-		if (sanityCheck > 0) {
+		if (count(thisHierarchy, r -> !curr.isActive(r) && curr.isSD(r)) > 0) {
 			throw new IllegalArgumentException("Data has an inactive SD");
 		}
 		
 		//Also can't have any IPs that are missing SDs above or below
-		sanityCheck = thisHierarchy.values().stream()
-				.filter(d -> d.isIP && (!d.hasSdAncestor || !d.hasSdDescendant))
-				.count();
-		if (sanityCheck > 0) {
+		if (count(thisHierarchy, r -> curr.isIP(r) && (!curr.hasSdAncestor(r) || !curr.hasSdDescendant(r))) > 0) {
 			throw new IllegalArgumentException("Data has IP without SD above or below");
 		}
 
 		//1. What's our active start count?
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream().filter(d -> d.isActive).count();
+		results[column++] = count(prevHierarchy, prev::isActive);
 		
-		//2. Concepts added
+		//2. Concepts added, or at least new to this hierarchy
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		Set<Datum> newConcepts = new HashSet<>(thisHierarchy.values());
-		Set<Datum> existingConcepts = new HashSet<>(prevHierarchy.values());
-		LOGGER.debug("data cloned");
-		newConcepts.removeAll(existingConcepts);
-		results[column++] = (long) newConcepts.size();
+		int[] newConcepts = Arrays.stream(thisHierarchy)
+				.filter(r -> !hierarchyStr.equals(prevData.getHierarchy(curr.getConceptId(r))))
+				.toArray();
+		results[column++] = (long) newConcepts.length;
 		
 		//3. Concepts Inactivated.  Find concepts in prev that are active, where this concept
 		//is not active
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isActive && !getConcept(d.conceptId, hierarchyStr, thisData).isActive)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isActive(p) && !curr.isActive(n));
 		
 		//4. P made SD.  Find concepts in prev release that are not SD, that are SD in this release
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> !d.isSD && getConcept(d.conceptId, hierarchyStr, thisData).isSD)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> !prev.isSD(p) && curr.isSD(n));
 		
 		//5. SD made P.  Find concepts in prev release that are  SD, that are not SD in this release
 		//And also the the concept is still active
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isSD && 
-						!getConcept(d.conceptId, hierarchyStr, thisData).isSD && 
-						getConcept(d.conceptId, hierarchyStr, thisData).isActive)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isSD(p) && !curr.isSD(n) && curr.isActive(n));
 						
 		//6. SD Inactivated.  Find concepts in prev release that are  SD, that are now inactive
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isSD && !getConcept(d.conceptId, hierarchyStr, thisData).isActive)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isSD(p) && !curr.isActive(n));
 		
 		//7. SD Added
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = newConcepts.stream().filter(d -> d.isSD).count();
+		results[column++] = count(newConcepts, curr::isSD);
 		
 		//8. Check alignement
 		LOGGER.debug(ITEM_LOG, (column + 1));
@@ -228,74 +191,59 @@ public class HistoricStatsAnalyzer extends TermServerReport implements ReportCla
 		
 		//9. How many IPs do we have to start with?
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream().filter(d -> d.isIP).count();
+		results[column++] = count(prevHierarchy, prev::isIP);
 		
 		//10. IPs removed total
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isIP && !getConcept(d.conceptId, hierarchyStr, thisData).isIP)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isIP(p) && !curr.isIP(n));
 		
 		//11. IPs Added total. All current IPs that either did not exist at all, or 
 		//were not IPs
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = thisHierarchy.values().stream()
-				.filter(d -> d.isIP && 
-						( getConcept(d.conceptId, hierarchyStr, prevData) == null ||
-								!getConcept(d.conceptId, hierarchyStr, prevData).isIP))
-				.count();
+		results[column++] = count(thisHierarchy, r -> {
+			int prevRow = prev.indexOf(curr.getConceptId(r));
+			return curr.isIP(r) && (prevRow < 0 || !prev.isIP(prevRow));
+		});
 		
 		//12. How many IPs do we finish up with?
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = thisHierarchy.values().stream().filter(d -> d.isIP).count();
+		results[column++] = count(thisHierarchy, curr::isIP);
 		
 		//13. IPs brand new.  Use our collection of new concepts to count these
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = newConcepts.stream().filter(d -> d.isIP).count();
+		results[column++] = count(newConcepts, curr::isIP);
 		
 		//14. IPs inactivated.  IPs in the prev release that are now inactive
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isIP && !getConcept(d.conceptId, hierarchyStr, thisData).isActive)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isIP(p) && !curr.isActive(n));
 		
 		//15. IPs made SD
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isIP 
-						&& getConcept(d.conceptId, hierarchyStr, thisData).isSD)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isIP(p) && curr.isSD(n));
 		
 		//16. IPs No Longer - lost SD ancestor. So still active, but no SD ancestor
 		//Also check that it's still primitive, else it will have been counted elsewhere
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isIP && !getConcept(d.conceptId, hierarchyStr, thisData).isIP
-						&& !getConcept(d.conceptId, hierarchyStr, thisData).hasSdAncestor
-						&& getConcept(d.conceptId, hierarchyStr, thisData).isActive
-						&& !getConcept(d.conceptId, hierarchyStr, thisData).isSD)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isIP(p) && !curr.isIP(n)
+				&& !curr.hasSdAncestor(n)
+				&& curr.isActive(n)
+				&& !curr.isSD(n));
 		
 		//17. IPs No Longer - lost SD descendant
 		//Also check that it's still primitive, else it will have been counted elsewhere
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isIP && !getConcept(d.conceptId, hierarchyStr, thisData).isIP
-						&& !getConcept(d.conceptId, hierarchyStr, thisData).hasSdDescendant
-						&& getConcept(d.conceptId, hierarchyStr, thisData).isActive
-						&& !getConcept(d.conceptId, hierarchyStr, thisData).isSD)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isIP(p) && !curr.isIP(n)
+				&& !curr.hasSdDescendant(n)
+				&& curr.isActive(n)
+				&& !curr.isSD(n));
 		
 		//18. IPs No Longer - lost either
 		//Also check that it's still primitive, else it will have been counted elsewhere
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isIP && !getConcept(d.conceptId, hierarchyStr, thisData).isIP
-						&& (!getConcept(d.conceptId, hierarchyStr, thisData).hasSdAncestor
-						|| !getConcept(d.conceptId, hierarchyStr, thisData).hasSdDescendant)
-						&& getConcept(d.conceptId, hierarchyStr, thisData).isActive
-						&& !getConcept(d.conceptId, hierarchyStr, thisData).isSD)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isIP(p) && !curr.isIP(n)
+				&& (!curr.hasSdAncestor(n) || !curr.hasSdDescendant(n))
+				&& curr.isActive(n)
+				&& !curr.isSD(n));
 		
 		//19. Check alignement
 		LOGGER.debug(ITEM_LOG, (column + 1));
@@ -306,35 +254,25 @@ public class HistoricStatsAnalyzer extends TermServerReport implements ReportCla
 		
 		//20. New IPs gained SD descendant. So without SD descendant and is now IP 
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> !d.isIP && !d.isSD
-						&& !d.hasSdDescendant 
-						&& getConcept(d.conceptId, hierarchyStr, thisData).isIP)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> !prev.isIP(p) && !prev.isSD(p)
+				&& !prev.hasSdDescendant(p)
+				&& curr.isIP(n));
 		
 		//21. New IPs gained SD ancestor, So without SD ancestor and is now IP
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> !d.isIP  && !d.isSD
-						&& !d.hasSdAncestor
-						&& getConcept(d.conceptId, hierarchyStr, thisData).isIP)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> !prev.isIP(p) && !prev.isSD(p)
+				&& !prev.hasSdAncestor(p)
+				&& curr.isIP(n));
 		
 		//22. New IPs gained SD either
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> !d.isIP && !d.isSD 
-						&& (!d.hasSdAncestor || !d.hasSdDescendant) 
-						&& getConcept(d.conceptId, hierarchyStr, thisData).isIP)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> !prev.isIP(p) && !prev.isSD(p)
+				&& (!prev.hasSdAncestor(p) || !prev.hasSdDescendant(p))
+				&& curr.isIP(n));
 		
 		//23. New IPs switched from SD to P
 		LOGGER.debug(ITEM_LOG, (column + 1));
-		results[column++] = prevHierarchy.values().stream()
-				.filter(d -> d.isSD &&
-						getConcept(d.conceptId, hierarchyStr, thisData).isIP
-						&& !getConcept(d.conceptId, hierarchyStr, thisData).isSD)
-				.count();
+		results[column++] = count(prevHierarchy, nowRows, (p, n) -> prev.isSD(p) && curr.isIP(n) && !curr.isSD(n));
 		
 		Concept hierarchy;
 		if (StringUtils.isNumeric(hierarchyStr) && hierarchyStr.length() > 6) {
@@ -347,37 +285,39 @@ public class HistoricStatsAnalyzer extends TermServerReport implements ReportCla
 	}
 	
 	private void runPercAnalysis(int tabIdx, final String hierarchyStr) throws TermServerScriptException {
-		Map<Long, Datum> thisHierarchy = thisData.get(hierarchyStr);
-		Map<Long, Datum> prevHierarchy = prevData.get(hierarchyStr);
+		HistoricDataStore prev = prevData.store;
+		HistoricDataStore curr = thisData.store;
+		int[] thisHierarchy = thisData.getRows(hierarchyStr);
+		int[] prevHierarchy = prevData.getRows(hierarchyStr);
 		Object[] results = new Object[6];
 		int column = 0;
 
 		//What's our active counts?
-		long prevActiveCount = prevHierarchy.values().stream().filter(d -> d.isActive).count();
-		long thisActiveCount = thisHierarchy.values().stream().filter(d -> d.isActive).count();
+		long prevActiveCount = count(prevHierarchy, prev::isActive);
+		long thisActiveCount = count(thisHierarchy, curr::isActive);
 		
 		if (prevActiveCount == 0 || thisActiveCount == 0) {
 			Arrays.fill(results, "N/A");
 		} else {
 			//Percentage of SD 
-			long prevSDCount = prevHierarchy.values().stream().filter(d -> d.isSD && d.isActive).count();
+			long prevSDCount = count(prevHierarchy, r -> prev.isSD(r) && prev.isActive(r));
 			results[column++] = String.format("%.1f%%", (prevSDCount / (double)prevActiveCount) * 100);
 		
-			long thisSDCount = thisHierarchy.values().stream().filter(d -> d.isSD && d.isActive).count();
+			long thisSDCount = count(thisHierarchy, r -> curr.isSD(r) && curr.isActive(r));
 			results[column++] = String.format("%.1f%%", (thisSDCount / (double)thisActiveCount) * 100);
 			
 			//Percentage of P
-			long prevPCount = prevHierarchy.values().stream().filter(d -> !d.isSD && d.isActive).count();
+			long prevPCount = count(prevHierarchy, r -> !prev.isSD(r) && prev.isActive(r));
 			results[column++] = String.format("%.1f%%", (prevPCount / (double)prevActiveCount) * 100);
 		
-			long thisPCount = thisHierarchy.values().stream().filter(d -> !d.isSD && d.isActive).count();
+			long thisPCount = count(thisHierarchy, r -> !curr.isSD(r) && curr.isActive(r));
 			results[column++] = String.format("%.1f%%", (thisPCount / (double)thisActiveCount) * 100);
 			
 			//Percentage of IPs
-			long prevIPCount = prevHierarchy.values().stream().filter(d -> d.isIP && d.isActive).count();
+			long prevIPCount = count(prevHierarchy, r -> prev.isIP(r) && prev.isActive(r));
 			results[column++] = String.format("%.1f%%", (prevIPCount / (double)prevActiveCount) * 100);
 		
-			long thisIPCount = thisHierarchy.values().stream().filter(d -> d.isIP && d.isActive).count();
+			long thisIPCount = count(thisHierarchy, r -> curr.isIP(r) && curr.isActive(r));
 			results[column++] = String.format("%.1f%%", (thisIPCount / (double)thisActiveCount) * 100);
 
 		}
@@ -392,87 +332,98 @@ public class HistoricStatsAnalyzer extends TermServerReport implements ReportCla
 		report(tabIdx, hierarchy, results);
 	}
 
-	private Datum getConcept(long conceptId, Map<String, Map<Long, Datum>> data) {
-		for (Map<Long, Datum> thisHierarchy : data.values()) {
-			if (thisHierarchy.containsKey(conceptId)) {
-				return thisHierarchy.get(conceptId);
+	/**
+	 * @return the row in this release of each of the given rows of the previous release
+	 */
+	private int[] findCurrentRows(int[] prevRows, String hierarchyStr) throws TermServerScriptException {
+		int[] nowRows = new int[prevRows.length];
+		int moved = 0;
+		for (int i = 0; i < prevRows.length; i++) {
+			long conceptId = prevData.store.getConceptId(prevRows[i]);
+			nowRows[i] = thisData.store.indexOf(conceptId);
+			if (nowRows[i] < 0) {
+				throw new TermServerScriptException("Concept " + conceptId + " from " + hierarchyStr + " not found in any subHierarchy");
+			}
+			if (!hierarchyStr.equals(thisData.getRowHierarchy(nowRows[i]))) {
+				moved++;
 			}
 		}
-		return null;
-	}
-	
-	private Datum getConcept(long conceptId, String hierarchyStr, Map<String, Map<Long, Datum>> data) {
-		Map<Long, Datum> thisHierarchy = data.get(hierarchyStr);
-		if (thisHierarchy == null) {
-			throw new IllegalArgumentException("No sign of " + hierarchyStr + " hierarchy in data");
+		//If we thought it was in the unknown hierarchy and it's not, that's fine, it's been reactivated
+		if (moved > 0 && !hierarchyStr.contains("Unknown")) {
+			LOGGER.warn("{} concepts expected in {} have moved to another hierarchy", moved, gl.getConcept(hierarchyStr));
 		}
-		if (thisHierarchy.containsKey(conceptId)) {
-			if (thisHierarchy.get(conceptId) == null) {
-				throw new IllegalArgumentException("Null datum stored?");
+		return nowRows;
+	}
+
+	private static long count(int[] rows, IntPredicate predicate) {
+		return Arrays.stream(rows).filter(predicate).count();
+	}
+
+	private static long count(int[] prevRows, int[] nowRows, RowPredicate predicate) {
+		long count = 0;
+		for (int i = 0; i < prevRows.length; i++) {
+			if (predicate.test(prevRows[i], nowRows[i])) {
+				count++;
 			}
-			return thisHierarchy.get(conceptId);
-		} else {
-			//Is it possible that the concept has moved top level hierarchy?
-			for (String otherHierarchyStr : data.keySet()) {
-				Map<Long, Datum> thisOtherHierarchy = data.get(otherHierarchyStr);
-				if (thisOtherHierarchy.containsKey(conceptId)) {
-					Datum datum = thisOtherHierarchy.get(conceptId);
-					//If we thought it was in the unknown hierarchy and it's not, 
-					//that's fine, it's been reactivated
-					if (datum != null && !hierarchyStr.contains("Unknown")) {
-						try {
-							LOGGER.warn (conceptId + " expected in " + gl.getConcept(hierarchyStr) + " but found in " + gl.getConcept(datum.hierarchy));
-						} catch (TermServerScriptException e) {
-							LOGGER.error("Exception encountered",e);
-						}
-					}
-					return datum;
+		}
+		return count;
+	}
+
+	private interface RowPredicate {
+		boolean test(int prevRow, int thisRow);
+	}
+
+	/**
+	 * One release's historic data, read in place from its store, with the rows of the store
+	 * grouped by the hierarchy each concept is counted in
+	 */
+	static class ReleaseData {
+		private final HistoricDataStore store;
+		private final String[] hierarchyOfRow;
+		private final Map<String, int[]> rowsByHierarchy = new HashMap<>();
+
+		ReleaseData(HistoricDataStore store, ReleaseData prevData) {
+			this.store = store;
+			hierarchyOfRow = new String[store.size()];
+			Map<String, IntStream.Builder> builders = new HashMap<>();
+			for (int row = 0; row < store.size(); row++) {
+				String hierarchy = store.getHierarchy(row);
+				//Does this concept know its hierarchy?  If not, we might find it in the previous release
+				if (hierarchy.isEmpty() && prevData != null) {
+					String prevHierarchy = prevData.getHierarchy(store.getConceptId(row));
+					hierarchy = prevHierarchy == null ? hierarchy : prevHierarchy;
 				}
+
+				if (hierarchy.isEmpty()) {
+					hierarchy = UNKNOWN_HIERARCHY;
+				}
+				hierarchyOfRow[row] = hierarchy;
+				builders.computeIfAbsent(hierarchy, k -> IntStream.builder()).add(row);
 			}
-			if (data != prevData) {
-				LOGGER.warn ("Concept {} not found in any subHierarchy", conceptId);
-			}
+			builders.forEach((hierarchy, rows) -> rowsByHierarchy.put(hierarchy, rows.build().toArray()));
 		}
-		return null;
-	}
 
-	protected class Datum {
-		long conceptId;
-		boolean isActive;
-		boolean isSD;
-		String hierarchy;
-		boolean isIP;
-		boolean hasSdDescendant;
-		boolean hasSdAncestor;
-		int hashCode;
-		
-		@Override
-		public int hashCode () {
-			return hashCode;
+		Set<String> getHierarchies() {
+			return rowsByHierarchy.keySet();
 		}
-		
-		@Override
-		public boolean equals (Object o) {
-			if (o instanceof Datum datum) {
-				return this.conceptId == datum.conceptId;
-			}
-			return false;
+
+		/**
+		 * @return the rows counted in the given hierarchy, in concept id order
+		 */
+		int[] getRows(String hierarchy) {
+			return rowsByHierarchy.getOrDefault(hierarchy, new int[0]);
+		}
+
+		String getRowHierarchy(int row) {
+			return hierarchyOfRow[row];
+		}
+
+		/**
+		 * @return the hierarchy the concept is counted in, or null if it's not in this release
+		 */
+		String getHierarchy(long conceptId) {
+			int row = store.indexOf(conceptId);
+			return row < 0 ? null : hierarchyOfRow[row];
 		}
-	}
-	
-	Datum fromLine (String line) {
-		Datum datum = new Datum();
-		String[] lineItems = line.split(TAB);
-		int idx = 0;
-		datum.conceptId = Long.parseLong(lineItems[idx]);
-		++idx; //Don't need the FSN
-		datum.isActive = lineItems[++idx].equals("Y");
-		datum.isSD = lineItems[++idx].equals("SD");
-		datum.hierarchy = lineItems[++idx];
-		datum.isIP = lineItems[++idx].equals("Y");
-		datum.hasSdAncestor = lineItems[++idx].equals("Y");
-		datum.hasSdDescendant = lineItems[++idx].equals("Y");
-		datum.hashCode = Long.hashCode(datum.conceptId);
-		return datum;
 	}
 }
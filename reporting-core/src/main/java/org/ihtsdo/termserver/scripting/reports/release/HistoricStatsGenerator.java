@@ -5,6 +5,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import org.ihtsdo.otf.RF2Constants;
@@ -47,6 +48,8 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 	public static final String FAILED_TO_CREATE = "Failed to create ";
 
 	private static final int MAX_HIERARCHY_DEPTH = 150;
+	private static final int CONCEPTS_PER_CHUNK = 2000;
+	private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 4;
 	
 	private boolean splitOutDisease = false;  //If you change this to true, don't check it in! See ISRS-1392.
 	
@@ -54,6 +57,9 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 	private static final int ACTIVE = 1;
 	private static final int INACTIVE = 0;
 	private Map<String, String> semTagHierarchyMap;
+	//Top level hierarchy of each concept, once known not to depend on how we got to it
+	private final Map<Concept, String> hierarchyCache = new ConcurrentHashMap<>();
+	private int parallelism = Runtime.getRuntime().availableProcessors();
 
 	public HistoricStatsGenerator(TermServerScript ts) {
 		project = ts.getProject();
@@ -84,11 +90,11 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 	@Override
 	public void runJob() throws TermServerScriptException {
 		FileWriter fw = null;
+		File f = new File(DATA_DIR + project.getKey() + ".tsv");
 		try {
 			//Create the historic-data directory if required
 			ensureHistoricDataDirExistsOrThrow();
 			
-			File f = new File(DATA_DIR + project.getKey() + ".tsv");
 			//Since the package is published, if this file already exists, we can just reuse it
 			if (!f.exists()) {
 				fw = initialiseHistoricDataFile(f);
@@ -113,6 +119,18 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 				LOGGER.error("Exception encountered during tidy-up. Ignoring.",e);
 			}
 		}
+		createHistoricDataStore(f);
+	}
+
+	/**
+	 * Users of the data will build the columnar store themselves if needed, so no harm done if this fails
+	 */
+	private void createHistoricDataStore(File f) {
+		try {
+			HistoricDataStore.open(f);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to create historic data store for {}: {}", f, e.getMessage());
+		}
 	}
 
 	private void ensureHistoricDataDirExistsOrThrow() throws TermServerScriptException {
@@ -140,16 +158,53 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 		}
 	}
 
+	/**
+	 * Rows are generated in parallel, a chunk of concepts at a time, and the chunks written out
+	 * in the order they were started, so the file comes out the same however many threads are used.
+	 */
 	private void generateHistoricData(FileWriter fw, TransitiveClosure tc) throws TermServerScriptException, IOException {
 		LOGGER.debug("Determining all IPs");
 		Set<Concept> intermediatePrimitives = identifyIntermediatePrimitives(gl.getAllConcepts(), CharacteristicType.INFERRED_RELATIONSHIP);
 
-		for (Concept c : gl.getAllConcepts()) {
+		long startTime = System.currentTimeMillis();
+		List<Concept> concepts = new ArrayList<>(gl.getAllConcepts());
+		LOGGER.info("Generating historic data for {} concepts over {} threads", concepts.size(), parallelism);
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			//Only a few chunks per thread are held in memory waiting to be written
+			Deque<Future<String>> chunks = new ArrayDeque<>();
+			for (int start = 0; start < concepts.size(); start += CONCEPTS_PER_CHUNK) {
+				List<Concept> chunk = concepts.subList(start, Math.min(concepts.size(), start + CONCEPTS_PER_CHUNK));
+				chunks.add(executor.submit(() -> generateRows(chunk, intermediatePrimitives, tc)));
+				if (chunks.size() >= parallelism * CHUNKS_IN_FLIGHT_PER_THREAD) {
+					fw.write(chunks.poll().get());
+				}
+			}
+			while (!chunks.isEmpty()) {
+				fw.write(chunks.poll().get());
+			}
+			LOGGER.info("Historic data generated in {}ms", System.currentTimeMillis() - startTime);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while generating historic data", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TermServerScriptException tsse) {
+				throw tsse;
+			}
+			throw new TermServerScriptException("Failed to generate historic data due to " + e.getCause(), e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private String generateRows(List<Concept> concepts, Set<Concept> intermediatePrimitives, TransitiveClosure tc) throws TermServerScriptException {
+		StringBuilder sb = new StringBuilder();
+		for (Concept c : concepts) {
 			String active = c.isActiveSafely() ? "Y" : "N";
 			Description usPTDesc = c.getPreferredSynonym(RF2Constants.US_ENG_LANG_REFSET);
 			String usPT = usPTDesc != null ? usPTDesc.getTerm() : null;
 			String defStatus = SnomedUtils.translateDefnStatus(c.getDefinitionStatus());
-			String hierarchy = getHierarchy(tc, c, new LinkedList<>());
+			String hierarchy = getHierarchy(tc, c);
 			String intermediatePrimitiveIndicator = intermediatePrimitives.contains(c) ? "Y" : "N";
 			String sdDescendant = hasSdDescendant(tc, c);
 			String sdAncestor = hasSdAncestor(tc, c);
@@ -164,7 +219,7 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 			String[] annotationIds = getAnnotationIds(c);
 			String hasAttributes = SnomedUtils.countAttributes(c, CharacteristicType.INFERRED_RELATIONSHIP) > 0 ? "Y" : "N";
 			String histAssocTargets = getHistAssocTargets(c);
-			ouput(fw, c.getConceptId(), c.getFsn(), usPT, active, defStatus, hierarchy,
+			appendRow(sb, c.getConceptId(), c.getFsn(), usPT, active, defStatus, hierarchy,
 					intermediatePrimitiveIndicator, sdDescendant, sdAncestor,
 					relIds[ACTIVE], relIds[INACTIVE], descIds[ACTIVE], descIds[INACTIVE],
 					axiomIds[ACTIVE], axiomIds[INACTIVE], langRefSetIds[ACTIVE], langRefSetIds[INACTIVE],
@@ -173,6 +228,11 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 					descInactivationIds[ACTIVE], descInactivationIds[INACTIVE], histAssocTargets,
 					annotationIds[ACTIVE], annotationIds[INACTIVE]);
 		}
+		return sb.toString();
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
 	}
 
 	private String getHistAssocTargets(Concept c) {
@@ -390,6 +450,18 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 		return results;
 	}
 
+	/**
+	 * Only to be used once the semantic tag hierarchy map is complete, since the result is cached
+	 */
+	private String getHierarchy(TransitiveClosure tc, Concept c) throws TermServerScriptException {
+		String hierarchy = hierarchyCache.get(c);
+		if (hierarchy == null) {
+			hierarchy = getHierarchy(tc, c, new LinkedList<>());
+			hierarchyCache.put(c, hierarchy);
+		}
+		return hierarchy;
+	}
+
 	private String getHierarchy(TransitiveClosure tc, Concept c, Deque<Concept> stack) throws TermServerScriptException {
 
 		if (c.equals(ROOT_CONCEPT)) {
@@ -434,6 +506,16 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 			return "";  //Hopefully the previous release will know
 		}
 		
+		//Inactive concepts will mostly lead back to the same few active ancestors
+		String hierarchy = hierarchyCache.get(c);
+		if (hierarchy == null) {
+			hierarchy = getActiveHierarchy(tc, c);
+			hierarchyCache.put(c, hierarchy);
+		}
+		return hierarchy;
+	}
+
+	private String getActiveHierarchy(TransitiveClosure tc, Concept c) throws TermServerScriptException {
 		Set<Long> allAncestors = tc.getAncestors(c);
 
 		//Are we going to separate out Diseases from Clinical Findings
@@ -441,7 +523,7 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 			return DISEASE.getConceptId();
 		}
 
-		for (Long sctId : tc.getAncestors(c)) {
+		for (Long sctId : allAncestors) {
 			Concept a = gl.getConcept(sctId);
 			if (a.getDepth() == 1) {
 				return a.getConceptId();
@@ -494,8 +576,7 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 		return parents;
 	}
 
-	private void ouput(FileWriter fw, String... fields) throws IOException {
-		StringBuilder sb = new StringBuilder();
+	private void appendRow(StringBuilder sb, String... fields) {
 		boolean isFirst = true;
 		for (String field : fields) {
 			if (!isFirst) {
@@ -506,7 +587,6 @@ public class HistoricStatsGenerator extends TermServerReport implements ReportCl
 			sb.append(field);
 		}
 		sb.append("\n");
-		fw.write(sb.toString());
 	}
 
 	private String hasSdDescendant(TransitiveClosure tc, Concept c) throws TermServerScriptException {
@@ -0,0 +1,70 @@
+package org.ihtsdo.termserver.scripting.service;
+
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of requests in flight to a remote service.  The limit opens up by one each
+ * time a full limit's worth of requests has come back promptly, and halves as soon as a request
+ * fails or is slow, so that we settle at whatever the service can comfortably take.
+ */
+class AdaptiveConcurrencyLimit {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyLimit.class);
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long slowRequestMs;
+
+	private int limit;
+	private int inFlight = 0;
+	private int promptSinceChange = 0;
+
+	AdaptiveConcurrencyLimit(int minLimit, int initialLimit, int maxLimit, long slowRequestMs) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.slowRequestMs = slowRequestMs;
+		this.limit = initialLimit;
+	}
+
+	<T> T call(Callable<T> request) throws Exception {
+		acquire();
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+		try {
+			T result = request.call();
+			success = true;
+			return result;
+		} finally {
+			release(success, System.currentTimeMillis() - startTime);
+		}
+	}
+
+	private synchronized void acquire() throws InterruptedException {
+		while (inFlight >= limit) {
+			wait();
+		}
+		inFlight++;
+	}
+
+	private synchronized void release(boolean success, long durationMs) {
+		inFlight--;
+		if (!success || durationMs > slowRequestMs) {
+			if (limit > minLimit) {
+				limit = Math.max(minLimit, limit / 2);
+				LOGGER.debug("Request {} after {}ms, reducing concurrency to {}", success ? "slow" : "failed", durationMs, limit);
+			}
+			promptSinceChange = 0;
+		} else if (limit < maxLimit && ++promptSinceChange >= limit) {
+			limit++;
+			promptSinceChange = 0;
+		}
+		notifyAll();
+	}
+
+	synchronized int getLimit() {
+		return limit;
+	}
+}
@@ -5,10 +5,23 @@ import org.ihtsdo.otf.rest.client.traceability.TraceabilityServiceClient;
 import org.ihtsdo.termserver.scripting.TermServerScript;
 import org.snomed.otf.traceability.domain.Activity;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class CommonTraceabilityService implements TraceabilityService {
+
+	private static final int MIN_CONCURRENT_REQUESTS = 1;
+	private static final int INITIAL_CONCURRENT_REQUESTS = 4;
+	private static final int MAX_CONCURRENT_REQUESTS = 16;
+	private static final long SLOW_REQUEST_MS = 10_000;
+
+	private static boolean usePersistentCache = true;
+	private static File persistentCacheDir = new File("cache/traceability");
+
 	protected TraceabilityServiceClient client;
 	protected TermServerScript ts;
 
@@ -20,6 +33,18 @@ public abstract class CommonTraceabilityService implements TraceabilityService {
 
 	private SimpleDateFormat etDateFormat = new SimpleDateFormat("yyyyMMdd");
 
+	protected final AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(
+			MIN_CONCURRENT_REQUESTS, INITIAL_CONCURRENT_REQUESTS, MAX_CONCURRENT_REQUESTS, SLOW_REQUEST_MS);
+	private final Map<String, TraceabilityDiskCache> diskCaches = new ConcurrentHashMap<>();
+
+	public static void setUsePersistentCache(boolean usePersistentCache) {
+		CommonTraceabilityService.usePersistentCache = usePersistentCache;
+	}
+
+	public static void setPersistentCacheDir(File persistentCacheDir) {
+		CommonTraceabilityService.persistentCacheDir = persistentCacheDir;
+	}
+
 
 	public TraceabilityService withUserFilter(List<String> users) {
 		this.userFilter = users;
@@ -52,6 +77,31 @@ public abstract class CommonTraceabilityService implements TraceabilityService {
 	}
 
 
+	/**
+	 * Recovers the activity for a component from the disk cache if we've asked for it before,
+	 * otherwise from the traceability service, within the current concurrency limit.
+	 * Only windows which have closed are kept on disk - an open or unbounded window could
+	 * still see more activity.
+	 * @param requestKey identifies the kind of request and the branch it's made against
+	 */
+	protected List<Activity> getActivity(String requestKey, String fromDate, String toDate, String componentId, Callable<List<Activity>> request) throws Exception {
+		TraceabilityDiskCache diskCache = null;
+		if (usePersistentCache && TraceabilityDiskCache.isCacheable(toDate)) {
+			String cacheKey = requestKey + TAB + fromDate + TAB + toDate;
+			diskCache = diskCaches.computeIfAbsent(cacheKey, k -> new TraceabilityDiskCache(persistentCacheDir, k, toDate));
+			List<Activity> activities = diskCache.load(componentId);
+			if (activities != null) {
+				return activities;
+			}
+		}
+
+		List<Activity> activities = concurrencyLimit.call(request);
+		if (diskCache != null) {
+			diskCache.store(componentId, activities);
+		}
+		return activities;
+	}
+
 	protected List<Activity> filter(List<Activity> activities) {
 		return activities.stream()
 				.filter(a -> userFilter == null || userFilter.contains(a.getUsername()))
@@ -1,6 +1,8 @@
 package org.ihtsdo.termserver.scripting.service;
 
-import java.util.List;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
 
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang3.NotImplementedException;
@@ -8,6 +10,7 @@ import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component;
 import org.ihtsdo.otf.rest.client.traceability.TraceabilityServiceClient;
 import org.ihtsdo.termserver.scripting.TermServerScript;
+import org.ihtsdo.termserver.scripting.domain.Branch;
 import org.ihtsdo.termserver.scripting.domain.Concept;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +23,15 @@ public class MultiDetailTraceabilityService extends CommonTraceabilityService  {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(MultiDetailTraceabilityService.class);
 
+	private static final int PREFETCH_THREADS = 16;
+
+	//Activity recovered ahead of time, held until the component is reported
+	private final Map<String, List<Activity>> prefetched = new ConcurrentHashMap<>();
+
+	//The branch head when first asked for, which bounds the activity recovered in this run
+	private String activityUpTo;
+	private boolean activityUpToChecked = false;
+
 	public MultiDetailTraceabilityService(JobRun jobRun, TermServerScript ts) {
 		this.client = new TraceabilityServiceClient(jobRun.getTerminologyServerUrl(), jobRun.getAuthToken());
 		this.ts = ts;
@@ -29,7 +41,10 @@ public class MultiDetailTraceabilityService extends CommonTraceabilityService  {
 		int rowsReported = 0;
 		Concept owningConcept = ts.getGraphLoader().getComponentOwner(c.getId());
 		try {
-			List<Activity> activities = client.getComponentActivity(c.getId(), onBranch);
+			List<Activity> activities = prefetched.remove(c.getId());
+			if (activities == null) {
+				activities = getActivity(c.getId());
+			}
 			for (Activity activity : filter(activities)) {
 				for (ConceptChange conceptchange : activity.getConceptChanges()) {
 					for (ComponentChange compChange: conceptchange.getComponentChanges()) {
@@ -58,6 +73,74 @@ public class MultiDetailTraceabilityService extends CommonTraceabilityService  {
 		return rowsReported;
 	}
 
+	/**
+	 * Requests are made in parallel, with the number in flight at any one time governed by the
+	 * concurrency limit.  Any that fail are left to be tried again when the component is reported.
+	 */
+	@Override
+	public void prefetch(Collection<String> componentIds) throws TermServerScriptException {
+		long startTime = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(PREFETCH_THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (String componentId : new LinkedHashSet<>(componentIds)) {
+				futures.add(executor.submit(() -> {
+					try {
+						prefetched.put(componentId, getActivity(componentId));
+					} catch (Exception e) {
+						LOGGER.warn("Unable to prefetch traceability for {}: {}", componentId, e.getMessage());
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			LOGGER.info("Prefetched traceability for {} components in {}ms, finishing with {} concurrent requests",
+					prefetched.size(), System.currentTimeMillis() - startTime, concurrencyLimit.getLimit());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while prefetching traceability", e);
+		} catch (ExecutionException e) {
+			throw new TermServerScriptException("Failed to prefetch traceability due to " + e.getCause(), e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private List<Activity> getActivity(String componentId) throws Exception {
+		return getActivity("component" + TAB + onBranch, null, getActivityUpTo(), componentId,
+				() -> client.getComponentActivity(componentId, onBranch));
+	}
+
+	@Override
+	public synchronized void setBranchPath(String onBranch) {
+		super.setBranchPath(onBranch);
+		activityUpTo = null;
+		activityUpToChecked = false;
+	}
+
+	/**
+	 * Component activity is requested without a date window, so the branch head is taken as its end.
+	 * A later commit moves the head, and with it the window, so responses cached against an earlier
+	 * head are no longer used.
+	 * @return the branch head as an instant, or null if it can't be determined, in which case the
+	 * window has no end and nothing is cached.
+	 */
+	synchronized String getActivityUpTo() {
+		if (!activityUpToChecked) {
+			activityUpToChecked = true;
+			try {
+				Branch branch = onBranch == null ? null : ts.getTSClient().getBranch(onBranch);
+				if (branch != null && branch.getHeadTimestamp() != null) {
+					activityUpTo = Instant.ofEpochMilli(branch.getHeadTimestamp()).toString();
+				}
+			} catch (Exception e) {
+				LOGGER.warn("Unable to determine head timestamp of {}, not using persistent traceability cache: {}", onBranch, e.getMessage());
+			}
+		}
+		return activityUpTo;
+	}
+
 	@Override
 	public void populateTraceabilityAndReport(String fromDate, String toDate, int tab, Concept c, Object... details) {
 		throw new NotImplementedException("This class uses bulk method, not single concept lookup");
@@ -20,8 +20,7 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.*;
 
 public class SingleTraceabilityService extends CommonTraceabilityService {
 
@@ -41,11 +40,13 @@ public class SingleTraceabilityService extends CommonTraceabilityService {
 
 	private static DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 	private static final Logger LOGGER = LoggerFactory.getLogger(SingleTraceabilityService.class);
-	private static int WORKER_COUNT = 4;
+
+	//Rows waiting for traceability or being processed.  Once full, callers wait for a row to complete
+	private static final int MAX_PENDING_SIZE = 100;
+	//Most threads will be waiting on the concurrency limit, so this is only a ceiling
+	private static final int MAX_THREADS = 32;
 	
 	private JiraHelper jiraHelper;
-	private static final int MAX_PENDING_SIZE  = 100;
-	private static final int MIN_PENDING_SIZE  = 50;
 	
 	private Map<String, String> jiraTaskAuthorMap = new ConcurrentHashMap<>();
 	private Set<String> jiraTasksNotFound = ConcurrentHashMap.newKeySet();
@@ -54,12 +55,13 @@ public class SingleTraceabilityService extends CommonTraceabilityService {
 	private static final int IDX_BRANCH = 1;
 	private static final int IDX_COMMIT_DATE = 2;
 	
-	private int requestCount = 0;
 	String branchPrefix = null;
 	
-	private Worker[] workers;
+	private ExecutorService executor;
+	private final Semaphore pendingRows = new Semaphore(MAX_PENDING_SIZE);
+	private volatile String failureReason;
 
-	private Map<String, Map<String, Object[]>> cachePerTimeSlot = new HashMap<>();
+	private Map<String, Map<String, Object[]>> cachePerTimeSlot = new ConcurrentHashMap<>();
 	
 	public SingleTraceabilityService(JobRun jobRun, TermServerScript ts) {
 		this.client = new TraceabilityServiceClient(jobRun.getTerminologyServerUrl(), jobRun.getAuthToken());
@@ -69,38 +71,51 @@ public class SingleTraceabilityService extends CommonTraceabilityService {
 
 	@Override
 	public void tidyUp() {
-		if (workers == null) {
-			LOGGER.info("No traceability workers have been created, skipping tidy up.");
+		if (executor == null) {
+			LOGGER.info("No traceability rows have been processed, skipping tidy up.");
 		} else {
-			for (Worker worker : workers) {
-				worker.shutdown();
-			}
+			executor.shutdown();
+			executor = null;
 		}
 	}
 	
 	public void populateTraceabilityAndReport(String fromDate, String toDate, int reportTabIdx, Concept c, Object... details) throws TermServerScriptException {
 		ReportRow row = new ReportRow(fromDate, toDate, reportTabIdx, c, details);
-		//Do we have a work thread running?
-		if (workers == null) {
-			workers = new Worker[WORKER_COUNT];
-			for (int i=0;i<WORKER_COUNT; i++) {
-				workers[i] = new Worker(i, branchPrefix);
-				Thread t = new Thread(workers[i]);
-				t.start();
-			}
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(MAX_THREADS);
 		}
 		
-		//Pop this row in our queue and we'll get to it when we get to it.
-		//Pick a new worker to add to each request
-		int failedWorkerCount = 0;
-		boolean successfulAdd = false;
-		while (successfulAdd == false) {
-			int thisWorker = requestCount%WORKER_COUNT;
-			successfulAdd = workers[thisWorker].addToQueue(row);
-			if (++failedWorkerCount > WORKER_COUNT) {
-				throw new TermServerScriptException("All Workers Failed.  Last failure: " + workers[thisWorker].getFailureReaason());
+		//Each row is processed as a task of its own, with the number of requests actually
+		//made to the traceability service governed by the concurrency limit
+		checkForFailure();
+		acquirePendingRows(1);
+		executor.execute(() -> {
+			try {
+				process(row);
+			} catch (TermServerScriptException e) {
+				LOGGER.error("Failed to process row {} ", row, e);
+			} catch (RuntimeException e) {
+				String msg = "Unexpected failure processing " + row.c + ": " + ExceptionUtils.getExceptionCause("", e);
+				failureReason = msg + "\n" + ExceptionUtils.getStackTrace(e);
+				LOGGER.error(failureReason);
+			} finally {
+				pendingRows.release();
 			}
-			requestCount++;
+		});
+	}
+	
+	private void acquirePendingRows(int rowCount) throws TermServerScriptException {
+		try {
+			pendingRows.acquire(rowCount);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while waiting for traceability rows to be processed", e);
+		}
+	}
+	
+	private void checkForFailure() throws TermServerScriptException {
+		if (failureReason != null) {
+			throw new TermServerScriptException("Traceability processing failed.  " + failureReason);
 		}
 	}
 	
@@ -110,11 +125,7 @@ public class SingleTraceabilityService extends CommonTraceabilityService {
 		}
 		//Do we have a traceability cache for this particular time slot?
 		String timeSlotKey = row.toDate == null? "NULL" : row.toDate;
-		Map<String, Object[]> traceabilityCache = cachePerTimeSlot.get(timeSlotKey);
-		if (traceabilityCache == null) {
-			traceabilityCache = new HashMap<>();
-			cachePerTimeSlot.put(timeSlotKey, traceabilityCache);
-		}
+		Map<String, Object[]> traceabilityCache = cachePerTimeSlot.computeIfAbsent(timeSlotKey, k -> new ConcurrentHashMap<>());
 		
 		//Do we already have cached information for this row?
 		if (traceabilityCache.containsKey(row.c.getId())) {
@@ -183,8 +194,14 @@ public class SingleTraceabilityService extends CommonTraceabilityService {
 			return;
 		}
 
-		// Have we seen this branch before?
-		String author = jiraTaskAuthorMap.computeIfAbsent(branch, k -> getJiraTaskAuthor(taskKey));
+		// Have we seen this branch before?  Looked up outside of the map so that other rows aren't held up meanwhile
+		String author = jiraTaskAuthorMap.get(branch);
+		if (author == null) {
+			author = getJiraTaskAuthor(taskKey);
+			if (author != null) {
+				jiraTaskAuthorMap.putIfAbsent(branch, author);
+			}
+		}
 
 		if (author != null) {
 			info[IDX_USERNAME] = author;
@@ -227,7 +244,9 @@ public class SingleTraceabilityService extends CommonTraceabilityService {
 		String sctId = row.c.getConceptId();
 		try {
 			boolean summaryOnly = true;
-			return client.getConceptActivity(sctId, ActivityType.CONTENT_CHANGE, row.fromDate, row.toDate, summaryOnly, intOnly, branchPrefix);
+			String requestKey = "concept" + TAB + intOnly + TAB + branchPrefix;
+			return getActivity(requestKey, row.fromDate, row.toDate, sctId,
+					() -> client.getConceptActivity(sctId, ActivityType.CONTENT_CHANGE, row.fromDate, row.toDate, summaryOnly, intOnly, branchPrefix));
 		} catch (Exception e) {
 			LOGGER.error(EXCEPTION_ENCOUNTERED,e);
 			return Collections.singletonList(createDummyActivity(sctId, e));
@@ -252,149 +271,45 @@ public class SingleTraceabilityService extends CommonTraceabilityService {
 	}
 	
 	
-	private class Worker implements Runnable {
-		private final Logger LOGGER_WORKER = LoggerFactory.getLogger(Worker.class);
-		private Queue<ReportRow> queue = new LinkedBlockingQueue<>();
-		boolean shutdownPending = false;
-		boolean isRunning = false;
-		private String failureReaason;
-		int workerId;
-		boolean intOnly = true;
-		String branchPrefix = null;
-
-		public Worker(int id, String branchPrefix) {
-			this.workerId = id;
-			if (branchPrefix != null) {
-				intOnly = false;
-				this.branchPrefix = branchPrefix;
-			}
-		}
-
-		@Override
-		public void run() {
-			isRunning = true;
-			LOGGER_WORKER.debug("Worker {} is running", workerId);
-			try {
-				while (true) {
-					if (shutdownPending) {
-						LOGGER_WORKER.debug("Worker {} shutting down", workerId);
-						System.gc();
-						isRunning = false;
-						break;
-					} else if (queue.isEmpty()) {
-						LOGGER_WORKER.debug("Processing queue is empty, worker {} sleeping for 5 seconds", workerId);
-						try {
-							Thread.sleep(1000 * 5);
-						} catch (InterruptedException e) {
-							LOGGER.error(EXCEPTION_ENCOUNTERED,e);
-						}
-					} else {
-						LOGGER_WORKER.debug("Worker {}'s queue contains " + queue.size() + " rows to process", workerId);
-					}
-					while(queue.size() > 0) {
-						ReportRow row = queue.remove();
-						try {
-							process(row);
-						} catch (TermServerScriptException e) {
-							LOGGER_WORKER.error("Worker {} Failed to process row {} ", workerId, row, e);
-						}
-					}
-				}
-			} catch (Exception e) {
-				String msg = "Unexpected worker " + workerId + " termination: " + ExceptionUtils.getExceptionCause("", e);
-				String stack = ExceptionUtils.getStackTrace(e);
-				setFailureReaason(msg + "\n" + stack);
-			} finally {
-				isRunning = false;
-			}
-		}
+	private void process(ReportRow row) throws TermServerScriptException {
+		boolean intOnly = branchPrefix == null;
+		populateReportRowWithTraceabilityInfo(row, intOnly, branchPrefix);
 		
-		public boolean addToQueue(ReportRow row) throws TermServerScriptException {
-			//If we're not running, don't accept any row
-			if (!isRunning) {
-				return false;
-			}
-			
-			//If our queue is excessively large, we'll hold the caller thread here until we're
-			//back down below our limit
-			queue.add(row);
-			if (queue.size() > SingleTraceabilityService.MAX_PENDING_SIZE) {
-				LOGGER_WORKER.debug("Worker {} queue now {} holding caller until reduced ...", this.workerId, queue.size());
-				while (queue.size() > SingleTraceabilityService.MIN_PENDING_SIZE) {
-					try {
-						Thread.sleep(1000 * 5);
-					} catch (InterruptedException e) {
-						LOGGER.error(EXCEPTION_ENCOUNTERED,e);
-					}
-					
-					if (!isRunning) {
-						throw new TermServerScriptException("Worker queue size is " + queue.size() +", but worker is not running");
-					}
+		//Snip the processing date a bit if it has been populated
+		if (row.traceabilityInfo != null && row.traceabilityInfo[IDX_COMMIT_DATE] != null) {
+			if (!(row.traceabilityInfo[IDX_COMMIT_DATE] instanceof String)) {
+				try {
+					row.traceabilityInfo[IDX_COMMIT_DATE] = ((ZonedDateTime)row.traceabilityInfo[IDX_COMMIT_DATE]).format(dateFormatter);
+				} catch (Exception e) {
+					LOGGER.error("Formatting error on '{}' {}", row.traceabilityInfo[IDX_COMMIT_DATE], ExceptionUtils.getExceptionCause("", e));
+					LOGGER.error(ExceptionUtils.getStackTrace(e));
 				}
-				LOGGER_WORKER.debug("Worker {} queue now {} resuming processing ...", this.workerId, queue.size());
 			}
-			return true;
-		}
-
-		public void shutdown() {
-			shutdownPending = true;
-		}
-		
-		public boolean isRunning() {
-			return isRunning;
 		}
 		
-		public void process(ReportRow row) throws TermServerScriptException {
-			SingleTraceabilityService.this.populateReportRowWithTraceabilityInfo(row, intOnly, branchPrefix);
-			
-			//Snip the processing date a bit if it has been populated
-			if (row.traceabilityInfo != null && row.traceabilityInfo[IDX_COMMIT_DATE] != null) {
-				if (!(row.traceabilityInfo[IDX_COMMIT_DATE] instanceof String)) {
-					try {
-						row.traceabilityInfo[IDX_COMMIT_DATE] = ((ZonedDateTime)row.traceabilityInfo[IDX_COMMIT_DATE]).format(dateFormatter);
-					} catch (Exception e) {
-						LOGGER_WORKER.error("Formatting error on '" + row.traceabilityInfo[IDX_COMMIT_DATE] + "' " + ExceptionUtils.getExceptionCause("", e), workerId);
-						LOGGER_WORKER.error(ExceptionUtils.getStackTrace(e));
-					}
-				}
-			}
-			
-			if (row.details == null) {
-				ts.report(row.reportTabIdx, row.c, row.c.getEffectiveTime(), row.traceabilityInfo);
-			} else {
-				ts.report(row.reportTabIdx, row.c, row.details, row.traceabilityInfo);
-			}
-		}
-
-		public String getFailureReaason() {
-			return failureReaason;
-		}
-
-		public void setFailureReaason(String failureReaason) {
-			LOGGER_WORKER.error(failureReaason);
-			this.failureReaason = failureReaason;
+		if (row.details == null) {
+			ts.report(row.reportTabIdx, row.c, row.c.getEffectiveTime(), row.traceabilityInfo);
+		} else {
+			ts.report(row.reportTabIdx, row.c, row.details, row.traceabilityInfo);
 		}
 	}
 
+	/**
+	 * Waits for every row submitted so far to be reported, then lets the executor's threads go.
+	 * Many callers only flush, so nothing must be left running.  Any rows submitted later
+	 * start a new executor.
+	 */
 	@Override
 	public void flush() throws TermServerScriptException {
-		if (workers == null) {
-			LOGGER.info("No traceability workers have been created, skipping shut down.");
+		if (executor == null) {
+			LOGGER.info("No traceability rows have been processed, nothing to flush.");
 		} else {
-			for (Worker worker : workers) {
-				worker.shutdown();
-				if (worker.isRunning()) {
-					LOGGER.debug("Waiting for worker to shut down");
-					while (worker.isRunning()) {
-						try {
-							Thread.sleep(1000);
-						} catch (InterruptedException e) {
-							LOGGER.error(EXCEPTION_ENCOUNTERED,e);
-						}
-					}
-					LOGGER.info("Worker confirmed shutdown");
-				}
-			}
+			acquirePendingRows(MAX_PENDING_SIZE);
+			pendingRows.release(MAX_PENDING_SIZE);
+			executor.shutdown();
+			executor = null;
+			LOGGER.info("All traceability rows processed");
+			checkForFailure();
 		}
 	}
 
@@ -0,0 +1,217 @@
+package org.ihtsdo.termserver.scripting.service;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+import org.ihtsdo.termserver.scripting.domain.ScriptConstants;
+import org.ihtsdo.termserver.scripting.util.DiskCachePruner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.traceability.domain.Activity;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Keeps the activity recovered from the traceability service on local disk, so that re-running
+ * a traceability report doesn't have to ask for it all again.
+ *
+ * Each file holds the responses for one kind of request against one branch and date window,
+ * one component per line as id, time recovered and the activity as JSON.  Only windows with an
+ * end are cached, and a response is only kept if it was recovered after that end had passed,
+ * since until then more activity could still arrive.  A window ends either with a date, when that
+ * day is over, or at an instant such as a branch head.  Those responses are final, but files not
+ * written for MAX_AGE_MS are removed, as are the oldest once there's more than MAX_BYTES.
+ *
+ * Best effort only - any problem reading or writing is logged and treated as a cache miss.
+ */
+class TraceabilityDiskCache implements ScriptConstants {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TraceabilityDiskCache.class);
+
+	private static final String FILE_EXTENSION = ".txt";
+	private static final String HEADER_PREFIX = "#";
+	private static final Type ACTIVITY_LIST_TYPE = new TypeToken<List<Activity>>(){}.getType();
+	private static final Gson GSON = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").create();
+
+	private static final long MAX_AGE_MS = 30 * 24 * 60 * 60 * 1000L;
+	private static final long MAX_BYTES = 1024 * 1024 * 1024L;
+
+	private final File cacheDir;
+	private final File file;
+	private final String header;
+	private final long windowClosed;
+	private Map<String, String> entries;
+
+	/**
+	 * @param toDate the end of the window, which must be one that isCacheable
+	 */
+	TraceabilityDiskCache(File cacheDir, String key, String toDate) {
+		this.cacheDir = cacheDir;
+		this.file = new File(cacheDir, hash(key) + FILE_EXTENSION);
+		this.header = HEADER_PREFIX + key.replaceAll("\\s+", " ");
+		Long closed = getWindowClosed(toDate);
+		if (closed == null) {
+			throw new IllegalArgumentException("Unable to cache traceability with no end to its window: " + key);
+		}
+		this.windowClosed = closed;
+	}
+
+	/**
+	 * @return true if the window ending on this date has closed, so no more activity can arrive in it
+	 */
+	static boolean isCacheable(String toDate) {
+		Long closed = getWindowClosed(toDate);
+		return closed != null && closed <= System.currentTimeMillis();
+	}
+
+	/**
+	 * @param toDate a date, or an ISO-8601 instant such as 2024-01-31T10:15:30Z
+	 * @return the time by which the window ending on this date has closed, or null if it has no end
+	 */
+	private static Long getWindowClosed(String toDate) {
+		if (toDate == null) {
+			return null;
+		}
+		if (toDate.contains("T")) {
+			try {
+				return Instant.parse(toDate).toEpochMilli();
+			} catch (DateTimeParseException e) {
+				return null;
+			}
+		}
+		String date = toDate.replace("-", "");
+		if (date.length() < 8) {
+			return null;
+		}
+		try {
+			LocalDate lastDay = LocalDate.parse(date.substring(0, 8), DateTimeFormatter.BASIC_ISO_DATE);
+			//Whichever timezone the service works in, that day will have ended by then
+			return lastDay.plusDays(1).atStartOfDay(ZoneOffset.MIN).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the activity stored for this component, or null if there is none
+	 */
+	synchronized List<Activity> load(String componentId) {
+		String json = getEntries().get(componentId);
+		if (json == null) {
+			return null;
+		}
+		try {
+			return GSON.fromJson(json, ACTIVITY_LIST_TYPE);
+		} catch (RuntimeException e) {
+			LOGGER.warn("Unable to read cached traceability for {} from {}: {}", componentId, file, e.getMessage());
+			return null;
+		}
+	}
+
+	synchronized void store(String componentId, List<Activity> activities) {
+		long recovered = System.currentTimeMillis();
+		if (recovered < windowClosed) {
+			//More activity could still arrive, so this isn't final
+			return;
+		}
+		String json = GSON.toJson(activities, ACTIVITY_LIST_TYPE);
+		getEntries().put(componentId, json);
+		try {
+			Files.createDirectories(file.getParentFile().toPath());
+			StringBuilder sb = new StringBuilder();
+			if (!file.exists()) {
+				sb.append(header).append("\n");
+			}
+			sb.append(componentId).append(TAB).append(recovered).append(TAB).append(json).append("\n");
+			//One write per line so that other jobs appending to the same file don't split it
+			Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			new DiskCachePruner(cacheDir, MAX_AGE_MS, MAX_BYTES).pruneIfDue();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to write traceability cache file {}: {}", file, e.getMessage());
+		}
+	}
+
+	private Map<String, String> getEntries() {
+		if (entries == null) {
+			entries = new HashMap<>();
+			if (file.exists()) {
+				readEntries();
+			}
+		}
+		return entries;
+	}
+
+	private void readEntries() {
+		List<String> finalLines = new ArrayList<>();
+		int provisional = 0;
+		try (BufferedReader br = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			if (!header.equals(br.readLine())) {
+				LOGGER.warn("Traceability cache file {} does not match the request for '{}', ignoring", file, header);
+				return;
+			}
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] parts = line.split(TAB, 3);
+				if (line.startsWith(HEADER_PREFIX) || parts.length < 3) {
+					continue;
+				}
+				//Anything recovered before the window closed could have missed later activity
+				if (Long.parseLong(parts[1]) < windowClosed) {
+					provisional++;
+				} else {
+					entries.put(parts[0], parts[2]);
+					finalLines.add(line);
+				}
+			}
+			LOGGER.info("Recovered traceability for {} components from {}", entries.size(), file);
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Unable to read traceability cache file {}: {}", file, e.getMessage());
+			return;
+		}
+
+		if (provisional > 0) {
+			removeProvisionalEntries(finalLines, provisional);
+		}
+	}
+
+	private void removeProvisionalEntries(List<String> finalLines, int provisional) {
+		try {
+			File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+			try (BufferedWriter bw = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+				bw.write(header);
+				bw.newLine();
+				for (String line : finalLines) {
+					bw.write(line);
+					bw.newLine();
+				}
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			LOGGER.debug("Removed {} entries recovered before the window closed from {}", provisional, file);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to remove provisional entries from traceability cache file {}: {}", file, e.getMessage());
+		}
+	}
+
+	private static String hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest, 0, 16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+}
@@ -5,6 +5,7 @@ import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component;
 import org.ihtsdo.termserver.scripting.domain.Concept;
 import org.ihtsdo.termserver.scripting.domain.ScriptConstants;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface TraceabilityService extends ScriptConstants {
@@ -15,6 +16,11 @@ public interface TraceabilityService extends ScriptConstants {
 
 	void populateTraceabilityAndReport(String fromDate, String toDate, int tab, Concept c, Object... details) throws TermServerScriptException;
 
+	//Recover traceability for these components in bulk, ahead of them being reported
+	default void prefetch(Collection<String> componentIds) throws TermServerScriptException {
+		//Default implementation does nothing, override if required
+	}
+
 	void tidyUp() throws TermServerScriptException;
 	
 	void setBranchPath(String onBranch);
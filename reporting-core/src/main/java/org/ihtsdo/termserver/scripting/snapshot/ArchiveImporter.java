@@ -14,8 +14,17 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 public class ArchiveImporter implements ScriptConstants {
@@ -25,10 +34,24 @@ public class ArchiveImporter implements ScriptConstants {
 	private static boolean runAsynchronously = true;
 	private static boolean skipSave = false;
 
+	//In parallel mode, files are read ahead of the one being loaded, but only this many, and each
+	//only holds a few chunks in memory, so read-ahead is capped at around 128Mb however large the files
+	private static final int PREFETCH_WINDOW = 3;
+	private static final int PREFETCH_THREADS = 3;
+	private static final int PREFETCH_CHUNK_SIZE = 8 * 1024 * 1024;
+	private static final int PREFETCH_CHUNKS_PER_FILE = 4;
+
+	//GraphLoader is not thread safe, so files are always applied one at a time, in this order
+	private static final Comparator<ArchiveEntry> LOAD_ORDER = Comparator
+			.comparingInt((ArchiveEntry e) -> getLoadOrder(e.fileName()))
+			.thenComparing(ArchiveEntry::fileName);
+
 	private boolean useWindowsZipEncoding = false;
 	private GraphLoader gl;
 	private SnapshotConfiguration config;
 	private File cacheSnapshotLocation;
+	//Set while loading the files of a release that weren't covered by its binary copy
+	private boolean skipBinaryContent = false;
 
 	ArchiveImporter(GraphLoader gl, SnapshotConfiguration config) {
 		this.gl = gl;
@@ -47,7 +70,7 @@ public class ArchiveImporter implements ScriptConstants {
 		cacheSnapshotLocation = newLocation;
 		if (dependencySnapshot != null) {
 			LOGGER.info("Loading dependency snapshot {}", dependencySnapshot);
-			loadArchive(dependencySnapshot, false, "Snapshot", true);
+			loadBaseArchive(dependencySnapshot, false);
 		}
 
 		LOGGER.info("Loading previous snapshot {}", previousSnapshot);
@@ -63,22 +86,33 @@ public class ArchiveImporter implements ScriptConstants {
 	public void loadArchive(File archive, boolean fsnOnly, String fileType, Boolean isReleased) throws TermServerScriptException {
 		try {
 			boolean isDelta = (fileType.equals(DELTA));
+			long startTime = System.currentTimeMillis();
 			//Are we loading an expanded or compressed archive?
 			if (archive.isDirectory()) {
-				loadArchiveDirectory(archive, fsnOnly, fileType, isReleased);
+				if (config.isParallelImport()) {
+					loadArchiveDirectoryInParallel(archive, fsnOnly, fileType, isReleased);
+				} else {
+					loadArchiveDirectory(archive, fsnOnly, fileType, isReleased);
+				}
 			} else if (archive.getPath().endsWith(".zip")) {
 				LOGGER.debug("Loading archive file: {}", archive);
-				loadArchiveZip(archive, fsnOnly, fileType, isReleased);
+				if (config.isParallelImport()) {
+					loadArchiveZipInParallel(archive, fsnOnly, fileType, isReleased);
+				} else {
+					loadArchiveZip(archive, fsnOnly, fileType, isReleased);
+				}
 			} else {
 				throw new TermServerScriptException("Unrecognised archive : " + archive);
 			}
+			LOGGER.info("Loaded {} {} archive {} in {}ms", (config.isParallelImport() ? "parallel" : "sequential"),
+					fileType, archive.getName(), System.currentTimeMillis() - startTime);
 
-			//Are we generating the transitive closure?
-			if (fileType.equals(SNAPSHOT) && config.isPopulatePreviousTransitiveClosure()) {
+			//Are we generating the transitive closure?  Already done if the content came from a binary copy
+			if (fileType.equals(SNAPSHOT) && config.isPopulatePreviousTransitiveClosure() && !skipBinaryContent) {
 				gl.populatePreviousTransitiveClosure();
 			}
 
-			if(!isDelta && gl.isPopulateOriginalModuleMap()) {
+			if(!isDelta && gl.isPopulateOriginalModuleMap() && !skipBinaryContent) {
 				gl.populateOriginalModuleMap();
 			}
 		} catch (IOException e) {
@@ -97,6 +131,95 @@ public class ArchiveImporter implements ScriptConstants {
 		}
 	}
 
+	/**
+	 * Loads a release archive as the base layer beneath an extension.  Where there is a binary copy of
+	 * the release, it is used for the content it covers and only the remaining files (MRCM, module
+	 * dependencies and other reference sets) are read from the archive.  Otherwise the archive is loaded
+	 * as RF2 and a binary copy made alongside it, to be shared by every extension built on that release.
+	 * The binary copy is only made and used while useBinarySnapshotCache is set, as it is by default.
+	 */
+	void loadBaseArchive(File archive, boolean fsnOnly) throws TermServerScriptException {
+		File binaryCopy = BinarySnapshotFormat.getBinarySnapshotFile(archive);
+		if (config.isUseBinarySnapshotCache() && binaryCopy.exists() && binaryCopy.lastModified() >= archive.lastModified()) {
+			try (BinarySnapshotReader reader = new BinarySnapshotReader(binaryCopy)) {
+				LOGGER.info("Loading binary copy of base archive: {}", binaryCopy);
+				loadBinarySnapshot(reader, fsnOnly, true);
+				skipBinaryContent = true;
+				loadArchive(archive, fsnOnly, SNAPSHOT, true);
+				return;
+			} catch (IOException e) {
+				//Nothing loaded from the binary copy survives the wipe, so we can start again from the RF2
+				LOGGER.warn("Unable to use binary copy of {}, loading RF2 instead: {}", archive, e.getMessage());
+				gl.memoryWipe();
+			} finally {
+				skipBinaryContent = false;
+			}
+		}
+
+		loadArchive(archive, fsnOnly, SNAPSHOT, true);
+		//A copy made with FSNs only would be missing content for later jobs
+		if (config.isUseBinarySnapshotCache() && !fsnOnly) {
+			try {
+				new BinarySnapshotWriter(binaryCopy).write(gl, SCTID_CORE_MODULE);
+			} catch (IOException e) {
+				LOGGER.error("Failed to write binary copy of {}", archive, e);
+			}
+		}
+	}
+
+	private static boolean isBinaryContentFile(String fileName) {
+		return fileName.contains("sct2_Concept_") || fileName.contains("sct2_Description_")
+				|| fileName.contains("sct2_TextDefinition_") || fileName.contains("sct2_Relationship")
+				|| fileName.contains("sct2_StatedRelationship_") || fileName.contains("sct2_sRefset_OWL")
+				|| fileName.contains("Identifier") || fileName.contains("English") || fileName.contains("Language")
+				|| fileName.contains("AttributeValue") || fileName.contains("InactivationIndicator")
+				|| fileName.contains("Association") || fileName.contains("ComponentAnnotationStringValue");
+	}
+
+	/**
+	 * Loads the binary copy of a cached snapshot, applying the same post-load steps as loadArchive
+	 * does for an RF2 Snapshot.
+	 */
+	void loadBinarySnapshot(BinarySnapshotReader reader, boolean fsnOnly, Boolean isReleased) throws TermServerScriptException, IOException {
+		long startTime = System.currentTimeMillis();
+		BinarySnapshotFormat.Section section;
+		while ((section = reader.nextSection()) != null) {
+			long sectionStartTime = System.currentTimeMillis();
+			switch (section) {
+				case CONCEPT -> gl.loadConceptFile(reader, isReleased);
+				case DESCRIPTION -> gl.loadDescriptionFile(reader, fsnOnly, isReleased);
+				case INFERRED_RELATIONSHIP -> {
+					gl.loadRelationships(RF2Constants.CharacteristicType.INFERRED_RELATIONSHIP, reader, true, isReleased);
+					if (config.isPopulateHierarchyDepth()) {
+						LOGGER.info("Calculating concept depth...");
+						gl.populateHierarchyDepth(ROOT_CONCEPT, 0);
+					}
+				}
+				case CONCRETE_RELATIONSHIP -> gl.loadRelationships(RF2Constants.CharacteristicType.INFERRED_RELATIONSHIP, reader, true, isReleased);
+				case AXIOM -> gl.loadAxioms(reader, isReleased);
+				case LANGUAGE -> {
+					if (!fsnOnly) {
+						gl.loadLanguageFile(reader, isReleased);
+					}
+				}
+				case ATTRIBUTE_VALUE -> gl.loadInactivationIndicatorFile(reader, isReleased);
+				case ASSOCIATION -> gl.loadHistoricalAssociationFile(reader, isReleased);
+				case ALTERNATE_IDENTIFIER -> gl.loadAlternateIdentifierFile(reader, isReleased);
+				case COMPONENT_ANNOTATION -> gl.loadComponentAnnotationFile(reader, isReleased);
+			}
+			LOGGER.info("Processed binary {} section in {}ms", section, System.currentTimeMillis() - sectionStartTime);
+		}
+
+		if (config.isPopulatePreviousTransitiveClosure()) {
+			gl.populatePreviousTransitiveClosure();
+		}
+
+		if (gl.isPopulateOriginalModuleMap()) {
+			gl.populateOriginalModuleMap();
+		}
+		LOGGER.info("Loaded binary snapshot of {} concepts in {}ms", reader.getConceptCount(), System.currentTimeMillis() - startTime);
+	}
+
 	private void loadArchiveZip(File archive, boolean fsnOnly, String fileType, Boolean isReleased) throws IOException {
 		Charset encoding = useWindowsZipEncoding ? Charset.forName("windows-1252") : StandardCharsets.UTF_8;
 		ZipInputStream zis = new ZipInputStream(new FileInputStream(archive), encoding);
@@ -134,10 +257,205 @@ public class ArchiveImporter implements ScriptConstants {
 		}
 	}
 
+	private void loadArchiveZipInParallel(File archive, boolean fsnOnly, String fileType, Boolean isReleased) throws IOException {
+		Charset encoding = useWindowsZipEncoding ? Charset.forName("windows-1252") : StandardCharsets.UTF_8;
+		try (ZipFile zipFile = new ZipFile(archive, encoding)) {
+			List<ArchiveEntry> entries = zipFile.stream()
+					.filter(ze -> !ze.isDirectory())
+					.map(ze -> {
+						Path path = Paths.get(ze.getName());
+						return new ArchiveEntry(path, () -> zipFile.getInputStream(ze));
+					})
+					.toList();
+			loadEntriesInParallel(entries, fsnOnly, fileType, isReleased);
+		} catch (ZipException e) {
+			//ZipFile reports undecodable entry names this way, where ZipInputStream would throw an
+			//IllegalArgumentException, so translate to allow loadArchive to retry with Windows encoding
+			if (!useWindowsZipEncoding) {
+				throw new IllegalArgumentException(e.getMessage(), e);
+			}
+			throw e;
+		}
+	}
+
+	private void loadArchiveDirectoryInParallel(File dir, boolean fsnOnly, String fileType, Boolean isReleased) throws IOException {
+		List<ArchiveEntry> entries;
+		try (Stream<Path> paths = Files.walk(dir.toPath())) {
+			entries = paths.filter(Files::isRegularFile)
+					.map(path -> new ArchiveEntry(path, () -> openFile(path)))
+					.toList();
+		}
+		loadEntriesInParallel(entries, fsnOnly, fileType, isReleased);
+	}
+
+	/**
+	 * Reads (and decompresses) files on background threads, while the files already read are
+	 * applied to the GraphLoader one at a time in LOAD_ORDER, so that concepts are known before the
+	 * components that reference them, and the "newer effectiveTime wins" rules see rows in the same
+	 * sequence regardless of how the archive happens to be laid out.  Each file is passed across
+	 * in chunks, and its reader waits while the chunks already read haven't been loaded.
+	 */
+	private void loadEntriesInParallel(List<ArchiveEntry> entries, boolean fsnOnly, String fileType, Boolean isReleased) throws IOException {
+		List<ArchiveEntry> toLoad = entries.stream()
+				.filter(e -> isCandidateFile(e.fileName(), fileType))
+				.sorted(LOAD_ORDER)
+				.toList();
+		LOGGER.info("Loading {} {} files with read-ahead of {}", toLoad.size(), fileType, PREFETCH_WINDOW);
+
+		//Tasks are started in the order submitted, so the file being loaded is always being read
+		ExecutorService executor = Executors.newFixedThreadPool(PREFETCH_THREADS);
+		try {
+			List<PrefetchedFile> prefetched = new ArrayList<>();
+			for (int i = 0; i < toLoad.size(); i++) {
+				while (prefetched.size() < toLoad.size() && prefetched.size() <= i + PREFETCH_WINDOW) {
+					PrefetchedFile file = new PrefetchedFile(toLoad.get(prefetched.size()));
+					executor.submit(file::readAhead);
+					prefetched.add(file);
+				}
+				ArchiveEntry entry = toLoad.get(i);
+				try (InputStream is = prefetched.get(i)) {
+					loadFile(entry.path(), is, fileType, fsnOnly, isReleased);
+				}
+				prefetched.set(i, null);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * A file being read on another thread, passed across a few chunks at a time
+	 */
+	private static class PrefetchedFile extends InputStream {
+		private static final byte[] END_OF_FILE = new byte[0];
+
+		private final ArchiveEntry entry;
+		private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(PREFETCH_CHUNKS_PER_FILE);
+		private volatile Exception readFailure;
+		private volatile boolean closed = false;
+		private byte[] chunk;
+		private int pos;
+
+		PrefetchedFile(ArchiveEntry entry) {
+			this.entry = entry;
+		}
+
+		private void readAhead() {
+			try (InputStream is = entry.opener().call()) {
+				byte[] buffer;
+				while (!closed && (buffer = is.readNBytes(PREFETCH_CHUNK_SIZE)).length > 0) {
+					chunks.put(buffer);
+				}
+				if (closed) {
+					return;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				readFailure = e;
+			}
+
+			try {
+				chunks.put(END_OF_FILE);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private boolean nextChunk() throws IOException {
+			while (chunk == null || pos == chunk.length) {
+				if (chunk == END_OF_FILE) {
+					return false;
+				}
+				try {
+					chunk = chunks.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while reading " + entry.path(), e);
+				}
+				pos = 0;
+				if (chunk == END_OF_FILE && readFailure != null) {
+					throw toIOException(readFailure);
+				}
+			}
+			return true;
+		}
+
+		private IOException toIOException(Exception e) {
+			if (e instanceof IOException ioe) {
+				return ioe;
+			} else if (e instanceof IllegalArgumentException iae) {
+				//Undecodable zip entry names, which loadArchive retries with Windows encoding
+				throw iae;
+			}
+			return new IOException("Failed to read " + entry.path() + " due to " + e.getMessage(), e);
+		}
+
+		/**
+		 * Files are not always read to the end eg when they're skipped, so let the reader stop
+		 * rather than wait for space that will never be made
+		 */
+		@Override
+		public void close() {
+			closed = true;
+			chunks.clear();
+		}
+
+		@Override
+		public int read() throws IOException {
+			return nextChunk() ? chunk[pos++] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!nextChunk()) {
+				return -1;
+			}
+			int count = Math.min(len, chunk.length - pos);
+			System.arraycopy(chunk, pos, b, off, count);
+			pos += count;
+			return count;
+		}
+	}
+
+	private static InputStream openFile(Path path) throws IOException {
+		return Files.newInputStream(path);
+	}
+
+	private static boolean isCandidateFile(String fileName, String fileType) {
+		//Skip zip file artifacts, and anything that isn't of the type we're loading eg Full files in an edition
+		return !fileName.contains("._") && fileName.contains(fileType);
+	}
+
+	private static int getLoadOrder(String fileName) {
+		if (fileName.contains("sct2_Concept_")) {
+			return 0;
+		} else if (fileName.contains("sct2_Description_") || fileName.contains("sct2_TextDefinition_")) {
+			return 1;
+		} else if (fileName.contains("sct2_Relationship")) {
+			return 2;
+		} else if (fileName.contains("sct2_sRefset_OWL")) {
+			return 3;
+		} else if (fileName.contains("English") || fileName.contains("Language")) {
+			return 4;
+		}
+		return 5;
+	}
+
+	private record ArchiveEntry(Path path, Callable<InputStream> opener) {
+		String fileName() {
+			return path.getFileName().toString();
+		}
+	}
+
 	private InputStream toInputStream(Path path) {
 		InputStream is;
 		try {
-			is = new BufferedInputStream(Files.newInputStream(path));
+			is = new BufferedInputStream(openFile(path));
 		} catch (IOException e) {
 			throw new IllegalStateException("Unable to load " + path, e);
 		}
@@ -147,15 +465,15 @@ public class ArchiveImporter implements ScriptConstants {
 	private void loadFile(Path path, InputStream is, String fileType, boolean fsnOnly, Boolean isReleased)  {
 		try {
 			String fileName = path.getFileName().toString();
-			//Skip zip file artifacts
-			if (fileName.contains("._")) {
+			if (!isCandidateFile(fileName, fileType) || (skipBinaryContent && isBinaryContentFile(fileName))) {
 				return;
 			}
 
-			if (fileName.contains(fileType)
-					&& !loadContentFile(is, fileName, fileType, isReleased, fsnOnly)) {
+			long startTime = System.currentTimeMillis();
+			if (!loadContentFile(is, fileName, fileType, isReleased, fsnOnly)) {
 				loadReferenceSetFile(is, fileName, fileType, isReleased, fsnOnly);
 			}
+			LOGGER.info("Processed {} in {}ms", fileName, System.currentTimeMillis() - startTime);
 		} catch (TermServerScriptException | IOException e) {
 			throw new IllegalStateException("Unable to load " + path + " due to " + e.getMessage(), e);
 		}
@@ -254,6 +572,40 @@ public class ArchiveImporter implements ScriptConstants {
 		return true;
 	}
 
+	void setCacheSnapshotLocation(File cacheSnapshotLocation) {
+		this.cacheSnapshotLocation = cacheSnapshotLocation;
+	}
+
+	/**
+	 * @return the id of every row in the RF2 files of the given archive
+	 */
+	static Set<String> readComponentIds(File archive) throws TermServerScriptException {
+		Set<String> ids = new HashSet<>();
+		try (ZipFile zipFile = new ZipFile(archive)) {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry ze = entries.nextElement();
+				String fileName = Path.of(ze.getName()).getFileName().toString();
+				if (ze.isDirectory() || !fileName.endsWith(".txt") || !(fileName.startsWith("sct2_") || fileName.startsWith("der2_"))) {
+					continue;
+				}
+				try (BufferedReader br = new BufferedReader(new InputStreamReader(zipFile.getInputStream(ze), StandardCharsets.UTF_8))) {
+					//Skip the header
+					String line = br.readLine();
+					while ((line = br.readLine()) != null) {
+						int tab = line.indexOf('\t');
+						if (tab > 0) {
+							ids.add(line.substring(0, tab));
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new TermServerScriptException("Unable to read component ids from " + archive, e);
+		}
+		return ids;
+	}
+
 	public void writeSnapshotToCache(TermServerScript ts, String defaultModuleId) throws TermServerScriptException {
 		//Writing to disk can be done asynchronously and complete at any time.  We have the in-memory copy to work with.
 		//The disk copy will save time when we run again for the same project
@@ -263,6 +615,16 @@ public class ArchiveImporter implements ScriptConstants {
 		if (!skipSave) {
 			ArchiveWriter as = new ArchiveWriter(ts, cacheSnapshotLocation);
 			as.init(defaultModuleId);
+			if (config.isUseBinarySnapshotCache()) {
+				as.writeBinarySnapshot();
+			} else {
+				//Any binary copy left from an earlier run no longer matches the RF2 about to be written
+				try {
+					Files.deleteIfExists(BinarySnapshotFormat.getBinarySnapshotFile(cacheSnapshotLocation).toPath());
+				} catch (IOException e) {
+					LOGGER.warn("Unable to remove outdated binary copy of {}: {}", cacheSnapshotLocation, e.getMessage());
+				}
+			}
 
 			if (runAsynchronously) {
 				new Thread(as).start();
@@ -1,6 +1,7 @@
 package org.ihtsdo.termserver.scripting.snapshot;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -11,6 +12,7 @@ import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Metadata;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Project;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.TermServerLocation;
 import org.ihtsdo.otf.utils.ExceptionUtils;
@@ -61,6 +63,11 @@ public class ArchiveManager implements ScriptConstants {
 	);
 	
 	private Project currentlyHeldInMemory;
+	//The release loaded beneath currentlyHeldInMemory, when loading dependency plus extension
+	private String dependencyHeldInMemory;
+	//The release packages beneath currentlyHeldInMemory, so we know if the branch has since been rebased
+	private String releaseBaseHeldInMemory;
+	private List<IntegrityFinding> integrityFindings = Collections.emptyList();
 
 	ZoneId utcZoneID= ZoneId.of("Etc/UTC");
 
@@ -117,6 +124,13 @@ public class ArchiveManager implements ScriptConstants {
 		return systemInitialised;
 	}
 
+	/**
+	 * @return the project whose snapshot is currently loaded, or null if nothing is held
+	 */
+	public static Project getProjectHeldInMemory() {
+		return singleton == null ? null : singleton.currentlyHeldInMemory;
+	}
+
 	private ArchiveManager () {
 		//Only access via singleton above
 	}
@@ -130,6 +144,25 @@ public class ArchiveManager implements ScriptConstants {
 		config.setLoadOtherReferenceSets(loadOtherReferenceSets);
 	}
 
+	public boolean isParallelImport() {
+		return config.isParallelImport();
+	}
+
+	public void setParallelImport(boolean parallelImport) {
+		LOGGER.info("Setting parallelImport to {}", parallelImport);
+		config.setParallelImport(parallelImport);
+	}
+
+	public void setUseBinarySnapshotCache(boolean useBinarySnapshotCache) {
+		LOGGER.info("Setting useBinarySnapshotCache to {}", useBinarySnapshotCache);
+		config.setUseBinarySnapshotCache(useBinarySnapshotCache);
+	}
+
+	public void setIncrementalRefresh(boolean incrementalRefresh) {
+		LOGGER.info("Setting incrementalRefresh to {}", incrementalRefresh);
+		config.setIncrementalRefresh(incrementalRefresh);
+	}
+
 	protected Branch loadBranch(Project project) throws TermServerScriptException {
 		String branchPath = project.getBranchPath();
 		String server = "unknown";
@@ -233,29 +266,37 @@ public class ArchiveManager implements ScriptConstants {
 	}
 
 	public void loadSnapshot(boolean fsnOnly) throws TermServerScriptException {
+		long usedHeapBefore = GraphLoader.getUsedHeap();
 		boolean writeSnapshotToCache = false;
 		ArchiveImporter archiveImporter = new ArchiveImporter(gl, config);
 		try {
+			if (!config.isLoadDependencyPlusExtensionArchive()) {
+				dependencyHeldInMemory = null;
+			}
 			if (config.isLoadDependencyPlusExtensionArchive()) {
 				if (StringUtils.isEmpty(ts.getDependencyArchive())) {
 					throw new TermServerScriptException("Told to load dependency + extension but no dependency package specified");
+				} else if (ts.getDependencyArchive().equals(dependencyHeldInMemory) && ts.getProject().equals(currentlyHeldInMemory)) {
+					//Leaving currentlyHeldInMemory set means the extension won't be reloaded either
+					LOGGER.info("{} over dependency {} already held in memory", ts.getProject(), dependencyHeldInMemory);
 				} else {
 					LOGGER.info("Loading dependency plus extension archives");
+					//Any extension loaded before has been applied to the base's own concepts, so the base can't be
+					//kept in memory.  It comes back from its binary copy instead, as long as that cache is in use
 					gl.reset();
+					dependencyHeldInMemory = null;
 					File dependency = new File("releases", ts.getDependencyArchive());
-					if (dependency.exists()) {
-						archiveImporter.loadArchive(dependency, fsnOnly, SNAPSHOT, true);
-					} else {
+					if (!dependency.exists()) {
 						//Can we find it in S3?
 						String cwd = new File("").getAbsolutePath();
 						LOGGER.info("Dependency Archive {} not found locally in {}, attempting to download from S3.", ts.getDependencyArchive(), cwd);
 						getArchiveDataLoader().download(dependency);
-						if (dependency.exists()) {
-							archiveImporter.loadArchive(dependency, fsnOnly, SNAPSHOT, true);
-						} else {
+						if (!dependency.exists()) {
 							throw new TermServerScriptException("Dependency Package " + dependency.getAbsolutePath() + " does not exist and was not recovered from S3.");
 						}
 					}
+					archiveImporter.loadBaseArchive(dependency, fsnOnly);
+					dependencyHeldInMemory = ts.getDependencyArchive();
 					//Now let's not pretend we're holding anything in memory at this point, because we still have to load in
 					//the extension before we have that.
 					currentlyHeldInMemory = null;
@@ -304,10 +345,15 @@ public class ArchiveManager implements ScriptConstants {
 				}
 			}
 
-			if (!snapshot.exists() ||
+			boolean regenerate = !snapshot.exists() ||
 					(isStale && !config.isAllowStaleData()) ||
 					((config.isEnsureSnapshotPlusDeltaLoad() || config.isPopulateReleaseFlag()) && !config.isLoadEditionArchive()) ||
-					(config.isPopulatePreviousTransitiveClosure() && gl.getPreviousTC() == null)) {
+					(config.isPopulatePreviousTransitiveClosure() && gl.getPreviousTC() == null);
+
+			//If we already hold this project, we may be able to bring it up to date rather than start again
+			if (regenerate && canRefreshInMemory() && refreshInMemory(fsnOnly, snapshot, archiveImporter)) {
+				writeSnapshotToCache = true;
+			} else if (regenerate) {
 				
 				if ((config.isEnsureSnapshotPlusDeltaLoad() || config.isPopulateReleaseFlag()) && !config.isLoadEditionArchive()) {
 					LOGGER.info("Generating fresh snapshot because 'ensureSnapshotPlusDeltaLoad' or 'populateReleaseFlag' is set, and not loading from edition archive");
@@ -341,7 +387,9 @@ public class ArchiveManager implements ScriptConstants {
 						writeSnapshotToCache = true;
 						config.setPopulateReleaseFlag(true);
 					} else {
-						loadSnapshotArchiveIntoMemory(fsnOnly, snapshot, archiveImporter);
+						loadSnapshotArchiveIntoMemory(fsnOnly, snapshot, branch, archiveImporter);
+						//Only if we've checked the snapshot isn't stale can we be sure what it was built on
+						releaseBaseHeldInMemory = config.isIncrementalRefresh() && branch != null ? getCurrentReleaseBase(ts.getProject()) : null;
 					}
 				}
 			}
@@ -369,6 +417,8 @@ public class ArchiveManager implements ScriptConstants {
 		gl.getAllConcepts().stream()
 			.flatMap(c -> SnomedUtils.getAllComponents(c, true).stream())
 			.forEach(Component::setClean);
+
+		gl.outputHeapSummary(ts.getProject().getKey(), usedHeapBefore);
 	}
 
 	private void downloadSnapshot(File snapshot) {
@@ -382,7 +432,7 @@ public class ArchiveManager implements ScriptConstants {
 		}
 	}
 
-	private void loadSnapshotArchiveIntoMemory(boolean fsnOnly, File snapshot, ArchiveImporter archiveImporter) throws TermServerScriptException {
+	private void loadSnapshotArchiveIntoMemory(boolean fsnOnly, File snapshot, Branch branch, ArchiveImporter archiveImporter) throws TermServerScriptException {
 		LOGGER.info("Loading snapshot archive contents into memory: {}", snapshot);
 		try {
 			//This archive is 'current state' so we can't know what is released or not
@@ -390,7 +440,15 @@ public class ArchiveManager implements ScriptConstants {
 			config.setPopulateReleaseFlag(config.isLoadEditionArchive());
 			//We only know if the components are released when loading an edition archive
 			Boolean isReleased = config.isLoadEditionArchive() ? true : null;
-			archiveImporter.loadArchive(snapshot, fsnOnly, SNAPSHOT, isReleased);
+			BinarySnapshotReader binarySnapshot = openBinarySnapshotIfCurrent(snapshot, branch);
+			if (binarySnapshot != null) {
+				LOGGER.info("Loading binary copy of snapshot: {}", snapshot);
+				try (binarySnapshot) {
+					archiveImporter.loadBinarySnapshot(binarySnapshot, fsnOnly, isReleased);
+				}
+			} else {
+				archiveImporter.loadArchive(snapshot, fsnOnly, SNAPSHOT, isReleased);
+			}
 		} catch (UnrecoverableTermServerScriptException unrecoverable) {
 			throw unrecoverable;
 		} catch (Exception e) {
@@ -398,6 +456,7 @@ public class ArchiveManager implements ScriptConstants {
 			if (!snapshot.getPath().startsWith(RELEASES_SLASH)) {
 				LOGGER.info("Deleting {}", snapshot);
 				try {
+					Files.deleteIfExists(BinarySnapshotFormat.getBinarySnapshotFile(snapshot).toPath());
 					if (snapshot.isFile()) {
 						snapshot.delete();
 					} else if (snapshot.isDirectory()) {
@@ -420,7 +479,29 @@ public class ArchiveManager implements ScriptConstants {
 		}
 	}
 
+	/**
+	 * @return a reader for the binary copy of the given snapshot if there is one, it's in the current
+	 * format and it's no older than the branch head, otherwise null so the RF2 will be loaded instead.
+	 */
+	private BinarySnapshotReader openBinarySnapshotIfCurrent(File snapshot, Branch branch) {
+		File binarySnapshot = BinarySnapshotFormat.getBinarySnapshotFile(snapshot);
+		if (!config.isUseBinarySnapshotCache() || !binarySnapshot.exists()) {
+			return null;
+		}
+		try {
+			if (branch != null && !config.isAllowStaleData() && checkIsStale(branch, binarySnapshot)) {
+				LOGGER.warn("Binary snapshot {} is stale, loading RF2 instead", binarySnapshot);
+				return null;
+			}
+			return new BinarySnapshotReader(binarySnapshot);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to use binary snapshot {}, loading RF2 instead: {}", binarySnapshot, e.getMessage());
+			return null;
+		}
+	}
+
 	private void checkIntegrity(boolean fsnOnly) throws TermServerScriptException {
+		integrityFindings = Collections.emptyList();
 		if (gl.getAllConcepts().size() < 300000) {
 			throw new TermServerScriptException("Insufficient number of concepts loaded " + gl.getAllConcepts().size() + " - Snapshot archive damaged?");
 		}
@@ -428,41 +509,35 @@ public class ArchiveManager implements ScriptConstants {
 		if (isRunIntegrityChecks()) {
 			//Ensure that every active parent other than root has at least one parent in both views
 			LOGGER.debug("Ensuring all concepts have parents and depth if required.");
-			StringBuilder integrityFailureMessage = new StringBuilder();
-			//We need a separate copy of all concepts because we might modify it in passing if we encounter a phantom concept
-			for (Concept c : new ArrayList<>(gl.getAllConcepts())) {
-				if (integrityCheckIgnoreList.contains(c.getId())) {
-					continue;
-				}
-				
-				checkForPhantomConcept(c, integrityFailureMessage);
-
-				if (c.isActiveSafely() && !c.equals(ROOT_CONCEPT)) {
-					checkParentalIntegrity(c, CharacteristicType.INFERRED_RELATIONSHIP, integrityFailureMessage);
-					if (config.isExpectStatedParents()) {
-						checkParentalIntegrity(c, CharacteristicType.STATED_RELATIONSHIP, integrityFailureMessage);
-					}
-				} else if (!c.isActiveSafely()) {
-					if (!c.getParents(CharacteristicType.INFERRED_RELATIONSHIP).isEmpty()) {
-						integrityFailureMessage.append(c + " is inactive but has inferred parents.");
-					}
-					
-					if (!c.getChildren(CharacteristicType.INFERRED_RELATIONSHIP).isEmpty()) {
-						integrityFailureMessage.append(c + " is inactive but has inferred children.");
-					}
+			long startTime = System.currentTimeMillis();
+			SnapshotIntegrityChecker checker = new SnapshotIntegrityChecker(integrityCheckIgnoreList, config.isExpectStatedParents(), config.isPopulateHierarchyDepth());
+			List<IntegrityFinding> findings = new ArrayList<>();
+			//Any follow up is done here, one at a time, as it may modify the concepts held
+			for (IntegrityFinding finding : checker.check(gl.getAllConcepts())) {
+				if (finding.type() == IntegrityFinding.Type.PHANTOM_CONCEPT) {
+					finding = resolvePhantomConcept(finding.concept());
+				} else if (finding.type() == IntegrityFinding.Type.FAILED_DEPTH) {
+					String ancestorStr = finding.concept().getAncestors(NOT_SET).stream().map(Concept::toString).collect(Collectors.joining(","));
+					LOGGER.warn("{} ancestors are : {}", finding.concept(), ancestorStr);
 				}
-				
-				if (config.isPopulateHierarchyDepth() && c.isActiveSafely() && c.getDepth() == NOT_SET) {
-					if (!integrityFailureMessage.isEmpty()) {
-						integrityFailureMessage.append(",\n");
-					}
-					integrityFailureMessage.append(c).append(" failed to populate depth");
-					String ancestorStr = c.getAncestors(NOT_SET).stream().map(Concept::toString).collect(Collectors.joining(","));
-					LOGGER.warn("{} ancestors are : {}", c, ancestorStr);
+				if (finding != null) {
+					findings.add(finding);
 				}
 			}
-			if (!integrityFailureMessage.isEmpty()) {
-				throw new UnrecoverableTermServerScriptException(integrityFailureMessage.toString());
+			integrityFindings = findings;
+			LOGGER.info("Integrity check completed in {}ms with {} findings", System.currentTimeMillis() - startTime, findings.size());
+			//If the check stopped early, there's more wrong than we've been told about
+			if (!findings.isEmpty() || checker.isTruncated()) {
+				Map<IntegrityFinding.Type, Long> countByType = findings.stream()
+						.collect(Collectors.groupingBy(IntegrityFinding::type, () -> new EnumMap<>(IntegrityFinding.Type.class), Collectors.counting()));
+				LOGGER.error("Integrity check failed: {}{}", countByType, checker.isTruncated() ? " (stopped early)" : "");
+				String integrityFailureMessage = findings.stream()
+						.map(IntegrityFinding::detail)
+						.collect(Collectors.joining(",\n"));
+				if (checker.isTruncated()) {
+					integrityFailureMessage += ",\n...stopped after " + SnapshotIntegrityChecker.MAX_FINDINGS + " findings";
+				}
+				throw new UnrecoverableTermServerScriptException(integrityFailureMessage);
 			}
 			LOGGER.info("Integrity check passed.  All concepts have at least one stated and one inferred active parent");
 		}
@@ -483,29 +558,28 @@ public class ArchiveManager implements ScriptConstants {
 		}
 	}
 
-	private void checkForPhantomConcept(Concept c, StringBuilder integrityFailureMessage) {
-		if (c.getActive() == null) {
-			//Now SOMETHING had a reference to this concept, so let's try and work out what and
-			//report that, rather than talk about a concept that doesn't exist
-			String msg = determineSourceofPhantomConcept(c);
-			if (ts.getDependencyArchive() != null) {
-				msg += ". Check dependency is appropriate - " + ts.getDependencyArchive();
-			}
-			//Now if we've imported all reference sets and we've got a phantom concept that's coming from an
-			//inactive referenceset member, then we're just going to report that as a "final word" rather than
-			//bomb out the entire report
-			if (config.isLoadOtherReferenceSets() && msg.contains("*RM")) {
-				LOGGER.warn("Recording final words rather than throwing exception: {}", msg);
-				ts.addFinalWords(msg);
-				//And we're going to remove this concept so that we don't trip over it again
-				ts.getGraphLoader().removeConcept(c);
-			} else {
-				if (!integrityFailureMessage.isEmpty()) {
-					integrityFailureMessage.append(",\n");
-				}
-				integrityFailureMessage.append(msg);
-			}
+	/**
+	 * @return the finding for a concept that was referenced but never loaded, or null if it has been
+	 * recorded as final words and removed instead
+	 */
+	private IntegrityFinding resolvePhantomConcept(Concept c) {
+		//Now SOMETHING had a reference to this concept, so let's try and work out what and
+		//report that, rather than talk about a concept that doesn't exist
+		String msg = determineSourceofPhantomConcept(c);
+		if (ts.getDependencyArchive() != null) {
+			msg += ". Check dependency is appropriate - " + ts.getDependencyArchive();
+		}
+		//Now if we've imported all reference sets and we've got a phantom concept that's coming from an
+		//inactive referenceset member, then we're just going to report that as a "final word" rather than
+		//bomb out the entire report
+		if (config.isLoadOtherReferenceSets() && msg.contains("*RM")) {
+			LOGGER.warn("Recording final words rather than throwing exception: {}", msg);
+			ts.addFinalWords(msg);
+			//And we're going to remove this concept so that we don't trip over it again
+			ts.getGraphLoader().removeConcept(c);
+			return null;
 		}
+		return new IntegrityFinding(IntegrityFinding.Type.PHANTOM_CONCEPT, c, msg);
 	}
 
 	private String determineSourceofPhantomConcept(Concept c) {
@@ -554,7 +628,7 @@ public class ArchiveManager implements ScriptConstants {
 
 	private boolean checkIsStale(Branch branch, File snapshot) throws IOException {
 		Date branchHeadTime = new Date(branch.getHeadTimestamp());
-		BasicFileAttributes attr = java.nio.file.Files.readAttributes(snapshot.toPath(), BasicFileAttributes.class);
+		BasicFileAttributes attr = Files.readAttributes(snapshot.toPath(), BasicFileAttributes.class);
 		LocalDateTime snapshotCreation = LocalDateTime.ofInstant(Instant.ofEpochMilli(attr.creationTime().toMillis()), ZoneId.systemDefault());
 		//What timezone is that in?
 		TimeZone localZone = TimeZone.getDefault();
@@ -565,14 +639,70 @@ public class ArchiveManager implements ScriptConstants {
 		return branchHeadUTC.compareTo(snapshotCreationUTC) > 0;
 	}
 
-	private void generateSnapshot(Project project, ArchiveImporter archiveImporter) throws TermServerScriptException, IOException {
-		File snapshot = getSnapshotPath();
-		//Delete the current snapshot if it exists - will be stale
+	private boolean canRefreshInMemory() {
+		return config.isIncrementalRefresh()
+				&& currentlyHeldInMemory != null && currentlyHeldInMemory.equals(ts.getProject())
+				&& !config.isLoadEditionArchive() && !config.isLoadDependencyPlusExtensionArchive()
+				//If the 'released' flag is needed, what we hold must have been generated with it
+				&& (!config.isEnsureSnapshotPlusDeltaLoad() || config.isPopulateReleaseFlag())
+				&& !(config.isPopulatePreviousTransitiveClosure() && gl.getPreviousTC() == null);
+	}
+
+	/**
+	 * Brings the project held in memory up to date by loading the current unpublished delta over it,
+	 * in the same way that a snapshot is generated from the previous release plus that delta.
+	 * A delta can only add or change components, so if anything unpublished that we hold is missing
+	 * from it - deleted, or reverted to its released state - we have to load from scratch instead.
+	 * @return true if the refresh was applied, false if a full load is required
+	 */
+	private boolean refreshInMemory(boolean fsnOnly, File snapshot, ArchiveImporter archiveImporter) throws TermServerScriptException, IOException {
+		long startTime = System.currentTimeMillis();
+		String currentReleaseBase = getCurrentReleaseBase(ts.getProject());
+		if (releaseBaseHeldInMemory == null || !releaseBaseHeldInMemory.equals(currentReleaseBase)) {
+			//Anything in the new release that isn't in what we hold would never appear in the delta
+			LOGGER.info("{} now based on {} rather than {}, full reload required", ts.getProject(), currentReleaseBase, releaseBaseHeldInMemory);
+			return false;
+		}
+
+		LOGGER.info("{} already held in memory, refreshing from unpublished delta", ts.getProject());
+		File delta = generateDelta(ts.getProject());
+		Set<String> deltaIds = ArchiveImporter.readComponentIds(delta);
+		for (Concept c : gl.getAllConcepts()) {
+			for (Component component : SnomedUtils.getAllComponents(c, false)) {
+				if (component.getId() != null && StringUtils.isEmpty(component.getEffectiveTime())
+						&& !deltaIds.contains(component.getId())) {
+					LOGGER.info("Unpublished component {} no longer in delta, full reload required", component.getId());
+					return false;
+				}
+			}
+		}
+
+		archiveImporter.loadArchive(delta, fsnOnly, DELTA, config.isPopulateReleaseFlag() ? Boolean.FALSE : null);
+		gl.finalizeMRCM();
+		gl.invalidateDerivedData();
+		//As when what we hold is reused as is, clear anything left against components by the previous job
+		gl.makeReady();
+
+		//What we hold is now more recent than the snapshot on disk, so that will be rewritten
+		deleteSnapshot(snapshot);
+		archiveImporter.setCacheSnapshotLocation(snapshot);
+		LOGGER.info("Applied delta of {} components to {} in {}ms", deltaIds.size(), ts.getProject(), System.currentTimeMillis() - startTime);
+		return true;
+	}
+
+	private void deleteSnapshot(File snapshot) throws IOException {
 		if (snapshot.isDirectory()) {
 			FileUtils.deleteDirectory(snapshot);
 		} else {
-			java.nio.file.Files.deleteIfExists(snapshot.toPath());
+			Files.deleteIfExists(snapshot.toPath());
 		}
+		Files.deleteIfExists(BinarySnapshotFormat.getBinarySnapshotFile(snapshot).toPath());
+	}
+
+	private void generateSnapshot(Project project, ArchiveImporter archiveImporter) throws TermServerScriptException, IOException {
+		File snapshot = getSnapshotPath();
+		//Delete the current snapshot if it exists - will be stale
+		deleteSnapshot(snapshot);
 		
 		ensureProjectMetadataPopulated(project);
 	
@@ -584,6 +714,20 @@ public class ArchiveManager implements ScriptConstants {
 		//Now we need a recent delta to add to it
 		File delta = generateDelta(project);
 		archiveImporter.generateSnapshot(dependency, previous, delta, snapshot);
+		releaseBaseHeldInMemory = getReleaseBase(project.getMetadata());
+	}
+
+	/**
+	 * @return the release packages the project's branch is currently based on, as recovered afresh from the TS
+	 */
+	private String getCurrentReleaseBase(Project project) throws TermServerScriptException {
+		Project current = new Project().withBranchPath(project.getBranchPath());
+		ensureProjectMetadataPopulated(current);
+		return getReleaseBase(current.getMetadata());
+	}
+
+	private static String getReleaseBase(Metadata metadata) {
+		return metadata.getPreviousPackage() + " + " + metadata.getDependencyPackage();
 	}
 
 	private File determineDependencyIfRequired(Project project) throws TermServerScriptException {
@@ -712,53 +856,11 @@ public class ArchiveManager implements ScriptConstants {
 
 
 
-	private void checkParentalIntegrity(Concept c, CharacteristicType charType, StringBuilder integrityFailureMessage) {
-		Set<Concept> parents = c.getParents(charType);
-		if (parents.isEmpty()) {
-			if (!integrityFailureMessage.isEmpty()) {
-				integrityFailureMessage.append(",\n");
-			}
-			integrityFailureMessage.append(c).append(" has no ").append(charType).append(" parents.");
-		}
-		
-		for (Concept parent : parents) {
-			checkForPhantomConcept(parent, integrityFailureMessage);
-			if (!parent.isActiveSafely()) {
-				if (!integrityFailureMessage.isEmpty()) {
-					integrityFailureMessage.append(",\n");
-				}
-				integrityFailureMessage.append(c).append(" has inactive ").append(charType).append(" parent: ").append(parent);
-			}
-		}
-
-		//Check that we've captured those parents correctly
-		//Looping through existing objects rather than calling getRelationships so we're 
-		//not creating new collections.   getRelationships does all the looping anyway, so no cheaper.
-		int parentRelCount = 0;
-		for (Relationship r : c.getRelationships()) {
-			if (r.isActiveSafely() && r.getCharacteristicType().equals(charType)
-					&& r.getType().equals(IS_A)) {
-				parentRelCount++;
-				if (!parents.contains(r.getTarget())) {
-					if (!integrityFailureMessage.isEmpty()) {
-						integrityFailureMessage.append(",\n");
-					}
-					integrityFailureMessage.append(c + " has internal " + charType + " inconsistency between parents and parental relationship for parent " + r.getTarget());
-				}
-			}
-		}
-		
-		if (parentRelCount != parents.size()) {
-			//Trying for minimal memory allocations here, so only check for duplicate targets between 
-			//axioms if we detect a problem
-			Set<Concept> parentsFromRels = SnomedUtils.getTargets(c, new Concept[] {IS_A}, charType);
-			if (parentsFromRels.size() != parents.size()) {
-				if (!integrityFailureMessage.isEmpty()) {
-					integrityFailureMessage.append(",\n");
-				}
-				integrityFailureMessage.append(c + " has internal " + charType + " inconsistency between parents (" + parents.size() + ") and parental relationship count (" + parentsFromRels.size() + ").");
-			}
-		}
+	/**
+	 * @return the findings of the last integrity check, empty if it passed or wasn't run
+	 */
+	public List<IntegrityFinding> getIntegrityFindings() {
+		return integrityFindings;
 	}
 
 	public boolean isAllowStaleData() {
@@ -827,6 +929,8 @@ public class ArchiveManager implements ScriptConstants {
 		
 		gl.reset();
 		currentlyHeldInMemory = null;
+		dependencyHeldInMemory = null;
+		releaseBaseHeldInMemory = null;
 		config.reset();
 	}
 
@@ -9,12 +9,25 @@ import org.ihtsdo.termserver.scripting.util.SnomedUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.*;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.*;
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Writes the in-memory snapshot out as RF2, so that it can be reloaded next time rather than
+ * being rebuilt.  Concepts are split into partitions which are worked through in parallel, each
+ * building up blocks of rows per file and handing each block to the script's RF2Manager as it
+ * fills, so the order of rows within a file is not significant.
+ */
 public class ArchiveWriter implements Runnable, RF2Constants {
 	private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveWriter.class);
+
+	//Rows are appended to the file once a partition has built up this many characters of them
+	private static final int BLOCK_SIZE = 256 * 1024;
+	private static final int CONCEPTS_PER_PARTITION = 10_000;
 	private TermServerScript ts;
 	private String moduleId;
 
@@ -49,7 +62,8 @@ public class ArchiveWriter implements Runnable, RF2Constants {
 	protected String[] altIdHeader = new String[] {"alternateIdentifier",COL_EFFECTIVE_TIME,COL_ACTIVE,COL_MODULE_ID,"identifierSchemeId",COL_REFERENCED_COMPONENT_ID};
 	protected String[] annotHeader = new String[] {COL_ID,COL_EFFECTIVE_TIME,COL_ACTIVE,COL_MODULE_ID,COL_REFSET_ID,COL_REFERENCED_COMPONENT_ID,"languageDialectCode",COL_TYPE_ID,"value"};
 
-	private int conceptsWrittenToDisk = 0;
+	private final List<String> outputFileNames = new ArrayList<>();
+	private final AtomicInteger conceptsWrittenToDisk = new AtomicInteger();
 
 	ArchiveWriter(TermServerScript ts, File outputDirFile) {
 		this.ts = ts;
@@ -74,43 +88,49 @@ public class ArchiveWriter implements Runnable, RF2Constants {
 		String termDir = packageDir +"Snapshot/Terminology/";
 		String refDir =  packageDir +"Snapshot/Refset/";
 		conSnapshotFilename = termDir + "sct2_Concept_Snapshot_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(conSnapshotFilename, conHeader);
+		writeHeader(conSnapshotFilename, conHeader);
 
 		relSnapshotFilename = termDir + "sct2_Relationship_Snapshot_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(relSnapshotFilename, relHeader);
+		writeHeader(relSnapshotFilename, relHeader);
 
 		relConcreteFilename = termDir + "sct2_RelationshipConcreteValues_Snapshot_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(relConcreteFilename, relConcreteHeader);
+		writeHeader(relConcreteFilename, relConcreteHeader);
 
 		sRelSnapshotFilename = termDir + "sct2_StatedRelationship_Snapshot_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(sRelSnapshotFilename, relHeader);
+		writeHeader(sRelSnapshotFilename, relHeader);
 
 		descSnapshotFilename = termDir + "sct2_Description_Snapshot-"+languageCode+"_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(descSnapshotFilename, descHeader);
+		writeHeader(descSnapshotFilename, descHeader);
 
 		langSnapshotFilename = refDir + "Language/der2_cRefset_LanguageSnapshot-"+languageCode+"_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(langSnapshotFilename, langHeader);
+		writeHeader(langSnapshotFilename, langHeader);
 
 		attribValSnapshotFilename = refDir + "Content/der2_cRefset_AttributeValueSnapshot_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(attribValSnapshotFilename, attribValHeader);
+		writeHeader(attribValSnapshotFilename, attribValHeader);
 
 		assocSnapshotFilename = refDir + "Content/der2_cRefset_AssociationSnapshot_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(assocSnapshotFilename, assocHeader);
+		writeHeader(assocSnapshotFilename, assocHeader);
 
 		owlSnapshotFilename = termDir + "sct2_sRefset_OWLExpressionSnapshot_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(owlSnapshotFilename, owlHeader);
+		writeHeader(owlSnapshotFilename, owlHeader);
 
 		altIdSnapshotFilename = termDir + "sct2_Identifier_Snapshot_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(altIdSnapshotFilename, altIdHeader);
+		writeHeader(altIdSnapshotFilename, altIdHeader);
 
 		annotSnapshotFilename = refDir + "Metadata/der2_sscsRefset_MemberAnnotationStringValueSnapshot_"+edition+"_" + today + ".txt";
-		ts.writeToRF2File(annotSnapshotFilename, annotHeader);
+		writeHeader(annotSnapshotFilename, annotHeader);
 		ts.getRF2Manager().flushFiles(false);
 	}
 
+	private void writeHeader(String fileName, String[] header) throws TermServerScriptException {
+		outputFileNames.add(fileName);
+		ts.writeToRF2File(fileName, header);
+	}
+
 	public void run() {
 		LOGGER.debug("Writing RF2 Snapshot to disk{}", (leaveArchiveUncompressed ? "." : " and compressing."));
-		conceptsWrittenToDisk = 0;
+		conceptsWrittenToDisk.set(0);
+		long startTime = System.currentTimeMillis();
 		try {
 			//Tell our parent that a child is working so it doesn't try and
 			//start processing something else.
@@ -120,7 +140,7 @@ public class ArchiveWriter implements Runnable, RF2Constants {
 			if (!leaveArchiveUncompressed) {
 				SnomedUtils.createArchive(new File(outputDirName));
 			}
-			LOGGER.debug("Completed writing RF2 Snapshot ({} concepts) to disk", conceptsWrittenToDisk);
+			LOGGER.debug("Completed writing RF2 Snapshot ({} concepts) to disk in {}ms", conceptsWrittenToDisk.get(), System.currentTimeMillis() - startTime);
 		} catch (Exception e) {
 			LOGGER.error("Failed to write archive to disk", e);
 		} finally {
@@ -128,58 +148,93 @@ public class ArchiveWriter implements Runnable, RF2Constants {
 		}
 	}
 
+	/**
+	 * Writes the binary copy of the snapshot alongside the RF2.  Unlike the RF2 this is not done in
+	 * the background, so that what's written is the content as loaded rather than whatever state it
+	 * has reached by the time a background thread gets to it.
+	 */
+	void writeBinarySnapshot() {
+		//The binary copy is only an accelerator.  If it fails, we still have the RF2.
+		File binarySnapshot = BinarySnapshotFormat.getBinarySnapshotFile(new File(outputDirName));
+		try {
+			new BinarySnapshotWriter(binarySnapshot).write(ts.getGraphLoader(), moduleId);
+		} catch (Exception e) {
+			LOGGER.error("Failed to write binary snapshot {}", binarySnapshot, e);
+			try {
+				Files.deleteIfExists(binarySnapshot.toPath());
+			} catch (Exception e2) {
+				LOGGER.error("Failed to remove incomplete binary snapshot {}", binarySnapshot, e2);
+			}
+		}
+	}
 
 	private void outputRF2() throws TermServerScriptException {
-		//Create new collection in case some other process looks at a new concept
-		Set<Concept> allConcepts = new HashSet<>(ts.getGraphLoader().getAllConcepts());
-		for (Concept thisConcept : allConcepts) {
-			outputRF2(thisConcept);
-			conceptsWrittenToDisk++;
-		}
-
-		//Alt Identifier file is independent of individual concepts
-		for (Map.Entry<Concept, Map<String, String>> entry : ts.getGraphLoader().getAlternateIdentifierMap().entrySet()) {
-			Concept schema = entry.getKey();
-			for (Map.Entry<String, String> schemaEntry : entry.getValue().entrySet()) {
-				ts.writeToRF2File(altIdSnapshotFilename, generateAltIdentiferRow(schema, schemaEntry.getKey(), schemaEntry.getValue()));
+		//Take our own copy of the references in case some other process adds a new concept meanwhile
+		Concept[] allConcepts = ts.getGraphLoader().getAllConcepts().toArray(new Concept[0]);
+		int partitionCount = (allConcepts.length + CONCEPTS_PER_PARTITION - 1) / CONCEPTS_PER_PARTITION;
+		try {
+			IntStream.range(0, partitionCount).parallel().forEach(partition -> {
+				PartitionBuffer buffer = new PartitionBuffer();
+				int end = Math.min(allConcepts.length, (partition + 1) * CONCEPTS_PER_PARTITION);
+				try {
+					for (int i = partition * CONCEPTS_PER_PARTITION; i < end; i++) {
+						outputRF2(buffer, allConcepts[i]);
+						conceptsWrittenToDisk.incrementAndGet();
+					}
+					buffer.flush();
+				} catch (TermServerScriptException e) {
+					throw new IllegalStateException("Failed to write partition " + partition + " due to " + e.getMessage(), e);
+				}
+			});
+
+			//Alt Identifier file is independent of individual concepts
+			PartitionBuffer buffer = new PartitionBuffer();
+			for (Map.Entry<Concept, Map<String, String>> entry : ts.getGraphLoader().getAlternateIdentifierMap().entrySet()) {
+				Concept schema = entry.getKey();
+				for (Map.Entry<String, String> schemaEntry : entry.getValue().entrySet()) {
+					buffer.write(altIdSnapshotFilename, generateAltIdentiferRow(schema, schemaEntry.getKey(), schemaEntry.getValue(), moduleId));
+				}
 			}
+			buffer.flush();
+		} catch (IllegalStateException e) {
+			throw new TermServerScriptException("Failed to write RF2 Snapshot to " + packageDir, e);
 		}
 	}
 
-	protected void outputRF2(Concept c) throws TermServerScriptException {
-		ts.writeToRF2File(conSnapshotFilename, c.toRF2());
+	protected void outputRF2(PartitionBuffer buffer, Concept c) throws TermServerScriptException {
+		buffer.write(conSnapshotFilename, c.toRF2());
 
 		for (Description d : c.getDescriptions(RF2Constants.ActiveState.BOTH)) {
-			outputRF2(d);  //Will output langrefset, inactivation indicators and associations in turn
+			outputRF2(buffer, d);  //Will output langrefset, inactivation indicators and associations in turn
 		}
 
 		for (Relationship r : c.getRelationships(RF2Constants.CharacteristicType.STATED_RELATIONSHIP, RF2Constants.ActiveState.BOTH)) {
-			outputRF2(r);
+			outputRF2(buffer, r);
 		}
 
 		for (Relationship r : c.getRelationships(RF2Constants.CharacteristicType.INFERRED_RELATIONSHIP, RF2Constants.ActiveState.BOTH)) {
-			outputRF2(r);
+			outputRF2(buffer, r);
 		}
 
 		for (InactivationIndicatorEntry i : c.getInactivationIndicatorEntries()) {
-			ts.writeToRF2File(attribValSnapshotFilename, i.toRF2());
+			buffer.write(attribValSnapshotFilename, i.toRF2());
 		}
 
 		for (AssociationEntry h : c.getAssociationEntries()) {
-			ts.writeToRF2File(assocSnapshotFilename, h.toRF2());
+			buffer.write(assocSnapshotFilename, h.toRF2());
 		}
 
 		for (AxiomEntry o : c.getAxiomEntries()) {
-			ts.writeToRF2File(owlSnapshotFilename, o.toRF2());
+			buffer.write(owlSnapshotFilename, o.toRF2());
 		}
 
 		for (ComponentAnnotationEntry a : c.getComponentAnnotationEntries()) {
-			ts.writeToRF2File(annotSnapshotFilename, a.toRF2());
+			buffer.write(annotSnapshotFilename, a.toRF2());
 		}
 
 	}
 
-	private String[] generateAltIdentiferRow(Concept schema, String altId, String referencedComponentId) {
+	static String[] generateAltIdentiferRow(Concept schema, String altId, String referencedComponentId, String moduleId) {
 		return new String[]{
 				altId,
 				"",
@@ -189,23 +244,23 @@ public class ArchiveWriter implements Runnable, RF2Constants {
 				referencedComponentId};
 	}
 
-	protected void outputRF2(Description d) throws TermServerScriptException {
-		ts.writeToRF2File(descSnapshotFilename, d.toRF2());
+	protected void outputRF2(PartitionBuffer buffer, Description d) throws TermServerScriptException {
+		buffer.write(descSnapshotFilename, d.toRF2());
 
 		for (LangRefsetEntry lang : d.getLangRefsetEntries()) {
-			ts.writeToRF2File(langSnapshotFilename, lang.toRF2());
+			buffer.write(langSnapshotFilename, lang.toRF2());
 		}
 
 		for (InactivationIndicatorEntry inact : d.getInactivationIndicatorEntries()) {
-			ts.writeToRF2File(attribValSnapshotFilename, inact.toRF2());
+			buffer.write(attribValSnapshotFilename, inact.toRF2());
 		}
 
 		for (AssociationEntry assoc : d.getAssociationEntries()) {
-			ts.writeToRF2File(assocSnapshotFilename, assoc.toRF2());
+			buffer.write(assocSnapshotFilename, assoc.toRF2());
 		}
 	}
 
-	protected void outputRF2(Relationship r) throws TermServerScriptException {
+	protected void outputRF2(PartitionBuffer buffer, Relationship r) throws TermServerScriptException {
 		//Relationships that hail from an axiom will not be persisted as relationships
 		//We'll re-establish those on loading from the original axioms
 		if (r.fromAxiom()) {
@@ -213,19 +268,64 @@ public class ArchiveWriter implements Runnable, RF2Constants {
 		}
 		switch (r.getCharacteristicType()) {
 			case STATED_RELATIONSHIP:
-				ts.writeToRF2File(sRelSnapshotFilename, r.toRF2());
+				buffer.write(sRelSnapshotFilename, r.toRF2());
 				break;
 			case INFERRED_RELATIONSHIP:
 			default:
-				outputRF2InferredRel(r);
+				outputRF2InferredRel(buffer, r);
 		}
 	}
 
-	private void outputRF2InferredRel(Relationship r) throws TermServerScriptException {
+	private void outputRF2InferredRel(PartitionBuffer buffer, Relationship r) throws TermServerScriptException {
 		if (r.isConcrete()) {
-			ts.writeToRF2File(relConcreteFilename, r.toRF2());
+			buffer.write(relConcreteFilename, r.toRF2());
 		} else {
-			ts.writeToRF2File(relSnapshotFilename, r.toRF2());
+			buffer.write(relSnapshotFilename, r.toRF2());
+		}
+	}
+
+	/**
+	 * Rows from one partition of concepts, held per file until there's a block's worth to hand over
+	 */
+	protected class PartitionBuffer {
+		private final Map<String, StringBuilder> blocks = new HashMap<>();
+
+		void write(String fileName, Object[] columns) throws TermServerScriptException {
+			StringBuilder block = blocks.computeIfAbsent(fileName, k -> new StringBuilder(BLOCK_SIZE + 1024));
+			if (!block.isEmpty()) {
+				block.append(LINE_DELIMITER);
+			}
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					block.append(TSV_FIELD_DELIMITER);
+				}
+				if (columns[i] != null) {
+					block.append(columns[i]);
+				}
+			}
+			if (block.length() >= BLOCK_SIZE) {
+				append(fileName, block);
+			}
+		}
+
+		void flush() throws TermServerScriptException {
+			for (Map.Entry<String, StringBuilder> entry : blocks.entrySet()) {
+				if (!entry.getValue().isEmpty()) {
+					append(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+
+		private void append(String fileName, StringBuilder block) throws TermServerScriptException {
+			//The RF2Manager terminates the block as it would a single line
+			String rows = block.toString();
+			block.setLength(0);
+			writeBlock(fileName, rows);
 		}
 	}
+
+	//Partitions take turns with the RF2Manager, which isn't expecting to be called from several threads
+	private synchronized void writeBlock(String fileName, String rows) throws TermServerScriptException {
+		ts.getRF2Manager().writeToRF2File(fileName, rows);
+	}
 }
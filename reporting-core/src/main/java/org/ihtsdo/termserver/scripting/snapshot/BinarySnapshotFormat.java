@@ -0,0 +1,54 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import java.io.File;
+
+/**
+ * Layout of the binary copy of a cached snapshot, written alongside the RF2 cache so that
+ * a warm start doesn't have to decode and split RF2 text again.
+ *
+ * File: MAGIC, FORMAT_VERSION, creation time (long), concept count (varint), then sections
+ * until END_OF_FILE.  Each section is its Section ordinal (byte) followed by rows, and finally
+ * END_OF_SECTION.  Each row is a ROW marker, its field count (varint) and then that many fields,
+ * each starting with one of the FIELD_ tags below.
+ */
+final class BinarySnapshotFormat {
+
+	static final int MAGIC = 0x534E4150; //"SNAP"
+
+	//Increment whenever the layout changes, so that older files are ignored rather than misread
+	static final int FORMAT_VERSION = 1;
+
+	static final String FILE_EXTENSION = ".bin";
+
+	static final byte ROW = 1;
+	static final byte END_OF_SECTION = 0;
+	static final byte END_OF_FILE = -1;
+
+	static final byte FIELD_EMPTY = 0;
+	static final byte FIELD_SAME_AS_PREVIOUS_ROW = 1;
+	static final byte FIELD_NUMERIC = 2;
+	static final byte FIELD_UUID = 3;
+	static final byte FIELD_STRING = 4;
+
+	//Written in the order they should be loaded ie concepts before the components that reference them
+	enum Section {
+		CONCEPT,
+		DESCRIPTION,
+		INFERRED_RELATIONSHIP,
+		CONCRETE_RELATIONSHIP,
+		AXIOM,
+		LANGUAGE,
+		ATTRIBUTE_VALUE,
+		ASSOCIATION,
+		ALTERNATE_IDENTIFIER,
+		COMPONENT_ANNOTATION
+	}
+
+	private BinarySnapshotFormat() {
+		//Constants only
+	}
+
+	static File getBinarySnapshotFile(File snapshot) {
+		return new File(snapshot.getPath() + FILE_EXTENSION);
+	}
+}
@@ -0,0 +1,259 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import org.ihtsdo.termserver.scripting.domain.ScriptConstants;
+import org.ihtsdo.termserver.scripting.util.Rf2RowSource;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.ihtsdo.termserver.scripting.snapshot.BinarySnapshotFormat.*;
+
+/**
+ * Reads a file written by BinarySnapshotWriter through a buffer refilled as it's used up, so
+ * there is no limit on the file size, and serves each section's rows to GraphLoader as an
+ * Rf2RowSource.  The header is validated on construction, so a file from an older format
+ * version is rejected before anything is loaded from it.  As with Rf2LineTokenizer, columns with
+ * few distinct values (module, type, refset ids etc) are interned, so every component holds the
+ * same String for them rather than one read afresh per row.
+ */
+class BinarySnapshotReader implements Rf2RowSource, Closeable, ScriptConstants {
+
+	private static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	private static final Map<Section, boolean[]> INTERNED_COLUMNS = new EnumMap<>(Section.class);
+	static {
+		for (Section section : Section.values()) {
+			int[] columns = switch (section) {
+				case CONCEPT -> new int[] { CON_IDX_DEFINITIONSTATUSID };
+				case DESCRIPTION -> new int[] { DES_IDX_LANGUAGECODE, DES_IDX_TYPEID, DES_IDX_CASESIGNIFICANCEID };
+				case INFERRED_RELATIONSHIP, CONCRETE_RELATIONSHIP -> new int[] { REL_IDX_RELATIONSHIPGROUP, REL_IDX_TYPEID, REL_IDX_CHARACTERISTICTYPEID, REL_IDX_MODIFIERID };
+				case LANGUAGE -> new int[] { LANG_IDX_REFSETID, LANG_IDX_ACCEPTABILITY_ID };
+				case ATTRIBUTE_VALUE -> new int[] { REF_IDX_REFSETID, INACT_IDX_REASON_ID };
+				//The identifier scheme for alternate identifiers, otherwise the refset id
+				default -> new int[] { REF_IDX_REFSETID };
+			};
+			boolean[] interned = new boolean[Math.max(IDX_MODULEID, Arrays.stream(columns).max().orElse(0)) + 1];
+			interned[IDX_EFFECTIVETIME] = true;
+			interned[IDX_ACTIVE] = true;
+			interned[IDX_MODULEID] = true;
+			for (int column : columns) {
+				interned[column] = true;
+			}
+			INTERNED_COLUMNS.put(section, interned);
+		}
+	}
+
+	private final File binarySnapshot;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private long bufferOffset = 0;
+	private final long createdTime;
+	private final long conceptCount;
+
+	private Section currentSection;
+	private boolean sectionExhausted = true;
+	private String[] previousRow;
+	private byte[] scratch = new byte[1024];
+	private boolean[] internColumn = new boolean[0];
+	//Shared across sections, so that concepts and their descriptions hold the same module id
+	private final Map<String, String> internTable = new HashMap<>();
+
+	BinarySnapshotReader(File binarySnapshot) throws IOException {
+		this(binarySnapshot, DEFAULT_BUFFER_SIZE);
+	}
+
+	BinarySnapshotReader(File binarySnapshot, int bufferSize) throws IOException {
+		this.binarySnapshot = binarySnapshot;
+		this.channel = FileChannel.open(binarySnapshot.toPath(), StandardOpenOption.READ);
+		//Starts out empty, so the first read fills it
+		this.buffer = ByteBuffer.allocate(Math.max(bufferSize, Long.BYTES * 2)).flip();
+		try {
+			if (getInt() != MAGIC) {
+				throw new IOException(binarySnapshot + " is not a binary snapshot");
+			}
+			int version = getInt();
+			if (version != FORMAT_VERSION) {
+				throw new IOException(binarySnapshot + " is format version " + version + ", expected " + FORMAT_VERSION);
+			}
+			createdTime = getLong();
+			conceptCount = readVarLong();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	long getCreatedTime() {
+		return createdTime;
+	}
+
+	long getConceptCount() {
+		return conceptCount;
+	}
+
+	/**
+	 * Moves to the next section, skipping any rows not read from the current one.
+	 * @return the section now being read, or null at the end of the file
+	 */
+	Section nextSection() throws IOException {
+		skipRemainingRows();
+		byte marker = get();
+		if (marker == END_OF_FILE) {
+			currentSection = null;
+			return null;
+		}
+		if (marker < 0 || marker >= Section.values().length) {
+			throw new IOException(binarySnapshot + " has unknown section " + marker + " at offset " + (position() - 1));
+		}
+		currentSection = Section.values()[marker];
+		internColumn = INTERNED_COLUMNS.get(currentSection);
+		sectionExhausted = false;
+		previousRow = null;
+		return currentSection;
+	}
+
+	void skipRemainingRows() throws IOException {
+		while (!sectionExhausted) {
+			nextRow();
+		}
+	}
+
+	@Override
+	public String[] nextRow() throws IOException {
+		if (sectionExhausted) {
+			return null;
+		}
+		byte marker = get();
+		if (marker == END_OF_SECTION) {
+			sectionExhausted = true;
+			return null;
+		} else if (marker != ROW) {
+			throw new IOException(binarySnapshot + " has unexpected marker " + marker + " in " + currentSection + " at offset " + (position() - 1));
+		}
+
+		int fieldCount = (int) readVarLong();
+		String[] row = new String[fieldCount];
+		for (int i = 0; i < fieldCount; i++) {
+			row[i] = readField(i);
+		}
+		previousRow = row;
+		return row;
+	}
+
+	int getInternedValueCount() {
+		return internTable.size();
+	}
+
+	@Override
+	public boolean hasHeaderRow() {
+		return false;
+	}
+
+	private String readField(int column) throws IOException {
+		byte tag = get();
+		switch (tag) {
+			case FIELD_EMPTY:
+				return "";
+			case FIELD_SAME_AS_PREVIOUS_ROW:
+				if (previousRow == null || column >= previousRow.length) {
+					throw new IOException(binarySnapshot + " refers to a missing previous value in " + currentSection);
+				}
+				return previousRow[column];
+			case FIELD_NUMERIC:
+				return intern(column, Long.toString(readVarLong()));
+			case FIELD_UUID:
+				return new UUID(getLong(), getLong()).toString();
+			case FIELD_STRING:
+				int len = (int) readVarLong();
+				if (len > scratch.length) {
+					scratch = new byte[Math.max(len, scratch.length * 2)];
+				}
+				get(scratch, len);
+				return intern(column, new String(scratch, 0, len, StandardCharsets.UTF_8));
+			default:
+				throw new IOException(binarySnapshot + " has unknown field type " + tag + " in " + currentSection);
+		}
+	}
+
+	private String intern(int column, String value) {
+		if (column < internColumn.length && internColumn[column]) {
+			String existing = internTable.putIfAbsent(value, value);
+			return existing == null ? value : existing;
+		}
+		return value;
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = get();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Makes sure at least the given number of bytes (no more than the buffer holds) are ready to read
+	 */
+	private void require(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) {
+			return;
+		}
+		bufferOffset += buffer.position();
+		buffer.compact();
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException(binarySnapshot + " is truncated" + (currentSection == null ? "" : " in " + currentSection));
+			}
+		}
+		buffer.flip();
+	}
+
+	private long position() {
+		return bufferOffset + buffer.position();
+	}
+
+	private byte get() throws IOException {
+		require(1);
+		return buffer.get();
+	}
+
+	private int getInt() throws IOException {
+		require(Integer.BYTES);
+		return buffer.getInt();
+	}
+
+	private long getLong() throws IOException {
+		require(Long.BYTES);
+		return buffer.getLong();
+	}
+
+	private void get(byte[] dest, int len) throws IOException {
+		int copied = 0;
+		while (copied < len) {
+			require(1);
+			int count = Math.min(len - copied, buffer.remaining());
+			buffer.get(dest, copied, count);
+			copied += count;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import org.ihtsdo.otf.RF2Constants;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.ComponentAnnotationEntry;
+import org.ihtsdo.termserver.scripting.GraphLoader;
+import org.ihtsdo.termserver.scripting.domain.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static org.ihtsdo.termserver.scripting.snapshot.BinarySnapshotFormat.*;
+
+/**
+ * Writes the in-memory snapshot in the binary layout described by BinarySnapshotFormat.
+ * Rows are exactly those ArchiveWriter would write as RF2, so loading either copy gives the same result.
+ */
+class BinarySnapshotWriter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BinarySnapshotWriter.class);
+
+	private final File binarySnapshot;
+	private DataOutputStream out;
+	private String[] previousRow;
+
+	BinarySnapshotWriter(File binarySnapshot) {
+		this.binarySnapshot = binarySnapshot;
+	}
+
+	/**
+	 * Supplies the rows for each section in turn, via writeRow
+	 */
+	interface SectionWriter {
+		void writeSection(Section section) throws IOException;
+	}
+
+	void write(GraphLoader gl, String moduleId) throws IOException {
+		List<Concept> concepts = new ArrayList<>(gl.getAllConcepts());
+		write(concepts.size(), section -> {
+			for (Concept c : concepts) {
+				writeRows(section, c);
+			}
+			if (section == Section.ALTERNATE_IDENTIFIER) {
+				writeAlternateIdentifierRows(gl, moduleId);
+			}
+		});
+	}
+
+	void write(long conceptCount, SectionWriter sectionWriter) throws IOException {
+		long startTime = System.currentTimeMillis();
+
+		//Write to a temporary file first so that a partially written snapshot is never picked up
+		File tempFile = new File(binarySnapshot.getPath() + ".tmp");
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+			out = dos;
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(System.currentTimeMillis());
+			writeVarLong(conceptCount);
+
+			for (Section section : Section.values()) {
+				startSection(section);
+				sectionWriter.writeSection(section);
+				out.writeByte(END_OF_SECTION);
+			}
+			out.writeByte(END_OF_FILE);
+		}
+		Files.move(tempFile.toPath(), binarySnapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		LOGGER.info("Written binary snapshot {} ({}Kb) in {}ms", binarySnapshot, binarySnapshot.length() / 1024, System.currentTimeMillis() - startTime);
+	}
+
+	private void writeRows(Section section, Concept c) throws IOException {
+		switch (section) {
+			case CONCEPT -> writeRow(c.toRF2());
+			case DESCRIPTION -> {
+				for (Description d : c.getDescriptions(RF2Constants.ActiveState.BOTH)) {
+					writeRow(d.toRF2());
+				}
+			}
+			case INFERRED_RELATIONSHIP, CONCRETE_RELATIONSHIP -> {
+				boolean concrete = section == Section.CONCRETE_RELATIONSHIP;
+				for (Relationship r : c.getRelationships(RF2Constants.CharacteristicType.INFERRED_RELATIONSHIP, RF2Constants.ActiveState.BOTH)) {
+					if (!r.fromAxiom() && r.isConcrete() == concrete) {
+						writeRow(r.toRF2());
+					}
+				}
+			}
+			case AXIOM -> {
+				for (AxiomEntry a : c.getAxiomEntries()) {
+					writeRow(a.toRF2());
+				}
+			}
+			case LANGUAGE -> {
+				for (Description d : c.getDescriptions(RF2Constants.ActiveState.BOTH)) {
+					for (LangRefsetEntry l : d.getLangRefsetEntries()) {
+						writeRow(l.toRF2());
+					}
+				}
+			}
+			case ATTRIBUTE_VALUE -> {
+				for (InactivationIndicatorEntry i : c.getInactivationIndicatorEntries()) {
+					writeRow(i.toRF2());
+				}
+				for (Description d : c.getDescriptions(RF2Constants.ActiveState.BOTH)) {
+					for (InactivationIndicatorEntry i : d.getInactivationIndicatorEntries()) {
+						writeRow(i.toRF2());
+					}
+				}
+			}
+			case ASSOCIATION -> {
+				for (AssociationEntry h : c.getAssociationEntries()) {
+					writeRow(h.toRF2());
+				}
+				for (Description d : c.getDescriptions(RF2Constants.ActiveState.BOTH)) {
+					for (AssociationEntry h : d.getAssociationEntries()) {
+						writeRow(h.toRF2());
+					}
+				}
+			}
+			case COMPONENT_ANNOTATION -> {
+				for (ComponentAnnotationEntry a : c.getComponentAnnotationEntries()) {
+					writeRow(a.toRF2());
+				}
+			}
+			default -> {
+				//Alternate identifiers are held independently of individual concepts
+			}
+		}
+	}
+
+	private void writeAlternateIdentifierRows(GraphLoader gl, String moduleId) throws IOException {
+		for (Map.Entry<Concept, Map<String, String>> entry : gl.getAlternateIdentifierMap().entrySet()) {
+			for (Map.Entry<String, String> schemaEntry : entry.getValue().entrySet()) {
+				writeRow(ArchiveWriter.generateAltIdentiferRow(entry.getKey(), schemaEntry.getKey(), schemaEntry.getValue(), moduleId));
+			}
+		}
+	}
+
+	private void startSection(Section section) throws IOException {
+		out.writeByte(section.ordinal());
+		previousRow = null;
+	}
+
+	void writeRow(String[] row) throws IOException {
+		out.writeByte(ROW);
+		writeVarLong(row.length);
+		for (int i = 0; i < row.length; i++) {
+			String value = row[i] == null ? "" : row[i];
+			if (value.isEmpty()) {
+				out.writeByte(FIELD_EMPTY);
+			} else if (previousRow != null && i < previousRow.length && value.equals(previousRow[i])) {
+				out.writeByte(FIELD_SAME_AS_PREVIOUS_ROW);
+			} else if (isCompactNumber(value)) {
+				out.writeByte(FIELD_NUMERIC);
+				writeVarLong(Long.parseLong(value));
+			} else if (isCanonicalUuid(value)) {
+				UUID uuid = UUID.fromString(value);
+				out.writeByte(FIELD_UUID);
+				out.writeLong(uuid.getMostSignificantBits());
+				out.writeLong(uuid.getLeastSignificantBits());
+			} else {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				out.writeByte(FIELD_STRING);
+				writeVarLong(bytes.length);
+				out.write(bytes);
+			}
+			row[i] = value;
+		}
+		previousRow = row;
+	}
+
+	/**
+	 * SCTIDs, effective times and the like.  Must survive the round trip through Long.toString
+	 * unchanged, so no leading zeros, signs, or values too long for a long.
+	 */
+	private static boolean isCompactNumber(String value) {
+		int len = value.length();
+		if (len > 18 || (len > 1 && value.charAt(0) == '0')) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			char ch = value.charAt(i);
+			if (ch < '0' || ch > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isCanonicalUuid(String value) {
+		if (value.length() != 36 || value.charAt(8) != '-' || value.charAt(13) != '-'
+				|| value.charAt(18) != '-' || value.charAt(23) != '-') {
+			return false;
+		}
+		try {
+			return UUID.fromString(value).toString().equals(value);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+}
@@ -0,0 +1,24 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import org.ihtsdo.termserver.scripting.domain.Concept;
+
+/**
+ * A problem found in a loaded snapshot by the post-load integrity check.
+ */
+public record IntegrityFinding(Type type, Concept concept, String detail) {
+
+	public enum Type {
+		PHANTOM_CONCEPT,
+		MISSING_PARENT,
+		INACTIVE_PARENT,
+		PARENT_INCONSISTENCY,
+		INACTIVE_WITH_PARENTS,
+		INACTIVE_WITH_CHILDREN,
+		FAILED_DEPTH
+	}
+
+	@Override
+	public String toString() {
+		return detail;
+	}
+}
@@ -12,6 +12,9 @@ public class SnapshotConfiguration {
 	private boolean populateReleaseFlag = false;
 	private boolean runIntegrityChecks = true;
 	private boolean loadOtherReferenceSets = false;
+	private boolean parallelImport = true;  //Files are still applied one at a time, only the reading is done ahead
+	private boolean useBinarySnapshotCache = true;  //Only used while no older than the branch head, as for the RF2 cache
+	private boolean incrementalRefresh = true;  //Only where the branch is still on the release base of what's held
 
 	public boolean isAllowStaleData() {
 		return allowStaleData;
@@ -93,6 +96,29 @@ public class SnapshotConfiguration {
 		this.loadOtherReferenceSets = loadOtherReferenceSets;
 	}
 
+	public boolean isParallelImport() {
+		return parallelImport;
+	}
+
+	public void setParallelImport(boolean parallelImport) {
+		this.parallelImport = parallelImport;
+	}
+
+	public boolean isUseBinarySnapshotCache() {
+		return useBinarySnapshotCache;
+	}
+
+	public void setUseBinarySnapshotCache(boolean useBinarySnapshotCache) {
+		this.useBinarySnapshotCache = useBinarySnapshotCache;
+	}
+
+	public boolean isIncrementalRefresh() {
+		return incrementalRefresh;
+	}
+
+	public void setIncrementalRefresh(boolean incrementalRefresh) {
+		this.incrementalRefresh = incrementalRefresh;
+	}
 
 	public void reset() {
 		loadEditionArchive = false;
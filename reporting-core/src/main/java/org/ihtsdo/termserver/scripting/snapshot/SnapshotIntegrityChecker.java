@@ -0,0 +1,160 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.ihtsdo.termserver.scripting.domain.Concept;
+import org.ihtsdo.termserver.scripting.domain.Relationship;
+import org.ihtsdo.termserver.scripting.domain.ScriptConstants;
+import org.ihtsdo.termserver.scripting.snapshot.IntegrityFinding.Type;
+import org.ihtsdo.termserver.scripting.util.SnomedUtils;
+
+/**
+ * Checks every concept of a loaded snapshot for structural problems, in parallel partitions.
+ * Each partition only calls methods that lazily populate state on the concepts it owns, so
+ * the partitions never write to the same concept.  Findings come back in concept order.
+ *
+ * A damaged snapshot typically gives rise to thousands of findings, so once MAX_FINDINGS have
+ * been found the remaining partitions give up early.  Phantom concepts are only identified here,
+ * working out where they came from is left to the caller.  Since the caller may decide that a
+ * phantom is not a problem after all, phantoms don't count towards MAX_FINDINGS.
+ */
+class SnapshotIntegrityChecker implements ScriptConstants {
+
+	static final int MAX_FINDINGS = 1000;
+
+	private static final int MIN_PARTITION_SIZE = 5000;
+
+	private final Collection<String> ignoreList;
+	private final boolean expectStatedParents;
+	private final boolean checkDepth;
+	private final int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private final AtomicInteger findingCount = new AtomicInteger();
+	private final Set<Concept> phantomsFound = ConcurrentHashMap.newKeySet();
+
+	SnapshotIntegrityChecker(Collection<String> ignoreList, boolean expectStatedParents, boolean checkDepth) {
+		this.ignoreList = ignoreList;
+		this.expectStatedParents = expectStatedParents;
+		this.checkDepth = checkDepth;
+	}
+
+	/**
+	 * @return true if the check stopped early, so the findings returned are only some of them.
+	 * Which ones depends on how the partitions were scheduled.
+	 */
+	boolean isTruncated() {
+		return findingCount.get() >= MAX_FINDINGS;
+	}
+
+	List<IntegrityFinding> check(Collection<Concept> allConcepts) throws TermServerScriptException {
+		List<Concept> concepts = new ArrayList<>(allConcepts);
+		int partitionSize = Math.max(MIN_PARTITION_SIZE, concepts.size() / (parallelism * 4) + 1);
+		List<Callable<List<IntegrityFinding>>> tasks = new ArrayList<>();
+		for (int start = 0; start < concepts.size(); start += partitionSize) {
+			List<Concept> partition = concepts.subList(start, Math.min(concepts.size(), start + partitionSize));
+			tasks.add(() -> checkPartition(partition));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<IntegrityFinding> findings = new ArrayList<>();
+			for (Future<List<IntegrityFinding>> future : pool.invokeAll(tasks)) {
+				findings.addAll(future.get());
+			}
+			return findings;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while checking snapshot integrity", e);
+		} catch (ExecutionException e) {
+			throw new TermServerScriptException("Failed to check snapshot integrity due to " + e.getCause(), e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private List<IntegrityFinding> checkPartition(List<Concept> partition) {
+		List<IntegrityFinding> findings = new ArrayList<>();
+		for (Concept c : partition) {
+			if (isTruncated()) {
+				break;
+			}
+			if (ignoreList.contains(c.getId())) {
+				continue;
+			}
+
+			checkForPhantomConcept(c, findings);
+
+			if (c.isActiveSafely() && !c.equals(ROOT_CONCEPT)) {
+				checkParentalIntegrity(c, CharacteristicType.INFERRED_RELATIONSHIP, findings);
+				if (expectStatedParents) {
+					checkParentalIntegrity(c, CharacteristicType.STATED_RELATIONSHIP, findings);
+				}
+			} else if (!c.isActiveSafely()) {
+				if (!c.getParents(CharacteristicType.INFERRED_RELATIONSHIP).isEmpty()) {
+					add(findings, Type.INACTIVE_WITH_PARENTS, c, c + " is inactive but has inferred parents.");
+				}
+				if (!c.getChildren(CharacteristicType.INFERRED_RELATIONSHIP).isEmpty()) {
+					add(findings, Type.INACTIVE_WITH_CHILDREN, c, c + " is inactive but has inferred children.");
+				}
+			}
+
+			if (checkDepth && c.isActiveSafely() && c.getDepth() == NOT_SET) {
+				add(findings, Type.FAILED_DEPTH, c, c + " failed to populate depth");
+			}
+		}
+		return findings;
+	}
+
+	private void checkForPhantomConcept(Concept c, List<IntegrityFinding> findings) {
+		//The same phantom is likely to be the parent of many concepts, but only needs reporting once
+		if (c.getActive() == null && phantomsFound.add(c)) {
+			//Not counted, as the caller has yet to decide whether it's a problem
+			findings.add(new IntegrityFinding(Type.PHANTOM_CONCEPT, c, "Integrity concern: concept " + c.getId() + " does not appear in concept file"));
+		}
+	}
+
+	private void checkParentalIntegrity(Concept c, CharacteristicType charType, List<IntegrityFinding> findings) {
+		Set<Concept> parents = c.getParents(charType);
+		if (parents.isEmpty()) {
+			add(findings, Type.MISSING_PARENT, c, c + " has no " + charType + " parents.");
+		}
+
+		for (Concept parent : parents) {
+			checkForPhantomConcept(parent, findings);
+			if (!parent.isActiveSafely()) {
+				add(findings, Type.INACTIVE_PARENT, c, c + " has inactive " + charType + " parent: " + parent);
+			}
+		}
+
+		//Check that we've captured those parents correctly
+		//Looping through existing objects rather than calling getRelationships so we're 
+		//not creating new collections.   getRelationships does all the looping anyway, so no cheaper.
+		int parentRelCount = 0;
+		for (Relationship r : c.getRelationships()) {
+			if (r.isActiveSafely() && r.getCharacteristicType().equals(charType)
+					&& r.getType().equals(IS_A)) {
+				parentRelCount++;
+				if (!parents.contains(r.getTarget())) {
+					add(findings, Type.PARENT_INCONSISTENCY, c, c + " has internal " + charType + " inconsistency between parents and parental relationship for parent " + r.getTarget());
+				}
+			}
+		}
+
+		if (parentRelCount != parents.size()) {
+			//Trying for minimal memory allocations here, so only check for duplicate targets between 
+			//axioms if we detect a problem
+			Set<Concept> parentsFromRels = SnomedUtils.getTargets(c, new Concept[] {IS_A}, charType);
+			if (parentsFromRels.size() != parents.size()) {
+				add(findings, Type.PARENT_INCONSISTENCY, c, c + " has internal " + charType + " inconsistency between parents (" + parents.size() + ") and parental relationship count (" + parentsFromRels.size() + ").");
+			}
+		}
+	}
+
+	private void add(List<IntegrityFinding> findings, Type type, Concept c, String detail) {
+		findings.add(new IntegrityFinding(type, c, detail));
+		findingCount.incrementAndGet();
+	}
+}
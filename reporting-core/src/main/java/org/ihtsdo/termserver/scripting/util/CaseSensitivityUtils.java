@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.*;
 
 import org.ihtsdo.otf.exception.TermServerScriptException;
@@ -55,6 +56,10 @@ public class CaseSensitivityUtils implements ScriptConstants {
 
 	private Map<CaseSensitiveSourceOfTruthType, Object> caseSensitiveSourceOfTruthMap = new EnumMap<>(CaseSensitiveSourceOfTruthType.class);
 
+	//Built from the sources of truth on first use, and dropped again if they change
+	private volatile SourceOfTruthIndex sourceOfTruthIndex;
+	private final Map<Concept, ContextIndex> contextIndexes = new ConcurrentHashMap<>();
+
 	private List<String> caseInsensitivePrefix = List.of("Non-", "Pseudo-", "Hyper-", "Anti-");
 
 	private static String[] taxonomyWordsArray = new String[] {
@@ -103,6 +108,14 @@ public class CaseSensitivityUtils implements ScriptConstants {
 		} else {
 			sourceOfTruthHierarchies = new ArrayList<>();
 		}
+		//Nothing is added after this point, so the index can be shared by reports checking in parallel
+		sourcesOfTruthChanged();
+		getSourceOfTruthIndex();
+	}
+
+	private void sourcesOfTruthChanged() {
+		sourceOfTruthIndex = null;
+		contextIndexes.clear();
 	}
 
 	private void determineEponyms() {
@@ -221,6 +234,7 @@ public class CaseSensitivityUtils implements ScriptConstants {
 		for (String line : lines) {
 			loadCSWord(line);
 		}
+		sourcesOfTruthChanged();
 	}
 
 	private void loadCSWord(String line) {
@@ -325,10 +339,10 @@ public class CaseSensitivityUtils implements ScriptConstants {
 	}
 
 	public boolean containsKnownLowerCaseWord(String term) {
+		SourceOfTruthIndex index = getSourceOfTruthIndex();
 		for (String word : term.split(" ")) {
-			if (word.equals(word.toLowerCase()) &&
-					(getCaseSensitiveSourceOfTruth(CaseSensitiveSourceOfTruthType.KNOWN_LOWER_CASE_FROM_CS_WORDS_FILE).contains(word))
-			|| getCaseSensitiveSourceOfTruth(CaseSensitiveSourceOfTruthType.KNOWN_LOWER_CASE_SOURCE_OF_TRUTH).contains(word)) {
+			if (word.equals(word.toLowerCase()) && index.knownLowerCaseFromCsWordsFile().contains(word)
+					|| index.knownLowerCaseSourceOfTruth().contains(word)) {
 				return true;
 			}
 		}
@@ -411,12 +425,8 @@ public class CaseSensitivityUtils implements ScriptConstants {
 
 		//Work the number of words up progressively to see if we get a match 
 		//eg first two words in "Influenza virus vaccine-containing product in nasal dose form" is an Organism
-		StringBuilder progressive = new StringBuilder(firstWord);
-		for (int i=1; i<words.length; i++) {
-			progressive.append(" ").append(words[i]);
-			if (startsWithKnownCsWordInContext(context, null, progressive.toString())) {
-				return true;
-			}
+		if (getContextIndex(context).startsWithPhrase(firstWord, words)) {
+			return true;
 		}
 
 		//If the first word contains a dash, then also check that first part word without the dash
@@ -432,18 +442,8 @@ public class CaseSensitivityUtils implements ScriptConstants {
 	}
 
 	private boolean checkSourcesOfTruthForCSWord(String word) {
-		for (Map.Entry<CaseSensitiveSourceOfTruthType, Object> entry : caseSensitiveSourceOfTruthMap.entrySet()) {
-			Object sourceOfTruthObj = entry.getValue();
-			if (sourceOfTruthObj instanceof Collection<?> sourceOfTruth) {
-				if (sourceOfTruth.contains(word)) {
-					return true;
-				}
-			} else if (sourceOfTruthObj instanceof Map) {
-				Map<?, ?> sourceOfTruth = (Map<?, ?>) sourceOfTruthObj;
-				if (sourceOfTruth.containsKey(word)) {
-					return true;
-				}
-			}
+		if (getSourceOfTruthIndex().allWords().contains(word)) {
+			return true;
 		}
 
 		//Are we 's or s' ?  trim that off and check again
@@ -454,17 +454,44 @@ public class CaseSensitivityUtils implements ScriptConstants {
 	public boolean startsWithKnownCsWordInContext(Concept context, String firstWord, String term) {
 		//The context is the concept that the term is being used in
 		//We're interested if any of its attributes are a source of truth
-		for (Concept attributeValue : SnomedUtils.getTargets(context)) {
-			if (csInContext.containsKey(attributeValue)) {
-				for (String knownCsWord : csInContext.get(attributeValue)) {
-					if ((firstWord != null && knownCsWord.equals(firstWord))
-							|| knownCsWord.equals(term)) {
-						return true;
+		ContextIndex index = getContextIndex(context);
+		return (firstWord != null && index.phrases.contains(firstWord))
+				|| (term != null && index.phrases.contains(term));
+	}
+
+	private SourceOfTruthIndex getSourceOfTruthIndex() {
+		SourceOfTruthIndex index = sourceOfTruthIndex;
+		if (index == null) {
+			Set<String> allWords = new HashSet<>();
+			for (Object sourceOfTruthObj : caseSensitiveSourceOfTruthMap.values()) {
+				if (sourceOfTruthObj instanceof Collection<?> sourceOfTruth) {
+					sourceOfTruth.forEach(word -> allWords.add((String) word));
+				} else if (sourceOfTruthObj instanceof Map<?, ?> sourceOfTruth) {
+					sourceOfTruth.keySet().forEach(word -> allWords.add((String) word));
+				}
+			}
+			index = new SourceOfTruthIndex(allWords,
+					new HashSet<>(getCaseSensitiveSourceOfTruth(CaseSensitiveSourceOfTruthType.KNOWN_LOWER_CASE_FROM_CS_WORDS_FILE)),
+					new HashSet<>(getCaseSensitiveSourceOfTruth(CaseSensitiveSourceOfTruthType.KNOWN_LOWER_CASE_SOURCE_OF_TRUTH)));
+			sourceOfTruthIndex = index;
+		}
+		return index;
+	}
+
+	private ContextIndex getContextIndex(Concept context) {
+		return contextIndexes.computeIfAbsent(context, k -> {
+			ContextIndex index = null;
+			for (Concept attributeValue : SnomedUtils.getTargets(k)) {
+				List<String> knownCsWords = csInContext.get(attributeValue);
+				if (knownCsWords != null) {
+					if (index == null) {
+						index = new ContextIndex();
 					}
+					knownCsWords.forEach(index::add);
 				}
 			}
-		}
-		return false;
+			return index == null ? ContextIndex.EMPTY : index;
+		});
 	}
 	
 	public String explainCsWordInContext(Concept context, String word) {
@@ -526,6 +553,48 @@ public class CaseSensitivityUtils implements ScriptConstants {
 		return term.split(" ").length == 1;
 	}
 
+	private record SourceOfTruthIndex(Set<String> allWords, Set<String> knownLowerCaseFromCsWordsFile, Set<String> knownLowerCaseSourceOfTruth) {}
+
+	/**
+	 * The case-sensitive terms of the sources of truth used as attribute values by a concept, held
+	 * whole for exact lookups and as a trie of words, so that every leading run of words in a term
+	 * can be checked against them in a single walk.
+	 */
+	private static class ContextIndex {
+		private static final ContextIndex EMPTY = new ContextIndex();
+
+		private final Set<String> phrases = new HashSet<>();
+		private final PhraseNode root = new PhraseNode();
+
+		private void add(String phrase) {
+			phrases.add(phrase);
+			PhraseNode node = root;
+			for (String word : phrase.split(" ", -1)) {
+				node = node.children.computeIfAbsent(word, k -> new PhraseNode());
+			}
+			node.endsPhrase = true;
+		}
+
+		/**
+		 * @return true if the first word followed by one or more of the subsequent words makes up a known phrase
+		 */
+		private boolean startsWithPhrase(String firstWord, String[] words) {
+			PhraseNode node = root.children.get(firstWord);
+			for (int i = 1; node != null && i < words.length; i++) {
+				node = node.children.get(words[i]);
+				if (node != null && node.endsPhrase) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static class PhraseNode {
+		private final Map<String, PhraseNode> children = new HashMap<>();
+		private boolean endsPhrase = false;
+	}
+
 	public class KnowledgeSource {
 		String category;
 		String reference;
@@ -0,0 +1,83 @@
+package org.ihtsdo.termserver.scripting.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a directory of cache files within an age and a total size, removing the least recently
+ * written files first.  Pruning lists the whole directory, so however often pruneIfDue is called,
+ * any one directory is only pruned once every PRUNE_INTERVAL_MS by this JVM.
+ */
+public class DiskCachePruner {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DiskCachePruner.class);
+
+	private static final long PRUNE_INTERVAL_MS = 60 * 60 * 1000L;
+
+	private static final Map<String, Long> lastPrunedAt = new ConcurrentHashMap<>();
+
+	private final File cacheDir;
+	private final long maxAgeMs;
+	private final long maxBytes;
+
+	public DiskCachePruner(File cacheDir, long maxAgeMs, long maxBytes) {
+		this.cacheDir = cacheDir;
+		this.maxAgeMs = maxAgeMs;
+		this.maxBytes = maxBytes;
+	}
+
+	public void pruneIfDue() {
+		long now = System.currentTimeMillis();
+		boolean[] due = { false };
+		lastPrunedAt.compute(cacheDir.getAbsolutePath(), (dir, last) -> {
+			due[0] = last == null || now - last >= PRUNE_INTERVAL_MS;
+			return due[0] ? now : last;
+		});
+		if (due[0]) {
+			prune(now);
+		}
+	}
+
+	void prune(long now) {
+		File[] files = cacheDir.listFiles(File::isFile);
+		if (files == null) {
+			return;
+		}
+
+		//Taken once, so the ordering can't change under us while another job writes
+		record CacheFile(File file, long lastModified, long length) {}
+		CacheFile[] newestFirst = Arrays.stream(files)
+				.map(f -> new CacheFile(f, f.lastModified(), f.length()))
+				.sorted(Comparator.comparingLong(CacheFile::lastModified).reversed())
+				.toArray(CacheFile[]::new);
+
+		long keptBytes = 0;
+		int removed = 0;
+		boolean full = false;
+		for (CacheFile cacheFile : newestFirst) {
+			full = full || keptBytes + cacheFile.length() > maxBytes;
+			if (full || now - cacheFile.lastModified() > maxAgeMs) {
+				try {
+					Files.deleteIfExists(cacheFile.file().toPath());
+					removed++;
+				} catch (IOException e) {
+					LOGGER.warn("Unable to remove cache file {}: {}", cacheFile.file(), e.getMessage());
+				}
+			} else {
+				keptBytes += cacheFile.length();
+			}
+		}
+
+		if (removed > 0) {
+			LOGGER.info("Removed {} files from {}, leaving {}Kb", removed, cacheDir, keptBytes / 1024);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package org.ihtsdo.termserver.scripting.util;
+
+/**
+ * Splits tab delimited RF2 rows without regex, reusing the same String[] from one row to the
+ * next whenever the field count allows.  Columns with few distinct values (module, type, refset
+ * ids etc) are served from an intern table, so no new String is created for them per row.
+ *
+ * Not thread safe - use one instance per file being read, and treat the returned array as only
+ * valid until the next call to tokenize.  Anything that needs to keep a value should keep the
+ * String, not the array.
+ */
+public class Rf2LineTokenizer {
+
+	private static final char TAB_CHAR = '\t';
+	private static final int INITIAL_INTERN_CAPACITY = 256;
+
+	private final boolean keepTrailingEmptyFields;
+	private final boolean reuseArray;
+	private boolean[] internColumn = new boolean[0];
+
+	private String[] fields = new String[0];
+	private String[] internTable = new String[INITIAL_INTERN_CAPACITY];
+	private int internCount = 0;
+
+	/**
+	 * @param keepTrailingEmptyFields matches line.split(TAB, -1) when true, line.split(TAB) otherwise
+	 * @param internedColumns zero based indexes of columns expected to hold a small set of repeated values
+	 */
+	public Rf2LineTokenizer(boolean keepTrailingEmptyFields, int... internedColumns) {
+		this(keepTrailingEmptyFields, true, internedColumns);
+	}
+
+	/**
+	 * @param reuseArray set false where the row array is handed on to code that may hold a reference to it
+	 */
+	public Rf2LineTokenizer(boolean keepTrailingEmptyFields, boolean reuseArray, int... internedColumns) {
+		this.keepTrailingEmptyFields = keepTrailingEmptyFields;
+		this.reuseArray = reuseArray;
+		for (int col : internedColumns) {
+			if (col >= internColumn.length) {
+				boolean[] expanded = new boolean[col + 1];
+				System.arraycopy(internColumn, 0, expanded, 0, internColumn.length);
+				internColumn = expanded;
+			}
+			internColumn[col] = true;
+		}
+	}
+
+	public String[] tokenize(String line) {
+		int fieldCount = countFields(line);
+		if (!reuseArray || fields.length != fieldCount) {
+			fields = new String[fieldCount];
+		}
+
+		int start = 0;
+		for (int i = 0; i < fieldCount; i++) {
+			int end = line.indexOf(TAB_CHAR, start);
+			if (end == -1) {
+				end = line.length();
+			}
+			if (start == end) {
+				fields[i] = "";
+			} else if (i < internColumn.length && internColumn[i]) {
+				fields[i] = intern(line, start, end);
+			} else {
+				fields[i] = line.substring(start, end);
+			}
+			start = end + 1;
+		}
+		return fields;
+	}
+
+	private int countFields(String line) {
+		int count = 1;
+		int lastNonEmptyField = 0;
+		int fieldStart = 0;
+		for (int idx = line.indexOf(TAB_CHAR); idx != -1; idx = line.indexOf(TAB_CHAR, idx + 1)) {
+			if (idx > fieldStart) {
+				lastNonEmptyField = count;
+			}
+			count++;
+			fieldStart = idx + 1;
+		}
+		if (fieldStart < line.length()) {
+			lastNonEmptyField = count;
+		}
+
+		if (keepTrailingEmptyFields) {
+			return count;
+		}
+		//String.split drops trailing empty strings, but a line with no content at all still gives one field
+		return line.isEmpty() ? 1 : lastNonEmptyField;
+	}
+
+	/**
+	 * Open addressing lookup over the characters of the line itself, so that a value we've
+	 * already seen costs no allocation at all.
+	 */
+	private String intern(String line, int start, int end) {
+		int len = end - start;
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + line.charAt(i);
+		}
+		int mask = internTable.length - 1;
+		int slot = spread(hash) & mask;
+		while (internTable[slot] != null) {
+			String candidate = internTable[slot];
+			if (candidate.length() == len && line.regionMatches(start, candidate, 0, len)) {
+				return candidate;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		String value = line.substring(start, end);
+		internTable[slot] = value;
+		if (++internCount * 2 > internTable.length) {
+			rehash();
+		}
+		return value;
+	}
+
+	private void rehash() {
+		String[] oldTable = internTable;
+		internTable = new String[oldTable.length * 2];
+		int mask = internTable.length - 1;
+		for (String value : oldTable) {
+			if (value != null) {
+				int slot = spread(value.hashCode()) & mask;
+				while (internTable[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				internTable[slot] = value;
+			}
+		}
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	public int getInternedValueCount() {
+		return internCount;
+	}
+}
@@ -0,0 +1,380 @@
+package org.ihtsdo.termserver.scripting.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares two RF2 release packages - each either a zip archive or a directory - file by file,
+ * without extracting them or calling out to diff.  Files are matched on name once any release
+ * date and beta 'x' prefix have been removed, so that eg xsct2_Concept_Snapshot_INT_20250301.txt
+ * is compared against sct2_Concept_Snapshot_INT_20241001.txt.
+ *
+ * The rows of each file are sorted (unless they already are) and then merged on component id,
+ * so that every id is visited once.  A row present on one side only is reported as deleted or
+ * created.  A row whose content differs is reported as deleted and then created, so the previous
+ * state of a component always arrives before its current state.  A file present in only one
+ * package is treated as having no rows in the other.
+ *
+ * Files are compared in parallel, largest first, with each handler being called on one thread
+ * only.  Since both sides of a file are held in memory while it's compared, the number of bytes
+ * being compared at once is limited to a quarter of the heap.  A single file needing more than
+ * that is still compared, but on its own, so the heap must be large enough to hold roughly three
+ * times the combined size of both sides of the largest file.
+ */
+public class Rf2PackageComparer implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Rf2PackageComparer.class);
+
+	private static final Pattern RELEASE_DATE = Pattern.compile("_\\d{8}\\.");
+	private static final String BETA_PREFIX = "x";
+	private static final char TAB_CHAR = '\t';
+	private static final int DEFAULT_PARALLELISM = 6;
+	private static final int BYTES_PER_PERMIT = 1024 * 1024;
+	//Strings and the arrays holding them take roughly three times the size of the file itself
+	private static final int MEMORY_PER_FILE_BYTE = 3;
+
+	public interface DifferenceHandler {
+		void deleted(String[] row) throws TermServerScriptException;
+
+		void created(String[] row) throws TermServerScriptException;
+
+		default void complete(FileComparison comparison) throws TermServerScriptException {
+		}
+
+		static DifferenceHandler all(DifferenceHandler... handlers) {
+			return new DifferenceHandler() {
+				@Override
+				public void deleted(String[] row) throws TermServerScriptException {
+					for (DifferenceHandler handler : handlers) {
+						handler.deleted(row);
+					}
+				}
+
+				@Override
+				public void created(String[] row) throws TermServerScriptException {
+					for (DifferenceHandler handler : handlers) {
+						handler.created(row);
+					}
+				}
+
+				@Override
+				public void complete(FileComparison comparison) throws TermServerScriptException {
+					for (DifferenceHandler handler : handlers) {
+						handler.complete(comparison);
+					}
+				}
+			};
+		}
+	}
+
+	public interface RowHandler {
+		void row(String[] row) throws TermServerScriptException;
+	}
+
+	public record FileComparison(String filename, boolean headerChanged, int previousRows, int currentRows, int deleted, int created) {
+	}
+
+	private final Rf2Package previous;
+	private final Rf2Package current;
+	private int parallelism = DEFAULT_PARALLELISM;
+
+	public Rf2PackageComparer(File previous, File current) throws TermServerScriptException {
+		this.previous = Rf2Package.load(previous);
+		try {
+			this.current = Rf2Package.load(current);
+		} catch (TermServerScriptException e) {
+			this.previous.close();
+			throw e;
+		}
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * @return the names of the files in the previous package, as they will be matched up
+	 */
+	public SortedSet<String> getPreviousFilenames() {
+		return Collections.unmodifiableSortedSet(previous.files.navigableKeySet());
+	}
+
+	public SortedSet<String> getCurrentFilenames() {
+		return Collections.unmodifiableSortedSet(current.files.navigableKeySet());
+	}
+
+	/**
+	 * Visits every data row of a file in one of the packages, in file order.  Does nothing if
+	 * the package has no such file.
+	 */
+	public void forEachRow(boolean fromCurrent, String filename, RowHandler handler) throws TermServerScriptException {
+		Rf2Package rf2Package = fromCurrent ? current : previous;
+		if (!rf2Package.files.containsKey(filename)) {
+			return;
+		}
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(false);
+		try (BufferedReader br = rf2Package.open(filename)) {
+			br.readLine();
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (!line.isEmpty()) {
+					handler.row(tokenizer.tokenize(line));
+				}
+			}
+		} catch (IOException e) {
+			throw new TermServerScriptException("Failed to read " + filename + " from " + rf2Package.location, e);
+		}
+	}
+
+	/**
+	 * Compares each of the named files, which may be present in either or both packages.
+	 * @param handlers supplies a handler for the differences in each file, which will be given
+	 * the differences and then the overall comparison from a single thread
+	 * @return the comparison of each file, in filename order
+	 */
+	public SortedMap<String, FileComparison> compare(Collection<String> filenames, Function<String, DifferenceHandler> handlers) throws TermServerScriptException {
+		long startTime = System.currentTimeMillis();
+		int maxPermits = (int) Math.max(1, Runtime.getRuntime().maxMemory() / 4 / BYTES_PER_PERMIT);
+		Semaphore memoryAvailable = new Semaphore(maxPermits);
+
+		//Start the largest files first so that they're not left running on their own at the end
+		List<String> toCompare = new ArrayList<>(new TreeSet<>(filenames));
+		toCompare.sort(Comparator.comparingLong(this::getCombinedSize).reversed());
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			Map<String, Future<FileComparison>> futures = new LinkedHashMap<>();
+			for (String filename : toCompare) {
+				long permitsNeeded = Math.max(1, getCombinedSize(filename) * MEMORY_PER_FILE_BYTE / BYTES_PER_PERMIT);
+				if (permitsNeeded > maxPermits) {
+					LOGGER.warn("{} needs around {}MB to compare, more than the {}MB allowed.  Comparing it on its own.",
+							filename, permitsNeeded * BYTES_PER_PERMIT / (1024 * 1024), (long) maxPermits * BYTES_PER_PERMIT / (1024 * 1024));
+				}
+				int permits = (int) Math.min(maxPermits, permitsNeeded);
+				futures.put(filename, executor.submit(() -> {
+					memoryAvailable.acquire(permits);
+					try {
+						return compareFile(filename, handlers.apply(filename));
+					} finally {
+						memoryAvailable.release(permits);
+					}
+				}));
+			}
+
+			SortedMap<String, FileComparison> comparisons = new TreeMap<>();
+			for (Map.Entry<String, Future<FileComparison>> entry : futures.entrySet()) {
+				comparisons.put(entry.getKey(), entry.getValue().get());
+			}
+			LOGGER.info("Compared {} files in {}ms", comparisons.size(), System.currentTimeMillis() - startTime);
+			return comparisons;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while comparing packages", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TermServerScriptException tsse) {
+				throw tsse;
+			}
+			throw new TermServerScriptException("Failed to compare packages due to " + e.getCause(), e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private long getCombinedSize(String filename) {
+		return previous.getSize(filename) + current.getSize(filename);
+	}
+
+	private FileComparison compareFile(String filename, DifferenceHandler handler) throws TermServerScriptException {
+		long startTime = System.currentTimeMillis();
+		SortedRows previousRows = previous.readSortedRows(filename);
+		SortedRows currentRows = current.readSortedRows(filename);
+
+		//A file missing from one package counts as having the same header as the other
+		boolean headerChanged = previousRows.header != null && currentRows.header != null
+				&& !previousRows.header.equals(currentRows.header);
+
+		Rf2LineTokenizer tokenizer = new Rf2LineTokenizer(false, false);
+		String[] prev = previousRows.rows;
+		String[] curr = currentRows.rows;
+		int deleted = 0;
+		int created = 0;
+		int p = 0;
+		int c = 0;
+		while (p < prev.length || c < curr.length) {
+			int cmp = p == prev.length ? 1 : c == curr.length ? -1 : compareIds(prev[p], curr[c]);
+			if (cmp < 0) {
+				handler.deleted(tokenizer.tokenize(prev[p++]));
+				deleted++;
+			} else if (cmp > 0) {
+				handler.created(tokenizer.tokenize(curr[c++]));
+				created++;
+			} else {
+				if (!prev[p].equals(curr[c])) {
+					handler.deleted(tokenizer.tokenize(prev[p]));
+					handler.created(tokenizer.tokenize(curr[c]));
+					deleted++;
+					created++;
+				}
+				p++;
+				c++;
+			}
+		}
+
+		FileComparison comparison = new FileComparison(filename, headerChanged, prev.length, curr.length, deleted, created);
+		handler.complete(comparison);
+		LOGGER.debug("Compared {} in {}ms: {} rows removed or changed, {} rows added or changed", filename,
+				System.currentTimeMillis() - startTime, deleted, created);
+		return comparison;
+	}
+
+	/**
+	 * Compares the first column of two rows.  Sorting rows as whole strings puts them in this
+	 * same order, since the tab ending an id sorts before any character that could continue it.
+	 */
+	private static int compareIds(String a, String b) {
+		int aEnd = idEnd(a);
+		int bEnd = idEnd(b);
+		int len = Math.min(aEnd, bEnd);
+		for (int i = 0; i < len; i++) {
+			int diff = a.charAt(i) - b.charAt(i);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return aEnd - bEnd;
+	}
+
+	private static int idEnd(String row) {
+		int tab = row.indexOf(TAB_CHAR);
+		return tab == -1 ? row.length() : tab;
+	}
+
+	static String normaliseFilename(String filename) {
+		String normalised = RELEASE_DATE.matcher(filename).replaceFirst(".");
+		return normalised.startsWith(BETA_PREFIX) ? normalised.substring(BETA_PREFIX.length()) : normalised;
+	}
+
+	@Override
+	public void close() {
+		previous.close();
+		current.close();
+	}
+
+	private record SortedRows(String header, String[] rows) {
+	}
+
+	/**
+	 * The RF2 files of a package, keyed on their normalised name regardless of which folder
+	 * they were found in.
+	 */
+	private static class Rf2Package {
+		private final File location;
+		private final ZipFile zipFile;
+		private final TreeMap<String, Object> files = new TreeMap<>();
+
+		private Rf2Package(File location, ZipFile zipFile) {
+			this.location = location;
+			this.zipFile = zipFile;
+		}
+
+		static Rf2Package load(File location) throws TermServerScriptException {
+			try {
+				if (location.isDirectory()) {
+					Rf2Package rf2Package = new Rf2Package(location, null);
+					try (Stream<Path> paths = Files.walk(location.toPath())) {
+						paths.filter(Files::isRegularFile)
+								.forEach(path -> rf2Package.add(path.getFileName().toString(), path));
+					}
+					return rf2Package;
+				}
+				//ZipFile allows entries to be read from several threads at once
+				Rf2Package rf2Package = new Rf2Package(location, new ZipFile(location, StandardCharsets.UTF_8));
+				rf2Package.zipFile.stream()
+						.filter(entry -> !entry.isDirectory())
+						.forEach(entry -> rf2Package.add(Path.of(entry.getName()).getFileName().toString(), entry));
+				return rf2Package;
+			} catch (IOException | UncheckedIOException e) {
+				throw new TermServerScriptException("Unable to open release package " + location, e);
+			}
+		}
+
+		private void add(String name, Object file) {
+			if (name.startsWith(".") || name.endsWith(".json")) {
+				return;
+			}
+			Object existing = files.put(normaliseFilename(name), file);
+			if (existing != null) {
+				LOGGER.warn("{} contains more than one file named {}, using {}", location, normaliseFilename(name), file);
+			}
+		}
+
+		long getSize(String filename) {
+			Object file = files.get(filename);
+			if (file instanceof ZipEntry entry) {
+				return Math.max(0, entry.getSize());
+			} else if (file instanceof Path path) {
+				return path.toFile().length();
+			}
+			return 0;
+		}
+
+		BufferedReader open(String filename) throws IOException {
+			Object file = files.get(filename);
+			InputStream is = file instanceof ZipEntry entry ? zipFile.getInputStream(entry) : Files.newInputStream((Path) file);
+			return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+		}
+
+		SortedRows readSortedRows(String filename) throws TermServerScriptException {
+			if (!files.containsKey(filename)) {
+				return new SortedRows(null, new String[0]);
+			}
+			try (BufferedReader br = open(filename)) {
+				String header = br.readLine();
+				List<String> rows = new ArrayList<>();
+				boolean sorted = true;
+				String last = null;
+				String line;
+				while ((line = br.readLine()) != null) {
+					if (line.isEmpty()) {
+						continue;
+					}
+					if (last != null && sorted && line.compareTo(last) < 0) {
+						sorted = false;
+					}
+					rows.add(line);
+					last = line;
+				}
+				String[] rowArray = rows.toArray(new String[0]);
+				if (!sorted) {
+					Arrays.sort(rowArray);
+				}
+				return new SortedRows(header, rowArray);
+			} catch (IOException e) {
+				throw new TermServerScriptException("Failed to read " + filename + " from " + location, e);
+			}
+		}
+
+		void close() {
+			if (zipFile != null) {
+				try {
+					zipFile.close();
+				} catch (IOException e) {
+					LOGGER.warn("Failed to close {}", location, e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package org.ihtsdo.termserver.scripting.util;
+
+import java.io.IOException;
+
+/**
+ * A supply of RF2 rows already split into fields, so that GraphLoader can load components
+ * without caring whether they came from RF2 text or from a binary snapshot cache.
+ */
+public interface Rf2RowSource {
+
+	/**
+	 * @return the fields of the next row, starting with the header row where there is one, or null
+	 * once the rows are exhausted.  The array may be reused by the next call.
+	 */
+	String[] nextRow() throws IOException;
+
+	/**
+	 * @return true if the first row returned is a header rather than data
+	 */
+	boolean hasHeaderRow();
+
+}
@@ -0,0 +1,33 @@
+package org.ihtsdo.termserver.scripting.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads rows from a tab delimited RF2 file, header first.  The stream is not closed here
+ * since, when reading from a zip, there's more to come after this file.
+ */
+public class Rf2TextRowSource implements Rf2RowSource {
+
+	private final BufferedReader br;
+	private final Rf2LineTokenizer tokenizer;
+
+	public Rf2TextRowSource(InputStream is, Rf2LineTokenizer tokenizer) {
+		this.br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+		this.tokenizer = tokenizer;
+	}
+
+	@Override
+	public String[] nextRow() throws IOException {
+		String line = br.readLine();
+		return line == null ? null : tokenizer.tokenize(line);
+	}
+
+	@Override
+	public boolean hasHeaderRow() {
+		return true;
+	}
+}
@@ -0,0 +1,411 @@
+package org.ihtsdo.termserver.scripting.util;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Map keyed by SCTID which holds numeric ids as primitive longs in an open addressing table,
+ * so a lookup by String parses the id in place rather than hashing and comparing Strings, and
+ * each entry costs two array slots rather than a HashMap node.
+ *
+ * Anything that isn't a canonical positive number - UUIDs for refset members, or the odd
+ * illegal SCTID we've been told to allow - is kept in an ordinary HashMap alongside, so this
+ * behaves as any other Map&lt;String, V&gt;.  Like HashMap, not thread safe and iteration order is
+ * undefined.  Removal through an iterator is not supported, use remove(key) instead.
+ */
+public class SctIdMap<V> extends AbstractMap<String, V> {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final float LOAD_FACTOR = 0.6f;
+	private static final long NOT_NUMERIC = -1L;
+	private static final long EMPTY = 0L;  //No component has an id of zero
+	private static final int MIN_SPLIT_SLOTS = 1024;
+
+	private long[] keys;
+	private Object[] values;
+	private int numericSize = 0;
+	private int resizeAt;
+	private int modCount = 0;
+
+	private final Map<String, V> otherKeys = new HashMap<>();
+
+	public SctIdMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public SctIdMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		resizeAt = (int) (capacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * @return the id as a long if it's the canonical form of a positive number that fits in 18 digits
+	 * (all SCTIDs do), otherwise NOT_NUMERIC
+	 */
+	static long toNumericKey(String id) {
+		int len = id.length();
+		if (len == 0 || len > 18 || id.charAt(0) == '0') {
+			return NOT_NUMERIC;
+		}
+		long value = 0;
+		for (int i = 0; i < len; i++) {
+			char ch = id.charAt(i);
+			if (ch < '0' || ch > '9') {
+				return NOT_NUMERIC;
+			}
+			value = value * 10 + (ch - '0');
+		}
+		return value;
+	}
+
+	private int slotFor(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & (keys.length - 1);
+	}
+
+	private int findSlot(long key) {
+		int mask = keys.length - 1;
+		for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				return slot;
+			} else if (keys[slot] == EMPTY) {
+				return -1;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long sctId) {
+		if (sctId <= 0) {
+			return otherKeys.get(Long.toString(sctId));
+		}
+		int slot = findSlot(sctId);
+		return slot == -1 ? null : (V) values[slot];
+	}
+
+	@Override
+	public V get(Object key) {
+		if (!(key instanceof String id)) {
+			return null;
+		}
+		long numericKey = toNumericKey(id);
+		return numericKey == NOT_NUMERIC ? otherKeys.get(id) : get(numericKey);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (!(key instanceof String id)) {
+			return false;
+		}
+		long numericKey = toNumericKey(id);
+		return numericKey == NOT_NUMERIC ? otherKeys.containsKey(id) : findSlot(numericKey) != -1;
+	}
+
+	@Override
+	public V put(String key, V value) {
+		long numericKey = toNumericKey(key);
+		if (numericKey == NOT_NUMERIC) {
+			modCount++;
+			return otherKeys.put(key, value);
+		}
+		return put(numericKey, value);
+	}
+
+	@SuppressWarnings("unchecked")
+	private V put(long key, V value) {
+		int mask = keys.length - 1;
+		int slot = slotFor(key);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				V previous = (V) values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		modCount++;
+		if (++numericSize > resizeAt) {
+			resize();
+		}
+		return null;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = slotFor(oldKeys[i]);
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		if (!(key instanceof String id)) {
+			return null;
+		}
+		long numericKey = toNumericKey(id);
+		if (numericKey == NOT_NUMERIC) {
+			modCount++;
+			return otherKeys.remove(id);
+		}
+		int slot = findSlot(numericKey);
+		if (slot == -1) {
+			return null;
+		}
+		V previous = (V) values[slot];
+		deleteSlot(slot);
+		return previous;
+	}
+
+	/**
+	 * Backward shift deletion - pull any later entries of the same probe run into the gap
+	 * so that lookups never need tombstones.
+	 */
+	private void deleteSlot(int gap) {
+		int mask = keys.length - 1;
+		int slot = gap;
+		while (true) {
+			slot = (slot + 1) & mask;
+			if (keys[slot] == EMPTY) {
+				break;
+			}
+			int home = slotFor(keys[slot]);
+			//Move the entry back if its home slot is not between the gap and where it is now
+			boolean canMove = gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot);
+			if (canMove) {
+				keys[gap] = keys[slot];
+				values[gap] = values[slot];
+				gap = slot;
+			}
+		}
+		keys[gap] = EMPTY;
+		values[gap] = null;
+		numericSize--;
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return numericSize + otherKeys.size();
+	}
+
+	/**
+	 * @return the number of slots in the numeric table, each costing a long and a reference whether used or not
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(values, null);
+		numericSize = 0;
+		otherKeys.clear();
+		modCount++;
+	}
+
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new SlotIterator<>(SctIdMap.this::valueAt, Map.Entry::getValue);
+			}
+
+			@Override
+			public Spliterator<V> spliterator() {
+				return new SlotSpliterator<>(SctIdMap.this::valueAt, Map.Entry::getValue, 0);
+			}
+
+			@Override
+			public int size() {
+				return SctIdMap.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Set<Map.Entry<String, V>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Map.Entry<String, V>> iterator() {
+				return new SlotIterator<>(SctIdMap.this::entryAt, entry -> entry);
+			}
+
+			@Override
+			public Spliterator<Map.Entry<String, V>> spliterator() {
+				return new SlotSpliterator<>(SctIdMap.this::entryAt, entry -> entry, Spliterator.DISTINCT);
+			}
+
+			@Override
+			public int size() {
+				return SctIdMap.this.size();
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private V valueAt(int slot) {
+		return (V) values[slot];
+	}
+
+	private Map.Entry<String, V> entryAt(int slot) {
+		return new AbstractMap.SimpleImmutableEntry<>(Long.toString(keys[slot]), valueAt(slot));
+	}
+
+	/**
+	 * Walks the numeric table and then the other keys, failing fast if the map is modified meanwhile
+	 */
+	private class SlotIterator<T> implements Iterator<T> {
+		private final IntFunction<T> numericEntry;
+		private final Function<Map.Entry<String, V>, T> otherEntry;
+		private final int expectedModCount = modCount;
+		private int nextSlot = -1;
+		private Iterator<Map.Entry<String, V>> otherIterator;
+
+		SlotIterator(IntFunction<T> numericEntry, Function<Map.Entry<String, V>, T> otherEntry) {
+			this.numericEntry = numericEntry;
+			this.otherEntry = otherEntry;
+			advance();
+		}
+
+		private void advance() {
+			do {
+				nextSlot++;
+			} while (nextSlot < keys.length && keys[nextSlot] == EMPTY);
+		}
+
+		@Override
+		public boolean hasNext() {
+			checkForModification(expectedModCount);
+			if (nextSlot < keys.length) {
+				return true;
+			}
+			if (otherIterator == null) {
+				otherIterator = otherKeys.entrySet().iterator();
+			}
+			return otherIterator.hasNext();
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			if (nextSlot < keys.length) {
+				T item = numericEntry.apply(nextSlot);
+				advance();
+				return item;
+			}
+			return otherEntry.apply(otherIterator.next());
+		}
+	}
+
+	/**
+	 * Splits the numeric table by slot range, so a parallel stream over the map shares the work out
+	 * evenly.  The other keys stay with whichever part covers the end of the table.  Only the
+	 * spliterator for the whole map knows its exact size, the parts estimate theirs from the share
+	 * of the table they cover.
+	 */
+	private class SlotSpliterator<T> implements Spliterator<T> {
+		private final IntFunction<T> numericEntry;
+		private final Function<Map.Entry<String, V>, T> otherEntry;
+		private final int characteristics;
+		private final int expectedModCount = modCount;
+		private int nextSlot;
+		private final int fence;
+		private final boolean includesOtherKeys;
+		private boolean isWholeMap;
+		private Iterator<Map.Entry<String, V>> otherIterator;
+
+		SlotSpliterator(IntFunction<T> numericEntry, Function<Map.Entry<String, V>, T> otherEntry, int characteristics) {
+			this(numericEntry, otherEntry, characteristics, 0, keys.length, true);
+			this.isWholeMap = true;
+		}
+
+		private SlotSpliterator(IntFunction<T> numericEntry, Function<Map.Entry<String, V>, T> otherEntry, int characteristics,
+				int nextSlot, int fence, boolean includesOtherKeys) {
+			this.numericEntry = numericEntry;
+			this.otherEntry = otherEntry;
+			this.characteristics = characteristics;
+			this.nextSlot = nextSlot;
+			this.fence = fence;
+			this.includesOtherKeys = includesOtherKeys;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			checkForModification(expectedModCount);
+			while (nextSlot < fence) {
+				int slot = nextSlot++;
+				if (keys[slot] != EMPTY) {
+					action.accept(numericEntry.apply(slot));
+					return true;
+				}
+			}
+			if (includesOtherKeys) {
+				if (otherIterator == null) {
+					otherIterator = otherKeys.entrySet().iterator();
+				}
+				if (otherIterator.hasNext()) {
+					action.accept(otherEntry.apply(otherIterator.next()));
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Spliterator<T> trySplit() {
+			if (fence - nextSlot < MIN_SPLIT_SLOTS || otherIterator != null) {
+				return null;
+			}
+			int mid = (nextSlot + fence) >>> 1;
+			Spliterator<T> prefix = new SlotSpliterator<>(numericEntry, otherEntry, characteristics, nextSlot, mid, false);
+			nextSlot = mid;
+			isWholeMap = false;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			if (isWholeMap) {
+				return size();
+			}
+			long numericShare = (long) numericSize * (fence - nextSlot) / keys.length;
+			return includesOtherKeys ? numericShare + otherKeys.size() : numericShare;
+		}
+
+		@Override
+		public int characteristics() {
+			return isWholeMap ? characteristics | Spliterator.SIZED : characteristics;
+		}
+	}
+
+	private void checkForModification(int expectedModCount) {
+		if (modCount != expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+	}
+}
@@ -1,8 +1,77 @@
 package org.ihtsdo.termserver.scripting
 
+import org.ihtsdo.otf.RF2Constants.CharacteristicType
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.RefsetMember
+import org.ihtsdo.termserver.scripting.client.TermServerClient
+import org.ihtsdo.termserver.scripting.domain.Concept
+import org.ihtsdo.termserver.scripting.domain.ConceptCollection
+import org.ihtsdo.termserver.scripting.domain.Relationship
 import spock.lang.Specification
 
 class EclCacheTest extends Specification {
+    static final String ROOT = "138875005"
+    static final String FINDING = "404684003"
+    static final String DISEASE = "64572001"
+    static final String LUNG_DISORDER = "19829001"
+    static final String PNEUMONIA = "233604007"
+    static final String HEART_DISEASE = "56265001"
+    static final String INACTIVE_DISEASE = "1000000005"
+    static final String BODY_STRUCTURE = "123037004"
+    static final String LUNG = "39607008"
+    static final String HEART = "80891009"
+    static final String MORPHOLOGY = "49755003"
+    static final String INFLAMMATION = "409774005"
+    static final String ATTRIBUTE = "410662002"
+    static final String FINDING_SITE = "363698007"
+    static final String ASSOCIATED_MORPHOLOGY = "116676008"
+    static final String SUBSTANCE = "105590001"
+    static final String MAP_REFSET = "447562003"
+
+    GraphLoader gl = GraphLoader.getGraphLoader()
+
+    def setup() {
+        gl.reset()
+        gl.setAllowIllegalSCTIDs(true)
+        concept(ROOT)
+        concept(FINDING, ROOT)
+        concept(DISEASE, FINDING)
+        concept(LUNG_DISORDER, DISEASE)
+        concept(PNEUMONIA, LUNG_DISORDER)
+        concept(HEART_DISEASE, DISEASE)
+        concept(INACTIVE_DISEASE, DISEASE).setActive(false)
+        concept(BODY_STRUCTURE, ROOT)
+        concept(LUNG, BODY_STRUCTURE)
+        concept(HEART, BODY_STRUCTURE)
+        concept(MORPHOLOGY, ROOT)
+        concept(INFLAMMATION, MORPHOLOGY)
+        concept(ATTRIBUTE, ROOT)
+        concept(FINDING_SITE, ATTRIBUTE)
+        concept(ASSOCIATED_MORPHOLOGY, ATTRIBUTE)
+        concept(SUBSTANCE, ROOT)
+        //Enough for the local store to be considered populated
+        (1..100).each { concept("10" + it + "005", SUBSTANCE) }
+
+        attribute(LUNG_DISORDER, FINDING_SITE, LUNG, 0)
+        attribute(PNEUMONIA, FINDING_SITE, LUNG, 1)
+        attribute(PNEUMONIA, ASSOCIATED_MORPHOLOGY, INFLAMMATION, 1)
+        attribute(HEART_DISEASE, FINDING_SITE, HEART, 0)
+
+        RefsetMember member = new RefsetMember()
+        member.setId(UUID.randomUUID().toString())
+        member.setRefsetId(MAP_REFSET)
+        member.setReferencedComponentId(HEART_DISEASE)
+        member.setActive(true)
+        gl.getConcept(HEART_DISEASE).addOtherRefsetMember(member)
+    }
+
+    def cleanup() {
+        gl.setAllowIllegalSCTIDs(false)
+        gl.reset()
+        EclCache.reset()
+        EclCache.setUseLocalEvaluator(false)
+        EclCache.setUsePersistentCache(true)
+    }
+
     def "Test isSimple logic with #testName: ECL='#ecl'"() {
         when:
             def cache = new EclCache(null, null)
@@ -26,4 +95,179 @@ class EclCacheTest extends Specification {
             "Complex with AND"             | "1234 AND 4321"                                                     || false
             "Example from RP-700"          | '<<49755003 |Morph.. | term=(wild: "*dysplasia" wild:"*neoplasia")' || false
     }
+
+    def "local evaluation of '#ecl' gives the expected concepts"() {
+        when:
+            def result = new LocalEclEvaluator(gl, CharacteristicType.INFERRED_RELATIONSHIP).evaluate(ecl)
+
+        then:
+            result*.conceptId as Set == expected as Set
+
+        where:
+            ecl                                                                   || expected
+            DISEASE                                                               || [DISEASE]
+            "< $DISEASE"                                                          || [LUNG_DISORDER, PNEUMONIA, HEART_DISEASE]
+            "<< $DISEASE |Disease|"                                               || [DISEASE, LUNG_DISORDER, PNEUMONIA, HEART_DISEASE]
+            "<! $DISEASE"                                                         || [LUNG_DISORDER, HEART_DISEASE]
+            "<<! $DISEASE"                                                        || [DISEASE, LUNG_DISORDER, HEART_DISEASE]
+            "> $PNEUMONIA"                                                        || [LUNG_DISORDER, DISEASE, FINDING, ROOT]
+            ">> $PNEUMONIA"                                                       || [PNEUMONIA, LUNG_DISORDER, DISEASE, FINDING, ROOT]
+            ">! $PNEUMONIA"                                                       || [LUNG_DISORDER]
+            ">>! $PNEUMONIA"                                                      || [PNEUMONIA, LUNG_DISORDER]
+            "< $DISEASE AND < $LUNG_DISORDER"                                     || [PNEUMONIA]
+            "< $DISEASE , < $LUNG_DISORDER"                                       || [PNEUMONIA]
+            "<! $DISEASE OR <! $BODY_STRUCTURE"                                   || [LUNG_DISORDER, HEART_DISEASE, LUNG, HEART]
+            "< $DISEASE MINUS << $LUNG_DISORDER"                                  || [HEART_DISEASE]
+            "(< $DISEASE MINUS $PNEUMONIA) AND < $DISEASE"                        || [LUNG_DISORDER, HEART_DISEASE]
+            "^ $MAP_REFSET"                                                       || [HEART_DISEASE]
+            "< $FINDING AND ^ $MAP_REFSET"                                        || [HEART_DISEASE]
+            "< $FINDING : $FINDING_SITE = $LUNG"                                  || [LUNG_DISORDER, PNEUMONIA]
+            "< $FINDING : $FINDING_SITE = << $BODY_STRUCTURE"                     || [LUNG_DISORDER, PNEUMONIA, HEART_DISEASE]
+            "< $FINDING : $FINDING_SITE != $LUNG"                                 || [HEART_DISEASE]
+            "< $FINDING : * = $INFLAMMATION"                                      || [PNEUMONIA]
+            "< $FINDING : { $FINDING_SITE = $LUNG , $ASSOCIATED_MORPHOLOGY = * }" || [PNEUMONIA]
+            "< $FINDING : $FINDING_SITE = $LUNG , $ASSOCIATED_MORPHOLOGY = *"     || [PNEUMONIA]
+            "< $FINDING : $FINDING_SITE = $HEART OR $ASSOCIATED_MORPHOLOGY = *"   || [PNEUMONIA, HEART_DISEASE]
+            "< $FINDING : [0..0] $ASSOCIATED_MORPHOLOGY = *"                      || [DISEASE, LUNG_DISORDER, HEART_DISEASE]
+            "< $FINDING : [1..1] $FINDING_SITE = *"                               || [LUNG_DISORDER, PNEUMONIA, HEART_DISEASE]
+            "< $FINDING : [0..0] { $ASSOCIATED_MORPHOLOGY = * }"                  || [DISEASE, LUNG_DISORDER, HEART_DISEASE]
+    }
+
+    def "local evaluation of '#ecl' is not supported, so the TS would be used"() {
+        when:
+            new LocalEclEvaluator(gl, CharacteristicType.INFERRED_RELATIONSHIP).evaluate(ecl)
+
+        then:
+            thrown(LocalEclEvaluator.UnsupportedEclException)
+
+        where:
+            ecl << [
+                    "< $FINDING : R $FINDING_SITE = *",
+                    "< $FINDING {{ term = \"lung\" }}",
+                    "^ 900000000000527005",
+                    "< 99999999005",
+                    "< $DISEASE OR < $FINDING AND < $LUNG_DISORDER",
+                    "< * "
+            ]
+    }
+
+    def "a concept id which fails validation is not supported rather than an error"() {
+        given:
+            gl.setAllowIllegalSCTIDs(false)
+
+        when:
+            new LocalEclEvaluator(gl, CharacteristicType.INFERRED_RELATIONSHIP).evaluate("<< 12345 MINUS << $DISEASE")
+
+        then:
+            thrown(LocalEclEvaluator.UnsupportedEclException)
+    }
+
+    def "members of each refset are indexed once and kept until the content changes"() {
+        given:
+            def evaluator = new LocalEclEvaluator(gl, CharacteristicType.INFERRED_RELATIONSHIP)
+
+        when:
+            evaluator.evaluate("^ $MAP_REFSET")
+            def index = gl.getConceptsByRefset()
+            evaluator.evaluate("< $FINDING AND ^ $MAP_REFSET")
+
+        then:
+            gl.getConceptsByRefset().is(index)
+
+        when:
+            gl.invalidateDerivedData()
+
+        then:
+            !gl.getConceptsByRefset().is(index)
+            gl.getConceptsByRefset()[MAP_REFSET]*.conceptId == [HEART_DISEASE]
+    }
+
+    def "local evaluation does not need the transitive closure"() {
+        when:
+            new LocalEclEvaluator(gl, CharacteristicType.INFERRED_RELATIONSHIP).evaluate("< $FINDING : $FINDING_SITE = << $BODY_STRUCTURE")
+
+        then:
+            gl.transitiveClosure == null
+    }
+
+    def "local evaluation of refined ECL is off unless asked for"() {
+        expect:
+            !EclCache.useLocalEvaluator
+    }
+
+    def "with the local evaluator off, ECL without a refinement is still evaluated locally"() {
+        given:
+            TermServerClient tsClient = Mock()
+            EclCache.setUsePersistentCache(false)
+            def cache = EclCache.getCache("MAIN", tsClient, gl, true, CharacteristicType.INFERRED_RELATIONSHIP)
+
+        when:
+            def local = cache.findConcepts("<< $DISEASE |Disease| MINUS << $LUNG_DISORDER |Lung disorder|")
+
+        then:
+            0 * tsClient.getConcepts(*_)
+            local*.conceptId as Set == [DISEASE, HEART_DISEASE] as Set
+    }
+
+    def "with the local evaluator on, only ECL it can't handle goes to the TS"() {
+        given:
+            TermServerClient tsClient = Mock()
+            EclCache.setUsePersistentCache(false)
+            EclCache.setUseLocalEvaluator(true)
+            def cache = EclCache.getCache("MAIN", tsClient, gl, true, CharacteristicType.INFERRED_RELATIONSHIP)
+            def fromTS = new ConceptCollection()
+            fromTS.setItems([new Concept(PNEUMONIA)])
+            fromTS.setTotal(1)
+
+        when:
+            def local = cache.findConcepts("< $FINDING : $FINDING_SITE = $LUNG")
+
+        then:
+            0 * tsClient.getConcepts(*_)
+            local*.conceptId as Set == [LUNG_DISORDER, PNEUMONIA] as Set
+
+        when:
+            def remote = cache.findConcepts("< $FINDING : R $FINDING_SITE = *")
+
+        then:
+            1 * tsClient.getConcepts(_, "MAIN", CharacteristicType.INFERRED_RELATIONSHIP, null, _, _) >> fromTS
+            //The local copy of the concept is returned in place of the one from the TS
+            remote.size() == 1
+            remote.iterator().next().is(gl.getConcept(PNEUMONIA))
+    }
+
+    def "with the local evaluator off, ECL that isn't simple goes to the TS"() {
+        given:
+            TermServerClient tsClient = Mock()
+            EclCache.setUsePersistentCache(false)
+            def cache = EclCache.getCache("MAIN", tsClient, gl, true, CharacteristicType.INFERRED_RELATIONSHIP)
+            def fromTS = new ConceptCollection()
+            fromTS.setItems([new Concept(PNEUMONIA)])
+            fromTS.setTotal(1)
+
+        when:
+            cache.findConcepts("< $FINDING : $FINDING_SITE = $LUNG")
+
+        then:
+            1 * tsClient.getConcepts(*_) >> fromTS
+    }
+
+    private Concept concept(String id, String... parentIds) {
+        Concept c = gl.getConcept(id, true, false)
+        c.setActive(true)
+        c.setFsn("FSN of " + id)
+        for (String parentId : parentIds) {
+            Concept parent = gl.getConcept(parentId)
+            c.addParent(CharacteristicType.INFERRED_RELATIONSHIP, parent)
+            parent.addChild(CharacteristicType.INFERRED_RELATIONSHIP, c)
+        }
+        return c
+    }
+
+    private void attribute(String sourceId, String typeId, String targetId, int groupId) {
+        Concept source = gl.getConcept(sourceId)
+        Relationship r = new Relationship(source, gl.getConcept(typeId), gl.getConcept(targetId), groupId)
+        r.setCharacteristicType(CharacteristicType.INFERRED_RELATIONSHIP)
+        source.addRelationship(r)
+    }
 }
@@ -0,0 +1,69 @@
+package org.ihtsdo.termserver.scripting
+
+import org.ihtsdo.otf.RF2Constants.CharacteristicType
+import org.ihtsdo.otf.RF2Constants.DefinitionStatus
+import org.ihtsdo.termserver.scripting.domain.Concept
+import spock.lang.Specification
+import spock.lang.TempDir
+
+class EclDiskCacheTest extends Specification {
+    static final long HEAD = 1700000000000L
+    static final String ECL = "< 404684003 : 363698007 = 39607008"
+
+    @TempDir
+    File tempDir
+
+    def "concepts are read back with every field the TS gave them"() {
+        given:
+            def cache = new EclDiskCache(tempDir, "MAIN", CharacteristicType.INFERRED_RELATIONSHIP)
+            Concept fromTS = new Concept("233604007", "Pneumonia (disorder)")
+            fromTS.setActive(true)
+            fromTS.setEffectiveTime("20020131")
+            fromTS.setModuleId("900000000000207008")
+            fromTS.setDefinitionStatus(DefinitionStatus.FULLY_DEFINED)
+            fromTS.setPreferredSynonym("Pneumonia")
+            Concept inactive = new Concept("1000000005", "Inactive disease (disorder)")
+            inactive.setActive(false)
+            inactive.setModuleId("900000000000207008")
+
+        when:
+            cache.store(HEAD, ECL, [fromTS, inactive])
+            def loaded = cache.load(HEAD, ECL)
+
+        then:
+            loaded*.conceptId == ["233604007", "1000000005"]
+            with(loaded[0]) {
+                active
+                effectiveTime == "20020131"
+                moduleId == "900000000000207008"
+                definitionStatus == DefinitionStatus.FULLY_DEFINED
+                fsn == "Pneumonia (disorder)"
+                preferredSynonym == "Pneumonia"
+            }
+            with(loaded[1]) {
+                !active
+                effectiveTime == null
+                definitionStatus == DefinitionStatus.PRIMITIVE
+            }
+    }
+
+    def "a file in the older id and FSN only layout is treated as a miss"() {
+        given:
+            def cache = new EclDiskCache(tempDir, "MAIN", CharacteristicType.INFERRED_RELATIONSHIP)
+            cache.store(HEAD, ECL, [new Concept("233604007", "Pneumonia (disorder)")])
+            File file = tempDir.listFiles().find { it.name.endsWith(".txt") }
+            file.text = "MAIN\t" + CharacteristicType.INFERRED_RELATIONSHIP + "\t" + HEAD + "\n" + ECL + "\n233604007\tPneumonia (disorder)\n"
+
+        expect:
+            cache.load(HEAD, ECL) == null
+    }
+
+    def "the same ECL at a later branch head is a miss"() {
+        given:
+            def cache = new EclDiskCache(tempDir, "MAIN", CharacteristicType.INFERRED_RELATIONSHIP)
+            cache.store(HEAD, ECL, [new Concept("233604007", "Pneumonia (disorder)")])
+
+        expect:
+            cache.load(HEAD + 1, ECL) == null
+    }
+}
@@ -0,0 +1,98 @@
+package org.ihtsdo.termserver.scripting
+
+import org.ihtsdo.otf.RF2Constants
+import org.ihtsdo.otf.exception.TermServerScriptException
+import org.ihtsdo.termserver.scripting.domain.Concept
+import spock.lang.Specification
+
+class HierarchyDepthTest extends Specification {
+    //root 100 has children 110 and 120, and 120 has 122.  121 sits below both 110 and 122, so is two
+    //levels down by the shortest path and three by the longest, and its child 123 one below that
+    Concept root = new Concept('100')
+    Concept c110 = new Concept('110')
+    Concept c120 = new Concept('120')
+    Concept c121 = new Concept('121')
+    Concept c122 = new Concept('122')
+    Concept c123 = new Concept('123')
+    GraphLoader gl = GraphLoader.getGraphLoader()
+
+    def setup() {
+        addParent(c110, root)
+        addParent(c120, root)
+        addParent(c122, c120)
+        addParent(c121, c110)
+        addParent(c121, c122)
+        addParent(c123, c121)
+    }
+
+    def "each concept is given the shortest path as its depth and the longest as its maxDepth"() {
+        when:
+            gl.populateHierarchyDepth(root, 0)
+
+        then:
+            [root, c110, c120, c122, c121, c123]*.depth == [0, 1, 1, 2, 2, 3]
+            [root, c110, c120, c122, c121, c123]*.maxDepth == [0, 1, 1, 2, 3, 4]
+    }
+
+    def "only paths from the starting point are counted, starting from the depth given"() {
+        when:
+            gl.populateHierarchyDepth(c120, 1)
+
+        then:
+            [c120, c122, c121, c123]*.depth == [1, 2, 3, 4]
+            [c120, c122, c121, c123]*.maxDepth == [1, 2, 3, 4]
+    }
+
+    def "a level wide enough to be expanded in parallel gives the same depths"() {
+        given:
+            List<Concept> below110 = (3000..5499).collect { new Concept(it.toString()) }
+            Concept c130 = new Concept('130')
+            below110.each {
+                addParent(it, c110)
+                addParent(c130, it)
+            }
+            addParent(c130, c120)
+
+        when:
+            gl.populateHierarchyDepth(root, 0)
+
+        then:
+            below110.every { it.depth == 2 && it.maxDepth == 2 }
+            c130.depth == 2
+            c130.maxDepth == 3
+            c121.depth == 2
+            c121.maxDepth == 3
+    }
+
+    def "a cycle back through the starting point is reported"() {
+        given:
+            addParent(c110, c121)
+
+        when:
+            gl.populateHierarchyDepth(c110, 1)
+
+        then:
+            def e = thrown(TermServerScriptException)
+            e.message.contains("is a descendant of itself")
+    }
+
+    def "a cycle below the starting point is reported"() {
+        given:
+            //121 and 124 are each other's parent, so neither can be placed by its longest path
+            Concept c124 = new Concept('124')
+            addParent(c124, c121)
+            addParent(c121, c124)
+
+        when:
+            gl.populateHierarchyDepth(root, 0)
+
+        then:
+            def e = thrown(TermServerScriptException)
+            e.message.contains("Cycle detected in inferred hierarchy below")
+    }
+
+    private static void addParent(Concept child, Concept parent) {
+        child.addParent(RF2Constants.CharacteristicType.INFERRED_RELATIONSHIP, parent)
+        parent.addChild(RF2Constants.CharacteristicType.INFERRED_RELATIONSHIP, child)
+    }
+}
@@ -0,0 +1,169 @@
+package org.ihtsdo.termserver.scripting
+
+import org.ihtsdo.otf.RF2Constants
+import org.ihtsdo.termserver.scripting.domain.Concept
+import spock.lang.Specification
+
+class TransitiveClosureTest extends Specification {
+    //root 100 has children 110 and 120.  110 has 60 children, 120 has two of its own (121 and 122),
+    //and 121 also sits below 110, so the descendants of 110 are held as a bitmap and those of 120 as an array
+    Concept root = new Concept('100')
+    Concept c110 = new Concept('110')
+    Concept c120 = new Concept('120')
+    Concept c121 = new Concept('121')
+    Concept c122 = new Concept('122')
+    List<Concept> below110 = (2000..2059).collect { new Concept(it.toString()) }
+    List<Concept> all = [root, c110, c120, c121, c122] + below110
+
+    def setup() {
+        addParent(c110, root)
+        addParent(c120, root)
+        addParent(c121, c120)
+        addParent(c121, c110)
+        addParent(c122, c120)
+        below110.each { addParent(it, c110) }
+    }
+
+    def "ancestors and descendants match those walked from the concepts themselves"() {
+        given:
+            def tc = TransitiveClosure.build(all)
+
+        expect:
+            all.every { c -> tc.getAncestors(c) == ids(c.getAncestors(RF2Constants.NOT_SET)) }
+            tc.getDescendants(root) == ids(all - root)
+            tc.getDescendants(c110) == ids(below110 + c121)
+            tc.getDescendants(c120) == [121L, 122L] as Set
+            tc.getDescendants(c121).isEmpty()
+            tc.getAncestors(c121) == [100L, 110L, 120L] as Set
+    }
+
+    def "sets iterate in SCTID order"() {
+        given:
+            def tc = TransitiveClosure.build(all.reverse())
+
+        expect:
+            tc.getDescendants(root) as List == ids(all - root).sort()
+            tc.getDescendants(c120) as List == [121L, 122L]
+            tc.getAncestors(c121) as List == [100L, 110L, 120L]
+    }
+
+    def "size counts every ancestor relationship"() {
+        given:
+            def tc = TransitiveClosure.build(all)
+
+        expect:
+            tc.size() == all.sum { it.getAncestors(RF2Constants.NOT_SET).size() }
+    }
+
+    def "a concept with nothing held gives an empty set which can't be modified"() {
+        given:
+            def tc = TransitiveClosure.build(all)
+            def unknown = new Concept('999')
+
+        when:
+            def ancestors = tc.getAncestors(unknown)
+            def descendants = tc.getDescendants(unknown)
+
+        then:
+            ancestors.isEmpty()
+            descendants.isEmpty()
+            tc.getDescendants(c122).isEmpty()
+            tc.getAncestors(root).isEmpty()
+
+        when:
+            descendants.add(1L)
+
+        then:
+            thrown(UnsupportedOperationException)
+    }
+
+    def "descendant sets are read only"() {
+        given:
+            def tc = TransitiveClosure.build(all)
+
+        when:
+            tc.getDescendants(root).remove(110L)
+
+        then:
+            thrown(UnsupportedOperationException)
+    }
+
+    def "a filter is applied to the descendants returned"() {
+        given:
+            def tc = TransitiveClosure.build(all)
+
+        expect:
+            tc.getDescendants(c110, { it < 2010L }) == ids(below110.take(10) + c121)
+    }
+
+    def "an ancestor outside the concepts given is still held"() {
+        given:
+            def tc = TransitiveClosure.build(all - root)
+
+        expect:
+            tc.getDescendants(root) == ids(all - root)
+            tc.getAncestors(c110) == [100L] as Set
+            tc.contains(100L)
+    }
+
+    def "contains and isDescendantOf"() {
+        given:
+            def tc = TransitiveClosure.build(all)
+
+        expect:
+            tc.contains(100L)
+            tc.contains(120L)
+            !tc.contains(121L)
+            !tc.contains(999L)
+            tc.isDescendantOf(c121, root)
+            tc.isDescendantOf(c121, c110)
+            !tc.isDescendantOf(c122, c110)
+            !tc.isDescendantOf(root, c121)
+            !tc.isDescendantOf(new Concept('999'), root)
+    }
+
+    def "intersection of the descendants of #a and #b gives the same result whichever way each set is held"() {
+        given:
+            def tc = TransitiveClosure.build(all)
+            Set<Long> x = tc.getDescendants(concept(a))
+            Set<Long> y = tc.getDescendants(concept(b))
+            Set<Long> expected = new HashSet<>(x)
+            expected.retainAll(y)
+
+        expect:
+            tc.intersection(x, y) == expected
+            tc.intersection(new HashSet<>(x), y) == expected
+            !expected.isEmpty() || a == '110' && b == '121'
+
+        where:
+            a     | b
+            '110' | '120'
+            '120' | '110'
+            '120' | '120'
+            '100' | '110'
+            '110' | '100'
+            '110' | '121'
+    }
+
+    def "intersection of bitmap and array held sets"() {
+        given:
+            def tc = TransitiveClosure.build(all)
+
+        expect:
+            tc.intersection(tc.getDescendants(c110), tc.getDescendants(c120)) == [121L] as Set
+            tc.intersection(tc.getDescendants(root), tc.getDescendants(c110)) == ids(below110 + c121)
+    }
+
+    private Concept concept(String id) {
+        return all.find { it.conceptId == id }
+    }
+
+    private static void addParent(Concept child, Concept parent) {
+        child.addParent(RF2Constants.CharacteristicType.INFERRED_RELATIONSHIP, parent)
+        parent.addChild(RF2Constants.CharacteristicType.INFERRED_RELATIONSHIP, child)
+    }
+
+    private static Set<Long> ids(Collection<Concept> concepts) {
+        return concepts.collect { Long.parseLong(it.conceptId) } as Set
+    }
+}
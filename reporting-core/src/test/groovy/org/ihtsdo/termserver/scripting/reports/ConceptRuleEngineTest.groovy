@@ -0,0 +1,101 @@
+package org.ihtsdo.termserver.scripting.reports
+
+import org.ihtsdo.otf.exception.TermServerScriptException
+import org.ihtsdo.termserver.scripting.domain.Concept
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+
+class ConceptRuleEngineTest extends Specification {
+    //Enough concepts to be split into several partitions
+    List<Concept> concepts = (1..5000).collect {
+        Concept c = new Concept((100000 + it).toString())
+        c.setActive(it % 10 != 0)
+        return c
+    }
+
+    List<String> output = []
+
+    def "output is replayed rule by rule in concept order, with global rules in their place"() {
+        given:
+            def engine = new ConceptRuleEngine()
+            engine.setParallelism(4)
+            engine.addConceptRule("all", { c -> record("all:" + c.id) } as ConceptRuleEngine.ConceptRule)
+            engine.addGlobalRule("global", { record("global") } as ConceptRuleEngine.GlobalRule)
+            engine.addActiveConceptRule("active", { c -> record("active:" + c.id) } as ConceptRuleEngine.ConceptRule)
+
+        when:
+            engine.run(concepts)
+
+        then:
+            output == concepts.collect { "all:" + it.id } +
+                    ["global"] +
+                    concepts.findAll { it.isActiveSafely() }.collect { "active:" + it.id }
+            engine.getTimings().keySet() as List == ["all", "global", "active"]
+    }
+
+    def "each concept is checked by each rule exactly once, on more than one thread"() {
+        given:
+            def engine = new ConceptRuleEngine()
+            engine.setParallelism(4)
+            Map<String, Integer> checks = new ConcurrentHashMap<>()
+            Set<Thread> threads = ConcurrentHashMap.newKeySet()
+            engine.addConceptRule("count", { c ->
+                checks.merge(c.id, 1, Integer::sum)
+                threads << Thread.currentThread()
+            } as ConceptRuleEngine.ConceptRule)
+
+        when:
+            engine.run(concepts)
+
+        then:
+            checks.size() == concepts.size()
+            checks.values().every { it == 1 }
+            !threads.contains(Thread.currentThread())
+    }
+
+    def "output is not held back outside of a rule"() {
+        expect:
+            !ConceptRuleEngine.deferred({ output << "unexpected" } as ConceptRuleEngine.DeferredOutput)
+            output.isEmpty()
+    }
+
+    def "a rule failing on a concept is reported against that rule"() {
+        given:
+            def engine = new ConceptRuleEngine()
+            engine.addConceptRule("fussy", { c ->
+                if (c.id == "102500") {
+                    throw new IllegalStateException("Not this one")
+                }
+            } as ConceptRuleEngine.ConceptRule)
+
+        when:
+            engine.run(concepts)
+
+        then:
+            def e = thrown(TermServerScriptException)
+            e.message.contains("fussy")
+            e.message.contains("102500")
+    }
+
+    def "a TermServerScriptException from a rule is passed on as it is"() {
+        given:
+            def engine = new ConceptRuleEngine()
+            def failure = new TermServerScriptException("Checked failure")
+            engine.addConceptRule("failing", { c -> throw failure } as ConceptRuleEngine.ConceptRule)
+
+        when:
+            engine.run(concepts)
+
+        then:
+            def e = thrown(TermServerScriptException)
+            e.is(failure)
+    }
+
+    private void record(String line) {
+        //As TermServerReport does, hold the output back if we're being run by the engine
+        if (!ConceptRuleEngine.deferred({ output << line } as ConceptRuleEngine.DeferredOutput)) {
+            output << line
+        }
+    }
+}
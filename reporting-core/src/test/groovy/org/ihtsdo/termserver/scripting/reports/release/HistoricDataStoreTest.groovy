@@ -0,0 +1,210 @@
+package org.ihtsdo.termserver.scripting.reports.release
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import static org.ihtsdo.termserver.scripting.reports.release.HistoricDataStore.IdColumn
+
+class HistoricDataStoreTest extends Specification {
+    static final String UUID_1 = "8d5e1f9c-8d1c-4bd4-9d4a-2f6e9e6c4b1a"
+    static final String UUID_2 = "0b7f3a52-1c2d-4e5f-8a9b-0c1d2e3f4a5b"
+    static final String CLINICAL_FINDING = "404684003"
+    static final String BODY_STRUCTURE = "123037004"
+
+    @TempDir
+    File tempDir
+
+    def "every column reads back as written, in concept id order"() {
+        given:
+            File dataFile = dataFile("20250301", [
+                    row(id: "200001", fsn: "Héllo (finding)", pt: "Héllo", active: "Y", defStatus: "SD", hierarchy: CLINICAL_FINDING,
+                            sdDescendant: "Y", module: "900000000000207008", hasAttributes: "Y",
+                            (IdColumn.REL_IDS): "1001,1002", (IdColumn.DESC_IDS): UUID_1 + "," + UUID_2,
+                            (IdColumn.LANG_REFSET_IDS): UUID_1 + ",not-an-id"),
+                    row(id: "100005", fsn: "Other (body structure)", pt: "Other", active: "N", defStatus: "P", hierarchy: BODY_STRUCTURE,
+                            ip: "Y", sdAncestor: "Y", module: "449080006")
+            ])
+
+        when:
+            def store = HistoricDataStore.open(dataFile)
+
+        then:
+            store.size() == 2
+            store.getConceptId(0) == 100005L
+            store.getConceptId(1) == 200001L
+            store.indexOf(200001L) == 1
+            store.indexOf(100005L) == 0
+            store.indexOf(100006L) == -1
+
+        and:
+            int row = store.indexOf(200001L)
+            store.getFsn(row) == "Héllo (finding)"
+            store.getUsPT(row) == "Héllo"
+            store.isActive(row)
+            store.isSD(row)
+            !store.isIP(row)
+            !store.hasSdAncestor(row)
+            store.hasSdDescendant(row)
+            store.hasAttributes(row)
+            store.getHierarchy(row) == CLINICAL_FINDING
+            store.getModuleId(row) == "900000000000207008"
+            store.getIds(IdColumn.REL_IDS, row) == ["1001", "1002"]
+            store.getIds(IdColumn.DESC_IDS, row) == [UUID_1, UUID_2]
+            store.getIds(IdColumn.LANG_REFSET_IDS, row) == [UUID_1, "not-an-id"]
+            store.getIds(IdColumn.REL_IDS, row).contains("1002")
+            !store.getIds(IdColumn.REL_IDS, row).contains("1003")
+            store.getIds(IdColumn.DESC_IDS, row).contains(UUID_2)
+
+        and:
+            int other = store.indexOf(100005L)
+            !store.isActive(other)
+            !store.isSD(other)
+            store.isIP(other)
+            store.hasSdAncestor(other)
+            store.getHierarchy(other) == BODY_STRUCTURE
+            store.getIds(IdColumn.REL_IDS, other).isEmpty()
+            store.getIds(IdColumn.LANG_REFSET_IDS, other).isEmpty()
+    }
+
+    def "rows from older releases without the later columns give empty lists"() {
+        given:
+            File dataFile = dataFile("20180731", ["300001\tShort (finding)\tShort\tY\tP\t" + CLINICAL_FINDING])
+
+        when:
+            def store = HistoricDataStore.open(dataFile)
+
+        then:
+            store.size() == 1
+            store.getModuleId(0) == ""
+            IdColumn.values().every { store.getIds(it, 0).isEmpty() }
+    }
+
+    def "the map view creates data as asked for, with the default hierarchy where none is known"() {
+        given:
+            File dataFile = dataFile("20250301", [
+                    row(id: "200001", active: "Y", hierarchy: CLINICAL_FINDING, (IdColumn.HIST_ASSOC_TARGETS): "300001"),
+                    row(id: "200002", active: "N")
+            ])
+            def store = HistoricDataStore.open(dataFile)
+
+        when:
+            def full = store.asMap(false, "138875005")
+            def minimal = store.asMap(true, "138875005")
+
+        then:
+            full.size() == 2
+            full.keySet() == ["200001", "200002"] as Set
+            full.get("200001").getHierarchy() == CLINICAL_FINDING
+            full.get("200002").getHierarchy() == "138875005"
+            full.get("200002").getRelIds().isEmpty()
+            full.get("999999") == null
+            !full.containsKey("not-an-id")
+            minimal.get("200001").getHistAssocTargets() == ["300001"]
+            minimal.get("200002").getHistAssocTargets() == null
+    }
+
+    def "the store is rebuilt once the data file is newer, and reused otherwise"() {
+        given:
+            File dataFile = dataFile("20250301", [row(id: "200001", active: "Y")])
+            def storeFile = HistoricDataStore.open(dataFile).getStoreFile()
+            storeFile.setLastModified(dataFile.lastModified() + 10_000)
+            long built = storeFile.lastModified()
+
+        when:
+            def reused = HistoricDataStore.open(dataFile)
+
+        then:
+            reused.size() == 1
+            storeFile.lastModified() == built
+
+        when:
+            dataFile.text = [row(id: "200001", active: "Y"), row(id: "200002", active: "Y")].join("\n")
+            dataFile.setLastModified(built + 10_000)
+            def rebuilt = HistoricDataStore.open(dataFile)
+
+        then:
+            rebuilt.size() == 2
+    }
+
+    def "a section too large to be mapped is reported as an IOException rather than an IllegalArgumentException"() {
+        given:
+            File dataFile = dataFile("20250301", [row(id: "200001", active: "Y")])
+            File storeFile = HistoricDataStore.open(dataFile).getStoreFile()
+            //Header is magic, version, row count and section count, then the offset and length of each section
+            new RandomAccessFile(storeFile, "rw").withCloseable { raf ->
+                raf.seek(4 * Integer.BYTES + Long.BYTES)
+                raf.writeLong(3L * 1024 * 1024 * 1024)
+            }
+            storeFile.setLastModified(dataFile.lastModified() + 10_000)
+
+        when:
+            HistoricDataStore.open(dataFile)
+
+        then:
+            def e = thrown(IOException)
+            e.message.contains("too large to be mapped")
+    }
+
+    def "a temporary store can be built away from the data file"() {
+        given:
+            File dataFile = dataFile("20250301", [row(id: "200001", active: "Y")])
+
+        when:
+            def store = HistoricDataStore.openTemporary(dataFile)
+
+        then:
+            store.size() == 1
+            store.getStoreFile().parentFile != dataFile.parentFile
+            !HistoricDataStore.getStoreFile(dataFile).exists()
+
+        cleanup:
+            store?.getStoreFile()?.delete()
+    }
+
+    def "the analyzer groups rows by hierarchy, taking any missing hierarchy from the previous release"() {
+        given:
+            def prevStore = HistoricDataStore.open(dataFile("20240101", [
+                    row(id: "200001", active: "Y", hierarchy: CLINICAL_FINDING),
+                    row(id: "200002", active: "Y", hierarchy: BODY_STRUCTURE)
+            ]))
+            def thisStore = HistoricDataStore.open(dataFile("20250101", [
+                    row(id: "200003", active: "Y", hierarchy: CLINICAL_FINDING),
+                    row(id: "200002", active: "N"),
+                    row(id: "200001", active: "Y", hierarchy: CLINICAL_FINDING),
+                    row(id: "200004", active: "N")
+            ]))
+
+        when:
+            def prevData = new HistoricStatsAnalyzer.ReleaseData(prevStore, null)
+            def thisData = new HistoricStatsAnalyzer.ReleaseData(thisStore, prevData)
+
+        then:
+            thisData.getHierarchies() == [CLINICAL_FINDING, BODY_STRUCTURE, HistoricStatsAnalyzer.UNKNOWN_HIERARCHY] as Set
+            thisData.getRows(CLINICAL_FINDING).collect { thisStore.getConceptId(it) } == [200001L, 200003L]
+            thisData.getRows(BODY_STRUCTURE).collect { thisStore.getConceptId(it) } == [200002L]
+            thisData.getRows(HistoricStatsAnalyzer.UNKNOWN_HIERARCHY).collect { thisStore.getConceptId(it) } == [200004L]
+            thisData.getRows("71388002").length == 0
+            thisData.getHierarchy(200002L) == BODY_STRUCTURE
+            thisData.getHierarchy(999999L) == null
+    }
+
+    private File dataFile(String release, List<String> rows) {
+        File dataFile = new File(tempDir, release + ".tsv")
+        dataFile.text = rows.join("\n") + "\n"
+        return dataFile
+    }
+
+    private static String row(Map values) {
+        Map<Integer, String> columns = [
+                0 : values.id, 1: values.fsn, 2: values.pt, 3: values.active, 4: values.defStatus ?: "P",
+                5 : values.hierarchy, 6: values.ip ?: "N", 7: values.sdAncestor ?: "N", 8: values.sdDescendant ?: "N",
+                21: values.module, 22: values.hasAttributes ?: "N"
+        ]
+        IdColumn.values().each { column ->
+            if (values.containsKey(column)) {
+                columns[column.dataFileColumn] = values[column]
+            }
+        }
+        return (0..29).collect { columns[it] ?: "" }.join("\t")
+    }
+}
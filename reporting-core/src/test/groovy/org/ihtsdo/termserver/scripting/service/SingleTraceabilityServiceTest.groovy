@@ -0,0 +1,63 @@
+package org.ihtsdo.termserver.scripting.service
+
+import org.ihtsdo.otf.rest.client.traceability.TraceabilityServiceClient
+import org.ihtsdo.termserver.scripting.TermServerScript
+import org.ihtsdo.termserver.scripting.domain.Concept
+import org.snomed.otf.scheduler.domain.JobRun
+import spock.lang.Specification
+
+import java.util.concurrent.ExecutorService
+
+class SingleTraceabilityServiceTest extends Specification {
+    JobRun jobRun = Stub() {
+        getTerminologyServerUrl() >> "http://localhost/"
+        getAuthToken() >> "token"
+    }
+    TermServerScript ts = Mock()
+    TraceabilityServiceClient client = Stub()
+    SingleTraceabilityService service = new SingleTraceabilityService(jobRun, ts)
+
+    def setup() {
+        service.client = client
+        client.getConceptActivity(*_) >> []
+    }
+
+    def "flushing lets the executor's threads go, and rows submitted afterwards start another"() {
+        given:
+            Concept first = new Concept("100005")
+            Concept second = new Concept("100013")
+
+        when:
+            service.populateTraceabilityAndReport(null, null, 0, first)
+            ExecutorService firstExecutor = service.executor
+            service.flush()
+
+        then:
+            1 * ts.report(0, first, *_)
+            firstExecutor.isShutdown()
+            service.executor == null
+
+        when:
+            service.populateTraceabilityAndReport(null, null, 0, second)
+            ExecutorService secondExecutor = service.executor
+            service.flush()
+
+        then:
+            1 * ts.report(0, second, *_)
+            !secondExecutor.is(firstExecutor)
+            secondExecutor.isShutdown()
+            service.executor == null
+    }
+
+    def "tidying up without any rows, or after a flush, has nothing to shut down"() {
+        when:
+            service.tidyUp()
+            service.populateTraceabilityAndReport(null, null, 0, new Concept("100005"))
+            service.flush()
+            service.tidyUp()
+
+        then:
+            notThrown(Exception)
+            service.executor == null
+    }
+}
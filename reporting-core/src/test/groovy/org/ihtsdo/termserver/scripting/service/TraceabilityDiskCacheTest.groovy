@@ -0,0 +1,90 @@
+package org.ihtsdo.termserver.scripting.service
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.time.Instant
+import java.time.LocalDate
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
+
+class TraceabilityDiskCacheTest extends Specification {
+    static final String KEY = "component\tMAIN\t20240101\t20240131"
+
+    @TempDir
+    File tempDir
+
+    def "only a window which has ended can be cached: '#toDate'"() {
+        expect:
+            TraceabilityDiskCache.isCacheable(toDate) == cacheable
+
+        where:
+            toDate                     | cacheable
+            null                       | false
+            ""                         | false
+            "not a date"               | false
+            "20240131"                 | true
+            "2024-01-31"               | true
+            daysFromToday(-3)          | true
+            daysFromToday(0)           | false
+            daysFromToday(1)           | false
+            "2024-01-31T10:15:30.123Z" | true
+            "2024-01-31T99:99:99Z"     | false
+            minutesFromNow(-1)         | true
+            minutesFromNow(5)          | false
+    }
+
+    def "responses recovered once the window has closed are read back by a later job"() {
+        given:
+            new TraceabilityDiskCache(tempDir, KEY, "20240131").store("100005", [])
+
+        when:
+            def cache = new TraceabilityDiskCache(tempDir, KEY, "20240131")
+
+        then:
+            cache.load("100005") == []
+            cache.load("100006") == null
+    }
+
+    def "responses recovered before the window closed are dropped from the file"() {
+        given:
+            def cache = new TraceabilityDiskCache(tempDir, KEY, "20240131")
+            cache.store("100005", [])
+            File file = tempDir.listFiles().find { it.name.endsWith(".txt") }
+            long beforeClosed = LocalDate.of(2024, 1, 31).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli()
+            file << "100006\t" + beforeClosed + "\t[]\n"
+
+        when:
+            def reread = new TraceabilityDiskCache(tempDir, KEY, "20240131")
+
+        then:
+            reread.load("100005") == []
+            reread.load("100006") == null
+            !file.text.contains("100006")
+    }
+
+    def "a window with no end can't be given a cache"() {
+        when:
+            new TraceabilityDiskCache(tempDir, KEY, null)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "a response recovered after a branch head is kept against that head"() {
+        given:
+            String head = minutesFromNow(-1)
+            new TraceabilityDiskCache(tempDir, KEY, head).store("100005", [])
+
+        expect:
+            new TraceabilityDiskCache(tempDir, KEY, head).load("100005") == []
+    }
+
+    private static String daysFromToday(int days) {
+        return LocalDate.now().plusDays(days).format(DateTimeFormatter.BASIC_ISO_DATE)
+    }
+
+    private static String minutesFromNow(int minutes) {
+        return Instant.now().plusSeconds(minutes * 60L).toString()
+    }
+}
@@ -0,0 +1,125 @@
+package org.ihtsdo.termserver.scripting.snapshot
+
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Metadata
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Project
+import org.ihtsdo.termserver.scripting.GraphLoader
+import org.ihtsdo.termserver.scripting.TermServerScript
+import org.ihtsdo.termserver.scripting.client.TermServerClient
+import org.ihtsdo.termserver.scripting.domain.Branch
+import org.ihtsdo.termserver.scripting.domain.Concept
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class ArchiveManagerTest extends Specification {
+    static final String BRANCH_PATH = "MAIN/PROJ"
+    static final String UNPUBLISHED_CONCEPT = "100005"
+
+    @TempDir
+    File tempDir
+
+    TermServerClient tsClient = Mock()
+    TermServerScript ts = Mock()
+    GraphLoader gl = Mock()
+    ArchiveImporter archiveImporter = Mock()
+    Metadata january = Stub()
+    Metadata february = Stub()
+    Project project = new Project().withBranchPath(BRANCH_PATH)
+    ArchiveManager archiveManager = new ArchiveManager()
+
+    def setup() {
+        ts.getProject() >> project
+        ts.getTSClient() >> tsClient
+        gl.getAllConcepts() >> [new Concept(UNPUBLISHED_CONCEPT)]
+        january.getPreviousPackage() >> "20250101.zip"
+        february.getPreviousPackage() >> "20250201.zip"
+        archiveManager.ts = ts
+        archiveManager.gl = gl
+    }
+
+    def "incremental refresh is on unless turned off"() {
+        given:
+            archiveManager.currentlyHeldInMemory = project
+
+        expect:
+            new SnapshotConfiguration().isIncrementalRefresh()
+            archiveManager.canRefreshInMemory()
+
+        when:
+            archiveManager.setIncrementalRefresh(false)
+
+        then:
+            !archiveManager.canRefreshInMemory()
+    }
+
+    def "the delta is applied over what's held when the branch is still on the same release"() {
+        given:
+            archiveManager.releaseBaseHeldInMemory = ArchiveManager.getReleaseBase(january)
+            tsClient.getBranch(BRANCH_PATH) >> branch(january)
+            tsClient.export(BRANCH_PATH, null, _, _, _, false) >> { args -> writeDelta(args[4], [UNPUBLISHED_CONCEPT, "100006"]) }
+
+        when:
+            boolean refreshed = archiveManager.refreshInMemory(false, new File(tempDir, "snapshot"), archiveImporter)
+
+        then:
+            1 * archiveImporter.loadArchive(_, false, _, null)
+
+        then:
+            //Issues left by the previous job are cleared, as when what's held is reused as it is
+            1 * gl.makeReady()
+            refreshed
+    }
+
+    def "a branch rebased onto a new release is loaded afresh rather than refreshed"() {
+        given:
+            archiveManager.releaseBaseHeldInMemory = ArchiveManager.getReleaseBase(january)
+            tsClient.getBranch(BRANCH_PATH) >> branch(february)
+
+        when:
+            boolean refreshed = archiveManager.refreshInMemory(false, new File(tempDir, "snapshot"), archiveImporter)
+
+        then:
+            !refreshed
+            0 * tsClient.export(*_)
+            0 * archiveImporter.loadArchive(*_)
+    }
+
+    def "a held snapshot whose release isn't known is loaded afresh"() {
+        given:
+            tsClient.getBranch(BRANCH_PATH) >> branch(january)
+
+        expect:
+            !archiveManager.refreshInMemory(false, new File(tempDir, "snapshot"), archiveImporter)
+    }
+
+    def "unpublished content no longer in the delta means a full reload"() {
+        given:
+            archiveManager.releaseBaseHeldInMemory = ArchiveManager.getReleaseBase(january)
+            tsClient.getBranch(BRANCH_PATH) >> branch(january)
+            tsClient.export(BRANCH_PATH, null, _, _, _, false) >> { args -> writeDelta(args[4], ["100006"]) }
+
+        when:
+            boolean refreshed = archiveManager.refreshInMemory(false, new File(tempDir, "snapshot"), archiveImporter)
+
+        then:
+            !refreshed
+            0 * archiveImporter.loadArchive(*_)
+            0 * gl.makeReady()
+    }
+
+    private static Branch branch(Metadata metadata) {
+        return new Branch().withMetadata(metadata)
+    }
+
+    private static File writeDelta(File delta, List<String> conceptIds) {
+        new ZipOutputStream(new FileOutputStream(delta)).withCloseable { zos ->
+            zos.putNextEntry(new ZipEntry("SnomedCT_Export/RF2Release/Terminology/sct2_Concept_Delta_INT.txt"))
+            String rows = conceptIds.collect { it + "\t\t1\t900000000000207008\t900000000000074008\r\n" }.join()
+            zos.write(("id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId\r\n" + rows).bytes)
+            zos.closeEntry()
+        }
+        return delta
+    }
+}
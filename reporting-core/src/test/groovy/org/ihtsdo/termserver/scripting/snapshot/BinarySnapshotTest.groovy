@@ -0,0 +1,146 @@
+package org.ihtsdo.termserver.scripting.snapshot
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import static org.ihtsdo.termserver.scripting.snapshot.BinarySnapshotFormat.Section
+
+class BinarySnapshotTest extends Specification {
+    static final List<String[]> CONCEPT_ROWS = [
+            ["100022", "20020131", "1", "900000000000207008", "900000000000074008"] as String[],
+            ["100023", "20020131", "0", "900000000000207008", "900000000000074008"] as String[],
+            ["0123", "", "1", "-5", "99999999999999999999"] as String[]
+    ]
+
+    static final List<String[]> DESCRIPTION_ROWS = [
+            ["101013", "20020131", "1", "900000000000207008", "100022", "en", "900000000000013009", "Héllo wörld ☃", "900000000000448009"] as String[],
+            ["8d5e1f9c-8d1c-4bd4-9d4a-2f6e9e6c4b1a", "20020131", "1", "900000000000207008", "100022", "en", "900000000000013009", "x" * 5000, ""] as String[],
+            ["8D5E1F9C-8D1C-4BD4-9D4A-2F6E9E6C4B1A", "", "", "", "", "", "", "", ""] as String[]
+    ]
+
+    @TempDir
+    File tempDir
+
+    def "rows read back exactly as written, whatever the buffer size"() {
+        given:
+            File file = writeSnapshot()
+
+        when:
+            def sections = readSnapshot(file, bufferSize)
+
+        then:
+            sections[Section.CONCEPT] == CONCEPT_ROWS.collect { it as List }
+            sections[Section.DESCRIPTION] == DESCRIPTION_ROWS.collect { it as List }
+            sections[Section.AXIOM] == []
+            sections.keySet() as List == Section.values() as List
+
+        where:
+            bufferSize << [16, 64, 4 * 1024 * 1024]
+    }
+
+    def "concept count is read from the header and the reader has no header row"() {
+        given:
+            def reader = new BinarySnapshotReader(writeSnapshot())
+
+        expect:
+            reader.conceptCount == 2
+            reader.createdTime > 0
+            !reader.hasHeaderRow()
+
+        cleanup:
+            reader?.close()
+    }
+
+    def "unread rows are skipped when moving to the next section"() {
+        given:
+            def reader = new BinarySnapshotReader(writeSnapshot(), 16)
+
+        when:
+            reader.nextSection()
+            reader.nextRow()
+            def next = reader.nextSection()
+
+        then:
+            next == Section.DESCRIPTION
+            reader.nextRow() as List == DESCRIPTION_ROWS[0] as List
+
+        cleanup:
+            reader?.close()
+    }
+
+    def "a truncated file is reported as an IOException"() {
+        given:
+            File file = writeSnapshot()
+            File truncated = new File(tempDir, "truncated.bin")
+            truncated.bytes = Arrays.copyOf(file.bytes, file.bytes.length - 20)
+
+        when:
+            readSnapshot(truncated, 16)
+
+        then:
+            thrown(IOException)
+    }
+
+    def "a file which isn't a binary snapshot is rejected on opening"() {
+        given:
+            File file = new File(tempDir, "other.bin")
+            file.text = "id\teffectiveTime\tactive\n"
+
+        when:
+            new BinarySnapshotReader(file)
+
+        then:
+            thrown(IOException)
+    }
+
+    def "repeated module ids are read back as one String, even from different sections"() {
+        given:
+            def reader = new BinarySnapshotReader(writeSnapshot())
+
+        when:
+            reader.nextSection()
+            String[] concept = reader.nextRow()
+            reader.nextSection()
+            String[] description = reader.nextRow()
+
+        then:
+            description[3].is(concept[3])
+            //effectiveTime, active, module, definition status, language, type and case significance, but no ids or terms
+            reader.internedValueCount == 7
+
+        cleanup:
+            reader?.close()
+    }
+
+    def "binary snapshot cache is used unless turned off"() {
+        expect:
+            new SnapshotConfiguration().isUseBinarySnapshotCache()
+    }
+
+    private File writeSnapshot() {
+        File file = new File(tempDir, "snapshot.bin")
+        def writer = new BinarySnapshotWriter(file)
+        writer.write(2, { Section section ->
+            def rows = section == Section.CONCEPT ? CONCEPT_ROWS : section == Section.DESCRIPTION ? DESCRIPTION_ROWS : []
+            //The writer normalises the rows it's given, so hand it copies
+            rows.each { writer.writeRow(it.clone() as String[]) }
+        } as BinarySnapshotWriter.SectionWriter)
+        return file
+    }
+
+    private static Map<Section, List<List<String>>> readSnapshot(File file, int bufferSize) {
+        Map<Section, List<List<String>>> sections = [:]
+        new BinarySnapshotReader(file, bufferSize).withCloseable { reader ->
+            Section section
+            while ((section = reader.nextSection()) != null) {
+                List<List<String>> rows = []
+                String[] row
+                while ((row = reader.nextRow()) != null) {
+                    rows << (row as List)
+                }
+                sections[section] = rows
+            }
+        }
+        return sections
+    }
+}
@@ -0,0 +1,116 @@
+package org.ihtsdo.termserver.scripting.snapshot
+
+import org.ihtsdo.otf.RF2Constants.CharacteristicType
+import org.ihtsdo.termserver.scripting.domain.Concept
+import org.ihtsdo.termserver.scripting.domain.Relationship
+import org.ihtsdo.termserver.scripting.domain.ScriptConstants
+import spock.lang.Specification
+
+import static org.ihtsdo.termserver.scripting.snapshot.IntegrityFinding.Type
+
+class SnapshotIntegrityCheckerTest extends Specification {
+    Concept root = active("138875005")
+    Concept finding = active("404684003")
+
+    def setup() {
+        addParent(finding, root)
+    }
+
+    def "a sound hierarchy gives no findings"() {
+        given:
+            def checker = new SnapshotIntegrityChecker([], true, false)
+            Concept child = active("100005")
+            addParent(child, finding)
+
+        expect:
+            checker.check([root, finding, child]).isEmpty()
+            !checker.isTruncated()
+    }
+
+    def "problems are reported in concept order, and a phantom only once however often it's referenced"() {
+        given:
+            def checker = new SnapshotIntegrityChecker([], true, false)
+            Concept phantom = new Concept("100013")
+            Concept first = active("100005")
+            Concept second = active("100021")
+            addParent(first, phantom)
+            addParent(second, phantom)
+            Concept noStatedParent = active("100039")
+            addParent(noStatedParent, finding, CharacteristicType.INFERRED_RELATIONSHIP)
+            Concept inactive = new Concept("100047")
+            inactive.setActive(false)
+            addParent(inactive, finding)
+
+        when:
+            def findings = checker.check([root, finding, first, second, noStatedParent, inactive])
+
+        then:
+            findings.collect { it.type() } == [Type.PHANTOM_CONCEPT, Type.INACTIVE_PARENT, Type.INACTIVE_PARENT,
+                    Type.INACTIVE_PARENT, Type.INACTIVE_PARENT, Type.MISSING_PARENT, Type.INACTIVE_WITH_PARENTS]
+            findings[0].concept().is(phantom)
+            findings.findAll { it.type() == Type.INACTIVE_PARENT }*.concept() == [first, first, second, second]
+            findings[5].concept().is(noStatedParent)
+            findings[6].concept().is(inactive)
+    }
+
+    def "phantoms don't count towards the limit, as the caller may yet drop them"() {
+        given:
+            def checker = new SnapshotIntegrityChecker([], true, false)
+            List<Concept> phantoms = (1..SnapshotIntegrityChecker.MAX_FINDINGS + 500).collect { new Concept((200000 + it).toString()) }
+            Concept inactive = new Concept("100047")
+            inactive.setActive(false)
+            addParent(inactive, finding)
+
+        when:
+            def findings = checker.check(phantoms + inactive)
+
+        then:
+            !checker.isTruncated()
+            findings.count { it.type() == Type.PHANTOM_CONCEPT } == phantoms.size()
+            findings.last().concept().is(inactive)
+    }
+
+    def "the check stops early once the limit is reached"() {
+        given:
+            def checker = new SnapshotIntegrityChecker([], true, false)
+            List<Concept> inactive = (1..SnapshotIntegrityChecker.MAX_FINDINGS * 3).collect {
+                Concept c = new Concept((300000 + it).toString())
+                c.setActive(false)
+                addParent(c, finding)
+                return c
+            }
+
+        when:
+            def findings = checker.check(inactive)
+
+        then:
+            checker.isTruncated()
+            findings.size() >= SnapshotIntegrityChecker.MAX_FINDINGS
+            findings.size() < inactive.size()
+    }
+
+    def "concepts on the ignore list aren't checked"() {
+        given:
+            Concept orphan = active("100005")
+            def checker = new SnapshotIntegrityChecker(["100005"], true, false)
+
+        expect:
+            checker.check([root, finding, orphan]).isEmpty()
+    }
+
+    private static Concept active(String id) {
+        Concept c = new Concept(id)
+        c.setActive(true)
+        return c
+    }
+
+    private static void addParent(Concept child, Concept parent, CharacteristicType... charTypes) {
+        for (CharacteristicType charType : charTypes ?: [CharacteristicType.INFERRED_RELATIONSHIP, CharacteristicType.STATED_RELATIONSHIP]) {
+            child.addParent(charType, parent)
+            parent.addChild(charType, child)
+            Relationship r = new Relationship(child, ScriptConstants.IS_A, parent, 0)
+            r.setCharacteristicType(charType)
+            child.addRelationship(r)
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package org.ihtsdo.termserver.scripting.util
 
+import org.ihtsdo.otf.RF2Constants.CharacteristicType
+import org.ihtsdo.termserver.scripting.domain.Concept
+import org.ihtsdo.termserver.scripting.domain.Relationship
 import spock.lang.Specification
+import spock.lang.TempDir
 
 class CaseSensitivityUtilsTest extends Specification {
     def caseSensitivityUtils = new CaseSensitivityUtils()
 
+    @TempDir
+    File tempDir
+
     def "test startsWithAcronym with term '#term'"() {
         expect:
         caseSensitivityUtils.startsWithAcronym(term) == expected
@@ -33,5 +40,84 @@ class CaseSensitivityUtilsTest extends Specification {
         "ø123"          || false // contains a letter character
     }
 
+    def "test startsWithKnownCaseSensitiveTerm with term '#term'"() {
+        given:
+        loadCsWords("Addison")
+        Concept context = contextWith("Influenza virus", "Streptococcus pneumoniae group A")
+
+        expect:
+        caseSensitivityUtils.startsWithKnownCaseSensitiveTerm(context, term) == expected
+
+        where:
+        term                                          || expected
+        "Addison disease"                             || true   // Known word
+        "Addison's disease"                           || true   // Known word with possessive
+        "Addisonian crisis"                           || false  // Known word as a substring, but not a word
+        "Influenza virus"                             || true   // Whole phrase from context
+        "Influenza virus vaccine"                     || true   // Phrase from context as a prefix
+        "Influenza-virus vaccine"                     || true   // Dashed phrase from context
+        "Influenza vaccine"                           || false  // Only the start of a phrase from context
+        "Influenzavirus vaccine"                      || false  // Phrase from context as a substring, but not words
+        "Streptococcus pneumoniae infection"          || false  // Part way through a multi-word phrase
+        "Streptococcus pneumoniae group A infection"  || true   // Multi-word phrase as a prefix
+    }
 
+    def "test containsKnownLowerCaseWord with term '#term'"() {
+        given:
+        loadCsWords("mm")
+        //A lower case term from a source of truth is tracked separately from the cs words file
+        caseSensitivityUtils.addSourcesOfTruthWithoutTaxonomy(new Concept("100013"), "penicillin")
+
+        expect:
+        caseSensitivityUtils.containsKnownLowerCaseWord(term) == expected
+
+        where:
+        term                     || expected
+        "Size in mm"             || true   // Lower case word from cs words file
+        "Allergy to penicillin"  || true   // Lower case word from a source of truth, without being in the file
+        "Size in MM"             || false  // Only matched as written
+        "Penicillin allergy"     || false  // Only matched as written
+        "Size in millimetres"    || false  // Not known
+    }
+
+    def "lookups made before loadCSWords are not cached past it"() {
+        given:
+        Concept context = contextWith()
+        Concept target = SnomedUtils.getTargets(context).iterator().next()
+
+        expect:
+        !caseSensitivityUtils.startsWithKnownCaseSensitiveTerm(context, "Addison disease")
+        !caseSensitivityUtils.startsWithKnownCaseSensitiveTerm(context, "Influenza virus vaccine")
+        !caseSensitivityUtils.containsKnownLowerCaseWord("Size in mm")
+
+        when:
+        caseSensitivityUtils.csInContext[target] = ["Influenza virus"]
+        loadCsWords("Addison", "mm")
+
+        then:
+        caseSensitivityUtils.startsWithKnownCaseSensitiveTerm(context, "Addison disease")
+        caseSensitivityUtils.startsWithKnownCaseSensitiveTerm(context, "Influenza virus vaccine")
+        caseSensitivityUtils.containsKnownLowerCaseWord("Size in mm")
+    }
+
+    private void loadCsWords(String... words) {
+        File csWords = new File(tempDir, "cs_words.tsv")
+        csWords.text = words.collect { it + "\tcs\n" }.join()
+        def inputFile = CaseSensitivityUtils.getDeclaredField("inputFile")
+        inputFile.setAccessible(true)
+        inputFile.set(caseSensitivityUtils, csWords)
+        caseSensitivityUtils.loadCSWords()
+    }
+
+    private Concept contextWith(String... csPhrases) {
+        Concept context = new Concept("100005")
+        Concept attributeValue = new Concept("100021")
+        Relationship r = new Relationship(context, new Concept("246075003"), attributeValue, 0)
+        r.setCharacteristicType(CharacteristicType.INFERRED_RELATIONSHIP)
+        context.addRelationship(r)
+        if (csPhrases) {
+            caseSensitivityUtils.csInContext[attributeValue] = csPhrases as List
+        }
+        return context
+    }
 }
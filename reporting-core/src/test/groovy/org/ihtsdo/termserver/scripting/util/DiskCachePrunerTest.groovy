@@ -0,0 +1,64 @@
+package org.ihtsdo.termserver.scripting.util
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+class DiskCachePrunerTest extends Specification {
+    static final long NOW = 1700000000000L
+    static final long DAY = 24 * 60 * 60 * 1000L
+
+    @TempDir
+    File tempDir
+
+    def "files older than the maximum age are removed"() {
+        given:
+            File recent = cacheFile("recent.txt", 100, NOW - DAY)
+            File old = cacheFile("old.txt", 100, NOW - 8 * DAY)
+
+        when:
+            new DiskCachePruner(tempDir, 7 * DAY, 1000).prune(NOW)
+
+        then:
+            recent.exists()
+            !old.exists()
+    }
+
+    def "the least recently written files are removed once the total exceeds the maximum size"() {
+        given:
+            File newest = cacheFile("newest.txt", 400, NOW - 1000)
+            File middle = cacheFile("middle.txt", 400, NOW - 2000)
+            File oldest = cacheFile("oldest.txt", 100, NOW - 3000)
+
+        when:
+            new DiskCachePruner(tempDir, 7 * DAY, 1000).prune(NOW)
+
+        then:
+            newest.exists()
+            middle.exists()
+            oldest.exists()
+
+        when:
+            new DiskCachePruner(tempDir, 7 * DAY, 850).prune(NOW)
+
+        then:
+            newest.exists()
+            !middle.exists()
+            //Though small enough to fit, anything older than a file removed for space goes too
+            !oldest.exists()
+    }
+
+    def "a directory which doesn't exist yet is left alone"() {
+        when:
+            new DiskCachePruner(new File(tempDir, "missing"), DAY, 1000).prune(NOW)
+
+        then:
+            noExceptionThrown()
+    }
+
+    private File cacheFile(String name, int size, long lastModified) {
+        File file = new File(tempDir, name)
+        file.bytes = new byte[size]
+        file.setLastModified(lastModified)
+        return file
+    }
+}
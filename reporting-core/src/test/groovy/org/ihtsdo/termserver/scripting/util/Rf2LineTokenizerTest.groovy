@@ -0,0 +1,72 @@
+package org.ihtsdo.termserver.scripting.util
+
+import spock.lang.Specification
+
+class Rf2LineTokenizerTest extends Specification {
+    static final List<String> LINES = [
+            "100022\t20020131\t1\t900000000000207008\t100000000",
+            "100022\t\t1\t\t100000000",
+            "100022\t20020131\t1\t\t",
+            "\t20020131\t1",
+            "\t\t",
+            "\t",
+            "",
+            "single",
+            "trailing tab\t",
+            "a\t\t\tb\t\t"
+    ]
+
+    def "tokenize matches split with trailing empty fields kept for '#line'"() {
+        expect:
+            new Rf2LineTokenizer(true).tokenize(line) as List == line.split("\t", -1) as List
+
+        where:
+            line << LINES
+    }
+
+    def "tokenize matches split with trailing empty fields dropped for '#line'"() {
+        expect:
+            new Rf2LineTokenizer(false).tokenize(line) as List == line.split("\t") as List
+
+        where:
+            line << LINES
+    }
+
+    def "one tokenizer reused across rows of differing length still matches split"() {
+        given:
+            def keepTrailing = new Rf2LineTokenizer(true, 1, 3)
+            def dropTrailing = new Rf2LineTokenizer(false, 1, 3)
+
+        expect:
+            LINES.each { line ->
+                assert keepTrailing.tokenize(line) as List == line.split("\t", -1) as List
+                assert dropTrailing.tokenize(line) as List == line.split("\t") as List
+            }
+    }
+
+    def "interned columns return the same String for repeated values"() {
+        given:
+            def tokenizer = new Rf2LineTokenizer(true, false, 3)
+
+        when:
+            def first = tokenizer.tokenize("1\t2\t3\t900000000000207008")
+            def second = tokenizer.tokenize("4\t5\t6\t900000000000207008")
+
+        then:
+            first[3].is(second[3])
+            !first.is(second)
+            tokenizer.internedValueCount == 1
+    }
+
+    def "interned values survive the intern table growing"() {
+        given:
+            def tokenizer = new Rf2LineTokenizer(true, 0)
+
+        when:
+            def values = (1..1000).collect { tokenizer.tokenize("module" + it + "\tx")[0] }
+
+        then:
+            tokenizer.internedValueCount == 1000
+            (1..1000).every { tokenizer.tokenize("module" + it + "\ty")[0].is(values[it - 1]) }
+    }
+}
@@ -0,0 +1,122 @@
+package org.ihtsdo.termserver.scripting.util
+
+import spock.lang.Requires
+import spock.lang.Shared
+import spock.lang.Specification
+
+/**
+ * Compares the tokenizer with the split it replaced in GraphLoader, over rows shaped like the
+ * Relationship and Description snapshots.  Run with -Drf2.snapshot.dir=... pointing at an unpacked
+ * release's Terminology folder to make the same comparison over the real files.
+ */
+class Rf2LineTokenizerThroughputTest extends Specification {
+    static final int ROW_COUNT = 200_000
+    static final int PASSES = 5
+    //Generous, so that a busy build machine doesn't fail the build, but still catches a tokenizer gone badly wrong
+    static final double MAX_TIME_RATIO = 1.5
+
+    //As GraphLoader configures them for loadRelationships and loadDescriptionFile
+    static final int[] RELATIONSHIP_INTERNED = [1, 2, 3, 6, 7, 8, 9]
+    static final int[] DESCRIPTION_INTERNED = [1, 2, 3, 5, 6, 8]
+
+    @Shared
+    List<String> relationshipRows = (1..ROW_COUNT).collect {
+        [(it * 1000 + 22), "20240" + (it % 9 + 1) + "01", it % 10 ? "1" : "0", "900000000000207008",
+         (it * 7 + 100005), (it * 13 + 100005), it % 4, "116680003", "900000000000011006", "900000000000451002"].join("\t")
+    }
+
+    @Shared
+    List<String> descriptionRows = (1..ROW_COUNT).collect {
+        [(it * 1000 + 11), "20240" + (it % 9 + 1) + "01", "1", "900000000000207008", (it * 7 + 100005), "en",
+         it % 3 ? "900000000000013009" : "900000000000003001", "Term number " + it + " (disorder)", "900000000000448009"].join("\t")
+    }
+
+    def "tokenizer gives the same fields as split for every #name row, sharing one String per repeated value"() {
+        given:
+            def tokenizer = new Rf2LineTokenizer(false, interned)
+            Set<String> tokenizedModules = Collections.newSetFromMap(new IdentityHashMap<>())
+            Set<String> splitModules = Collections.newSetFromMap(new IdentityHashMap<>())
+
+        expect:
+            rows.each { line ->
+                String[] tokenized = tokenizer.tokenize(line)
+                String[] split = line.split("\t")
+                assert tokenized as List == split as List
+                tokenizedModules << tokenized[3]
+                splitModules << split[3]
+            }
+            tokenizedModules.size() == 1
+            splitModules.size() == rows.size()
+
+        where:
+            name           | rows             | interned
+            "Relationship" | relationshipRows | RELATIONSHIP_INTERNED
+            "Description"  | descriptionRows  | DESCRIPTION_INTERNED
+    }
+
+    def "tokenizer is no slower than split over #name rows"() {
+        when:
+            //The first pass warms up both, so only later passes are compared
+            timeTokenizer(rows, interned)
+            timeSplit(rows)
+            long tokenizerNanos = (1..PASSES).sum { timeTokenizer(rows, interned) } as long
+            long splitNanos = (1..PASSES).sum { timeSplit(rows) } as long
+
+        then:
+            tokenizerNanos <= splitNanos * MAX_TIME_RATIO
+
+        where:
+            name           | rows             | interned
+            "Relationship" | relationshipRows | RELATIONSHIP_INTERNED
+            "Description"  | descriptionRows  | DESCRIPTION_INTERNED
+    }
+
+    @Requires({ sys["rf2.snapshot.dir"] })
+    def "tokenizer matches split and is no slower over the #fileType snapshot file"() {
+        given:
+            File file = new File(System.getProperty("rf2.snapshot.dir")).listFiles()
+                    .find { it.name.startsWith("sct2_" + fileType + "_Snapshot") }
+            List<String> rows = file.readLines("UTF-8").drop(1)
+            def tokenizer = new Rf2LineTokenizer(false, interned)
+
+        when:
+            timeTokenizer(rows, interned)
+            timeSplit(rows)
+            long tokenizerNanos = timeTokenizer(rows, interned)
+            long splitNanos = timeSplit(rows)
+
+        then:
+            rows.every { tokenizer.tokenize(it) as List == it.split("\t") as List }
+            tokenizerNanos <= splitNanos * MAX_TIME_RATIO
+
+        where:
+            fileType       | interned
+            "Relationship" | RELATIONSHIP_INTERNED
+            "Description"  | DESCRIPTION_INTERNED
+    }
+
+    private static long timeTokenizer(List<String> rows, int[] interned) {
+        def tokenizer = new Rf2LineTokenizer(false, interned)
+        long start = System.nanoTime()
+        long fieldLengths = 0
+        for (String line : rows) {
+            fieldLengths += tokenizer.tokenize(line)[4].length()
+        }
+        return checked(System.nanoTime() - start, fieldLengths)
+    }
+
+    private static long timeSplit(List<String> rows) {
+        long start = System.nanoTime()
+        long fieldLengths = 0
+        for (String line : rows) {
+            fieldLengths += line.split("\t")[4].length()
+        }
+        return checked(System.nanoTime() - start, fieldLengths)
+    }
+
+    //Uses the result, so the work being timed can't be optimised away
+    private static long checked(long nanos, long fieldLengths) {
+        assert fieldLengths > 0
+        return nanos
+    }
+}
@@ -0,0 +1,193 @@
+package org.ihtsdo.termserver.scripting.util
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class Rf2PackageComparerTest extends Specification {
+    static final String CONCEPT_HEADER = "id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId"
+    static final String CONCEPT_FILE = "sct2_Concept_Snapshot_INT.txt"
+    static final String DESCRIPTION_FILE = "sct2_Description_Snapshot-en_INT.txt"
+
+    @TempDir
+    File tempDir
+
+    def "added, removed and changed rows are reported in id order, previous state first"() {
+        given:
+            File previous = rf2Package("previous", "sct2_Concept_Snapshot_INT_20241001.txt", CONCEPT_HEADER, [
+                    "100004\t20020131\t1\t900000000000207008\t900000000000074008",
+                    "100002\t20020131\t1\t900000000000207008\t900000000000074008",
+                    "100003\t20020131\t1\t900000000000207008\t900000000000074008"
+            ])
+            File current = rf2Package("current", "xsct2_Concept_Snapshot_INT_20250301.txt", CONCEPT_HEADER, [
+                    "100003\t20250301\t0\t900000000000207008\t900000000000074008",
+                    "100004\t20020131\t1\t900000000000207008\t900000000000074008",
+                    "1000050\t20250301\t1\t900000000000207008\t900000000000074008"
+            ])
+            def handler = new RecordingHandler()
+
+        when:
+            def comparisons = compare(previous, current, [CONCEPT_FILE], handler)
+
+        then:
+            handler.events == [
+                    "deleted 100002 20020131",
+                    "deleted 100003 20020131",
+                    "created 100003 20250301",
+                    "created 1000050 20250301"
+            ]
+            with(comparisons[CONCEPT_FILE]) {
+                !headerChanged()
+                previousRows() == 3
+                currentRows() == 3
+                deleted() == 2
+                created() == 2
+            }
+            handler.completed == [comparisons[CONCEPT_FILE]]
+    }
+
+    def "a file missing from one package is compared as if it only had a header"() {
+        given:
+            File previous = rf2Package("previous", "sct2_Concept_Snapshot_INT_20241001.txt", CONCEPT_HEADER, [])
+            File current = rf2Package("current", "sct2_Concept_Snapshot_INT_20250301.txt", CONCEPT_HEADER, [])
+            addFile(current, "sct2_Description_Snapshot-en_INT_20250301.txt", "id\tterm", ["101013\tHello", "101014\tWorld"])
+            def handler = new RecordingHandler()
+
+        when:
+            def comparisons = compare(previous, current, [DESCRIPTION_FILE], handler)
+
+        then:
+            handler.events == ["created 101013 Hello", "created 101014 World"]
+            with(comparisons[DESCRIPTION_FILE]) {
+                !headerChanged()
+                previousRows() == 0
+                currentRows() == 2
+                deleted() == 0
+                created() == 2
+            }
+
+        when:
+            handler = new RecordingHandler()
+            comparisons = compare(current, previous, [DESCRIPTION_FILE], handler)
+
+        then:
+            handler.events == ["deleted 101013 Hello", "deleted 101014 World"]
+            !comparisons[DESCRIPTION_FILE].headerChanged()
+    }
+
+    def "a changed header is counted against the file"() {
+        given:
+            String row = "100002\t20020131\t1\t900000000000207008\t900000000000074008"
+            File previous = rf2Package("previous", "sct2_Concept_Snapshot_INT_20241001.txt", CONCEPT_HEADER, [row])
+            File current = rf2Package("current", "sct2_Concept_Snapshot_INT_20250301.txt", CONCEPT_HEADER + "\textra", [row])
+            def handler = new RecordingHandler()
+
+        when:
+            def comparisons = compare(previous, current, [CONCEPT_FILE], handler)
+
+        then:
+            comparisons[CONCEPT_FILE].headerChanged()
+            handler.events.isEmpty()
+    }
+
+    def "a zipped package is compared the same as a directory"() {
+        given:
+            List<String> rows = ["100002\t20020131\t1\t900000000000207008\t900000000000074008"]
+            File previous = rf2Package("previous", "sct2_Concept_Snapshot_INT_20241001.txt", CONCEPT_HEADER, rows)
+            File current = zip(rf2Package("current", "sct2_Concept_Snapshot_INT_20250301.txt", CONCEPT_HEADER,
+                    rows + ["100003\t20250301\t1\t900000000000207008\t900000000000074008"]))
+            def handler = new RecordingHandler()
+
+        when:
+            def comparisons = compare(previous, current, [CONCEPT_FILE], handler)
+
+        then:
+            handler.events == ["created 100003 20250301"]
+            comparisons[CONCEPT_FILE].currentRows() == 2
+    }
+
+    def "filenames are matched without their release date or beta prefix"() {
+        expect:
+            Rf2PackageComparer.normaliseFilename(filename) == normalised
+
+        where:
+            filename                                  | normalised
+            "sct2_Concept_Snapshot_INT_20241001.txt"  | "sct2_Concept_Snapshot_INT.txt"
+            "xsct2_Concept_Snapshot_INT_20250301.txt" | "sct2_Concept_Snapshot_INT.txt"
+            "der2_Refset_SimpleSnapshot_INT.txt"      | "der2_Refset_SimpleSnapshot_INT.txt"
+    }
+
+    def "forEachRow visits the data rows of one side in file order"() {
+        given:
+            File previous = rf2Package("previous", "sct2_Concept_Snapshot_INT_20241001.txt", CONCEPT_HEADER, ["100003\ta", "", "100002\tb"])
+            File current = rf2Package("current", "sct2_Concept_Snapshot_INT_20250301.txt", CONCEPT_HEADER, [])
+            List<String> ids = []
+
+        when:
+            new Rf2PackageComparer(previous, current).withCloseable { comparer ->
+                comparer.forEachRow(false, CONCEPT_FILE, { row -> ids << row[0] } as Rf2PackageComparer.RowHandler)
+                comparer.forEachRow(false, DESCRIPTION_FILE, { row -> ids << "unexpected" } as Rf2PackageComparer.RowHandler)
+            }
+
+        then:
+            ids == ["100003", "100002"]
+    }
+
+    private static SortedMap<String, Rf2PackageComparer.FileComparison> compare(File previous, File current, List<String> filenames, RecordingHandler handler) {
+        return new Rf2PackageComparer(previous, current).withCloseable { comparer ->
+            comparer.compare(filenames, { filename -> handler })
+        }
+    }
+
+    private File rf2Package(String name, String filename, String header, List<String> rows) {
+        File dir = new File(tempDir, name)
+        addFile(dir, filename, header, rows)
+        return dir
+    }
+
+    private static void addFile(File dir, String filename, String header, List<String> rows) {
+        File terminology = new File(dir, "Snapshot/Terminology")
+        terminology.mkdirs()
+        new File(terminology, filename).text = ([header] + rows).collect { it + "\r\n" }.join()
+    }
+
+    private File zip(File dir) {
+        File zipFile = new File(tempDir, dir.name + ".zip")
+        new ZipOutputStream(new FileOutputStream(zipFile)).withCloseable { zos ->
+            dir.eachFileRecurse { file ->
+                if (file.isFile()) {
+                    zos.putNextEntry(new ZipEntry(dir.toPath().relativize(file.toPath()).toString()))
+                    zos.write(file.bytes)
+                    zos.closeEntry()
+                }
+            }
+        }
+        return zipFile
+    }
+
+    static class RecordingHandler implements Rf2PackageComparer.DifferenceHandler {
+        List<String> events = []
+        List<Rf2PackageComparer.FileComparison> completed = []
+
+        @Override
+        void deleted(String[] row) {
+            events << describe("deleted", row)
+        }
+
+        @Override
+        void created(String[] row) {
+            events << describe("created", row)
+        }
+
+        @Override
+        void complete(Rf2PackageComparer.FileComparison comparison) {
+            completed << comparison
+        }
+
+        private static String describe(String change, String[] row) {
+            return change + " " + row[0] + " " + row[1]
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.ihtsdo.termserver.scripting.util
+
+import spock.lang.Specification
+
+import java.util.stream.Collectors
+
+class SctIdMapTest extends Specification {
+
+    def "put, get and remove by String and by long"() {
+        given:
+            def map = new SctIdMap<String>()
+
+        when:
+            def previous = map.put("100022", "first")
+
+        then:
+            previous == null
+            map.get("100022") == "first"
+            map.get(100022L) == "first"
+            map.containsKey("100022")
+            map.size() == 1
+
+        when:
+            previous = map.put("100022", "second")
+
+        then:
+            previous == "first"
+            map.get("100022") == "second"
+            map.size() == 1
+
+        when:
+            previous = map.remove("100022")
+
+        then:
+            previous == "second"
+            map.get("100022") == null
+            !map.containsKey("100022")
+            map.isEmpty()
+            map.remove("100022") == null
+    }
+
+    def "capacity grows to keep the table no more than 60% full"() {
+        given:
+            def map = new SctIdMap<String>(16)
+            int initialCapacity = map.capacity
+
+        when:
+            (1..1000).each { map.put((100000 + it).toString(), "x") }
+
+        then:
+            initialCapacity < map.capacity
+            map.capacity >= 1000 / 0.6
+            Integer.bitCount(map.capacity) == 1
+    }
+
+    def "ids which aren't canonical numbers are kept apart from the numeric ones: '#key'"() {
+        given:
+            def map = new SctIdMap<String>()
+
+        when:
+            map.put(key, "value")
+
+        then:
+            SctIdMap.toNumericKey(key) == -1L
+            map.get(key) == "value"
+            map.containsKey(key)
+            map.size() == 1
+            map.entrySet()*.key == [key]
+            map.remove(key) == "value"
+            map.isEmpty()
+
+        where:
+            key << ["8d5e1f9c-8d1c-4bd4-9d4a-2f6e9e6c4b1a", "0123", "", "-5", "1234567890123456789", "12a"]
+    }
+
+    def "a leading zero id doesn't find the numeric id it would parse as"() {
+        given:
+            def map = new SctIdMap<String>()
+            map.put("123", "numeric")
+
+        expect:
+            map.get("0123") == null
+            map.get(123L) == "numeric"
+    }
+
+    def "ids sharing a home slot are all found, including where the probe wraps round the end of the table"() {
+        given:
+            def map = new SctIdMap<String>(1)
+            int lastSlot = map.keys.length - 1
+            List<Long> ids = idsWithHomeSlot(map, lastSlot, 3)
+
+        when:
+            ids.each { map.put(it.toString(), "v" + it) }
+
+        then:
+            //The first keeps its home slot, the rest wrap round to the start of the table
+            map.keys[lastSlot] == ids[0]
+            map.keys[0] == ids[1]
+            map.keys[1] == ids[2]
+            ids.every { map.get(it.toString()) == "v" + it }
+            map.size() == 3
+    }
+
+    def "removing from the middle of a probe run shifts later entries back into the gap"() {
+        given:
+            def map = new SctIdMap<String>(1)
+            int lastSlot = map.keys.length - 1
+            List<Long> wrapping = idsWithHomeSlot(map, lastSlot, 3)
+            //Homed at slot 0 but pushed along by the entries wrapping round from the end
+            Long homedAtZero = idsWithHomeSlot(map, 0, 1)[0]
+            (wrapping + homedAtZero).each { map.put(it.toString(), "v" + it) }
+
+        when:
+            map.remove(wrapping[0].toString())
+
+        then:
+            map.size() == 3
+            map.get(wrapping[0].toString()) == null
+            (wrapping.drop(1) + homedAtZero).every { map.get(it.toString()) == "v" + it }
+            //No gaps left behind for a lookup to stop at
+            map.keys[lastSlot] == wrapping[1]
+            map.keys[0] == wrapping[2]
+            map.keys[1] == homedAtZero
+            map.keys[2] == 0L
+
+        when:
+            map.remove(wrapping[1].toString())
+
+        then:
+            map.keys[lastSlot] == wrapping[2]
+            map.keys[0] == homedAtZero
+            map.keys[1] == 0L
+            map.get(homedAtZero.toString()) == "v" + homedAtZero
+    }
+
+    def "an entry already in its home slot is not moved back into the gap"() {
+        given:
+            def map = new SctIdMap<String>(1)
+            Long first = idsWithHomeSlot(map, 3, 1)[0]
+            Long atHome = idsWithHomeSlot(map, 4, 1)[0]
+            map.put(first.toString(), "first")
+            map.put(atHome.toString(), "atHome")
+
+        when:
+            map.remove(first.toString())
+
+        then:
+            map.keys[3] == 0L
+            map.keys[4] == atHome
+            map.get(atHome.toString()) == "atHome"
+    }
+
+    def "behaves as a HashMap through a mixture of puts and removes, across resizes"() {
+        given:
+            def map = new SctIdMap<Integer>()
+            Map<String, Integer> expected = new HashMap<>()
+            def random = new Random(42)
+
+        when:
+            20000.times { i ->
+                String key = random.nextInt(10) == 0 ? "uuid-" + random.nextInt(500) : Long.toString(1 + random.nextInt(5000))
+                if (random.nextInt(3) == 0) {
+                    assert map.remove(key) == expected.remove(key)
+                } else {
+                    assert map.put(key, i) == expected.put(key, i)
+                }
+            }
+
+        then:
+            map.size() == expected.size()
+            map == expected
+            expected.every { k, v -> map.get(k) == v }
+            map.values().sort() == expected.values().sort()
+    }
+
+    def "values and entries split into parts which between them cover the whole map"() {
+        given:
+            def map = new SctIdMap<String>()
+            (1..50000).each { map.put(Long.toString(it * 101L), "v" + it) }
+            map.put("not-a-number", "other")
+
+        when:
+            def spliterator = map.values().spliterator()
+
+        then:
+            spliterator.hasCharacteristics(Spliterator.SIZED)
+            spliterator.estimateSize() == 50001
+            spliterator.trySplit() != null
+            !spliterator.hasCharacteristics(Spliterator.SIZED)
+
+        and:
+            map.values().parallelStream().collect(Collectors.toSet()) == new HashSet<>(map.values())
+            map.values().parallelStream().count() == 50001
+            map.entrySet().parallelStream().map { it.key }.collect(Collectors.toSet()).size() == 50001
+            map.entrySet().spliterator().hasCharacteristics(Spliterator.DISTINCT)
+    }
+
+    def "modifying the map while iterating fails fast"() {
+        given:
+            def map = new SctIdMap<String>()
+            map.put("100022", "a")
+            map.put("100023", "b")
+            def iterator = map.values().iterator()
+
+        when:
+            iterator.next()
+            map.put("100024", "c")
+            iterator.next()
+
+        then:
+            thrown(ConcurrentModificationException)
+    }
+
+    private static List<Long> idsWithHomeSlot(SctIdMap map, int slot, int count) {
+        List<Long> ids = []
+        for (long id = 100000L; ids.size() < count; id++) {
+            if (map.slotFor(id) == slot) {
+                ids << id
+            }
+        }
+        return ids
+    }
+}
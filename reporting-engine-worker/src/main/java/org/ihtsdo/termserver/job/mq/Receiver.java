@@ -1,25 +1,143 @@
 package org.ihtsdo.termserver.job.mq;
 
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.jms.Destination;
+import jakarta.jms.MessageProducer;
+
 import org.ihtsdo.termserver.job.JobManager;
 import org.ihtsdo.termserver.scripting.snapshot.ArchiveManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.scheduler.domain.JobRun;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.listener.MessageListenerContainer;
+import org.springframework.jms.support.JmsHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 import org.apache.commons.lang.StringUtils;
 
+/**
+ * Jobs arrive on the interactive or the batch request queue, or on this worker's own queue when the
+ * service knows we already hold the snapshot they need.  A worker only ever runs one job at a time,
+ * so while a job is running we stop listening on the other queues, leaving anything arriving there
+ * for a worker that's free.
+ */
 @Service
 public class Receiver {
 	
+	private static final String BATCH_LISTENER = "batchRequestListener";
+	private static final String INTERACTIVE_LISTENER = "interactiveRequestListener";
+	private static final String WORKER_LISTENER = "workerRequestListener";
+	private static final List<String> LISTENERS = List.of(BATCH_LISTENER, INTERACTIVE_LISTENER, WORKER_LISTENER);
+
+	//As JMS has it for a message that never expires
+	private static final long NO_EXPIRATION = 0L;
+	
 	@Autowired
 	JobManager jobManager;
+	
+	@Autowired
+	JmsTemplate jmsTemplate;
+	
+	@Autowired
+	JmsListenerEndpointRegistry listenerRegistry;
+	
+	@Autowired
+	WorkerStatusPublisher workerStatusPublisher;
+	
+	@Value("${reporting.service.queue.request}")
+	String requestQueueName;
+	
+	@Value("${reporting.service.queue.request.interactive:${reporting.service.queue.request}_interactive}")
+	String interactiveRequestQueueName;
+
+	private final AtomicBoolean busy = new AtomicBoolean(false);
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(Receiver.class);
 
-	@JmsListener(destination = "${reporting.service.queue.request}")
+	@JmsListener(id = BATCH_LISTENER, destination = "${reporting.service.queue.request}")
 	public void receiveMessage(JobRun jobRun) {
+		receive(jobRun, requestQueueName, NO_EXPIRATION, BATCH_LISTENER);
+	}
+	
+	@JmsListener(id = INTERACTIVE_LISTENER, destination = "${reporting.service.queue.request.interactive:${reporting.service.queue.request}_interactive}")
+	public void receiveInteractiveMessage(JobRun jobRun) {
+		receive(jobRun, interactiveRequestQueueName, NO_EXPIRATION, INTERACTIVE_LISTENER);
+	}
+	
+	/**
+	 * If we can't take a directed run after all, it goes to the shared queue rather than back to our
+	 * own.  Otherwise it would sit there until its claim expired, and the service would then send it
+	 * to the shared queue as well, to be run twice once we were free.
+	 */
+	@JmsListener(id = WORKER_LISTENER, destination = "#{@workerStatusPublisher.workerQueueName}")
+	public void receiveDirectedMessage(JobRun jobRun, @Header(name = JmsHeaders.EXPIRATION, required = false) Long expiration) {
+		receive(jobRun, requestQueueName, expiration == null ? NO_EXPIRATION : expiration, WORKER_LISTENER);
+	}
+	
+	private void receive(JobRun jobRun, String queueName, long expiration, String listenerId) {
+		//Two listeners may have picked up a message in the same moment.  If so, put ours back for another worker
+		if (!busy.compareAndSet(false, true)) {
+			returnJobRun(jobRun, queueName, expiration);
+			return;
+		}
+		
+		List<MessageListenerContainer> otherListeners = new ArrayList<>();
+		for (String otherListenerId : LISTENERS) {
+			MessageListenerContainer otherListener = listenerRegistry.getListenerContainer(otherListenerId);
+			if (!otherListenerId.equals(listenerId) && otherListener != null) {
+				otherListeners.add(otherListener);
+			}
+		}
+		try {
+			otherListeners.forEach(MessageListenerContainer::stop);
+			workerStatusPublisher.setBusy(true);
+			runJob(jobRun);
+		} finally {
+			busy.set(false);
+			workerStatusPublisher.setBusy(false);
+			otherListeners.forEach(MessageListenerContainer::start);
+		}
+	}
+
+	/**
+	 * A run which was due to expire keeps what's left of its time to live, so that it's gone from the
+	 * queue by the time the service sends on any directed run that wasn't picked up.
+	 */
+	private void returnJobRun(JobRun jobRun, String queueName, long expiration) {
+		if (expiration == NO_EXPIRATION) {
+			LOGGER.info("Already running a job, returning {} to {}", jobRun, queueName);
+			jmsTemplate.convertAndSend(queueName, jobRun);
+			return;
+		}
+
+		long timeToLive = expiration - System.currentTimeMillis();
+		if (timeToLive <= 0) {
+			LOGGER.info("Already running a job and {} has expired, leaving the service to send it on", jobRun);
+			return;
+		}
+		LOGGER.info("Already running a job, sending {} to {} for the remaining {}ms", jobRun, queueName, timeToLive);
+		jmsTemplate.execute((SessionCallback<Void>) session -> {
+			Destination destination = jmsTemplate.getDestinationResolver().resolveDestinationName(session, queueName, jmsTemplate.isPubSubDomain());
+			MessageProducer producer = session.createProducer(destination);
+			try {
+				producer.setTimeToLive(timeToLive);
+				producer.send(jmsTemplate.getMessageConverter().toMessage(jobRun, session));
+			} finally {
+				producer.close();
+			}
+			return null;
+		}, true);
+	}
+
+	private void runJob(JobRun jobRun) {
 		String cookieStart = "AuthToken Missing";
 		if (!StringUtils.isEmpty(jobRun.getAuthToken()) && jobRun.getAuthToken().length() > 20) {
 			cookieStart = jobRun.getAuthToken().substring(0,20);
@@ -0,0 +1,100 @@
+package org.ihtsdo.termserver.job.mq;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Project;
+import org.ihtsdo.otf.utils.StringUtils;
+import org.ihtsdo.termserver.scripting.snapshot.ArchiveManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tells the reporting service which snapshot this worker holds in memory, and whether it's busy,
+ * so that jobs for the same project can be sent to this worker's own request queue rather than
+ * to whichever worker happens to be free.  Published after every job and once a minute besides.
+ */
+@Component
+public class WorkerStatusPublisher {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WorkerStatusPublisher.class);
+
+	private static final int HEARTBEAT_SECONDS = 60;
+
+	@Autowired
+	private JmsTemplate jmsTemplate;
+
+	@Value("${reporting.service.queue.worker-status:reporting_service_worker_status}")
+	String workerStatusQueueName;
+
+	@Value("${reporting.service.queue.request.worker-prefix:reporting_service_request_worker_}")
+	String workerQueuePrefix;
+
+	@Value("${reporting.worker.id:}")
+	String workerId;
+
+	private volatile boolean busy = false;
+
+	private ScheduledExecutorService heartbeat;
+
+	@PostConstruct
+	public void init() {
+		if (StringUtils.isEmpty(workerId)) {
+			//Where the hostname survives a restart, the worker picks up anything left on its queue.
+			//Otherwise the service sends those runs to the shared queue once they expire
+			try {
+				workerId = InetAddress.getLocalHost().getHostName();
+			} catch (UnknownHostException e) {
+				workerId = UUID.randomUUID().toString();
+			}
+		}
+		LOGGER.info("Worker {} accepting directed jobs on {}", workerId, getWorkerQueueName());
+		heartbeat = Executors.newSingleThreadScheduledExecutor();
+		heartbeat.scheduleAtFixedRate(this::publish, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (heartbeat != null) {
+			heartbeat.shutdownNow();
+		}
+	}
+
+	public String getWorkerQueueName() {
+		return workerQueuePrefix + workerId;
+	}
+
+	public void setBusy(boolean busy) {
+		this.busy = busy;
+		publish();
+	}
+
+	private void publish() {
+		Map<String, Object> status = new HashMap<>();
+		status.put("workerId", workerId);
+		status.put("queue", getWorkerQueueName());
+		status.put("busy", busy);
+		status.put("timestamp", System.currentTimeMillis());
+		Project held = ArchiveManager.getProjectHeldInMemory();
+		if (held != null && held.getKey() != null) {
+			status.put("project", held.getKey());
+			if (held.getBranchPath() != null) {
+				status.put("branchPath", held.getBranchPath());
+			}
+		}
+		try {
+			jmsTemplate.convertAndSend(workerStatusQueueName, status);
+		} catch (Exception e) {
+			LOGGER.warn("Unable to publish worker status: {}", e.getMessage());
+		}
+	}
+}
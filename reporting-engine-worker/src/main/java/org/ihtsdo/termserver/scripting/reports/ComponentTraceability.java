@@ -81,6 +81,7 @@ public class ComponentTraceability extends TermServerReport implements ReportCla
 			throw new TermServerScriptException("Please specify component ids for which traceability should be reported.");
 		}
 		
+		traceabilityService.prefetch(componentIds);
 		for (String componentId : componentIds) {
 			Component c = gl.getComponent(componentId);
 			if (c == null) {
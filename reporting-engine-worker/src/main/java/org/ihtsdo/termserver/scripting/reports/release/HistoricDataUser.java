@@ -180,13 +180,19 @@ public class HistoricDataUser extends TermServerReport {
 
 	protected Map<String, HistoricData> loadData(String release, boolean minimalSet) throws TermServerScriptException {
 		File dataFile = null;
-		prevData = new HashMap<>();
 		try {
 			dataFile = new File("historic-data/" + release + ".tsv");
 			if (!dataFile.exists() || !dataFile.canRead()) {
 				throw new TermServerScriptException("Unable to load historic data: " + dataFile);
 			}
-			loadDataFile(dataFile, minimalSet);
+			try {
+				//Concepts are read from the mapped store as they're asked for, rather than all being loaded up front
+				prevData = HistoricDataStore.open(dataFile).asMap(minimalSet, UNKNOWN_CONCEPT.getConceptId());
+			} catch (IOException e) {
+				LOGGER.warn("Unable to use historic data store for {}, loading text file instead: {}", dataFile, e.getMessage());
+				prevData = new HashMap<>();
+				loadDataFile(dataFile, minimalSet);
+			}
 		} catch (Exception e) {
 			throw new TermServerScriptException("Unable to load " + dataFile, e);
 		}
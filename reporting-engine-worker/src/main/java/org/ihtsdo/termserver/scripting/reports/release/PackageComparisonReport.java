@@ -1,32 +1,26 @@
 package org.ihtsdo.termserver.scripting.reports.release;
 
-import org.ihtsdo.otf.exception.TermServerRuntimeException;
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.otf.utils.StringUtils;
 import org.ihtsdo.termserver.scripting.ReportClass;
 import org.ihtsdo.termserver.scripting.TermServerScript;
+import org.ihtsdo.termserver.scripting.util.Rf2PackageComparer;
+import org.ihtsdo.termserver.scripting.util.Rf2PackageComparer.DifferenceHandler;
+import org.ihtsdo.termserver.scripting.util.Rf2PackageComparer.FileComparison;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.scheduler.domain.*;
 import org.snomed.otf.scheduler.domain.Job.ProductionStatus;
 import org.snomed.otf.script.dao.ReportConfiguration;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.File;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
 
 public class PackageComparisonReport extends SummaryComponentStats implements ReportClass {
 	private static final Logger LOGGER = LoggerFactory.getLogger(PackageComparisonReport.class);
-	private static final String SCRIPT_NAME = "run-compare-packages.sh";
-	private static final char LINE_DELETED_INDICATOR = '<';
-	private static final char LINE_CREATED_INDICATOR = '>';
-	private static final int TIMEOUT_MINUTES = 30;
+	private static final String RELEASES_FOLDER = "releases";
+	//A changed header line was counted as the number of lines diff reports for it
+	private static final int HEADER_DIFF_LINES = 4;
 	private static final int FILE_COMPARISON_TAB = MAX_REPORT_TABS;
 	private static final int MDRS_TAB = FILE_COMPARISON_TAB + 1;
 
@@ -43,17 +37,14 @@ public class PackageComparisonReport extends SummaryComponentStats implements Re
 
 	public static final String SCTID_SE_REFSETID = "734138000";
 	public static final String SCTID_SP_REFSETID = "734139008";
+	private static final Set<String> SEP_REFSET_IDS = Set.of(SCTID_SE_REFSETID, SCTID_SP_REFSETID);
 
 	private String previousReleasePath;
 	private String currentReleasePath;
 	private Map<String, Map<TotalsIndex, Integer>> fileTotals = new TreeMap<>();
-	private Map<String, Integer> headersDiffCounts = new HashMap<>();
+	private Map<String, MdrsDifferences> mdrsDifferencesByFile = new TreeMap<>(String::compareToIgnoreCase);
 	private Set<String> leftModules = new HashSet<>();
 	private Set<String> rightModules = new HashSet<>();
-	private static final String LEFT_MODULES_FILENAME = "left_modules.txt";
-	private static final String RIGHT_MODULES_FILENAME = "right_modules.txt";
-	private static final String HEADERS_DIFF_FILENAME = "diff__headers.txt";
-	private static final String FILES_DIFF_FILENAME = "diff__files.txt";
 
 
 	private final String[] tabNames = new String[] {
@@ -143,7 +134,7 @@ public class PackageComparisonReport extends SummaryComponentStats implements Re
 		return new Job()
 				.withCategory(new JobCategory(JobType.REPORT, JobCategory.RELEASE_STATS))
 				.withName("Package Comparison Report")
-				.withDescription("This report compares two packages (zip archives) using Unix scripts with output captured into usual Google Sheets")
+				.withDescription("This report compares two packages (zip archives) file by file with output captured into usual Google Sheets")
 				.withParameters(params)
 				.withTag(INT).withTag(MS)
 				.withProductionStatus(ProductionStatus.PROD_READY)
@@ -173,161 +164,85 @@ public class PackageComparisonReport extends SummaryComponentStats implements Re
 
 	@Override
 	public void runJob() throws TermServerScriptException {
-		if (System.getProperty("os.name").toLowerCase().startsWith("windows")) {
-			throw new TermServerScriptException("Windows operating system detected. This report can only run on Linux or MacOS.");
-		}
 		// Run SCS report first
 		LOGGER.info("Running SCS report");
 		super.runJob();
 
-		// Execute file comparison script
-		File previousRelease = new File(previousReleasePath);
-		File currentRelease = new File(currentReleasePath);
-
-		String previousReleaseName = previousRelease.getName();
-		String currentReleaseName = currentRelease.getName();
+		File previousRelease = new File(RELEASES_FOLDER, previousReleasePath);
+		File currentRelease = new File(RELEASES_FOLDER, currentReleasePath);
+		LOGGER.info("Comparing files in '{}' and '{}'", previousRelease.getPath(), currentRelease.getPath());
 
-		if (previousReleaseName.equals(currentReleaseName)) {
-			previousReleaseName = "Previous_" + previousReleaseName;
-			currentReleaseName = "Current_" + currentReleaseName;
+		try (Rf2PackageComparer comparer = new Rf2PackageComparer(previousRelease, currentRelease)) {
+			compareFiles(comparer);
 		}
-
-		String uploadFolder = String.join("_",
-				LocalDateTime.now().format(DateTimeFormatter.ofPattern("uuuu-MM-dd-HHmm")),
-				previousReleaseName,
-				currentReleaseName);
-
-		String[] scriptArguments = new String[]{
-				doubleQuote(previousReleaseName),
-				doubleQuote(previousRelease.getPath()),
-				doubleQuote(currentReleaseName),
-				doubleQuote(currentRelease.getPath()),
-				doubleQuote(uploadFolder)
-		};
-
-		String command = "scripts/" + SCRIPT_NAME + SPACE + String.join(SPACE, scriptArguments);
-
-		LOGGER.info("Starting script execution. Command: {}", command);
-		executeScript(command);
-		LOGGER.info("Diff files for '{}' and '{}' are uploaded to 's3://snomed-compares/{}'", previousRelease.getPath(), currentRelease.getPath(), uploadFolder);
-
-		processFiles(uploadFolder);
 		outputResults();
 	}
 
-	private void executeScript(String command) throws TermServerScriptException {
-		try {
-			// Execute scripts
-			ProcessBuilder builder = new ProcessBuilder();
-			builder.redirectErrorStream(true);
-			builder.command("sh", "-c", command);
-
-			Process process = builder.start();
-
-			try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-				reader.lines().forEach(LOGGER::info); //debug
-			}
-
-			if (process.waitFor(TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
-				// Process exited
-				int exitValue = process.exitValue();
-
-				if (exitValue != 0) {
-					throw new TermServerScriptException("Script execution failed with exit code: " + exitValue + ", see log for details");
-				}
-				LOGGER.info("Script execution finished successfully");
-			} else {
-				// Process timed out
-				throw new TermServerScriptException("Script execution timed out, timeout set to " + TIMEOUT_MINUTES + " minutes");
-			}
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-		} catch (IOException e) {
-			throw new TermServerScriptException(e);
-		}
-	}
-
-	private String getFilename(Path file) {
-		return file.getFileName().toString();
-	}
-
 	private boolean matches(String filename) {
-		return filename.matches("(sct2|der2)_.*(Snapshot).*") && !filename.matches("(sct2|der2)_.*_no_(first|1_7)_col.txt");
+		return filename.matches("(sct2|der2)_.*(Snapshot).*");
 	}
 
+	private void compareFiles(Rf2PackageComparer comparer) throws TermServerScriptException {
+		// Load list of package modules
+		loadModules(comparer, false, leftModules);
+		loadModules(comparer, true, rightModules);
 
-	private void processFiles(String uploadFolder) throws TermServerScriptException {
-		Path runDir = Path.of("results", uploadFolder);
-		Path diffDir = Path.of("results", uploadFolder, "target", "c");
+		processFilesList(comparer.getPreviousFilenames(), comparer.getCurrentFilenames());
 
-		try {
-			// Load list of package modules
-			loadModulesFile(diffDir, LEFT_MODULES_FILENAME, leftModules);
-			loadModulesFile(diffDir, RIGHT_MODULES_FILENAME, rightModules);
+		report(FILE_COMPARISON_TAB, "Files changed:");
 
-			// Load header diff counts
-			loadTabDelimitedFile(diffDir, HEADERS_DIFF_FILENAME, headersDiffCounts);
+		// Compare content of snapshot files, whether present in one package or both
+		Set<String> filenames = new TreeSet<>(comparer.getPreviousFilenames());
+		filenames.addAll(comparer.getCurrentFilenames());
+		filenames.removeIf(filename -> !matches(filename));
 
-			// Process files diff file
-			processFilesList(diffDir);
+		Map<String, FileComparison> comparisons = comparer.compare(filenames, this::getDifferenceHandler);
 
-			report(FILE_COMPARISON_TAB, "Files changed:");
+		// Add header diff count
+		for (FileComparison comparison : comparisons.values()) {
+			fileTotals.computeIfPresent(comparison.filename(), (k, v) -> {
+				v.computeIfPresent(TotalsIndex.HEADER, (k1, v1) -> comparison.headerChanged() ? HEADER_DIFF_LINES : 0);
+				return v;
+			});
+		}
 
-			// Process content diff files (snapshot files only)
-			try (Stream<Path> stream = Files.list(diffDir)) {
-				stream
-						.map(this::getFilename)
-						.filter(this::matches)
-						.sorted(String::compareToIgnoreCase)
-						.forEach(filename -> process(diffDir, filename));
-			}
+		for (MdrsDifferences mdrsDifferences : mdrsDifferencesByFile.values()) {
+			outputMDRSFile(mdrsDifferences.changed, mdrsDifferences.created, mdrsDifferences.deleted);
+		}
+	}
 
-			// Add header diff count
-			for (Map.Entry<String, Integer> entry : headersDiffCounts.entrySet()) {
-				fileTotals.computeIfPresent(entry.getKey(), (k, v) -> {
-					v.computeIfPresent(TotalsIndex.HEADER, (k1, v1) -> entry.getValue());
-					return v;
+	private void loadModules(Rf2PackageComparer comparer, boolean fromCurrent, Set<String> modules) throws TermServerScriptException {
+		Set<String> filenames = fromCurrent ? comparer.getCurrentFilenames() : comparer.getPreviousFilenames();
+		for (String filename : filenames) {
+			if (filename.matches(MODULE_DEPENDENCY_REFSET_FILENAME) && matches(filename)) {
+				comparer.forEachRow(fromCurrent, filename, row -> {
+					if (ACTIVE_FLAG.equals(row[IDX_ACTIVE])) {
+						modules.add(row[IDX_MODULEID]);
+					}
 				});
 			}
-
-			// Delete all temporary and diff files after processing
-			try (Stream<Path> stream = Files.walk(runDir)) {
-				stream.sorted(Comparator.reverseOrder())
-						.map(Path::toFile)
-						.forEach(File::delete);
-			}
-		} catch (IOException | TermServerRuntimeException e) {
-			LOGGER.error("Error processing diff files in {}", uploadFolder);
-			throw new TermServerScriptException(e);
 		}
 	}
 
-	private void loadTabDelimitedFile(Path outputDir, String filename, Map<String, Integer> files) {
-		try (BufferedReader br = new BufferedReader(new FileReader(outputDir + File.separator + filename, StandardCharsets.UTF_8))) {
-			String line;
-			while ((line = br.readLine()) != null) {
-				String[] parts = line.split(TAB);
-				String name = parts[0];
-				if (!matches(name)) {
-					continue;
-				}
-				Integer count = Integer.valueOf(parts[1]);
-				files.put(name, count);
-			}
-		} catch (Exception e) {
-			LOGGER.error("Failed to load file '{}'", filename, e);
+	/**
+	 * Called from the thread comparing the given file
+	 */
+	private DifferenceHandler getDifferenceHandler(String filename) {
+		if (filename.matches(ASSOCIATION_REFSET_FILENAME)) {
+			return DifferenceHandler.all(
+					new TotalsCounter(filename + " [ALL REFSETS]", ASSOC_IDX_ID, ASSOC_IDX_MODULEID, null),
+					new TotalsCounter(filename + " [SEP REFSETS: " + String.join(",", SEP_REFSET_IDS) + "]", ASSOC_IDX_ID, ASSOC_IDX_MODULEID, SEP_REFSET_IDS));
 		}
-	}
 
-	private void loadModulesFile(Path outputDir, String filename, Set<String> modules) {
-		try (BufferedReader br = new BufferedReader(new FileReader(outputDir + File.separator + filename, StandardCharsets.UTF_8))) {
-			String line;
-			while ((line = br.readLine()) != null) {
-				modules.add(line);
+		TotalsCounter totalsCounter = new TotalsCounter(filename, IDX_ID, IDX_MODULEID, null);
+		if (filename.matches(MODULE_DEPENDENCY_REFSET_FILENAME)) {
+			MdrsDifferences mdrsDifferences = new MdrsDifferences();
+			synchronized (mdrsDifferencesByFile) {
+				mdrsDifferencesByFile.put(filename, mdrsDifferences);
 			}
-		} catch (Exception e) {
-			LOGGER.error("Failed to load file '{}'", filename, e);
+			return DifferenceHandler.all(totalsCounter, mdrsDifferences);
 		}
+		return totalsCounter;
 	}
 
 	private boolean isExtension() {
@@ -487,63 +402,16 @@ public class PackageComparisonReport extends SummaryComponentStats implements Re
 		}
 	}
 
-	private String doubleQuote(String arg) {
-		return "\"" + arg + "\"";
-	}
-
-	private void processFilesList(Path path) throws TermServerScriptException {
-		Set<String> created = new TreeSet<>();
-		Set<String> deleted = new TreeSet<>();
-
-		try (BufferedReader br = new BufferedReader(new FileReader(path + File.separator + FILES_DIFF_FILENAME, StandardCharsets.UTF_8))) {
-			String line;
-
-			while ((line = br.readLine()) != null) {
-				char ch = line.charAt(0);
+	private void processFilesList(Set<String> previousFilenames, Set<String> currentFilenames) throws TermServerScriptException {
+		Set<String> created = new TreeSet<>(currentFilenames);
+		created.removeAll(previousFilenames);
+		created.removeIf(filename -> !matches(filename));
 
-				if (!(ch == LINE_DELETED_INDICATOR || ch == LINE_CREATED_INDICATOR)) {
-					continue;
-				}
-
-				// Start from index = 2 to exclude "<" or ">" and a space
-				String value = line.substring(2);
-
-				if (!matches(value)) {
-					continue;
-				}
-
-				// For the same component deleted indicator always comes before created indicator in the file
-				if (ch == LINE_DELETED_INDICATOR) {
-					// Previous release entry
-					countPreviousReleaseEntry(created, deleted, value);
-				} else {
-					// Current release entry
-					countCurrentReleaseEntry(created, deleted, value);
-				}
-			}
-
-			outputFilesChanges(created, deleted);
-
-		} catch (IOException | IndexOutOfBoundsException e) {
-			LOGGER.error("Error processing list of files: {}", FILES_DIFF_FILENAME);
-			throw new TermServerRuntimeException(e.getMessage());
-		}
-	}
+		Set<String> deleted = new TreeSet<>(previousFilenames);
+		deleted.removeAll(currentFilenames);
+		deleted.removeIf(filename -> !matches(filename));
 
-	private void countPreviousReleaseEntry(Set<String> created, Set<String> deleted, String value) {
-		if (created.contains(value)) {
-			created.remove(value);
-		} else {
-			deleted.add(value);
-		}
-	}
-
-	private void countCurrentReleaseEntry(Set<String> created, Set<String> deleted, String value) {
-		if (deleted.contains(value)) {
-			deleted.remove(value);
-		} else {
-			created.add(value);
-		}
+		outputFilesChanges(created, deleted);
 	}
 
 	private void outputFilesChanges(Set<String> created, Set<String> deleted) throws TermServerScriptException {
@@ -560,73 +428,6 @@ public class PackageComparisonReport extends SummaryComponentStats implements Re
 		report(FILE_COMPARISON_TAB, "");
 	}
 
-	@SuppressWarnings("java:S5852")
-	private void process(Path path, String filename) {
-		if (filename.matches(ASSOCIATION_REFSET_FILENAME)) {
-			processAssociationFile(path, filename, null);
-			processAssociationFile(path, filename, Set.of(SCTID_SE_REFSETID, SCTID_SP_REFSETID));
- 		} else {
-			processFile(path, filename);
-		}
-		if (filename.matches(MODULE_DEPENDENCY_REFSET_FILENAME)) {
-			processMDRSFile(path, filename);
-		}
-	}
-
-	private void processFile(Path path, String filename) {
-		Map<String, String[]> created = new HashMap<>();
-		Map<String, String[]> deleted = new HashMap<>();
-
-		Map<TotalsIndex, Integer> totals = new EnumMap<>(TotalsIndex.class);
-
-		for (TotalsIndex index : TotalsIndex.values()) {
-			totals.put(index, 0);
-		}
-
-		try (BufferedReader br = new BufferedReader(new FileReader(path + File.separator + filename, StandardCharsets.UTF_8))) {
-			String line;
-
-			while ((line = br.readLine()) != null) {
-				char ch = line.charAt(0);
-
-				if (!(ch == LINE_DELETED_INDICATOR || ch == LINE_CREATED_INDICATOR)) {
-					continue;
-				}
-
-				// Start from index = 2 to exclude "<" or ">" and the following space and split into parts:
-				// 0 - id
-				// 1 - effectiveTime
-				// 2 - active
-				// 3 - moduleId, etc.
-				String[] data = line.substring(2).split(FIELD_DELIMITER);
-				String key = data[IDX_ID];
-				String moduleId = data[IDX_MODULEID];
-
-				// For the same component, the "deleted" indicator always comes before the "created" indicator in the file
-				if (ch == LINE_DELETED_INDICATOR) {
-					// Previous release entry
-					deleted.put(key, data);
-				} else {
-					// Current release entry
-					if (deleted.containsKey(key)) {
-						String[] oldValue = deleted.remove(key);
-						countChanged(oldValue, data, totals);
-					} else if (inScope(moduleId)) {
-						created.put(key, data);
-					}
-				}
-			}
-
-			calculateTotals(totals, created, deleted);
-
-			fileTotals.put(filename, totals);
-
-		} catch (IOException | IndexOutOfBoundsException e) {
-			LOGGER.error("Error processing file: {}", filename);
-			throw new TermServerRuntimeException(e.getMessage());
-		}
-	}
-
 	private void calculateTotals(Map<TotalsIndex, Integer> totals, Map<String, String[]> created, Map<String, String[]> deleted) {
 		deleted.values().removeIf(data -> !inScope(data[IDX_MODULEID]));
 
@@ -641,66 +442,6 @@ public class PackageComparisonReport extends SummaryComponentStats implements Re
 				.map(Map.Entry::getValue).reduce(0, Integer::sum));
 	}
 
-	private void processAssociationFile(Path path, String filename, Set<String> refsetIds) {
-		Map<String, String[]> created = new HashMap<>();
-		Map<String, String[]> deleted = new HashMap<>();
-
-		Map<TotalsIndex, Integer> totals = new EnumMap<>(TotalsIndex.class);
-
-		for (TotalsIndex index : TotalsIndex.values()) {
-			totals.put(index, 0);
-		}
-
-		try (BufferedReader br = new BufferedReader(new FileReader(path + File.separator + filename, StandardCharsets.UTF_8))) {
-			String line;
-
-			while ((line = br.readLine()) != null) {
-				char ch = line.charAt(0);
-
-				if (!(ch == LINE_DELETED_INDICATOR || ch == LINE_CREATED_INDICATOR)) {
-					continue;
-				}
-
-				// Start from index = 2 to exclude "<" or ">" and the following space and split into parts:
-				// 0 - id
-				// 1 - effectiveTime
-				// 2 - active
-				// 3 - moduleId
-				// 4 - refsetId, etc
-				String[] data = line.substring(2).split(FIELD_DELIMITER);
-
-				if (refsetIds != null && !refsetIds.contains(data[ASSOC_IDX_REFSETID])) {
-					continue;
-				}
-
-				String key = data[ASSOC_IDX_ID];
-				String moduleId = data[ASSOC_IDX_MODULEID];
-
-				// For the same component in diff file, the "deleted" indicator always comes before the "created" indicator in the file
-				if (ch == LINE_DELETED_INDICATOR) {
-					// Previous release entry
-					deleted.put(key, data);
-				} else {
-					// Current release entry
-					if (deleted.containsKey(key)) {
-						String[] oldValue = deleted.remove(key);
-						countChanged(oldValue, data, totals);
-					} else if (inScope(moduleId)) {
-						created.put(key, data);
-					}
-				}
-			}
-
-			calculateTotals(totals, created, deleted);
-
-			fileTotals.put(filename + " " + (refsetIds == null ? "[ALL REFSETS]" : "[SEP REFSETS: " + String.join(",", refsetIds) + "]"), totals);
-
-		} catch (IOException | IndexOutOfBoundsException e) {
-			LOGGER.error("Error processing association file: {}", filename);
-			throw new TermServerRuntimeException(e.getMessage());
-		}
-	}
-
 	private void countChanged(String[] oldValue, String[] newValue, Map<TotalsIndex, Integer> totals) {
 		if (inScope(newValue[IDX_MODULEID])) {
 			ValuePair valuePair = new ValuePair(oldValue, newValue);
@@ -727,54 +468,6 @@ public class PackageComparisonReport extends SummaryComponentStats implements Re
 		}
 	}
 
-	private void processMDRSFile(Path path, String filename) {
-		Map<String, String[]> created = new HashMap<>();
-		Map<String, String[]> deleted = new HashMap<>();
-		Map<String, List<String[]>> changed = new HashMap<>();
-
-		readMDRSFile(path + File.separator + filename, changed, created, deleted);
-		try {
-			outputMDRSFile(changed, created, deleted);
-		} catch (TermServerScriptException e) {
-			throw new TermServerRuntimeException(e.getMessage());
-		}
-	}
-
-	private void readMDRSFile(String filename, Map<String, List<String[]>> changed, Map<String, String[]> created, Map<String, String[]> deleted) {
-		try (BufferedReader br = new BufferedReader(new FileReader(filename, StandardCharsets.UTF_8))) {
-			String line;
-
-			while ((line = br.readLine()) != null) {
-				char ch = line.charAt(0);
-
-				if (!(ch == LINE_DELETED_INDICATOR || ch == LINE_CREATED_INDICATOR)) {
-					continue;
-				}
-
-				// Start from index = 2 to exclude "<" or ">" and the following space and split into parts:
-				// 0 - id
-				// 1 - effectiveTime
-				// 2 - active
-				// 3 - moduleId, etc.
-				String[] data = line.substring(2).split(FIELD_DELIMITER);
-				String key = data[IDX_ID];
-
-				if (ch == LINE_DELETED_INDICATOR) {
-					deleted.put(key, data);
-				} else {
-					if (deleted.containsKey(key)) {
-						changed.put(key, new ArrayList<>(List.of(deleted.remove(key), data)));
-					} else {
-						created.put(key, data);
-					}
-				}
-			}
-		} catch (IOException e) {
-			LOGGER.error("Error reading MDRS file: {}", filename);
-			throw new TermServerRuntimeException(e.getMessage());
-		}
-	}
-
 	private void outputMDRSFile(Map<String, List<String[]>> changed, Map<String, String[]> created, Map<String, String[]> deleted) throws TermServerScriptException {
 		// Output changed entries
 		List<List<String[]>> changedList = new ArrayList<>(changed.values());
@@ -814,6 +507,86 @@ public class PackageComparisonReport extends SummaryComponentStats implements Re
 		return moduleFilter == null || moduleFilter.contains(moduleId);
 	}
 
+	/**
+	 * Totals the differences in one file (or one set of refsets within it).  For the same component,
+	 * the previous row always arrives before the current one.
+	 */
+	private class TotalsCounter implements DifferenceHandler {
+		private final String name;
+		private final int idIdx;
+		private final int moduleIdIdx;
+		private final Set<String> refsetIds;
+		private final Map<String, String[]> created = new HashMap<>();
+		private final Map<String, String[]> deleted = new HashMap<>();
+		private final Map<TotalsIndex, Integer> totals = new EnumMap<>(TotalsIndex.class);
+
+		TotalsCounter(String name, int idIdx, int moduleIdIdx, Set<String> refsetIds) {
+			this.name = name;
+			this.idIdx = idIdx;
+			this.moduleIdIdx = moduleIdIdx;
+			this.refsetIds = refsetIds;
+			for (TotalsIndex index : TotalsIndex.values()) {
+				totals.put(index, 0);
+			}
+		}
+
+		@Override
+		public void deleted(String[] data) {
+			if (isOfInterest(data)) {
+				// Previous release entry
+				deleted.put(data[idIdx], data);
+			}
+		}
+
+		@Override
+		public void created(String[] data) {
+			if (!isOfInterest(data)) {
+				return;
+			}
+			// Current release entry
+			String key = data[idIdx];
+			if (deleted.containsKey(key)) {
+				String[] oldValue = deleted.remove(key);
+				countChanged(oldValue, data, totals);
+			} else if (inScope(data[moduleIdIdx])) {
+				created.put(key, data);
+			}
+		}
+
+		private boolean isOfInterest(String[] data) {
+			return refsetIds == null || refsetIds.contains(data[ASSOC_IDX_REFSETID]);
+		}
+
+		@Override
+		public void complete(FileComparison comparison) {
+			calculateTotals(totals, created, deleted);
+			synchronized (fileTotals) {
+				fileTotals.put(name, totals);
+			}
+		}
+	}
+
+	private static class MdrsDifferences implements DifferenceHandler {
+		private final Map<String, String[]> created = new HashMap<>();
+		private final Map<String, String[]> deleted = new HashMap<>();
+		private final Map<String, List<String[]>> changed = new HashMap<>();
+
+		@Override
+		public void deleted(String[] data) {
+			deleted.put(data[IDX_ID], data);
+		}
+
+		@Override
+		public void created(String[] data) {
+			String key = data[IDX_ID];
+			if (deleted.containsKey(key)) {
+				changed.put(key, new ArrayList<>(List.of(deleted.remove(key), data)));
+			} else {
+				created.put(key, data);
+			}
+		}
+	}
+
 	class ValuePair {
 		// Previous value in the pair contains a line marked "<"
 		// Current value contains a matching line marked ">"
@@ -17,6 +17,8 @@ import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.*;
 import org.ihtsdo.termserver.scripting.domain.*;
 import org.ihtsdo.termserver.scripting.domain.mrcm.MRCMAttributeDomain;
+import org.ihtsdo.termserver.scripting.reports.ConceptRuleEngine;
+import org.ihtsdo.termserver.scripting.reports.ConceptRuleEngine.ConceptRule;
 import org.ihtsdo.termserver.scripting.reports.TermServerReport;
 import org.ihtsdo.termserver.scripting.util.AcceptableCharacterValidator;
 import org.ihtsdo.termserver.scripting.util.DialectChecker;
@@ -289,85 +291,80 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		LOGGER.info("Sorted {} concepts", allConceptsSorted.size());
 		LOGGER.info("Detecting recently touched concepts");
 		populateRecentlyTouched();
+		prepareForParallelChecks(allConceptsSorted);
 
-		LOGGER.info("Checking: ");
-		LOGGER.info("...modules are appropriate (~10 seconds)");
-		parentsInSameModule();
+		//Rules are listed in the order their issues appear in the report
+		ConceptRuleEngine rules = new ConceptRuleEngine();
+		if (!isMS()) {
+			rules.addActiveConceptRule("Parents in same module", parentsInSameModule());
+		}
 		if (isMS()) {
-			unexpectedComponentModulesMS();
-			inappropriateModuleJumping();
+			rules.addConceptRule("Unexpected component modules (MS)", unexpectedComponentModulesMS());
+			rules.addConceptRule("Inappropriate module jumping", inappropriateModuleJumping());
 		} else {
-			unexpectedDescriptionModules();
-			unexpectedRelationshipModules();
-			unexpectedAxiomModules();
-		}
-		
-		LOGGER.info("...description rules");
-		maxLengthCheck();
-		fullStopInSynonym();
-		missingFSN_PT();
-		unexpectedCharacters();
-		spaceBracket();
-		missingSemanticTag();
-		semTagInCorrectHierarchy();
-		repeatedWordGroups();
-		reviewContractions();
+			rules.addConceptRule("Unexpected description modules", unexpectedDescriptionModules());
+			rules.addConceptRule("Unexpected relationship modules", unexpectedRelationshipModules());
+			rules.addConceptRule("Unexpected axiom modules", unexpectedAxiomModules());
+		}
+
+		rules.addConceptRule("Max length", maxLengthCheck());
+		rules.addConceptRule("Full stop in synonym", fullStopInSynonym());
+		rules.addConceptRule("Missing FSN/PT", missingFSN_PT());
+		rules.addActiveConceptRule("Unexpected characters", unexpectedCharacters());
+		rules.addActiveConceptRule("Space bracket", spaceBracket());
+		rules.addConceptRule("Missing semantic tag", missingSemanticTag());
+		rules.addActiveConceptRule("Semantic tag in correct hierarchy", semTagInCorrectHierarchy());
+		rules.addConceptRule("Repeated word groups", repeatedWordGroups());
+		rules.addActiveConceptRule("Review contractions", reviewContractions());
 		//Splitting every description into an array is expensive, so run checks for
-		//words in reverse and consecutive prepositions in the same loop
-		runTokenisedDescriptionChecks();
-		multipleLangRef();
-		multiplePTs();
-		multipleFSNs();
-		noCncIndicators();
+		//words in reverse and consecutive prepositions in the same rule
+		rules.addActiveConceptRule("Tokenised description checks", runTokenisedDescriptionChecks());
+		rules.addConceptRule("Multiple LangRef", multipleLangRef());
+		rules.addConceptRule("Multiple PTs", multiplePTs());
+		rules.addConceptRule("Multiple FSNs", multipleFSNs());
+		rules.addConceptRule("No CNC indicators", noCncIndicators());
 		if (isMS()) {
-			unexpectedLangCodeMS();
+			ConceptRule unexpectedLangCodeMS = unexpectedLangCodeMS();
+			if (unexpectedLangCodeMS != null) {
+				rules.addConceptRule("Unexpected lang code (MS)", unexpectedLangCodeMS);
+			}
 		} else {
-			dueWithoutTo();
+			rules.addActiveConceptRule("Due without to", dueWithoutTo());
 		}
 
-		checkComponentsReferenceDependentModules();
+		//These work across all components or concepts together, so can't be split by concept
+		rules.addGlobalRule("Components reference dependent modules", this::checkComponentsReferenceDependentModules);
+		rules.addGlobalRule("Duplicate semantic tags", this::duplicateSemanticTags);
 
-		LOGGER.info("...duplicate semantic tags");
-		duplicateSemanticTags();
+		rules.addActiveConceptRule("Parents in same top level hierarchy", parentsInSameTopLevelHierarchy());
 
-		getReportManager().flushFiles(false);
-		
-		LOGGER.info("...parent hierarchies (~20 seconds)");
-		parentsInSameTopLevelHierarchy();
-		
-		LOGGER.info("...axiom integrity");
-		axiomIntegrity();
-		noStatedRelationships();
-		
-		LOGGER.info("...Disease semantic tag rule");
-		diseaseIntegrity();
+		//The OWL toolkit's conversion service is not known to be safe to share between threads
+		rules.addGlobalRule("Axiom integrity", this::axiomIntegrity);
+		rules.addActiveConceptRule("No stated relationships", noStatedRelationships());
+		rules.addGlobalRule("Disease integrity", this::diseaseIntegrity);
 
 		if (!isMS()) {
-			LOGGER.info("...FSN dialect checks");
-			descriptionDialectChecks();
-
-			LOGGER.info("...Text definition dialect checks");
-			textDefinitionDialectChecks();
+			rules.addActiveConceptRule("FSN dialect checks", descriptionDialectChecks());
+			rules.addGlobalRule("Text definition dialect checks", this::textDefinitionDialectChecks);
 		}
-		
-		LOGGER.info("...Nested brackets check");
-		nestedBracketCheck();
-		
-		LOGGER.info("...Modelling rules check");
-		validateAttributeDomainModellingRules();
-		validateAttributeTypeValueModellingRules();
-		validateInterpretsHasInterpretation();
-		neverGroupTogether();
-		domainMustNotUseType();
-		
-		LOGGER.info("...Deprecation rules");
-		checkDeprecatedHierarchies();
-		
-		LOGGER.info("...MRCM validation");
-		checkMRCMDomain();
-		checkMRCMAttributeRanges();
-		checkMRCMAttributeDomains();
-		checkMRCMModuleScope();
+
+		rules.addActiveConceptRule("Nested brackets", nestedBracketCheck());
+
+		rules.addActiveConceptRule("Attribute domain modelling rules", validateAttributeDomainModellingRules());
+		rules.addActiveConceptRule("Attribute type/value modelling rules", validateAttributeTypeValueModellingRules());
+		rules.addActiveConceptRule("Interprets/HasInterpretation", validateInterpretsHasInterpretation());
+		neverGroupTogether(rules);
+		rules.addGlobalRule("Domain must not use type", this::domainMustNotUseType);
+
+		rules.addGlobalRule("Deprecated hierarchies", this::checkDeprecatedHierarchies);
+
+		rules.addGlobalRule("MRCM domain", this::checkMRCMDomain);
+		rules.addGlobalRule("MRCM attribute ranges", this::checkMRCMAttributeRanges);
+		rules.addGlobalRule("MRCM attribute domains", this::checkMRCMAttributeDomains);
+		rules.addGlobalRule("MRCM module scope", this::checkMRCMModuleScope);
+
+		rules.run(allConceptsSorted);
+		getReportManager().flushFiles(false);
 
 		LOGGER.info("Checks complete, creating summary tag");
 		populateSummaryTabAndTotal(SECONDARY_REPORT);
@@ -405,13 +402,12 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		LOGGER.info("Finished check of components referencing dependent modules");
 	}
 
-	private void inappropriateModuleJumping() throws TermServerScriptException {
+	private ConceptRule inappropriateModuleJumping() throws TermServerScriptException {
 		String issueStr = "Component module jumped, otherwise unchanged.";
 		String issueStr2 = "Component module jumped without parent";
 		initialiseSummary(issueStr);
 		initialiseSummary(issueStr2);
-		LOGGER.info("Started inappropriateModuleJumping check");
-		for (Concept concept : allConceptsSorted) {
+		return concept -> {
 			nextComponent:
 			for (Component c : SnomedUtils.getAllComponents(concept)) {
 				//Did it change in the current delta?  Don't bother checking if not
@@ -477,8 +473,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
-		LOGGER.info("Completed inappropriateModuleJumping check");
+		};
 	}
 
 	private boolean nullCheck(String view, String[] viewState, Component c) {
@@ -524,26 +519,22 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 
 	//ISRS-286 Ensure Parents in same module.
 	//This check does not apply to MS
-	private void parentsInSameModule() throws TermServerScriptException {
-		if (isMS()) {
-			return;
-		}
-		
+	private ConceptRule parentsInSameModule() throws TermServerScriptException {
 		String issueStr = "Mismatching parent moduleId";
 		initialiseSummary(issueStr);
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (c.getModuleId() == null) {
 				LOGGER.warn("Encountered concept with no module defined: {}", c);
-				continue;
+				return;
 			}
 			if (!c.getModuleId().equals(SCTID_CORE_MODULE) && !c.getModuleId().equals(SCTID_MODEL_MODULE)) {
-				continue;
+				return;
 			}
 			
 			//Also skip the top of the metadata hierarchy - it has a core parent
 			//900000000000441003 |SNOMED CT Model Component (metadata)|
 			if (!c.isActiveSafely() || c.getConceptId().equals("900000000000441003")) {
-				continue;
+				return;
 			}
 			
 			for (Concept p : c.getParents(CharacteristicType.STATED_RELATIONSHIP)) {
@@ -551,77 +542,76 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					reportAndIncrementSummary(c, isLegacySimple(c), issueStr,getLegacyIndicator(c), isActive(c,null), p);
 				}
 			}
-		}
+		};
 	}
 
 	//ISRS-391 Descriptions whose module id does not match that of the component
 	//It's OK to add translations to core concepts, so does not apply to MS
-	private void unexpectedDescriptionModules() throws TermServerScriptException {
+	private ConceptRule unexpectedDescriptionModules() throws TermServerScriptException {
 		String issueStr ="Unexpected Description Module";
 		initialiseSummary(issueStr);
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			for (Description d : c.getDescriptions()) {
 				if (!d.getModuleId().equals(c.getModuleId())) {
 					String msg = "Concept module " + c.getModuleId() + " vs Desc module " + d.getModuleId();
 					reportAndIncrementSummary(c, isLegacySimple(d), issueStr, getLegacyIndicator(d), isActive(c,d), msg, d);
 				}
 			}
-		}
+		};
 	}
 	
 	/* Since and extension is based on a release, any modified description should
 	 * belong to the default module
 	 */
-	private void unexpectedComponentModulesMS() throws TermServerScriptException {
+	private ConceptRule unexpectedComponentModulesMS() throws TermServerScriptException {
 		String issueStr ="Unexpected module for modified component";
 		initialiseSummary(issueStr);
-		LOGGER.info("Checking {} for unexpected component modules in modified components", allConceptsSorted.size());
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			for (Component comp: SnomedUtils.getAllComponents(c)) {
 				if (StringUtils.isEmpty(comp.getEffectiveTime()) && !expectedExtensionModules.contains(comp.getModuleId())) {
 					String msg = "Modified component module " + comp.getModuleId() + " is not expected in this extension";
 					reportAndIncrementSummary(c, isLegacySimple(comp), issueStr, getLegacyIndicator(comp), isActive(c,comp), msg, comp);
 				}
 			}
-		}
+		};
 	}
 	
 	//ISRS-392 Part II Stated Relationships whose module id does not match that of the component
-	private void unexpectedRelationshipModules() throws TermServerScriptException {
+	private ConceptRule unexpectedRelationshipModules() throws TermServerScriptException {
 		String issueStr = "Unexpected Inf Rel Module";
 		initialiseSummary(issueStr);
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			for (Relationship r : c.getRelationships(CharacteristicType.INFERRED_RELATIONSHIP, ActiveState.ACTIVE)) {
 				if (!r.getModuleId().equals(c.getModuleId())) {
 					String msg = "Concept module " + c.getModuleId() + " vs Rel module " + r.getModuleId();
 					reportAndIncrementSummary(c, isLegacySimple(r), issueStr, getLegacyIndicator(r), isActive(c,r), msg, r);
 				}
 			}
-		}
+		};
 	}
 	
-	private void unexpectedAxiomModules() throws TermServerScriptException {
+	private ConceptRule unexpectedAxiomModules() throws TermServerScriptException {
 		String issueStr = "Unexpected Axiom Module";
 		initialiseSummary(issueStr);
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			for (AxiomEntry a : c.getAxiomEntries()) {
 				if (!a.getModuleId().equals(c.getModuleId())) {
 					String msg = "Concept module " + c.getModuleId() + " vs Axiom module " + a.getModuleId();
 					reportAndIncrementSummary(c, isLegacySimple(a),issueStr, getLegacyIndicator(a), isActive(c,a), msg, a);
 				}
 			}
-		}
+		};
 	}
 	
 	//MAINT-224 Synonyms created as TextDefinitions new content only
-	private void fullStopInSynonym() throws TermServerScriptException {
+	private ConceptRule fullStopInSynonym() throws TermServerScriptException {
 		String issueStr = "Possible TextDefn as Synonym";
 		String issue2Str = ">1 Text Definition per Dialect";
 		initialiseSummary(issueStr);
 		initialiseSummary(issue2Str);
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			if (whiteListedConceptIds.contains(c.getId())) {
-				continue;
+				return;
 			}
 			//Only look at concepts that have been in some way edited in this release cycle
 			//Unless we're interested in legacy issues
@@ -642,22 +632,22 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 
-	private void maxLengthCheck() throws TermServerScriptException {
+	private ConceptRule maxLengthCheck() throws TermServerScriptException {
 		String issueStr = "Description (not TextDefn) exceeds " + MAX_DESC_LENGTH + " characters";
 		initialiseSummary(issueStr);
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			if (whiteListedConceptIds.contains(c.getId())) {
-				continue;
+				return;
 			}
 			//Only look at concepts that have been in some way edited in this release cycle
 			//Unless we're interested in legacy issues
 			if (c.isActiveSafely() && (includeLegacyIssues || SnomedUtils.hasNewChanges(c))) {
 				checkDescriptionsForExcessiveLength(c, issueStr);
 			}
-		}
+		};
 	}
 
 	private void checkDescriptionsForExcessiveLength(Concept c, String issueStr) throws TermServerScriptException {
@@ -674,14 +664,14 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 
 	//INFRA-2580, MAINT-342 Inactivated concepts without active PT or synonym – new instances only
 	//RP-478 Broaden to take in all concepts - just in case!
-	private void missingFSN_PT() throws TermServerScriptException {
+	private ConceptRule missingFSN_PT() throws TermServerScriptException {
 		String issueStr = "Concept without active FSN";
 		String issue2Str = "Concept without active US PT";
 		String issue3Str = "Concept without active GB PT";
 		initialiseSummary(issueStr);
 		initialiseSummary(issue2Str);
 		initialiseSummary(issue3Str);
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			if (inScope(c) && isInternational(c) && (includeLegacyIssues || recentlyTouched.contains(c))) {
 				if (c.getFSNDescription() == null || !c.getFSNDescription().isActiveSafely()) {
 					reportAndIncrementSummary(c, isLegacySimple(c), issueStr, getLegacyIndicator(c), isActive(c,null));
@@ -697,26 +687,26 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					reportAndIncrementSummary(c, isLegacySimple(c), issue3Str, getLegacyIndicator(c), isActive(c,null));
 				}
 			}
-		}
+		};
 	}
 	
-	private void missingSemanticTag() throws TermServerScriptException {
+	private ConceptRule missingSemanticTag() throws TermServerScriptException {
 		String issueStr = "Concept (recently touched) with invalid FSN";
 		initialiseSummary(issueStr);
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			if (inScope(c)
 				&& recentlyTouched.contains(c)
 				&& c.getFsn() != null
 				&& SnomedUtilsBase.deconstructFSN(c.getFsn(), includeLegacyIssues)[1] == null) {
 				reportAndIncrementSummary(c, false, issueStr, "N", isActive(c,c.getFSNDescription()), c.getFsn());
 			}
-		}
+		};
 	}
 	
-	private void semTagInCorrectHierarchy() throws TermServerScriptException {
+	private ConceptRule semTagInCorrectHierarchy() throws TermServerScriptException {
 		String issueStr = "SemTag used outside of expected hierarchy";
 		initialiseSummary(issueStr);
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (inScope(c) && !semTagHierarchyMap.containsValue(c)) {
 				for (Map.Entry<String, Concept> entry : semTagHierarchyMap.entrySet()) {
 					String semTag = SnomedUtilsBase.deconstructFSN(c.getFsn(), true)[1];
@@ -726,20 +716,21 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 
-	private void repeatedWordGroups() throws TermServerScriptException {
-		final Collection<Concept> concepts = includeLegacyIssues ? allConceptsSorted : allActiveConceptsSorted;
-		nextConcept:
-		for (Concept c : concepts) {
+	private ConceptRule repeatedWordGroups() throws TermServerScriptException {
+		return c -> {
+			if (!includeLegacyIssues && !c.isActiveSafely()) {
+				return;
+			}
 			if (inScope(c) && (includeLegacyIssues || recentlyTouched.contains(c))) {
 				//We're going to skip concepts with clinical drugs
 				String fsn = c.getFsnSafely();
 				if (fsn.contains("(medicinal") ||
 						fsn.contains("(clinical") ||
 						fsn.contains("(product")) {
-					continue nextConcept;
+					return;
 				}
 
 
@@ -751,7 +742,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 
 	private boolean repeatedWordGroups(Concept c, Description d, ConcernLevel concern) throws TermServerScriptException {
@@ -830,13 +821,12 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 	}
 
 
-	private void reviewContractions() throws TermServerScriptException {
+	private ConceptRule reviewContractions() throws TermServerScriptException {
 		String issueStr = "Contraction(s) to be reviewed for Concept";
 		String detailStr = "Option to add/remove contraction(s)";
 		initialiseSummary(issueStr);
 
-		nextConcept:
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (inScope(c) && (includeLegacyIssues || recentlyTouched.contains(c))) {
 				for (Description d : c.getDescriptions(ActiveState.ACTIVE)) {
 					String[] words = d.getTerm().split(" ");
@@ -847,21 +837,21 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 								"can't".equalsIgnoreCase(currentWord) ||
 								(x + 1 < wordsLength && "can".equalsIgnoreCase(currentWord) && "not".equalsIgnoreCase(words[x + 1]))) {
 							reportAndIncrementSummary(c, isLegacySimple(d), issueStr, getLegacyIndicator(d), isActive(c, d), detailStr, d);
-							continue nextConcept;
+							return;
 						}
 					}
 				}
 			}
-		}
+		};
 	}
 
-	private void runTokenisedDescriptionChecks() throws TermServerScriptException {
+	private ConceptRule runTokenisedDescriptionChecks() throws TermServerScriptException {
 		String issueStr = "Potential mistyped word in Description";
 		initialiseSummary(issueStr);
 		String issueStr2 = "Consecutive prepositions detected";
 		initialiseSummary(issueStr2);
 
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (inScope(c) && (includeLegacyIssues || recentlyTouched.contains(c))) {
 				for (Description d : c.getDescriptions(ActiveState.ACTIVE)) {
 					String[] words = d.getTerm().split(" ");
@@ -869,7 +859,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					checkForConsecutivePrepositions(c, d, issueStr2, words);
 				}
 			}
-		}
+		};
 	}
 
 	private void checkForConsecutivePrepositions(Concept c, Description d, String issueStr2, String[] words) throws TermServerScriptException {
@@ -901,10 +891,10 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		}
 	}
 	
-	private void multipleLangRef() throws TermServerScriptException {
+	private ConceptRule multipleLangRef() throws TermServerScriptException {
 		String issueStr = "Multiple LangRef for a given refset";
 		initialiseSummary(issueStr);
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			if (inScope(c)) {
 				nextDescription:
 				for (Description d : c.getDescriptions(ActiveState.ACTIVE)) {
@@ -920,21 +910,19 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 	
-	private void unexpectedLangCodeMS() throws TermServerScriptException {
+	private ConceptRule unexpectedLangCodeMS() throws TermServerScriptException {
 		//We need a branch to be able to run this query
 		if (getArchiveManager().isLoadDependencyPlusExtensionArchive()) {
 			LOGGER.info("Unable to determine appropriate langCode for LangRefsets when working with archive package");
-			return;
+			return null;
 		}
 		String issueStr = "Langrefset's description has unexpected langCode";
 		initialiseSummary(issueStr);
 		Map<String, String> refsetLangCodeMap = generateRefsetLangCodeMap();
-		for (Concept c : allConceptsSorted) {
-			checkUnexpectedLangCode(c, issueStr, refsetLangCodeMap);
-		}
+		return c -> checkUnexpectedLangCode(c, issueStr, refsetLangCodeMap);
 	}
 
 	private void checkUnexpectedLangCode(Concept c, String issueStr, Map<String, String> refsetLangCodeMap) throws TermServerScriptException {
@@ -968,13 +956,12 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		return refsetLangCodeMap;
 	}
 
-	private void multiplePTs() throws TermServerScriptException {
+	private ConceptRule multiplePTs() throws TermServerScriptException {
 		String issueStr = "Multiple preferred synonyms in a single langrefset";
 		initialiseSummary(issueStr);
 		List<DescriptionType> typesOfInterest = Collections.singletonList(DescriptionType.SYNONYM);
-		Map<String, Description> ptMap = new HashMap<>();
-		for (Concept c : allConceptsSorted) {
-			ptMap.clear();
+		return c -> {
+			Map<String, Description> ptMap = new HashMap<>();
 			nextDescription:
 			for (Description d : c.getDescriptions(ActiveState.ACTIVE, typesOfInterest)) {
 				boolean inScopePTDetected = false;
@@ -995,16 +982,15 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 	
-	private void multipleFSNs() throws TermServerScriptException {
+	private ConceptRule multipleFSNs() throws TermServerScriptException {
 		String issueStr = "Multiple active FSNs in same language";
 		initialiseSummary(issueStr);
 		List<DescriptionType> typesOfInterest = Collections.singletonList(DescriptionType.FSN);
-		Map<String, Description> fsnMap = new HashMap<>();
-		for (Concept c : allConceptsSorted) {
-			fsnMap.clear();
+		return c -> {
+			Map<String, Description> fsnMap = new HashMap<>();
 			for (Description d : c.getDescriptions(ActiveState.ACTIVE, typesOfInterest)) {
 				boolean inScopeFSNDetected = false;
 				if (inScope(d)) {
@@ -1019,13 +1005,13 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					fsnMap.put(d.getLang(), d);
 				}
 			}
-		}
+		};
 	}
 
-	private void noCncIndicators() throws TermServerScriptException {
+	private ConceptRule noCncIndicators() throws TermServerScriptException {
 		String issueStr = "CNC Indicators are no longer used.";
 		initialiseSummary(issueStr);
-		for (Concept c : allConceptsSorted) {
+		return c -> {
 			for (Description d : c.getDescriptions()) {
 				if (inScope(d)) {
 					for (InactivationIndicatorEntry i : d.getInactivationIndicatorEntries(ActiveState.ACTIVE)) {
@@ -1035,15 +1021,15 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 	
-	private void dueWithoutTo() throws TermServerScriptException {
+	private ConceptRule dueWithoutTo() throws TermServerScriptException {
 		String issueStr = "'Due' not followed by 'to'";
 		String[] acceptableAlternativesPost = new String[] { "date", "mostly to", "either to", "with", "next", "new"};
 		String[] acceptableAlternativesPre = new String[] { "claim" };
 		initialiseSummary(issueStr);
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			nextDescription:
 			for (Description d : c.getDescriptions(ActiveState.ACTIVE)) {
 				if (d.getTerm().contains("due") || d.getTerm().contains("Due")) {
@@ -1081,7 +1067,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 	
 	private boolean alsoHasSameWordToLeftOrRight(String[] words, int x, int y) {
@@ -1189,14 +1175,13 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 	}
 
 	//ISRS-414 Descriptions which contain a non-breaking space
-	private void unexpectedCharacters () throws TermServerScriptException {
+	private ConceptRule unexpectedCharacters() throws TermServerScriptException {
 		AcceptableCharacterValidator acv = AcceptableCharacterValidator.getInstance();
 		String validatorIssueStr = "Acceptable character violation";
 		initialiseSummary(validatorIssueStr);
 		List<UnwantedChar> unwantedCharChecks = initialiseUnwantedCharChecks();
 
-
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			for (Description d : c.getDescriptions(ActiveState.ACTIVE)) {
 				if (!inScope(d)) {
 					continue;
@@ -1236,7 +1221,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					);
 				}
 			}
-		}
+		};
 	}
 
 	private List<UnwantedChar> initialiseUnwantedCharChecks() {
@@ -1290,26 +1275,25 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 	}
 
 	//RP-201
-	private void spaceBracket() throws TermServerScriptException {
+	private ConceptRule spaceBracket() throws TermServerScriptException {
 		String issueStr = "Extraneous space inside bracket";
 		initialiseSummary(issueStr);
-		nextConcept:
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (c.isActiveSafely() || includeLegacyIssues) {
 				for (Description d : c.getDescriptions(ActiveState.ACTIVE)) {
 					if (inScope(d)) {
 						if (d.getTerm().contains("( ") || d.getTerm().contains(" )")) {
 							reportAndIncrementSummary(c, isLegacySimple(d), issueStr, getLegacyIndicator(d), isActive(c,d), d);
-							continue nextConcept;
+							return;
 						}
 					}
 				}
 			}
-		}
+		};
 	}
 	
 	//Active concept parents should not belong to more than one top-level hierarchy – please check NEW and LEGACY content for issues
-	private void parentsInSameTopLevelHierarchy() throws TermServerScriptException {
+	private ConceptRule parentsInSameTopLevelHierarchy() throws TermServerScriptException {
 		String issueStr = "Parent has multiple top level ancestors";
 		String issue2Str = "Mixed TopLevel Parents";
 		initialiseSummary(issueStr);
@@ -1318,27 +1302,26 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		Set<Concept> whiteList = new HashSet<>();
 		whiteList.add(gl.getConcept("411115002 |Drug-device combination product (product)|")); 
 				
-		nextConcept:
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (!inScope(c)) {
-				continue;
+				return;
 			}
 			if (whiteListedConceptIds.contains(c.getId())) {
 				incrementSummaryInformation(WHITE_LISTED_COUNT);
-				continue;
+				return;
 			}
 			if (c.isActiveSafely()) {
 				String legacy = getLegacyIndicator(c);
 				
 				//Skip root concept - has no highest ancestor
 				if (c.equals(ROOT_CONCEPT)) {
-					continue;
+					return;
 				}
 				
 				//If this concept - or any of its ancestors - are whitelisted, then skip
 				for (Concept a : gl.getAncestorsCache().getAncestorsOrSelf(c)){
 					if (whiteList.contains(a)) {
-						continue nextConcept;
+						return;
 					}
 				}
 				
@@ -1346,7 +1329,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 				for (Concept p : c.getParents(CharacteristicType.INFERRED_RELATIONSHIP)) {
 					//If we are a top level, skip also
 					if (p.equals(ROOT_CONCEPT)) {
-						continue nextConcept;
+						return;
 					}
 					//What top level hierarchy is this parent in?
 					Set<Concept> topLevels = SnomedUtils.getHighestAncestorsBefore(p, ROOT_CONCEPT);
@@ -1354,10 +1337,10 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					if (topLevels.size() > 1) {
 						String topLevelStr = topLevels.stream().map(Object::toString).collect(Collectors.joining(",\n"));
 						reportAndIncrementSummary(c, !recentlyTouched.contains(c), issueStr, legacy, isActive(c,null), topLevelStr);
-						continue nextConcept;
+						return;
 					} else if (topLevels.isEmpty()) {
 						reportAndIncrementSummary(c, false, "Failed to find top level of parent ", legacy, isActive(c,null), p);
-						continue nextConcept;
+						return;
 					}
 					
 					Concept thisTopLevel = topLevels.iterator().next();
@@ -1368,7 +1351,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 	
 	//RP-128
@@ -1427,12 +1410,12 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 	 * will override these rows.
 	 * @throws TermServerScriptException
 	 */
-	private void noStatedRelationships() throws TermServerScriptException {
+	private ConceptRule noStatedRelationships() throws TermServerScriptException {
 		String issueStr = "Active stated relationship";
 		initialiseSummary(issueStr);
 		
 		//Check no active relationship is non-axiom
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (c.isActiveSafely() && inScope(c)) {
 				for (Relationship r : c.getRelationships(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE)) {
 					String legacy = getLegacyIndicator(r);
@@ -1441,7 +1424,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 	
 	//RP-127
@@ -1481,19 +1464,19 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 	}
 
 	// RP-704
-	private void descriptionDialectChecks() throws TermServerScriptException {
+	private ConceptRule descriptionDialectChecks() throws TermServerScriptException {
 		String issueStr = "FSN contains GB specific spelling";
 		initialiseSummary(issueStr);
 
 		DialectChecker dialectChecker = DialectChecker.create();
 
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			Description fsn = c.getFSNDescription(LANG_EN);
 			if (dialectChecker.containsGBSpecificTerm(fsn.getTerm())) {
 				String legacy = getLegacyIndicator(c);
 				reportAndIncrementSummary(c, !recentlyTouched.contains(c), issueStr, legacy, isActive(c, null), fsn);
 			}
-		}
+		};
 	}
 	
 	//RP-165
@@ -1574,27 +1557,26 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		return reported;
 	}
 
-	private void nestedBracketCheck() throws TermServerScriptException {
+	private ConceptRule nestedBracketCheck() throws TermServerScriptException {
 		String issueStr = "Active description on inactive concept contains nested brackets";
 		initialiseSummary(issueStr);
 		Character[][] bracketPairs = new Character[][] {{'(', ')'},
 			{'[',']'}};
 			
-		nextConcept:
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (!c.isActiveSafely()) {
 				for (Description d : c.getDescriptions(ActiveState.ACTIVE)) {
 					if (inScope(d)) {
 						for (Character[] bracketPair : bracketPairs) {
 							if (containsNestedBracket(c, d, bracketPair)) {
 								reportAndIncrementSummary(c, !recentlyTouched.contains(c), issueStr, getLegacyIndicator(c), isActive(c,d), d);
-								continue nextConcept;
+								return;
 							}
 						}
 					}
 				}
 			}
-		}
+		};
 	}
 	
 	private boolean containsNestedBracket(Concept c, Description d, Character[] bracketPair) throws TermServerScriptException {
@@ -1617,18 +1599,18 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 	}
 	
 
-	private void validateAttributeDomainModellingRules() throws TermServerScriptException {
+	private ConceptRule validateAttributeDomainModellingRules() throws TermServerScriptException {
 		//RP-179 concepts using surgical approach must be surgical procedures
 		String issueStr = "Concepts using |Surgical approach| must be subtypes of |surgical procedure|";
 		initialiseSummary(issueStr);
 		Concept type = gl.getConcept("424876005 |Surgical approach (attribute)|");
 		Concept subHierarchy = gl.getConcept("387713003 |Surgical procedure (procedure)|");
 		Set<Concept> subHierarchyList = cache.getDescendantsOrSelf(subHierarchy);
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (c.isActiveSafely() && inScope(c)) {
 				validateTypeUsedInDomain(c, type, subHierarchyList, issueStr);
 			}
-		}
+		};
 	}
 
 	/**
@@ -1642,7 +1624,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		}
 	}
 
-	private void validateAttributeTypeValueModellingRules() throws TermServerScriptException {
+	private ConceptRule validateAttributeTypeValueModellingRules() throws TermServerScriptException {
 		String issueStr = "Finding/Procedure site cannot take a combined site value";
 		initialiseSummary(issueStr);
 		
@@ -1653,17 +1635,17 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		typesOfInterest.addAll(procSiteTypes);
 		Set<Concept> invalidValues = cache.getDescendantsOrSelf(gl.getConcept("116007004 |Combined site (body structure)|"));
 		
-		for (Concept c : allActiveConceptsSorted) {
+		return c -> {
 			if (c.isActiveSafely() && inScope(c)) {
 				for (Concept type : typesOfInterest) {
 					validateTypeValueCombo(c, type, invalidValues, issueStr, false);
 				}
 			}
-		}
+		};
 	}
 
-	private void validateInterpretsHasInterpretation() throws TermServerScriptException {
-		for (Concept c : allActiveConceptsSorted) {
+	private ConceptRule validateInterpretsHasInterpretation() throws TermServerScriptException {
+		return c -> {
 			if (c.isActiveSafely() && inScope(c) && (includeLegacyIssues || SnomedUtils.hasNewChanges(c))) {
 				for (RelationshipGroup g : c.getRelationshipGroups(CharacteristicType.INFERRED_RELATIONSHIP)) {
 					boolean conceptReported = validateRelationshipGroupForInterpretsHasInterpreation(c, g);
@@ -1672,7 +1654,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 					}
 				}
 			}
-		}
+		};
 	}
 
 	private boolean validateRelationshipGroupForInterpretsHasInterpreation(Concept c, RelationshipGroup g) throws TermServerScriptException {
@@ -1831,7 +1813,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 	
 	
 	//RP-180
-	private void neverGroupTogether() throws TermServerScriptException {
+	private void neverGroupTogether(ConceptRuleEngine rules) throws TermServerScriptException {
 		Concept[][] neverTogetherList = new Concept[][] 
 				{
 					{ gl.getConcept("363589002 |Associated procedure|"), gl.getConcept("408729009 |Finding context|")},
@@ -1841,13 +1823,13 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		for (Concept[] neverTogether : neverTogetherList) {
 			String issueStr = "Attributes " + neverTogether[0].toStringPref() + " and " + neverTogether[1].toStringPref() + " must not appear in same group";
 			initialiseSummary(issueStr);
-			for (Concept c : allActiveConceptsSorted) {
+			rules.addActiveConceptRule("Never group together " + neverTogether[0].getId() + "/" + neverTogether[1].getId(), c -> {
 				if (c.isActiveSafely() && inScope(c)) {
 					if (appearInSameGroup(c, neverTogether[0], neverTogether[1])) {
 						reportAndIncrementSummary(c, !recentlyTouched.contains(c), issueStr, getLegacyIndicator(c), isActive(c, null));
 					}
 				}
-			}
+			});
 		}
 	}
 
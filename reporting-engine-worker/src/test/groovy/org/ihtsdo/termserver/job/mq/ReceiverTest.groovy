@@ -0,0 +1,70 @@
+package org.ihtsdo.termserver.job.mq
+
+import jakarta.jms.Destination
+import jakarta.jms.Message
+import jakarta.jms.MessageProducer
+import jakarta.jms.Session
+import org.snomed.otf.scheduler.domain.JobRun
+import org.springframework.jms.core.JmsTemplate
+import org.springframework.jms.core.SessionCallback
+import org.springframework.jms.support.converter.MessageConverter
+import org.springframework.jms.support.destination.DestinationResolver
+import spock.lang.Specification
+
+class ReceiverTest extends Specification {
+    static final String REQUEST_QUEUE = "reporting_service_request"
+    static final String WORKER_QUEUE = "reporting_service_request_worker_1"
+
+    JmsTemplate jmsTemplate = Mock()
+    WorkerStatusPublisher workerStatusPublisher = Stub()
+    Session session = Mock()
+    MessageProducer producer = Mock()
+    Destination requestQueue = Stub()
+    JobRun jobRun = new JobRun()
+    Receiver receiver = new Receiver()
+
+    def setup() {
+        workerStatusPublisher.getWorkerQueueName() >> WORKER_QUEUE
+        DestinationResolver resolver = Stub()
+        resolver.resolveDestinationName(session, REQUEST_QUEUE, false) >> requestQueue
+        MessageConverter converter = Stub()
+        converter.toMessage(jobRun, session) >> Stub(Message)
+        jmsTemplate.getDestinationResolver() >> resolver
+        jmsTemplate.getMessageConverter() >> converter
+        session.createProducer(requestQueue) >> producer
+        receiver.jmsTemplate = jmsTemplate
+        receiver.workerStatusPublisher = workerStatusPublisher
+        receiver.requestQueueName = REQUEST_QUEUE
+        //Already running something
+        receiver.busy.set(true)
+    }
+
+    def "a directed run that arrives while busy goes to the shared queue for the rest of its time to live"() {
+        when:
+            receiver.receiveDirectedMessage(jobRun, System.currentTimeMillis() + 60_000)
+
+        then:
+            1 * jmsTemplate.execute(_ as SessionCallback, true) >> { args -> args[0].doInJms(session) }
+            1 * producer.setTimeToLive({ it > 0 && it <= 60_000 })
+            1 * producer.send(_)
+            0 * jmsTemplate.convertAndSend(*_)
+    }
+
+    def "a directed run that has expired by the time it's returned is left for the service to send on"() {
+        when:
+            receiver.receiveDirectedMessage(jobRun, System.currentTimeMillis() - 1)
+
+        then:
+            0 * jmsTemplate.execute(*_)
+            0 * jmsTemplate.convertAndSend(*_)
+    }
+
+    def "a run from the shared queue is returned there with no time to live"() {
+        when:
+            receiver.receiveMessage(jobRun)
+
+        then:
+            1 * jmsTemplate.convertAndSend(REQUEST_QUEUE, jobRun)
+            0 * jmsTemplate.execute(*_)
+    }
+}
@@ -0,0 +1,19 @@
+package org.ihtsdo.authoring.scheduler.api.mq;
+
+import org.snomed.otf.scheduler.domain.Job;
+
+/**
+ * Jobs expected to finish quickly are dispatched as interactive, on a queue of their own, so that
+ * they aren't held up behind long running release jobs.
+ */
+public enum DispatchClass {
+	INTERACTIVE, BATCH;
+
+	public static DispatchClass of(Job job, int interactiveMaxMinutes) {
+		Integer expectedDuration = job.getExpectedDuration();
+		if (expectedDuration == null || expectedDuration <= interactiveMaxMinutes) {
+			return INTERACTIVE;
+		}
+		return BATCH;
+	}
+}
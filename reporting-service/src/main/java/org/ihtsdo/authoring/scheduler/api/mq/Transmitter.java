@@ -1,9 +1,13 @@
 package org.ihtsdo.authoring.scheduler.api.mq;
 
+import jakarta.jms.Destination;
+import jakarta.jms.MessageProducer;
+
 import org.snomed.otf.scheduler.domain.JobRun;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.SessionCallback;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -15,8 +19,32 @@ public class Transmitter {
 	@Value("${reporting.service.queue.request}")
 	String requestQueueName;
 	
+	@Value("${reporting.service.queue.request.interactive:${reporting.service.queue.request}_interactive}")
+	String interactiveRequestQueueName;
+	
 	public void send (JobRun run) {
 		jmsTemplate.convertAndSend(requestQueueName, run);
 	}
+	
+	public void send (JobRun run, DispatchClass dispatchClass) {
+		jmsTemplate.convertAndSend(dispatchClass == DispatchClass.INTERACTIVE ? interactiveRequestQueueName : requestQueueName, run);
+	}
+	
+	/**
+	 * Sends the run to one worker's own queue, to be dropped by the broker if not picked up in time
+	 */
+	public void send (JobRun run, String workerQueueName, long timeToLiveMs) {
+		jmsTemplate.execute((SessionCallback<Void>) session -> {
+			Destination destination = jmsTemplate.getDestinationResolver().resolveDestinationName(session, workerQueueName, jmsTemplate.isPubSubDomain());
+			MessageProducer producer = session.createProducer(destination);
+			try {
+				producer.setTimeToLive(timeToLiveMs);
+				producer.send(jmsTemplate.getMessageConverter().toMessage(run, session));
+			} finally {
+				producer.close();
+			}
+			return null;
+		}, true);
+	}
 
 }
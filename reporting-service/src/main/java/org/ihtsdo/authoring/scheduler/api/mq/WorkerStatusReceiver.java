@@ -0,0 +1,27 @@
+package org.ihtsdo.authoring.scheduler.api.mq;
+
+import java.util.Map;
+
+import org.ihtsdo.authoring.scheduler.api.service.JobDispatcher;
+import org.ihtsdo.authoring.scheduler.api.service.WorkerAffinityRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WorkerStatusReceiver {
+
+	@Autowired
+	WorkerAffinityRegistry workerAffinityRegistry;
+
+	@Autowired
+	JobDispatcher jobDispatcher;
+
+	@JmsListener(destination = "${reporting.service.queue.worker-status:reporting_service_worker_status}")
+	public void receiveMessage(Map<String, Object> status) {
+		workerAffinityRegistry.update(status);
+		//Workers report in every minute, which is often enough to catch runs left on a worker's queue
+		jobDispatcher.resendExpiredDirectedRuns();
+	}
+
+}
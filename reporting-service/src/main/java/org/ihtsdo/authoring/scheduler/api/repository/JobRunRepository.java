@@ -34,6 +34,14 @@ public interface JobRunRepository extends CrudRepository<JobRun, UUID> {
 	@Query(nativeQuery=true, value="SELECT * FROM job_run WHERE result_url IS NOT NULL AND job_name = :jobName AND status = 3 ORDER BY parameters_id DESC LIMIT 1")
 	Optional<JobRun> findLastRunByJobName(@Param("jobName") String jobName);
 
+	@Query("SELECT jr FROM JobRun jr WHERE jobName = ?1 AND status IN (?2)")
+	List<JobRun> findAllByJobNameAndStatus(String jobName, Set<JobStatus> statusFilter);
+
+	//As findLastRunByJobName, but all recent runs so that their parameters can be compared
+	@Query("SELECT jr FROM JobRun jr WHERE jobName = ?1 AND status = ?2 AND resultUrl IS NOT NULL AND requestTime > ?3 " +
+	" ORDER BY requestTime DESC")
+	List<JobRun> findWithResultSince(String jobName, JobStatus status, Date sinceDate);
+
 	@Query(nativeQuery=true, value="SELECT * FROM job_run WHERE run_batch_id = :runBatchId")
 	List<JobRun> findByRunBatchId(@Param("runBatchId")Long runBatchId);
 }
@@ -0,0 +1,103 @@
+package org.ihtsdo.authoring.scheduler.api.service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.ihtsdo.otf.rest.client.authoringservices.AuthoringServicesClient;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Project;
+import org.ihtsdo.otf.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.springframework.http.*;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Recovers the head timestamp of the branch a job run will report on, so we can tell whether an
+ * earlier run's results still reflect the current content.  The lookup is always made with the
+ * job run's own credentials, so it also confirms that its user can see that branch.
+ */
+@Service
+public class BranchHeadService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BranchHeadService.class);
+
+	private static final String BRANCHES_PATH = "snowstorm/snomed-ct/branches/";
+
+	private static final String MAIN = "MAIN";
+
+	private static final long PROJECT_CACHE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+
+	//Jobs run against a published release rather than a branch, so their content never moves
+	public static final long RELEASE_CONTENT = 0L;
+
+	private final RestTemplate restTemplate = new RestTemplate();
+
+	private final Map<String, ProjectPath> projectPaths = new ConcurrentHashMap<>();
+
+	/**
+	 * @return the head timestamp of the job run's branch, RELEASE_CONTENT if it runs against a
+	 * release package and its credentials are accepted, or null if it could not be determined
+	 */
+	public Long getHeadTimestamp(JobRun jobRun) {
+		String project = jobRun.getProject();
+		if (StringUtils.isEmpty(project)) {
+			return null;
+		}
+		try {
+			if (StringUtils.isNumeric(project) || project.endsWith(".zip")) {
+				//There's no branch to look at, but the user must still be able to read the TS
+				return getHeadTimestamp(jobRun, MAIN) == null ? null : RELEASE_CONTENT;
+			}
+			return getHeadTimestamp(jobRun, getBranchPath(jobRun));
+		} catch (Exception e) {
+			LOGGER.warn("Unable to recover branch head for {}: {}", jobRun, e.getMessage());
+			return null;
+		}
+	}
+
+	private Long getHeadTimestamp(JobRun jobRun, String branchPath) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("Cookie", jobRun.getAuthToken());
+		headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+		ResponseEntity<Map> response = restTemplate.exchange(getServerUrl(jobRun) + BRANCHES_PATH + branchPath,
+				HttpMethod.GET, new HttpEntity<>(headers), Map.class);
+		Object headTimestamp = response.getBody() == null ? null : response.getBody().get("headTimestamp");
+		return headTimestamp instanceof Number number ? number.longValue() : null;
+	}
+
+	private String getBranchPath(JobRun jobRun) {
+		String project = jobRun.getProject();
+		String branchPath;
+		if (project.startsWith("MAIN")) {
+			branchPath = project;
+		} else {
+			ProjectPath projectPath = projectPaths.get(project);
+			if (projectPath == null || projectPath.isExpired()) {
+				AuthoringServicesClient authoringServices = new AuthoringServicesClient(getServerUrl(jobRun), jobRun.getAuthToken());
+				Project recovered = authoringServices.getProject(project);
+				projectPath = new ProjectPath(recovered.getBranchPath(), System.currentTimeMillis());
+				projectPaths.put(project, projectPath);
+			}
+			branchPath = projectPath.branchPath();
+		}
+
+		if (!StringUtils.isEmpty(jobRun.getTask())) {
+			branchPath += "/" + jobRun.getTask();
+		}
+		return branchPath;
+	}
+
+	private String getServerUrl(JobRun jobRun) {
+		String serverUrl = jobRun.getTerminologyServerUrl();
+		return serverUrl.endsWith("/") ? serverUrl : serverUrl + "/";
+	}
+
+	private record ProjectPath(String branchPath, long recovered) {
+		boolean isExpired() {
+			return System.currentTimeMillis() - recovered > PROJECT_CACHE_TIMEOUT_MS;
+		}
+	}
+}
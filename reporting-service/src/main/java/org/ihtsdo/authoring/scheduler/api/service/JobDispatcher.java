@@ -0,0 +1,152 @@
+package org.ihtsdo.authoring.scheduler.api.service;
+
+import java.util.*;
+
+import jakarta.annotation.PostConstruct;
+
+import org.ihtsdo.authoring.scheduler.api.mq.DispatchClass;
+import org.ihtsdo.authoring.scheduler.api.mq.Transmitter;
+import org.ihtsdo.authoring.scheduler.api.repository.JobRepository;
+import org.ihtsdo.authoring.scheduler.api.repository.JobRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.scheduler.domain.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides which queue a job run goes to, and when.  Short jobs go straight to the interactive queue.
+ * Long running batch jobs are only sent while there are workers to spare beyond those reserved for
+ * interactive jobs, otherwise they're held here (and marked as such in the database) until a batch
+ * job finishes.  Where a worker is idle and already holds the job's project in memory, the job is
+ * sent directly to that worker.
+ */
+@Component
+public class JobDispatcher {
+
+	static final String AWAITING_CAPACITY = "Awaiting worker capacity";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JobDispatcher.class);
+
+	@Autowired
+	Transmitter transmitter;
+
+	@Autowired
+	JobRunRepository jobRunRepository;
+
+	@Autowired
+	JobRepository jobRepository;
+
+	@Autowired
+	WorkerAffinityRegistry workerAffinityRegistry;
+
+	@Value("${reporting.service.dispatch.interactive-max-minutes:15}")
+	int interactiveMaxMinutes;
+
+	@Value("${reporting.service.dispatch.workers:4}")
+	int workers;
+
+	@Value("${reporting.service.dispatch.reserved-for-interactive:1}")
+	int reservedForInteractive;
+
+	private final Set<UUID> batchRunsInFlight = new HashSet<>();
+
+	private final Deque<JobRun> batchRunsWaiting = new ArrayDeque<>();
+
+	@PostConstruct
+	public synchronized void init() {
+		//Recover what we know of batch runs from before any restart
+		Set<JobStatus> unfinishedStatuses = Set.of(JobStatus.Scheduled, JobStatus.Running);
+		List<JobRun> unfinished = new ArrayList<>(jobRunRepository.findAllByStatus(unfinishedStatuses));
+		unfinished.sort(Comparator.comparing(JobRun::getRequestTime, Comparator.nullsLast(Comparator.naturalOrder())));
+		for (JobRun jobRun : unfinished) {
+			Job job = jobRepository.findByName(jobRun.getJobName());
+			if (job == null || getDispatchClass(job) != DispatchClass.BATCH || isFollower(jobRun)) {
+				continue;
+			}
+			if (jobRun.getStatus() == JobStatus.Scheduled && AWAITING_CAPACITY.equals(jobRun.getDebugInfo())) {
+				batchRunsWaiting.add(jobRun);
+			} else {
+				batchRunsInFlight.add(jobRun.getId());
+			}
+		}
+		LOGGER.info("Recovered {} batch job runs in flight and {} awaiting capacity", batchRunsInFlight.size(), batchRunsWaiting.size());
+		dispatchWaiting();
+	}
+
+	private boolean isFollower(JobRun jobRun) {
+		//Never sent to a worker, so takes no capacity.  It's completed by the JobRunCoalescer instead
+		return jobRun.getStatus() == JobStatus.Scheduled && jobRun.getDebugInfo() != null
+				&& jobRun.getDebugInfo().startsWith(JobRunCoalescer.FOLLOWING);
+	}
+
+	public DispatchClass getDispatchClass(Job job) {
+		return DispatchClass.of(job, interactiveMaxMinutes);
+	}
+
+	public synchronized void dispatch(JobRun jobRun, Job job) {
+		DispatchClass dispatchClass = getDispatchClass(job);
+		if (dispatchClass == DispatchClass.INTERACTIVE) {
+			send(jobRun, dispatchClass);
+		} else if (batchRunsInFlight.size() < getBatchCapacity()) {
+			batchRunsInFlight.add(jobRun.getId());
+			send(jobRun, dispatchClass);
+		} else {
+			LOGGER.info("{} batch jobs already running, holding {} until one completes", batchRunsInFlight.size(), jobRun);
+			jobRun.setDebugInfo(AWAITING_CAPACITY);
+			jobRunRepository.save(jobRun);
+			batchRunsWaiting.add(jobRun);
+		}
+	}
+
+	/**
+	 * Called when a job run reaches Complete or Failed, to free up its capacity for anything waiting
+	 */
+	public synchronized void jobRunFinished(UUID jobRunId) {
+		batchRunsWaiting.removeIf(waiting -> waiting.getId().equals(jobRunId));
+		if (batchRunsInFlight.remove(jobRunId)) {
+			dispatchWaiting();
+		}
+	}
+
+	private void dispatchWaiting() {
+		while (!batchRunsWaiting.isEmpty() && batchRunsInFlight.size() < getBatchCapacity()) {
+			JobRun jobRun = batchRunsWaiting.poll();
+			jobRun.setDebugInfo(null);
+			jobRunRepository.save(jobRun);
+			batchRunsInFlight.add(jobRun.getId());
+			LOGGER.info("Capacity available, dispatching {}", jobRun);
+			send(jobRun, DispatchClass.BATCH);
+		}
+	}
+
+	/**
+	 * Runs directed to a worker which weren't picked up in time are dropped by the broker,
+	 * so send them to the shared queue instead
+	 */
+	public synchronized void resendExpiredDirectedRuns() {
+		for (JobRun jobRun : workerAffinityRegistry.takeExpiredClaims()) {
+			Optional<JobRun> current = jobRunRepository.findById(jobRun.getId());
+			Job job = jobRepository.findByName(jobRun.getJobName());
+			if (current.isEmpty() || current.get().getStatus() != JobStatus.Scheduled || job == null) {
+				continue;
+			}
+			LOGGER.warn("{} was not picked up by the worker it was directed to, sending to the shared queue", jobRun);
+			transmitter.send(jobRun, getDispatchClass(job));
+		}
+	}
+
+	private void send(JobRun jobRun, DispatchClass dispatchClass) {
+		String workerQueueName = workerAffinityRegistry.claimWorkerFor(jobRun);
+		if (workerQueueName != null) {
+			transmitter.send(jobRun, workerQueueName, workerAffinityRegistry.getDirectedTimeToLive());
+		} else {
+			transmitter.send(jobRun, dispatchClass);
+		}
+	}
+
+	private int getBatchCapacity() {
+		return Math.max(1, workers - reservedForInteractive);
+	}
+}
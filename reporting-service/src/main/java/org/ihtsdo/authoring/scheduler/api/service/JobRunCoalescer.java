@@ -0,0 +1,222 @@
+package org.ihtsdo.authoring.scheduler.api.service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PostConstruct;
+
+import org.ihtsdo.authoring.scheduler.api.repository.JobRepository;
+import org.ihtsdo.authoring.scheduler.api.repository.JobRunRepository;
+import org.ihtsdo.otf.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.scheduler.domain.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Avoids running the same report twice.  A job run asking for exactly the same job, project, task
+ * and parameters as one that is already in flight waits for that run's result, and one matching a
+ * recently completed run is given its result straight away - in both cases only where the branch
+ * hasn't moved on since the earlier run was requested.  Each user still gets their own job run.
+ *
+ * Before following or reusing any run, the branch head is looked up with the credentials of
+ * whoever asked for the later run, so they only get a result they could have produced themselves.
+ * If that lookup fails, for whatever reason, the run is dispatched as normal instead.  For runs
+ * against a published release, which has no branch, their credentials are checked against MAIN.
+ */
+@Component
+public class JobRunCoalescer {
+
+	static final String FOLLOWING = "Awaiting result of identical run ";
+
+	private static final String REUSED = "Result reused from identical run ";
+
+	private static final String SEPARATOR = "\t";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JobRunCoalescer.class);
+
+	@Autowired
+	JobRunRepository jobRunRepository;
+
+	@Autowired
+	JobRepository jobRepository;
+
+	@Autowired
+	JobDispatcher jobDispatcher;
+
+	@Autowired
+	BranchHeadService branchHeadService;
+
+	@Value("${reporting.service.reuse.enabled:true}")
+	boolean enabled;
+
+	@Value("${reporting.service.reuse.max-age-minutes:60}")
+	int maxAgeMinutes;
+
+	//Runs waiting on the result of another, keyed on the run they're waiting for
+	private final Map<UUID, List<JobRun>> followers = new HashMap<>();
+
+	@PostConstruct
+	public synchronized void init() {
+		for (JobRun jobRun : jobRunRepository.findAllByStatus(Set.of(JobStatus.Scheduled))) {
+			String debugInfo = jobRun.getDebugInfo();
+			if (debugInfo != null && debugInfo.startsWith(FOLLOWING)) {
+				try {
+					UUID leaderId = UUID.fromString(debugInfo.substring(FOLLOWING.length()));
+					followers.computeIfAbsent(leaderId, k -> new ArrayList<>()).add(jobRun);
+				} catch (IllegalArgumentException e) {
+					LOGGER.warn("Unable to recover run being followed by {} from '{}'", jobRun, debugInfo);
+				}
+			}
+		}
+		LOGGER.info("Recovered {} job runs awaiting the result of an identical run", followers.values().stream().mapToInt(List::size).sum());
+	}
+
+	/**
+	 * Attaches the (already saved) job run to an identical run in flight, or completes it with the
+	 * result of a recent identical run.
+	 * @return true if the job run has been dealt with, false if it needs to be dispatched as normal
+	 */
+	public boolean coalesce(JobRun jobRun) {
+		if (!enabled || jobRun.getParameters() == null) {
+			return false;
+		}
+		Boolean coalesced = coalesce(jobRun, false, null);
+		if (coalesced == null) {
+			//The branch head means a call to the TS, so don't hold up everyone else while we wait for it
+			Long headTimestamp = branchHeadService.getHeadTimestamp(jobRun);
+			coalesced = coalesce(jobRun, true, headTimestamp);
+		}
+		return coalesced;
+	}
+
+	/**
+	 * @return whether the job run was dealt with, or null if that depends on the branch head and it isn't yet known
+	 */
+	private synchronized Boolean coalesce(JobRun jobRun, boolean headKnown, Long headTimestamp) {
+		String runKey = getRunKey(jobRun);
+		Date since = new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(maxAgeMinutes));
+
+		//Identical runs in flight.  One that's yet to be picked up will see the branch as it is now
+		for (JobRun inFlight : jobRunRepository.findAllByJobNameAndStatus(jobRun.getJobName(), Set.of(JobStatus.Scheduled, JobStatus.Running))) {
+			if (isCandidate(inFlight, jobRun, runKey)) {
+				if (!headKnown) {
+					return null;
+				}
+				if (headTimestamp == null) {
+					//Can't confirm this user can see the branch, so they get a run of their own
+					return false;
+				}
+				if (inFlight.getStatus() == JobStatus.Running && !isUnchangedSince(headTimestamp, inFlight)) {
+					continue;
+				}
+				follow(jobRun, inFlight);
+				return true;
+			}
+		}
+
+		//Identical runs recently completed
+		for (JobRun completed : jobRunRepository.findWithResultSince(jobRun.getJobName(), JobStatus.Complete, since)) {
+			if (isCandidate(completed, jobRun, runKey)) {
+				if (!headKnown) {
+					return null;
+				}
+				if (isUnchangedSince(headTimestamp, completed)) {
+					LOGGER.info("Branch unchanged since {}, reusing its result for {}", completed, jobRun);
+					copyResult(completed, jobRun, REUSED + completed.getId());
+					return true;
+				}
+				//Older runs won't have fared any better
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Called when a job run reaches Complete or Failed.  Anything waiting on it either takes its result
+	 * or, if it failed, the first in line is dispatched in its place for the others to wait on.
+	 */
+	public synchronized void jobRunFinished(JobRun jobRun) {
+		followers.values().forEach(waiting -> waiting.removeIf(f -> f.getId().equals(jobRun.getId())));
+		List<JobRun> waiting = followers.remove(jobRun.getId());
+		if (waiting == null || waiting.isEmpty()) {
+			return;
+		}
+
+		if (jobRun.getStatus() == JobStatus.Complete) {
+			LOGGER.info("Passing result of {} to {} identical runs", jobRun, waiting.size());
+			for (JobRun follower : waiting) {
+				copyResult(jobRun, follower, REUSED + jobRun.getId());
+			}
+			return;
+		}
+
+		JobRun newLeader = waiting.remove(0);
+		Job job = jobRepository.findByName(newLeader.getJobName());
+		if (job == null) {
+			//Can't run it, so let the followers share the failure
+			waiting.add(0, newLeader);
+			for (JobRun follower : waiting) {
+				copyResult(jobRun, follower, jobRun.getDebugInfo());
+			}
+			return;
+		}
+		LOGGER.info("{} failed, running {} in its place for {} identical runs", jobRun, newLeader, waiting.size());
+		newLeader.setDebugInfo(null);
+		jobRunRepository.save(newLeader);
+		for (JobRun follower : waiting) {
+			follow(follower, newLeader);
+		}
+		jobDispatcher.dispatch(newLeader, job);
+	}
+
+	private void follow(JobRun follower, JobRun leader) {
+		LOGGER.info("{} is identical to {}, awaiting its result", follower, leader);
+		follower.setDebugInfo(FOLLOWING + leader.getId());
+		jobRunRepository.save(follower);
+		followers.computeIfAbsent(leader.getId(), k -> new ArrayList<>()).add(follower);
+	}
+
+	private void copyResult(JobRun source, JobRun target, String debugInfo) {
+		target.setStatus(source.getStatus());
+		target.setResultUrl(source.getResultUrl());
+		target.setResultTime(new Date());
+		target.setIssuesReported(source.getIssuesReported());
+		target.setDebugInfo(debugInfo);
+		jobRunRepository.save(target);
+	}
+
+	private boolean isCandidate(JobRun candidate, JobRun jobRun, String runKey) {
+		if (candidate.getId().equals(jobRun.getId()) || candidate.getParameters() == null) {
+			return false;
+		}
+		//Don't follow a run that is itself only following another
+		if (candidate.getDebugInfo() != null && candidate.getDebugInfo().startsWith(FOLLOWING)) {
+			return false;
+		}
+		return runKey.equals(getRunKey(candidate));
+	}
+
+	private boolean isUnchangedSince(Long headTimestamp, JobRun earlierRun) {
+		return headTimestamp != null && earlierRun.getRequestTime() != null
+				&& headTimestamp < earlierRun.getRequestTime().getTime();
+	}
+
+	private String getRunKey(JobRun jobRun) {
+		StringBuilder sb = new StringBuilder(jobRun.getJobName())
+				.append(SEPARATOR).append(jobRun.getProject())
+				.append(SEPARATOR).append(jobRun.getTask())
+				.append(SEPARATOR).append(jobRun.getcodeSystemShortname());
+		JobRunParameters parameters = jobRun.getParameters();
+		for (String key : new TreeSet<>(parameters.keySet())) {
+			String value = parameters.get(key) == null ? null : parameters.get(key).getValue();
+			if (!StringUtils.isEmpty(value)) {
+				sb.append(SEPARATOR).append(key).append("=").append(value.trim());
+			}
+		}
+		return sb.toString();
+	}
+}
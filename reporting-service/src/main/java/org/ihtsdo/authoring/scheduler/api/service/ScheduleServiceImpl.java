@@ -57,6 +57,12 @@ public class ScheduleServiceImpl implements ScheduleService {
 	@Autowired
 	Transmitter transmitter;
 	
+	@Autowired
+	JobDispatcher jobDispatcher;
+	
+	@Autowired
+	JobRunCoalescer jobRunCoalescer;
+	
 	@Autowired
 	AuthenticationService authenticationService;
 	
@@ -163,8 +169,11 @@ public class ScheduleServiceImpl implements ScheduleService {
 
 		JobRun savedJobRun = jobRunRepository.save(jobRun);
 		jobRun.setId(savedJobRun.getId());
+		if (jobRunCoalescer.coalesce(jobRun)) {
+			return jobRun;
+		}
 		LOGGER.info("Running job: {}", jobRun);
-		transmitter.send(jobRun);
+		jobDispatcher.dispatch(jobRun, job);
 		return jobRun;
 	}
 
@@ -241,6 +250,10 @@ public class ScheduleServiceImpl implements ScheduleService {
 			jobRun.setDebugInfo(StringUtils.truncate(jobRun.getDebugInfo(), DEBUG_LENGTH_LIMIT + 15));
 			LOGGER.info("Saving job response: {}", jobRun);
 			jobRunRepository.save(jobRun);
+			if (jobRun.getStatus() == JobStatus.Complete || jobRun.getStatus() == JobStatus.Failed) {
+				jobDispatcher.jobRunFinished(jobRun.getId());
+				jobRunCoalescer.jobRunFinished(jobRun);
+			}
 		} catch (Exception e) {
 			LOGGER.error("Unable to process response for jobRun '{}'", jobRun, e);
 		}
@@ -402,6 +415,8 @@ public class ScheduleServiceImpl implements ScheduleService {
 				jobRun.setStatus(JobStatus.Failed);
 				jobRun.setDebugInfo("Job status manually updated to 'failed'");
 				jobRunRepository.save(jobRun);
+				jobDispatcher.jobRunFinished(jobRun.getId());
+				jobRunCoalescer.jobRunFinished(jobRun);
 				jobsCleared++;
 			}
 		}
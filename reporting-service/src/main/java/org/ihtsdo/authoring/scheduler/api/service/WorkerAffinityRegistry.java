@@ -0,0 +1,126 @@
+package org.ihtsdo.authoring.scheduler.api.service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.ihtsdo.otf.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps track of which snapshot each worker holds in memory, as reported by the workers themselves,
+ * so that a job run can be sent to an idle worker that won't have to load its project afresh.
+ *
+ * A run sent to a worker's own queue is only held there for DIRECTED_TTL_MS, since that worker may
+ * never come back (autoscaled workers don't keep their hostname).  The claims are kept here so that
+ * any run not picked up by then can be sent on to the shared queue instead.
+ */
+@Component
+public class WorkerAffinityRegistry {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WorkerAffinityRegistry.class);
+
+	//Workers report in once a minute, so allow for one missed report
+	private static final long MAX_SILENCE_MS = TimeUnit.SECONDS.toMillis(150);
+
+	//A worker's idle report may cross with a job we've just sent it
+	private static final long CLAIM_GRACE_MS = TimeUnit.SECONDS.toMillis(30);
+
+	//An idle worker picks up a directed run within seconds, this allows for it finishing something else first
+	private static final long DIRECTED_TTL_MS = TimeUnit.MINUTES.toMillis(2);
+
+	@Value("${reporting.service.affinity.enabled:true}")
+	boolean enabled;
+
+	private final Map<String, WorkerState> workers = new HashMap<>();
+
+	private final Map<UUID, Claim> claims = new HashMap<>();
+
+	private static class WorkerState {
+		String queue;
+		String project;
+		String branchPath;
+		boolean busy;
+		long lastSeen;
+		long claimedAt;
+	}
+
+	private record Claim(JobRun jobRun, long claimedAt) {}
+
+	public synchronized void update(Map<String, Object> status) {
+		String workerId = (String) status.get("workerId");
+		String queue = (String) status.get("queue");
+		if (StringUtils.isEmpty(workerId) || StringUtils.isEmpty(queue)) {
+			LOGGER.warn("Ignoring incomplete worker status {}", status);
+			return;
+		}
+		WorkerState state = workers.computeIfAbsent(workerId, k -> new WorkerState());
+		boolean busy = Boolean.TRUE.equals(status.get("busy"));
+		if (!busy && System.currentTimeMillis() - state.claimedAt < CLAIM_GRACE_MS) {
+			busy = state.busy;
+		}
+		state.queue = queue;
+		state.project = (String) status.get("project");
+		state.branchPath = (String) status.get("branchPath");
+		state.busy = busy;
+		state.lastSeen = System.currentTimeMillis();
+		LOGGER.debug("Worker {} {} holding {}", workerId, busy ? "busy" : "idle", state.branchPath);
+	}
+
+	/**
+	 * Finds an idle worker holding the job run's project and reserves it for that run.
+	 * @return the worker's own request queue, or null if no such worker is available
+	 */
+	public synchronized String claimWorkerFor(JobRun jobRun) {
+		if (!enabled || StringUtils.isEmpty(jobRun.getProject())) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		workers.values().removeIf(w -> now - w.lastSeen > MAX_SILENCE_MS);
+		for (Map.Entry<String, WorkerState> entry : workers.entrySet()) {
+			WorkerState state = entry.getValue();
+			if (!state.busy && holds(state, jobRun)) {
+				state.busy = true;
+				state.claimedAt = now;
+				claims.put(jobRun.getId(), new Claim(jobRun, now));
+				LOGGER.info("Worker {} already holds {}, directing {} to it", entry.getKey(), state.branchPath, jobRun);
+				return state.queue;
+			}
+		}
+		return null;
+	}
+
+	public long getDirectedTimeToLive() {
+		return DIRECTED_TTL_MS;
+	}
+
+	/**
+	 * @return the runs directed to a worker long enough ago that the broker will have dropped them
+	 * if they weren't picked up.  Each is only returned once.
+	 */
+	public synchronized List<JobRun> takeExpiredClaims() {
+		long expiredBefore = System.currentTimeMillis() - DIRECTED_TTL_MS - CLAIM_GRACE_MS;
+		List<JobRun> expired = new ArrayList<>();
+		claims.values().removeIf(claim -> {
+			if (claim.claimedAt() < expiredBefore) {
+				expired.add(claim.jobRun());
+				return true;
+			}
+			return false;
+		});
+		return expired;
+	}
+
+	private boolean holds(WorkerState state, JobRun jobRun) {
+		if (!jobRun.getProject().equals(state.project) || state.branchPath == null) {
+			return false;
+		}
+		//A task is loaded as its own branch below the project, so is no use for a run against the project itself
+		String task = jobRun.getTask();
+		String branch = StringUtils.isEmpty(task) ? jobRun.getProject() : task;
+		return state.branchPath.equals(branch) || state.branchPath.endsWith("/" + branch);
+	}
+}